@@ -19,6 +19,13 @@ export interface PagedResponse<T> {
     last: boolean;
 }
 
+// Keyset page; a null cursor means there is nothing further that way
+export interface CursorPage<T> {
+    content: T[];
+    nextCursor: string | null;
+    prevCursor: string | null;
+}
+
 export interface Message {
     id: number;
     protocol: string;
@@ -73,6 +80,8 @@ export interface ConversationSummary {
     lastMessagePreview: string;
     lastMessageHasImage: boolean;
     unreadCount: number;
+    messageCount: number;
+    mediaCount: number;
 }
 
 export interface GalleryImage {
@@ -182,6 +191,19 @@ export async function getConversationMessages(
     return res.data;
 }
 
+/**
+ * Fetch a keyset page of messages; pass a previous page's nextCursor/prevCursor, or `at` to jump to a date
+ * Backend endpoint: GET /api/conversations/{conversationId}/messages/cursor?cursor=&at=&size=&sort=(asc|desc)
+ */
+export async function getConversationMessagesByCursor(
+    conversationId: number,
+    options: { cursor?: string; at?: string; size?: number; sort?: "asc" | "desc" } = {}
+): Promise<CursorPage<Message>> {
+    const params = { size: 50, sort: "desc", ...options };
+    const res = await axios.get(`${API_BASE}/api/conversations/${conversationId}/messages/cursor`, { params });
+    return res.data;
+}
+
 /**
  * Delete a conversation by ID. Returns 'deleted' or 'not_found'.
  */
@@ -237,11 +259,16 @@ export interface ImportProgress {
   startedAt?: string;
   finishedAt?: string;
   percentBytes: number; // derived on server
+  queuePosition?: number; // 1-based while waiting for a slot, 0 once running
+  etaSeconds?: number | null;
+  metrics?: Record<string, unknown>; // per-stage timings, DB statements, media bytes, flush latencies
 }
 
+// Sends the file as the raw request body; the server imports it while it uploads
 export async function startStreamingImport(file: File): Promise<{ jobId: string; status: string; }> {
-    const fd = new FormData(); fd.append("file", file);
-    const res = await axios.post(`${API_BASE}/import/stream`, fd);
+    const res = await axios.post(`${API_BASE}/import/stream/live`, file, {
+        headers: { 'Content-Type': 'application/octet-stream' },
+    });
     return res.data;
 }
 
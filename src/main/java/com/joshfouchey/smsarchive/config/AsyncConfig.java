@@ -1,6 +1,7 @@
 package com.joshfouchey.smsarchive.config;
 
 import com.joshfouchey.smsarchive.util.RateLimiter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.TaskExecutor;
@@ -10,16 +11,29 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 public class AsyncConfig {
 
     @Bean(name = "importTaskExecutor")
-    public TaskExecutor importTaskExecutor() {
+    public TaskExecutor importTaskExecutor(
+            @Value("${smsarchive.import.maxConcurrentUsers:2}") int maxConcurrentUsers) {
         ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
-        exec.setCorePoolSize(2);
-        exec.setMaxPoolSize(4);
+        // One thread per concurrently importing user (ImportScheduler admits no more than that)
+        exec.setCorePoolSize(Math.max(2, maxConcurrentUsers));
+        exec.setMaxPoolSize(Math.max(4, maxConcurrentUsers));
         exec.setQueueCapacity(10_000); // large queue for many messages batches
         exec.setThreadNamePrefix("import-worker-");
         exec.initialize();
         return exec;
     }
 
+    @Bean(name = "thumbnailTaskExecutor")
+    public TaskExecutor thumbnailTaskExecutor(@Value("${smsarchive.thumbnails.queue.workers:2}") int workers) {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(workers);
+        exec.setMaxPoolSize(workers);
+        exec.setQueueCapacity(workers); // runs the queue's drainers; the tasks wait in thumbnail_tasks
+        exec.setThreadNamePrefix("thumb-worker-");
+        exec.initialize();
+        return exec;
+    }
+
     @Bean(name = "aiTaskExecutor")
     public TaskExecutor aiTaskExecutor() {
         ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
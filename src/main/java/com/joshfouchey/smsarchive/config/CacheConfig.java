@@ -18,12 +18,9 @@ public class CacheConfig {
         CaffeineCacheManager mgr = new CaffeineCacheManager(
                 "analyticsDashboard",
                 "distinctContacts",
-                "conversationMessages",      // Cache full conversation message lists
                 "conversationMessageCount",   // Cache message counts
                 "messageContext",            // Cache message context for search navigation
                 "contactSummaries",          // Cache contact summaries list
-                "conversationList",          // Cache conversation list
-                "conversationTimeline",      // Cache conversation timeline buckets
                 "currentUser",               // Cache user lookups by username
                 "kgEntities",                // Cache KG entity listings
                 "kgEntityFacts",             // Cache entity fact lookups
@@ -0,0 +1,95 @@
+package com.joshfouchey.smsarchive.config;
+
+import com.joshfouchey.smsarchive.service.importpipeline.ImportMetrics;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Counts JDBC statement executions for the import job bound to the executing thread, which is
+ * where the "DB round-trips per message" in an import's metrics come from. Diagnostics only and
+ * off unless {@code smsarchive.import.metrics.countStatements} is set: every connection and
+ * statement of the application becomes a reflective proxy, imports or not. COPY transfers go
+ * through the driver's copy API and are not included.
+ */
+@Configuration
+@ConditionalOnProperty(name = "smsarchive.import.metrics.countStatements", havingValue = "true")
+public class ImportMetricsConfig {
+
+    @Bean
+    public static BeanPostProcessor importStatementCountingDataSource() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource ds && !(bean instanceof StatementCountingDataSource)
+                        ? new StatementCountingDataSource(ds) : bean;
+            }
+        };
+    }
+
+    static final class StatementCountingDataSource extends DelegatingDataSource {
+
+        StatementCountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return countingConnection(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return countingConnection(super.getConnection(username, password));
+        }
+    }
+
+    private static Connection countingConnection(Connection target) {
+        return proxy(Connection.class, (proxy, method, args) -> {
+            Object result = invoke(target, method, args);
+            if (result instanceof CallableStatement cs) return proxy(CallableStatement.class, counting(cs));
+            if (result instanceof PreparedStatement ps) return proxy(PreparedStatement.class, counting(ps));
+            if (result instanceof Statement st) return proxy(Statement.class, counting(st));
+            return result;
+        });
+    }
+
+    private static InvocationHandler counting(Statement target) {
+        return (proxy, method, args) -> {
+            if (method.getName().startsWith("execute")) ImportMetrics.countStatement();
+            return invoke(target, method, args);
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        // Identity semantics for the proxy itself, so pools and registries keyed by it behave
+        InvocationHandler withIdentity = (proxy, method, args) -> switch (method.getName()) {
+            case "equals" -> method.getParameterCount() == 1 && proxy == args[0];
+            case "hashCode" -> method.getParameterCount() == 0 ? System.identityHashCode(proxy) : handler.invoke(proxy, method, args);
+            default -> handler.invoke(proxy, method, args);
+        };
+        return (T) Proxy.newProxyInstance(ImportMetricsConfig.class.getClassLoader(), new Class<?>[]{type}, withIdentity);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 import java.time.Instant;
 import java.util.Map;
@@ -40,6 +41,11 @@ public class RestExceptionHandler {
         return error(HttpStatus.CONFLICT, ex.getMessage(), req);
     }
 
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<Map<String,Object>> handleUploadTooLarge(MaxUploadSizeExceededException ex, WebRequest req) {
+        return error(HttpStatus.PAYLOAD_TOO_LARGE, "Upload exceeds the maximum size of " + ex.getMaxUploadSize() + " bytes", req);
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<Map<String,Object>> handleIllegalArgument(IllegalArgumentException ex, WebRequest req) {
         return error(HttpStatus.BAD_REQUEST, ex.getMessage(), req);
@@ -1,15 +1,24 @@
 package com.joshfouchey.smsarchive.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.joshfouchey.smsarchive.dto.ConversationSummaryDto;
 import com.joshfouchey.smsarchive.dto.ConversationTimelineDto;
+import com.joshfouchey.smsarchive.dto.CursorPage;
 import com.joshfouchey.smsarchive.dto.MessageDto;
 import com.joshfouchey.smsarchive.dto.PagedResponse;
 import com.joshfouchey.smsarchive.dto.api.ConversationMessagesDto;
 import com.joshfouchey.smsarchive.service.ConversationService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -20,9 +29,14 @@ import static com.joshfouchey.smsarchive.util.InputLimits.*;
 public class ConversationController {
 
     private final ConversationService conversationService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter messageWriter;
 
-    public ConversationController(ConversationService conversationService) {
+    public ConversationController(ConversationService conversationService, ObjectMapper objectMapper) {
         this.conversationService = conversationService;
+        this.objectMapper = objectMapper;
+        this.messageWriter = objectMapper.writerFor(ConversationMessagesDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @GetMapping
@@ -49,6 +63,20 @@ public class ConversationController {
         return conversationService.getConversationMessages(conversationId, page, size, sort);
     }
 
+    /**
+     * Keyset-paginated messages: pass the nextCursor/prevCursor of a previous page to move on,
+     * or {@code at} (ISO instant or date) to start at a date. No total count is returned.
+     */
+    @GetMapping("/{conversationId}/messages/cursor")
+    public CursorPage<MessageDto> getConversationMessagesByCursor(
+            @PathVariable Long conversationId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String at,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(defaultValue = "desc") String sort) {
+        return conversationService.getConversationMessagesByCursor(conversationId, cursor, at, size, sort);
+    }
+
     @GetMapping("/{conversationId}/timeline")
     public ConversationTimelineDto getConversationTimeline(@PathVariable Long conversationId) {
         return conversationService.getConversationTimeline(conversationId);
@@ -97,13 +125,48 @@ public class ConversationController {
     }
 
     /**
-     * Load ALL messages for a conversation (cached).
-     * Used for client-side search/filter operations.
-     * Returns lightweight DTOs to reduce JSON payload size.
+     * Load ALL messages for a conversation as one JSON array, oldest first.
+     * Used for client-side search/filter operations. Streamed as it is read from the database,
+     * so the server never holds the whole conversation; see also {@code /messages/stream}.
      */
-    @GetMapping("/{conversationId}/messages/all")
-    public List<ConversationMessagesDto> getAllConversationMessages(@PathVariable Long conversationId) {
-        return conversationService.getAllConversationMessages(conversationId);
+    @GetMapping(value = "/{conversationId}/messages/all", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAllConversationMessages(@PathVariable Long conversationId) {
+        ConversationService.MessageStream messages = conversationService.openConversationMessageStream(conversationId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> {
+                    try (JsonGenerator json = jsonGenerator(out)) {
+                        json.writeStartArray();
+                        messages.forEach(message -> messageWriter.writeValue(json, message));
+                        json.writeEndArray();
+                    }
+                });
+    }
+
+    /**
+     * All messages of a conversation as newline-delimited JSON (one message per line, oldest
+     * first), so clients can process them as they arrive.
+     */
+    @GetMapping(value = "/{conversationId}/messages/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamConversationMessages(@PathVariable Long conversationId) {
+        ConversationService.MessageStream messages = conversationService.openConversationMessageStream(conversationId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> {
+                    try (JsonGenerator json = jsonGenerator(out)) {
+                        messages.forEach(message -> {
+                            messageWriter.writeValue(json, message);
+                            json.writeRaw('\n');
+                        });
+                    }
+                });
+    }
+
+    private JsonGenerator jsonGenerator(OutputStream out) throws IOException {
+        // The generator buffers; the response stream is flushed by the container, not per message
+        return objectMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .setRootValueSeparator(null);
     }
 
     /**
@@ -59,6 +59,26 @@ public class ConversationMaintenanceController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Recompute the per-month message rollups behind conversation timelines.
+     * POST /api/admin/conversations/fix/rebuild-month-stats
+     */
+    @PostMapping("/fix/rebuild-month-stats")
+    public ResponseEntity<Map<String, Object>> rebuildMonthStats() {
+        Map<String, Object> result = maintenanceService.rebuildMonthStats();
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Recompute the conversation list summaries.
+     * POST /api/admin/conversations/fix/rebuild-summaries
+     */
+    @PostMapping("/fix/rebuild-summaries")
+    public ResponseEntity<Map<String, Object>> rebuildSummaries() {
+        Map<String, Object> result = maintenanceService.rebuildConversationSummaries();
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * Run all repair operations.
      * POST /api/admin/conversations/repair
@@ -1,5 +1,7 @@
 package com.joshfouchey.smsarchive.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -29,6 +31,19 @@ public class ImportController {
         return Map.of("jobId", id.toString(), "status", "STARTED");
     }
 
+    /**
+     * Upload the backup as the raw request body (not multipart) and import it while it arrives.
+     * Responds once the body has been received; the import is usually nearly done by then.
+     * Send Content-Length so progress can report a percentage. Bodies over the multipart size
+     * limit are refused with 413.
+     */
+    @PostMapping(value = "/stream/live", consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE,
+            MediaType.APPLICATION_XML_VALUE, MediaType.TEXT_XML_VALUE})
+    public Map<String,Object> uploadLive(HttpServletRequest request) throws Exception {
+        UUID id = importService.startLiveImport(request.getInputStream(), request.getContentLengthLong());
+        return Map.of("jobId", id.toString(), "status", "UPLOADED");
+    }
+
     @GetMapping("/progress/{id}")
     public ImportProgress progress(@PathVariable String id) {
         return importService.getProgress(UUID.fromString(id));
@@ -1,6 +1,7 @@
 package com.joshfouchey.smsarchive.controller;
 
 import com.joshfouchey.smsarchive.service.ThumbnailJobProgress;
+import com.joshfouchey.smsarchive.service.ThumbnailQueueService;
 import com.joshfouchey.smsarchive.service.ThumbnailRebuildJobService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -16,9 +17,11 @@ import java.util.UUID;
 public class MediaJobController {
 
     private final ThumbnailRebuildJobService jobService;
+    private final ThumbnailQueueService thumbnailQueueService;
 
-    public MediaJobController(ThumbnailRebuildJobService jobService) {
+    public MediaJobController(ThumbnailRebuildJobService jobService, ThumbnailQueueService thumbnailQueueService) {
         this.jobService = jobService;
+        this.thumbnailQueueService = thumbnailQueueService;
     }
 
     /**
@@ -45,6 +48,18 @@ public class MediaJobController {
         ));
     }
 
+    /**
+     * Get the progress of the background thumbnail queue fed by imports.
+     *
+     * @return Same fields as a rebuild job, plus the number of thumbnails still waiting
+     */
+    @GetMapping("/thumbnails/queue")
+    public ResponseEntity<?> getThumbnailQueueStatus() {
+        var response = progressResponse(thumbnailQueueService.getProgress());
+        response.put("pending", thumbnailQueueService.getBacklogSize());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Get the status and progress of a thumbnail rebuild job.
      *
@@ -62,6 +77,10 @@ public class MediaJobController {
             ));
         }
 
+        return ResponseEntity.ok(progressResponse(progress));
+    }
+
+    private java.util.HashMap<String, Object> progressResponse(ThumbnailJobProgress progress) {
         // Use HashMap to avoid Map.of's 10-entry limit
         var response = new java.util.HashMap<String, Object>();
         response.put("jobId", progress.getId());
@@ -75,7 +94,6 @@ public class MediaJobController {
         response.put("errors", progress.getErrors());
         response.put("startedAt", progress.getStartedAt());
         response.put("finishedAt", progress.getFinishedAt());
-
-        return ResponseEntity.ok(response);
+        return response;
     }
 }
@@ -2,8 +2,8 @@ package com.joshfouchey.smsarchive.controller;
 
 import com.joshfouchey.smsarchive.dto.MessageDto;
 import com.joshfouchey.smsarchive.dto.PagedResponse;
-import com.joshfouchey.smsarchive.mapper.MessageMapper;
 import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.repository.MessageDtoRepository;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
 import com.joshfouchey.smsarchive.service.CurrentUserProvider;
 import org.springframework.data.domain.Page;
@@ -23,10 +23,13 @@ import static com.joshfouchey.smsarchive.util.InputLimits.*;
 public class SearchController {
 
     private final MessageRepository repo;
+    private final MessageDtoRepository messageDtoRepository;
     private final CurrentUserProvider currentUserProvider;
 
-    public SearchController(MessageRepository repo, CurrentUserProvider currentUserProvider) {
+    public SearchController(MessageRepository repo, MessageDtoRepository messageDtoRepository,
+                            CurrentUserProvider currentUserProvider) {
         this.repo = repo;
+        this.messageDtoRepository = messageDtoRepository;
         this.currentUserProvider = currentUserProvider;
     }
 
@@ -54,7 +57,7 @@ public class SearchController {
         }
         
         return new PagedResponse<>(
-                results.getContent().stream().map(MessageMapper::toDto).toList(),
+                messageDtoRepository.findByIds(results.getContent().stream().map(Message::getId).toList(), user.getId()),
                 results.getNumber(),
                 results.getSize(),
                 results.getTotalElements(),
@@ -11,7 +11,9 @@ public record ConversationSummaryDto(
         Instant lastMessageAt,
         String lastMessagePreview,
         boolean lastMessageHasImage,
-        Long unreadCount
+        Long unreadCount,
+        long messageCount,
+        long mediaCount                    // Messages carrying media
 ) {}
 
 
@@ -0,0 +1,13 @@
+package com.joshfouchey.smsarchive.dto;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated list. The cursors are opaque; a null cursor means there is
+ * nothing further in that direction. No total count is computed.
+ */
+public record CursorPage<T>(
+        List<T> content,
+        String nextCursor,
+        String prevCursor
+) {}
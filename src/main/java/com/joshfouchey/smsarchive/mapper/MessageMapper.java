@@ -2,11 +2,11 @@ package com.joshfouchey.smsarchive.mapper;
 
 import com.joshfouchey.smsarchive.dto.MessageDto;
 import com.joshfouchey.smsarchive.dto.MessagePartDto;
-import com.joshfouchey.smsarchive.dto.api.ConversationMessagesDto;
 import com.joshfouchey.smsarchive.model.Contact;
 import com.joshfouchey.smsarchive.model.Message;
 import com.joshfouchey.smsarchive.model.MessagePart;
 
+import java.time.Instant;
 import java.util.List;
 
 public final class MessageMapper {
@@ -62,42 +62,18 @@ public final class MessageMapper {
 
     // Map a part including contextual fields from its parent message (timestamp)
     private static MessagePartDto toPartDto(Message parent, MessagePart part) {
-        return new MessagePartDto(
-                part.getId(),
-                parent.getId(),
-                parent.getTimestamp(),
-                normalizePath(part.getFilePath()),
-                part.getContentType()
-        );
+        return toPartDto(part.getId(), parent.getId(), parent.getTimestamp(), part.getFilePath(), part.getContentType());
     }
 
-    /**
-     * Convert Message entity to lightweight DTO for bulk operations.
-     * Excludes unused fields to reduce JSON payload size.
-     */
-    public static ConversationMessagesDto toLightDto(Message msg) {
-        // Get primary contact from conversation participants (for contactName field)
-        Contact c = null;
-        if (msg.getConversation() != null && msg.getConversation().getParticipants() != null
-                && msg.getConversation().getParticipants().size() == 1) {
-            c = msg.getConversation().getParticipants().iterator().next();
-        }
-
-        Contact sender = msg.getSenderContact();
-        List<MessagePartDto> parts = msg.getParts() == null ? List.of() : msg.getParts().stream()
-                .map(p -> toPartDto(msg, p))
-                .toList();
-        
-        return new ConversationMessagesDto(
-                msg.getId(),
-                msg.getDirection(),
-                sender != null ? sender.getId() : null,
-                sender != null ? sender.getName() : null,
-                sender != null ? sender.getNumber() : null,
-                c != null ? c.getName() : null,
-                msg.getTimestamp(),
-                msg.getBody(),
-                parts
+    // Same mapping from plain column values, for readers that do not load entities
+    public static MessagePartDto toPartDto(Long partId, Long messageId, Instant timestamp,
+                                           String filePath, String contentType) {
+        return new MessagePartDto(
+                partId,
+                messageId,
+                timestamp,
+                normalizePath(filePath),
+                contentType
         );
     }
 
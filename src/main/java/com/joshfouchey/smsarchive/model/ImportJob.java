@@ -0,0 +1,84 @@
+package com.joshfouchey.smsarchive.model;
+
+import io.hypersistence.utils.hibernate.type.json.JsonType;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.Type;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+@Entity
+@Table(name = "import_jobs", indexes = {
+    @Index(name = "idx_import_jobs_status", columnList = "status"),
+    @Index(name = "idx_import_jobs_user", columnList = "user_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class ImportJob {
+
+    @Id
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id")
+    private User user;
+
+    @Column(name = "source_path", columnDefinition = "text", nullable = false)
+    private String sourcePath;
+
+    @Column(name = "source_size", nullable = false)
+    private long sourceSize;
+
+    // Remove the source file once the job finishes (import directory deleteAfterImport mode)
+    @Column(name = "delete_source", nullable = false)
+    private boolean deleteSource;
+
+    @Column(length = 20, nullable = false)
+    private String status = "PENDING";
+
+    @Column(name = "resume_offset", nullable = false)
+    private long resumeOffset;
+
+    @Column(name = "committed_messages", nullable = false)
+    private long committedMessages;
+
+    @Column(name = "processed_messages", nullable = false)
+    private long processedMessages;
+
+    @Column(name = "imported_messages", nullable = false)
+    private long importedMessages;
+
+    @Column(name = "duplicate_messages", nullable = false)
+    private long duplicateMessages;
+
+    @Column(name = "resume_count", nullable = false)
+    private int resumeCount;
+
+    @Column(name = "error_message", columnDefinition = "text")
+    private String errorMessage;
+
+    // Final per-stage timings, DB statements, media bytes and flush latencies (ImportMetrics)
+    @Type(JsonType.class)
+    @Column(columnDefinition = "jsonb")
+    private Map<String, Object> report;
+
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "checkpoint_at")
+    private Instant checkpointAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    @PrePersist
+    void prePersist() {
+        if (id == null) id = UUID.randomUUID();
+        createdAt = Instant.now();
+    }
+}
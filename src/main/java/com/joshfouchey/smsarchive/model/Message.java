@@ -1,5 +1,6 @@
 package com.joshfouchey.smsarchive.model;
 
+import com.joshfouchey.smsarchive.util.MessageFingerprint;
 import io.hypersistence.utils.hibernate.type.json.JsonType;
 import jakarta.persistence.*;
 import lombok.Getter;
@@ -10,6 +11,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Entity
 @Table(name = "messages",
@@ -17,7 +19,7 @@ import java.util.Map;
                 @Index(name = "ix_messages_timestamp", columnList = "timestamp"),
                 @Index(name = "ix_messages_sender_contact", columnList = "sender_contact_id"),
                 @Index(name = "ix_messages_user", columnList = "user_id"),
-                @Index(name = "idx_messages_conversation", columnList = "conversation_id"),
+                @Index(name = "idx_messages_conversation_keyset", columnList = "conversation_id,timestamp,id"),
                 // Composite prefix index used by duplicate check BEFORE body comparison
                 @Index(name = "ix_messages_dedupe_prefix", columnList = "conversation_id,timestamp,msg_box,protocol")
         })
@@ -26,7 +28,8 @@ import java.util.Map;
 public class Message {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "messages_id_seq")
+    @SequenceGenerator(name = "messages_id_seq", sequenceName = "messages_id_seq", allocationSize = 50)
     private Long id;
 
     @Enumerated(EnumType.STRING)
@@ -75,6 +78,14 @@ public class Message {
     private Instant deliveredAt;
     private Instant readAt;
 
+    // Content hash for duplicate detection (see MessageFingerprint); unique per row
+    @Column(name = "fingerprint")
+    private UUID fingerprint;
+
+    // Set when another message has the same fingerprint but different content; stored without one
+    @Transient
+    private boolean fingerprintCollision;
+
     @Column(name = "created_at", updatable = false)
     private Instant createdAt;
 
@@ -87,6 +98,7 @@ public class Message {
 
     @PrePersist
     void prePersist() {
+        if (fingerprint == null && !fingerprintCollision) fingerprint = MessageFingerprint.of(this);
         Instant now = Instant.now();
         createdAt = now;
         updatedAt = now;
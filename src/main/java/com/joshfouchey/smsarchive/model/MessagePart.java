@@ -15,7 +15,8 @@ import lombok.Setter;
 public class MessagePart {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "message_parts_id_seq")
+    @SequenceGenerator(name = "message_parts_id_seq", sequenceName = "message_parts_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
@@ -0,0 +1,99 @@
+package com.joshfouchey.smsarchive.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Per-month message counts and first/last message of each conversation (conversation_month_stats).
+ *
+ * Rows are kept current by the writers instead of being grouped from messages on every read:
+ * {@link #addMessages} folds freshly inserted messages into their months and must run in the
+ * transaction that inserted them; deletes, whose first/last message cannot be updated
+ * incrementally, {@link #rebuildConversation rebuild} the conversation's months. Rows of a
+ * deleted conversation are removed by the foreign key.
+ */
+@Repository
+public class ConversationMonthStatsRepository {
+
+    public record MonthStats(int year, int month, long count, long firstMessageId, long lastMessageId,
+                             Instant firstTimestamp, Instant lastTimestamp) {}
+
+    private static final String FIND_BY_CONVERSATION_SQL = """
+            SELECT year, month, message_count, first_message_id, last_message_id, first_timestamp, last_timestamp
+            FROM conversation_month_stats
+            WHERE conversation_id = ?
+            ORDER BY year, month
+            """;
+
+    private static final String AGGREGATE_MESSAGES_SQL = """
+            INSERT INTO conversation_month_stats AS s (conversation_id, year, month, message_count,
+                                                       first_message_id, last_message_id, first_timestamp, last_timestamp)
+            SELECT m.conversation_id,
+                   EXTRACT(YEAR FROM m.timestamp)::int,
+                   EXTRACT(MONTH FROM m.timestamp)::int,
+                   COUNT(*), MIN(m.id), MAX(m.id), MIN(m.timestamp), MAX(m.timestamp)
+            FROM messages m
+            WHERE m.conversation_id IS NOT NULL AND %s
+            GROUP BY 1, 2, 3
+            ON CONFLICT (conversation_id, year, month) DO UPDATE SET
+                message_count    = s.message_count + EXCLUDED.message_count,
+                first_message_id = LEAST(s.first_message_id, EXCLUDED.first_message_id),
+                last_message_id  = GREATEST(s.last_message_id, EXCLUDED.last_message_id),
+                first_timestamp  = LEAST(s.first_timestamp, EXCLUDED.first_timestamp),
+                last_timestamp   = GREATEST(s.last_timestamp, EXCLUDED.last_timestamp)
+            """;
+
+    private static final String ADD_MESSAGES_SQL = AGGREGATE_MESSAGES_SQL.formatted("m.id = ANY(CAST(? AS bigint[]))");
+    private static final String ADD_CONVERSATION_SQL = AGGREGATE_MESSAGES_SQL.formatted("m.conversation_id = ?");
+    private static final String ADD_ALL_SQL = AGGREGATE_MESSAGES_SQL.formatted("TRUE");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ConversationMonthStatsRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Months of the conversation that have messages, oldest first. */
+    public List<MonthStats> findByConversationId(Long conversationId) {
+        return jdbcTemplate.query(FIND_BY_CONVERSATION_SQL, (rs, _) -> new MonthStats(
+                rs.getInt("year"),
+                rs.getInt("month"),
+                rs.getLong("message_count"),
+                rs.getLong("first_message_id"),
+                rs.getLong("last_message_id"),
+                rs.getTimestamp("first_timestamp").toInstant(),
+                rs.getTimestamp("last_timestamp").toInstant()), conversationId);
+    }
+
+    /**
+     * Add messages that were just inserted to their months. Ids without a row (null, or a
+     * message that was skipped) are ignored; passing the same inserted message twice counts it twice.
+     */
+    public void addMessages(Collection<Long> messageIds) {
+        Long[] ids = messageIds.stream().filter(Objects::nonNull).toArray(Long[]::new);
+        if (ids.length == 0) return;
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(ADD_MESSAGES_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", ids));
+            return ps;
+        });
+    }
+
+    /** Recompute the conversation's months from its messages, e.g. after messages were deleted. */
+    public void rebuildConversation(Long conversationId) {
+        jdbcTemplate.update("DELETE FROM conversation_month_stats WHERE conversation_id = ?", conversationId);
+        jdbcTemplate.update(ADD_CONVERSATION_SQL, conversationId);
+    }
+
+    /** Recompute every conversation's months. Returns the number of month rows written. */
+    public int rebuildAll() {
+        jdbcTemplate.update("DELETE FROM conversation_month_stats");
+        return jdbcTemplate.update(ADD_ALL_SQL);
+    }
+}
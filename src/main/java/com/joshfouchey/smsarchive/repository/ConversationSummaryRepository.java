@@ -0,0 +1,204 @@
+package com.joshfouchey.smsarchive.repository;
+
+import com.joshfouchey.smsarchive.dto.ConversationSummaryDto;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Conversation list rows (conversation_summary): last message preview and media flag, message
+ * and media counts and participant display names, kept current by the writers.
+ *
+ * {@link #addMessages} folds freshly inserted messages in and must run in the transaction that
+ * inserted them. Whatever cannot be applied as a delta recomputes the affected rows instead:
+ * {@link #rebuildConversation} after messages were deleted, the participant refreshes after
+ * contacts were renamed or merged or participants changed. Rows of a deleted conversation are
+ * removed by the foreign key. Conversations without a row yet (no messages imported) are listed
+ * with their participants and zero counts.
+ */
+@Repository
+public class ConversationSummaryRepository {
+
+    // Display names of a conversation's participants, in a stable order
+    private static final String PARTICIPANT_NAMES = """
+            ARRAY(SELECT COALESCE(ct.name, ct.number)
+                  FROM conversation_contacts cc JOIN contacts ct ON ct.id = cc.contact_id
+                  WHERE cc.conversation_id = %s
+                  ORDER BY ct.id)""";
+
+    private static final String HAS_MEDIA = "(%1$s.media IS NOT NULL AND %1$s.media <> '{}'::jsonb)";
+
+    // On conflict: whether the batch's latest message is newer than the row's
+    private static final String BATCH_IS_NEWER = "s.last_message_at IS NULL"
+            + " OR (EXCLUDED.last_message_at, EXCLUDED.last_message_id) > (s.last_message_at, s.last_message_id)";
+
+    private static final String FIND_SQL = """
+            SELECT c.id, c.name, c.last_message_at,
+                   COALESCE(s.participant_names, %s) AS participant_names,
+                   s.last_message_preview,
+                   COALESCE(s.last_message_has_media, FALSE) AS last_message_has_media,
+                   COALESCE(s.message_count, 0) AS message_count,
+                   COALESCE(s.media_count, 0) AS media_count
+            FROM conversations c
+            LEFT JOIN conversation_summary s ON s.conversation_id = c.id
+            WHERE c.user_id = ? %%s
+            ORDER BY c.last_message_at DESC NULLS LAST, c.id DESC
+            """.formatted(PARTICIPANT_NAMES.formatted("c.id"));
+
+    private static final String FIND_BY_USER_SQL = FIND_SQL.formatted("");
+    private static final String FIND_ONE_SQL = FIND_SQL.formatted("AND c.id = ?");
+
+    private static final String ADD_MESSAGES_SQL = """
+            WITH batch AS (
+                SELECT m.conversation_id, m.id, m.timestamp, m.body, %1$s AS has_media
+                FROM messages m
+                WHERE m.id = ANY(CAST(? AS bigint[])) AND m.conversation_id IS NOT NULL
+            ), totals AS (
+                SELECT conversation_id, count(*) AS message_count, count(*) FILTER (WHERE has_media) AS media_count
+                FROM batch
+                GROUP BY conversation_id
+            ), latest AS (
+                SELECT DISTINCT ON (conversation_id) conversation_id, id, timestamp, body, has_media
+                FROM batch
+                ORDER BY conversation_id, timestamp DESC, id DESC
+            )
+            INSERT INTO conversation_summary AS s (conversation_id, message_count, media_count, last_message_id,
+                                                   last_message_at, last_message_preview, last_message_has_media,
+                                                   participant_names)
+            SELECT t.conversation_id, t.message_count, t.media_count, l.id, l.timestamp, left(l.body, 200),
+                   l.has_media, %2$s
+            FROM totals t
+            JOIN latest l ON l.conversation_id = t.conversation_id
+            ON CONFLICT (conversation_id) DO UPDATE SET
+                message_count = s.message_count + EXCLUDED.message_count,
+                media_count   = s.media_count + EXCLUDED.media_count,
+                participant_names = EXCLUDED.participant_names,
+                last_message_id = CASE WHEN %3$s THEN EXCLUDED.last_message_id ELSE s.last_message_id END,
+                last_message_at = CASE WHEN %3$s THEN EXCLUDED.last_message_at ELSE s.last_message_at END,
+                last_message_preview = CASE WHEN %3$s THEN EXCLUDED.last_message_preview ELSE s.last_message_preview END,
+                last_message_has_media = CASE WHEN %3$s THEN EXCLUDED.last_message_has_media ELSE s.last_message_has_media END
+            """.formatted(HAS_MEDIA.formatted("m"), PARTICIPANT_NAMES.formatted("t.conversation_id"), BATCH_IS_NEWER);
+
+    private static final String REBUILD_SQL = """
+            INSERT INTO conversation_summary AS s (conversation_id, message_count, media_count, last_message_id,
+                                                   last_message_at, last_message_preview, last_message_has_media,
+                                                   participant_names)
+            SELECT c.id, agg.message_count, agg.media_count, lm.id, lm.timestamp, left(lm.body, 200),
+                   COALESCE(%s, FALSE), %s
+            FROM conversations c
+            CROSS JOIN LATERAL (
+                SELECT count(*) AS message_count, count(*) FILTER (WHERE %s) AS media_count
+                FROM messages m
+                WHERE m.conversation_id = c.id
+            ) agg
+            LEFT JOIN LATERAL (
+                SELECT m.id, m.timestamp, m.body, m.media
+                FROM messages m
+                WHERE m.conversation_id = c.id
+                ORDER BY m.timestamp DESC, m.id DESC
+                LIMIT 1
+            ) lm ON TRUE
+            WHERE %%s
+            ON CONFLICT (conversation_id) DO UPDATE SET
+                message_count = EXCLUDED.message_count,
+                media_count = EXCLUDED.media_count,
+                last_message_id = EXCLUDED.last_message_id,
+                last_message_at = EXCLUDED.last_message_at,
+                last_message_preview = EXCLUDED.last_message_preview,
+                last_message_has_media = EXCLUDED.last_message_has_media,
+                participant_names = EXCLUDED.participant_names
+            """.formatted(HAS_MEDIA.formatted("lm"), PARTICIPANT_NAMES.formatted("c.id"), HAS_MEDIA.formatted("m"));
+
+    private static final String REBUILD_ONE_SQL = REBUILD_SQL.formatted("c.id = ?");
+    private static final String REBUILD_ALL_SQL = REBUILD_SQL.formatted("TRUE");
+
+    private static final String REFRESH_PARTICIPANTS_SQL = """
+            UPDATE conversation_summary s
+            SET participant_names = %s
+            WHERE %%s
+            """.formatted(PARTICIPANT_NAMES.formatted("s.conversation_id"));
+
+    private static final RowMapper<ConversationSummaryDto> ROW_MAPPER = (rs, _) -> {
+        List<String> participantNames = Arrays.asList((String[]) rs.getArray("participant_names").getArray());
+        Timestamp lastMessageAt = rs.getTimestamp("last_message_at");
+        return new ConversationSummaryDto(
+                rs.getLong("id"),
+                rs.getString("name"),
+                participantNames,
+                participantNames.size(),
+                lastMessageAt == null ? null : lastMessageAt.toInstant(),
+                rs.getString("last_message_preview"),
+                rs.getBoolean("last_message_has_media"),
+                0L,
+                rs.getLong("message_count"),
+                rs.getLong("media_count")
+        );
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ConversationSummaryRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** The user's conversation list, most recent conversation first. */
+    public List<ConversationSummaryDto> findByUser(UUID userId) {
+        return jdbcTemplate.query(FIND_BY_USER_SQL, ROW_MAPPER, userId);
+    }
+
+    public Optional<ConversationSummaryDto> findByIdAndUser(Long conversationId, UUID userId) {
+        return jdbcTemplate.query(FIND_ONE_SQL, ROW_MAPPER, userId, conversationId).stream().findFirst();
+    }
+
+    /**
+     * Add messages that were just inserted to their conversations' rows. Ids without a row
+     * (null, or a message that was skipped) are ignored; passing the same inserted message
+     * twice counts it twice.
+     */
+    public void addMessages(Collection<Long> messageIds) {
+        Long[] ids = messageIds.stream().filter(Objects::nonNull).toArray(Long[]::new);
+        if (ids.length == 0) return;
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(ADD_MESSAGES_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", ids));
+            return ps;
+        });
+    }
+
+    /** Recompute the conversation's row from its messages, e.g. after messages were deleted. */
+    public void rebuildConversation(Long conversationId) {
+        jdbcTemplate.update(REBUILD_ONE_SQL, conversationId);
+    }
+
+    /** Recompute every conversation's row. Returns the number of rows written. */
+    public int rebuildAll() {
+        return jdbcTemplate.update(REBUILD_ALL_SQL);
+    }
+
+    /** Refresh participant names of the conversations the contact takes part in (rename, merge). */
+    public int refreshParticipantNamesOfContact(Long contactId) {
+        return jdbcTemplate.update(REFRESH_PARTICIPANTS_SQL.formatted(
+                "s.conversation_id IN (SELECT cc.conversation_id FROM conversation_contacts cc WHERE cc.contact_id = ?)"),
+                contactId);
+    }
+
+    /** Refresh participant names of all the user's conversations, e.g. after an import renamed contacts. */
+    public int refreshParticipantNamesOfUser(UUID userId) {
+        return jdbcTemplate.update(REFRESH_PARTICIPANTS_SQL.formatted(
+                "s.conversation_id IN (SELECT c.id FROM conversations c WHERE c.user_id = ?)"), userId);
+    }
+
+    /** Refresh participant names of every conversation, e.g. after participants were repaired. */
+    public int refreshAllParticipantNames() {
+        return jdbcTemplate.update(REFRESH_PARTICIPANTS_SQL.formatted("TRUE"));
+    }
+}
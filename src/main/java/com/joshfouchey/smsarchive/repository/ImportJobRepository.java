@@ -0,0 +1,15 @@
+package com.joshfouchey.smsarchive.repository;
+
+import com.joshfouchey.smsarchive.model.ImportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface ImportJobRepository extends JpaRepository<ImportJob, UUID> {
+
+    @Query("SELECT j FROM ImportJob j LEFT JOIN FETCH j.user WHERE j.status IN :statuses ORDER BY j.createdAt")
+    List<ImportJob> findWithUserByStatusIn(@Param("statuses") List<String> statuses);
+}
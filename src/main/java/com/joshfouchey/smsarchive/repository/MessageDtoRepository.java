@@ -0,0 +1,150 @@
+package com.joshfouchey.smsarchive.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.joshfouchey.smsarchive.dto.MessageDto;
+import com.joshfouchey.smsarchive.dto.MessagePartDto;
+import com.joshfouchey.smsarchive.mapper.MessageMapper;
+import com.joshfouchey.smsarchive.model.MessageDirection;
+import com.joshfouchey.smsarchive.model.MessageProtocol;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Read model for {@link MessageDto}: one SQL statement turns a list of message ids into DTOs,
+ * without hydrating entities.
+ *
+ * Sender contact, conversation name, participant count and the counterparty of 1:1
+ * conversations are joined in, with conversations aggregated once per distinct conversation
+ * on the page; parts come back as one json_agg array per message. Callers find the ids to show
+ * (page, cursor, context window, search hits) and this turns them into DTOs in that order.
+ */
+@Repository
+public class MessageDtoRepository {
+
+    private static final String FIND_BY_IDS_SQL = """
+            WITH page AS (
+                SELECT m.*, req.ord
+                FROM unnest(CAST(? AS bigint[])) WITH ORDINALITY AS req(id, ord)
+                JOIN messages m ON m.id = req.id
+                WHERE m.user_id = ?
+            ), convs AS (
+                SELECT c.id, c.name, count(cc.contact_id) AS participant_count, min(cc.contact_id) AS first_contact_id
+                FROM conversations c
+                LEFT JOIN conversation_contacts cc ON cc.conversation_id = c.id
+                WHERE c.id IN (SELECT conversation_id FROM page)
+                GROUP BY c.id, c.name
+            ), parts AS (
+                SELECT p.message_id,
+                       json_agg(json_build_object('id', p.id, 'filePath', p.file_path, 'contentType', p.ct)
+                                ORDER BY p.seq, p.id) AS parts
+                FROM message_parts p
+                WHERE p.message_id IN (SELECT id FROM page)
+                GROUP BY p.message_id
+            )
+            SELECT m.id, m.protocol, m.direction, m.timestamp, m.body, m.msg_box, m.delivered_at, m.read_at,
+                   m.media::text AS media, m.metadata::text AS metadata, m.created_at, m.updated_at,
+                   s.id AS sender_id, s.name AS sender_name, s.number AS sender_number,
+                   cv.name AS conversation_name, cv.participant_count,
+                   pc.name AS contact_name, pc.number AS contact_number, pc.normalized_number AS contact_normalized_number,
+                   pa.parts::text AS parts
+            FROM page m
+            LEFT JOIN contacts s ON s.id = m.sender_contact_id
+            LEFT JOIN convs cv ON cv.id = m.conversation_id
+            LEFT JOIN contacts pc ON cv.participant_count = 1 AND pc.id = cv.first_contact_id
+            LEFT JOIN parts pa ON pa.message_id = m.id
+            ORDER BY m.ord
+            """;
+
+    private static final TypeReference<Map<String, Object>> JSON_MAP = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public MessageDtoRepository(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * DTOs of the user's messages with the given ids, in the order of {@code ids}. Ids that do
+     * not exist or belong to another user are left out.
+     */
+    public List<MessageDto> findByIds(List<Long> ids, UUID userId) {
+        if (ids.isEmpty()) return List.of();
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FIND_BY_IDS_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            ps.setObject(2, userId);
+            return ps;
+        }, (rs, _) -> toDto(rs));
+    }
+
+    private MessageDto toDto(ResultSet rs) throws SQLException {
+        long id = rs.getLong("id");
+        Instant timestamp = instant(rs, "timestamp");
+        return new MessageDto(
+                id,
+                MessageProtocol.valueOf(rs.getString("protocol")),
+                MessageDirection.valueOf(rs.getString("direction")),
+                rs.getObject("sender_id", Long.class),
+                rs.getString("sender_name"),
+                rs.getString("sender_number"),
+                rs.getString("contact_name"),
+                rs.getString("contact_number"),
+                rs.getString("contact_normalized_number"),
+                rs.getString("conversation_name"),
+                rs.getObject("participant_count") == null ? null : rs.getInt("participant_count"),
+                timestamp,
+                rs.getString("body"),
+                rs.getObject("msg_box", Integer.class),
+                instant(rs, "delivered_at"),
+                instant(rs, "read_at"),
+                jsonMap(rs.getString("media")),
+                jsonMap(rs.getString("metadata")),
+                parts(rs.getString("parts"), id, timestamp),
+                instant(rs, "created_at"),
+                instant(rs, "updated_at")
+        );
+    }
+
+    private static Instant instant(ResultSet rs, String column) throws SQLException {
+        Timestamp ts = rs.getTimestamp(column);
+        return ts == null ? null : ts.toInstant();
+    }
+
+    private Map<String, Object> jsonMap(String json) {
+        if (json == null) return null;
+        try {
+            return objectMapper.readValue(json, JSON_MAP);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable JSON column", e);
+        }
+    }
+
+    private List<MessagePartDto> parts(String json, long messageId, Instant timestamp) {
+        if (json == null) return List.of();
+        try {
+            List<MessagePartDto> parts = new ArrayList<>();
+            for (JsonNode part : objectMapper.readTree(json)) {
+                parts.add(MessageMapper.toPartDto(part.get("id").asLong(), messageId, timestamp,
+                        part.get("filePath").textValue(), part.get("contentType").textValue()));
+            }
+            return parts;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable message parts", e);
+        }
+    }
+}
@@ -4,7 +4,6 @@ package com.joshfouchey.smsarchive.repository;
 import com.joshfouchey.smsarchive.dto.ContactSummaryDto;
 import com.joshfouchey.smsarchive.model.Message;
 import com.joshfouchey.smsarchive.model.Contact;
-import com.joshfouchey.smsarchive.model.MessageProtocol;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
@@ -79,6 +78,9 @@ ORDER BY day_ts
     @Query("select m from Message m join m.conversation conv join conv.participants c where c.id = :contactId and m.user = :user")
     Page<Message> findByContactIdAndUser(@Param("contactId") Long contactId, @Param("user") com.joshfouchey.smsarchive.model.User user, Pageable pageable);
 
+    @Query("select m.id from Message m join m.conversation conv join conv.participants c where c.id = :contactId and m.user = :user")
+    Page<Long> findIdsByContactIdAndUser(@Param("contactId") Long contactId, @Param("user") com.joshfouchey.smsarchive.model.User user, Pageable pageable);
+
     // Full-text search using PostgreSQL GIN index
     @Query(value = """
         SELECT m.* FROM messages m 
@@ -200,6 +202,28 @@ ORDER BY day_ts
                                               @Param("user") com.joshfouchey.smsarchive.model.User user,
                                               Pageable pageable);
 
+    // Keyset pages: ids strictly before/after (timestamp, id), nearest first, from the
+    // (conversation_id, timestamp, id) index without counting the conversation
+    @Query(value = """
+        SELECT m.id FROM messages m
+        WHERE m.conversation_id = :conversationId AND m.user_id = :userId
+          AND (m.timestamp, m.id) < (:timestamp, :id)
+        ORDER BY m.timestamp DESC, m.id DESC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Long> findIdsBeforeKey(@Param("conversationId") Long conversationId, @Param("userId") UUID userId,
+                                @Param("timestamp") Instant timestamp, @Param("id") long id, @Param("limit") int limit);
+
+    @Query(value = """
+        SELECT m.id FROM messages m
+        WHERE m.conversation_id = :conversationId AND m.user_id = :userId
+          AND (m.timestamp, m.id) > (:timestamp, :id)
+        ORDER BY m.timestamp ASC, m.id ASC
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<Long> findIdsAfterKey(@Param("conversationId") Long conversationId, @Param("userId") UUID userId,
+                               @Param("timestamp") Instant timestamp, @Param("id") long id, @Param("limit") int limit);
+
     // Step 2: Fetch full entities with associations for specific IDs
     @EntityGraph(attributePaths = {"parts", "senderContact"})
     @Query("select m from Message m where m.id in :ids")
@@ -232,22 +256,16 @@ ORDER BY day_ts
     Long countByConversationIdAndUser(@Param("conversationId") Long conversationId,
                                       @Param("user") com.joshfouchey.smsarchive.model.User user);
 
-    // Duplicate checking for group messages (with conversation and user)
-    // Note: bodyNormalized is already lowercased and trimmed by the caller
-    @Query("select (count(m) > 0) from Message m where m.user = :user and m.conversation = :conversation and m.timestamp = :ts and m.msgBox = :msgBox and m.protocol = :protocol and lower(trim(coalesce(m.body,''))) = :body")
-    boolean existsByConversationAndTimestampAndBody(@Param("conversation") com.joshfouchey.smsarchive.model.Conversation conversation,
-                                                     @Param("ts") Instant timestamp,
-                                                     @Param("body") String bodyNormalized,
-                                                     @Param("msgBox") Integer msgBox,
-                                                     @Param("protocol") com.joshfouchey.smsarchive.model.MessageProtocol protocol,
-                                                     @Param("user") com.joshfouchey.smsarchive.model.User user);
-
-    @Query("select (count(m) > 0) from Message m where m.user = :user and m.timestamp = :ts and m.msgBox = :msgBox and m.protocol = :protocol and lower(trim(coalesce(m.body,''))) = :body")
-    boolean existsByTimestampAndBody(@Param("ts") Instant timestamp,
-                                      @Param("body") String bodyNormalized,
-                                      @Param("msgBox") Integer msgBox,
-                                      @Param("protocol") com.joshfouchey.smsarchive.model.MessageProtocol protocol,
-                                      @Param("user") com.joshfouchey.smsarchive.model.User user);
+    // Set-based duplicate probe for an import batch; served by ux_messages_fingerprint
+    @Query(value = "SELECT fingerprint FROM messages WHERE fingerprint = ANY(:fingerprints)", nativeQuery = true)
+    List<UUID> findExistingFingerprints(@Param("fingerprints") UUID[] fingerprints);
+
+    // What the stored rows were fingerprinted from, to confirm in-run duplicates exactly
+    @Query(value = """
+            SELECT fingerprint, user_id AS userId, conversation_id AS conversationId, timestamp,
+                   msg_box AS msgBox, protocol, body
+            FROM messages WHERE fingerprint = ANY(:fingerprints)""", nativeQuery = true)
+    List<FingerprintedContentProjection> findFingerprintedContent(@Param("fingerprints") UUID[] fingerprints);
 
     @EntityGraph(attributePaths = {"parts", "senderContact"})
     @Query("select m from Message m where m.id = :id and m.user = :user")
@@ -267,23 +285,6 @@ ORDER BY day_ts
                                           @Param("user") com.joshfouchey.smsarchive.model.User user,
                                           Pageable pageable);
 
-    // Timeline index queries for historical navigation
-    @Query(value = """
-SELECT EXTRACT(YEAR FROM m.timestamp) AS year,
-       EXTRACT(MONTH FROM m.timestamp) AS month,
-       COUNT(*) AS count,
-       MIN(m.id) AS first_message_id,
-       MAX(m.id) AS last_message_id,
-       MIN(m.timestamp) AS first_timestamp,
-       MAX(m.timestamp) AS last_timestamp
-FROM messages m
-WHERE m.conversation_id = :conversationId AND m.user_id = :userId
-GROUP BY year, month
-ORDER BY year, month
-""", nativeQuery = true)
-    List<TimelineBucketProjection> getConversationTimeline(@Param("conversationId") Long conversationId,
-                                                            @Param("userId") UUID userId);
-
     // Date-range message queries for jump-to-date functionality
     // Two-query approach: Step 1 - Get IDs only
     @Query("select m.id from Message m where m.conversation.id = :conversationId and m.user = :user and m.timestamp >= :dateFrom and m.timestamp <= :dateTo")
@@ -303,16 +304,17 @@ ORDER BY year, month
 
     interface DayCountProjection { java.sql.Timestamp getDay_ts(); long getCount(); }
 
-    interface TimelineBucketProjection {
-        int getYear();
-        int getMonth();
-        long getCount();
-        Long getFirst_message_id();
-        Long getLast_message_id();
-        java.sql.Timestamp getFirst_timestamp();
-        java.sql.Timestamp getLast_timestamp();
+    interface FingerprintedContentProjection {
+        UUID getFingerprint();
+        UUID getUserId();
+        Long getConversationId();
+        java.sql.Timestamp getTimestamp();
+        Integer getMsgBox();
+        String getProtocol();
+        String getBody();
     }
 
+
     interface ContactSummaryProjection {
         Long getContactId();
         String getContactName();
@@ -10,6 +10,7 @@ import com.joshfouchey.smsarchive.model.Conversation;
 import com.joshfouchey.smsarchive.model.Message;
 import com.joshfouchey.smsarchive.repository.ContactRepository;
 import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.ConversationSummaryRepository;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Pageable;
@@ -30,15 +31,18 @@ public class ContactService {
     private final MessageRepository messageRepository;
     private final ConversationRepository conversationRepository;
     private final CurrentUserProvider currentUserProvider;
+    private final ConversationSummaryRepository conversationSummaryRepository;
 
     public ContactService(ContactRepository contactRepository,
                          MessageRepository messageRepository,
                          ConversationRepository conversationRepository,
-                         CurrentUserProvider currentUserProvider) {
+                         CurrentUserProvider currentUserProvider,
+                         ConversationSummaryRepository conversationSummaryRepository) {
         this.contactRepository = contactRepository;
         this.messageRepository = messageRepository;
         this.conversationRepository = conversationRepository;
         this.currentUserProvider = currentUserProvider;
+        this.conversationSummaryRepository = conversationSummaryRepository;
     }
 
     @Transactional(readOnly = true)
@@ -65,12 +69,14 @@ public class ContactService {
             normalized = null;
         }
         contact.setName(normalized);
-        // JPA will flush on transaction commit; return updated DTO
+        // Flushed now so the conversation summaries pick up the new display name
+        contactRepository.flush();
+        conversationSummaryRepository.refreshParticipantNamesOfContact(contactId);
         return com.joshfouchey.smsarchive.mapper.ContactMapper.toDto(contact);
     }
 
     @Transactional
-    @org.springframework.cache.annotation.CacheEvict(value = {"distinctContacts", "contactSummaries", "conversationList", "conversationMessages", "conversationMessageCount", "conversationTimeline"}, allEntries = true)
+    @org.springframework.cache.annotation.CacheEvict(value = {"distinctContacts", "contactSummaries", "conversationMessageCount"}, allEntries = true)
     public ContactMergeResultDto mergeContacts(Long primaryContactId, Long mergeFromContactId) {
         var user = currentUserProvider.getCurrentUser();
 
@@ -147,6 +153,9 @@ public class ContactService {
         
         // Now delete the merged contact (all references have been updated)
         contactRepository.delete(mergeFromContact);
+        // Conversations that had the merged contact now list the primary one instead
+        contactRepository.flush();
+        conversationSummaryRepository.refreshParticipantNamesOfContact(primaryContactId);
 
         String primaryName = primaryContact.getName() != null ? primaryContact.getName() : primaryContact.getNumber();
         String mergedName = mergeFromContact.getName() != null ? mergeFromContact.getName() : mergeFromContact.getNumber();
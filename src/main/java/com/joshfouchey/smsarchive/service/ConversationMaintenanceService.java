@@ -3,7 +3,9 @@ package com.joshfouchey.smsarchive.service;
 import com.joshfouchey.smsarchive.model.Conversation;
 import com.joshfouchey.smsarchive.model.Contact;
 import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.repository.ConversationMonthStatsRepository;
 import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.ConversationSummaryRepository;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -24,14 +26,20 @@ public class ConversationMaintenanceService {
 
     private final ConversationRepository conversationRepository;
     private final MessageRepository messageRepository;
+    private final ConversationMonthStatsRepository monthStatsRepository;
+    private final ConversationSummaryRepository conversationSummaryRepository;
 
     @PersistenceContext
     private EntityManager entityManager;
 
     public ConversationMaintenanceService(ConversationRepository conversationRepository,
-                                         MessageRepository messageRepository) {
+                                         MessageRepository messageRepository,
+                                         ConversationMonthStatsRepository monthStatsRepository,
+                                         ConversationSummaryRepository conversationSummaryRepository) {
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
+        this.monthStatsRepository = monthStatsRepository;
+        this.conversationSummaryRepository = conversationSummaryRepository;
     }
 
     /**
@@ -39,7 +47,6 @@ public class ConversationMaintenanceService {
      * This is the most common issue that causes conversations to not appear in the list.
      */
     @Transactional
-    @CacheEvict(value = "conversationList", allEntries = true)
     public Map<String, Object> fixNullLastMessageAt() {
         log.info("Fixing conversations with NULL last_message_at...");
         
@@ -68,7 +75,6 @@ public class ConversationMaintenanceService {
      * Fix conversations where last_message_at is out of sync with actual messages.
      */
     @Transactional
-    @CacheEvict(value = "conversationList", allEntries = true)
     public Map<String, Object> syncAllLastMessageTimestamps() {
         log.info("Syncing all conversation last_message_at timestamps...");
         
@@ -156,7 +162,7 @@ public class ConversationMaintenanceService {
      * This fixes conversations that have messages but no participants in conversation_contacts.
      */
     @Transactional
-    @CacheEvict(value = {"conversationList", "contactSummaries"}, allEntries = true)
+    @CacheEvict(value = "contactSummaries", allEntries = true)
     public Map<String, Object> rebuildParticipants() {
         log.info("Rebuilding conversation participants from messages...");
         
@@ -180,6 +186,7 @@ public class ConversationMaintenanceService {
             """;
         
         int added = entityManager.createNativeQuery(rebuildQuery).executeUpdate();
+        if (added > 0) conversationSummaryRepository.refreshAllParticipantNames();
         
         log.info("Added {} participant relationships", added);
         
@@ -189,11 +196,47 @@ public class ConversationMaintenanceService {
         return result;
     }
 
+    /**
+     * Recompute conversation_month_stats from messages, for rollups that drifted (e.g. rows
+     * changed outside the application).
+     */
+    @Transactional
+    public Map<String, Object> rebuildMonthStats() {
+        log.info("Rebuilding conversation month stats...");
+
+        int months = monthStatsRepository.rebuildAll();
+
+        log.info("Rebuilt {} conversation month rows", months);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("monthsRebuilt", months);
+        result.put("issue", "Conversation timeline rollups");
+        return result;
+    }
+
+    /**
+     * Recompute conversation_summary (list preview, counts, participant names) from messages
+     * and participants.
+     */
+    @Transactional
+    public Map<String, Object> rebuildConversationSummaries() {
+        log.info("Rebuilding conversation summaries...");
+
+        int rows = conversationSummaryRepository.rebuildAll();
+
+        log.info("Rebuilt {} conversation summaries", rows);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("summariesRebuilt", rows);
+        result.put("issue", "Conversation list summaries");
+        return result;
+    }
+
     /**
      * Run all fixes to repair conversation data.
      */
     @Transactional
-    @CacheEvict(value = {"conversationList", "contactSummaries", "conversationMessages"}, allEntries = true)
+    @CacheEvict(value = "contactSummaries", allEntries = true)
     public Map<String, Object> repairAll() {
         log.info("Running complete conversation repair...");
         
@@ -210,6 +253,14 @@ public class ConversationMaintenanceService {
         // Fix 3: Out of sync timestamps
         Map<String, Object> fix3 = syncAllLastMessageTimestamps();
         result.put("timestampSync", fix3);
+
+        // Fix 4: Timeline month rollups
+        Map<String, Object> fix4 = rebuildMonthStats();
+        result.put("monthStatsRebuild", fix4);
+
+        // Fix 5: Conversation list summaries (after participants were rebuilt)
+        Map<String, Object> fix5 = rebuildConversationSummaries();
+        result.put("summaryRebuild", fix5);
         
         // Run diagnosis after fixes
         Map<String, Object> finalDiagnosis = diagnose();
@@ -3,19 +3,26 @@ package com.joshfouchey.smsarchive.service;
 import com.joshfouchey.smsarchive.dto.ConversationSummaryDto;
 import com.joshfouchey.smsarchive.exception.ResourceNotFoundException;
 import com.joshfouchey.smsarchive.dto.ConversationTimelineDto;
+import com.joshfouchey.smsarchive.dto.CursorPage;
 import com.joshfouchey.smsarchive.dto.MessageDto;
+import com.joshfouchey.smsarchive.dto.MessagePartDto;
 import com.joshfouchey.smsarchive.dto.PagedResponse;
 import com.joshfouchey.smsarchive.dto.api.ConversationMessagesDto;
 import com.joshfouchey.smsarchive.mapper.MessageMapper;
 import com.joshfouchey.smsarchive.model.Contact;
 import com.joshfouchey.smsarchive.model.Conversation;
 import com.joshfouchey.smsarchive.model.Message;
-import com.joshfouchey.smsarchive.model.MessagePart;
+import com.joshfouchey.smsarchive.model.MessageDirection;
 import com.joshfouchey.smsarchive.model.User;
 import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationMonthStatsRepository;
 import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.ConversationSummaryRepository;
+import com.joshfouchey.smsarchive.repository.MessageDtoRepository;
 import com.joshfouchey.smsarchive.repository.MessagePartRepository;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
+import com.joshfouchey.smsarchive.util.MessageCursor;
+import com.joshfouchey.smsarchive.util.PhoneNumberCanonicalizer;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -23,15 +30,24 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class ConversationService {
@@ -41,68 +57,41 @@ public class ConversationService {
     private final ContactRepository contactRepository;
     private final CurrentUserProvider currentUserProvider;
     private final MessagePartRepository messagePartRepository;
+    private final MessageDtoRepository messageDtoRepository;
+    private final ConversationMonthStatsRepository monthStatsRepository;
+    private final ConversationSummaryRepository conversationSummaryRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final PhoneNumberCanonicalizer phoneNumbers = new PhoneNumberCanonicalizer();
 
     public ConversationService(ConversationRepository conversationRepository,
                               MessageRepository messageRepository,
                               ContactRepository contactRepository,
                               CurrentUserProvider currentUserProvider,
-                              MessagePartRepository messagePartRepository) {
+                              MessagePartRepository messagePartRepository,
+                              MessageDtoRepository messageDtoRepository,
+                              ConversationMonthStatsRepository monthStatsRepository,
+                              ConversationSummaryRepository conversationSummaryRepository,
+                              JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager) {
         this.conversationRepository = conversationRepository;
         this.messageRepository = messageRepository;
         this.contactRepository = contactRepository;
         this.currentUserProvider = currentUserProvider;
         this.messagePartRepository = messagePartRepository;
+        this.messageDtoRepository = messageDtoRepository;
+        this.monthStatsRepository = monthStatsRepository;
+        this.conversationSummaryRepository = conversationSummaryRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
+    /** The user's conversations, most recent first, read from the maintained conversation_summary rows. */
     @Transactional(readOnly = true)
-    @Cacheable(value = "conversationList", key = "T(org.springframework.security.core.context.SecurityContextHolder).getContext().getAuthentication().getName()")
     public List<ConversationSummaryDto> getAllConversations() {
         var user = currentUserProvider.getCurrentUser();
-        
-        // Use optimized query that fetches conversations with last message in single query
-        List<ConversationRepository.ConversationWithLastMessageProjection> projections = 
-                conversationRepository.findAllByUserWithLastMessage(user.getId());
-        
-        // Fetch full conversations to get participants (batch fetched due to @EntityGraph)
-        List<Conversation> conversations = conversationRepository.findAllByUserOrderByLastMessage(user);
-        Map<Long, Conversation> conversationMap = conversations.stream()
-                .collect(Collectors.toMap(Conversation::getId, c -> c));
-        
-        return projections.stream()
-                .map(proj -> {
-                    Conversation conv = conversationMap.get(proj.getConversationId());
-                    if (conv == null) return null;
-                    
-                    List<String> participantNames = conv.getParticipants().stream()
-                            .map(contact -> contact.getName() != null ? contact.getName() : contact.getNumber())
-                            .collect(Collectors.toList());
-                    
-                    // Last message data comes from projection (no extra query!)
-                    String lastMessagePreview = null;
-                    boolean lastMessageHasImage = false;
-                    
-                    if (proj.getLastMessageBody() != null) {
-                        lastMessagePreview = proj.getLastMessageBody().substring(
-                                0, Math.min(200, proj.getLastMessageBody().length()));
-                    }
-                    
-                    if (proj.getLastMessageMedia() != null) {
-                        lastMessageHasImage = !proj.getLastMessageMedia().isEmpty();
-                    }
-                    
-                    return new ConversationSummaryDto(
-                            conv.getId(),
-                            conv.getName(),
-                            participantNames,
-                            conv.getParticipants().size(),
-                            conv.getLastMessageAt(),
-                            lastMessagePreview,
-                            lastMessageHasImage,
-                            0L
-                    );
-                })
-                .filter(Objects::nonNull)
-                .toList();
+        return conversationSummaryRepository.findByUser(user.getId());
     }
 
     @Transactional(readOnly = true)
@@ -127,24 +116,8 @@ public class ConversationService {
         // Step 1: Get paginated IDs only (fast, no joins)
         Page<Long> idsPage = messageRepository.findIdsByConversationIdAndUser(conversationId, user, pageable);
         
-        // Step 2: Fetch full entities with associations (uses @EntityGraph)
-        List<Message> messages;
-        if (!idsPage.getContent().isEmpty()) {
-            messages = messageRepository.findByIdsWithAssociations(idsPage.getContent());
-            // Restore original sort order from ID list
-            Map<Long, Message> messageMap = messages.stream()
-                    .collect(Collectors.toMap(Message::getId, m -> m));
-            messages = idsPage.getContent().stream()
-                    .map(messageMap::get)
-                    .filter(Objects::nonNull)
-                    .toList();
-        } else {
-            messages = Collections.emptyList();
-        }
-
-        List<MessageDto> content = messages.stream()
-                .map(MessageMapper::toDto)
-                .toList();
+        // Step 2: Build the page's DTOs in one query, in id order (no entity hydration)
+        List<MessageDto> content = messageDtoRepository.findByIds(idsPage.getContent(), user.getId());
 
         return new PagedResponse<>(
                 content,
@@ -157,6 +130,73 @@ public class ConversationService {
         );
     }
 
+    // Bounds for a cursor-less start; message timestamps fall well inside them
+    private static final Instant KEYSET_FAR_PAST = Instant.parse("1900-01-01T00:00:00Z");
+    private static final Instant KEYSET_FAR_FUTURE = Instant.parse("9999-12-31T23:59:59Z");
+
+    /**
+     * Keyset-paginated messages of a conversation, in {@code sortDir} timestamp order.
+     *
+     * Without a cursor the page starts at the newest (desc) or oldest (asc) message, or at
+     * {@code at} when given (messages up to it for desc, from it for asc). Each page costs an
+     * index range scan of {@code size + 1} ids, one DTO query and a one-row probe for the
+     * previous cursor; there is no count query, so deep pages cost the same as the first.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<MessageDto> getConversationMessagesByCursor(Long conversationId,
+                                                                 String cursor,
+                                                                 String at,
+                                                                 int size,
+                                                                 String sortDir) {
+        if (size > 500) size = 500;
+        if (size < 1) size = 1;
+
+        var user = currentUserProvider.getCurrentUser();
+
+        // Verify conversation belongs to user
+        conversationRepository.findByIdAndUser(conversationId, user)
+                .orElseThrow(() -> new ResourceNotFoundException("Conversation not found"));
+
+        boolean descending = !"asc".equalsIgnoreCase(sortDir);
+        MessageCursor position;
+        if (cursor != null && !cursor.isBlank()) {
+            position = MessageCursor.decode(cursor);
+        } else {
+            Instant start = parseDate(at);
+            position = descending
+                    ? new MessageCursor(start != null ? start : KEYSET_FAR_FUTURE, Long.MAX_VALUE, false)
+                    : new MessageCursor(start != null ? start : KEYSET_FAR_PAST, Long.MIN_VALUE, true);
+        }
+
+        // Ids in reading direction, nearest to the cursor first; one extra tells whether more follow
+        List<Long> ids = keysetIds(conversationId, user.getId(), position, size + 1);
+        boolean more = ids.size() > size;
+        if (more) ids = ids.subList(0, size);
+
+        List<MessageDto> content = new ArrayList<>(messageDtoRepository.findByIds(ids, user.getId()));
+        String onward = null;
+        String back = null;
+        if (!content.isEmpty()) {
+            MessageDto last = content.getLast();
+            MessageDto first = content.getFirst();
+            if (more) onward = new MessageCursor(last.timestamp(), last.id(), position.newer()).encode();
+            // From the first row, the way this page came from
+            MessageCursor backwards = new MessageCursor(first.timestamp(), first.id(), position.newer()).reversed();
+            if (!keysetIds(conversationId, user.getId(), backwards, 1).isEmpty()) back = backwards.encode();
+        }
+
+        // Reading towards newer messages runs forward in an ascending listing, backwards in a descending one
+        boolean forward = position.newer() != descending;
+        if (!forward) Collections.reverse(content);
+        return forward ? new CursorPage<>(content, onward, back) : new CursorPage<>(content, back, onward);
+    }
+
+    private List<Long> keysetIds(Long conversationId, UUID userId, MessageCursor cursor, int limit) {
+        return cursor.newer()
+                ? messageRepository.findIdsAfterKey(conversationId, userId, cursor.timestamp(), cursor.id(), limit)
+                : messageRepository.findIdsBeforeKey(conversationId, userId, cursor.timestamp(), cursor.id(), limit);
+    }
+
     /**
      * Load ALL messages for a conversation (cached in Caffeine).
      * Used for client-side search/filter operations.
@@ -192,41 +232,122 @@ public class ConversationService {
         return result;
     }
 
-    @Cacheable(value = "conversationMessages", key = "#conversationId")
-    public List<ConversationMessagesDto> getAllConversationMessages(Long conversationId) {
+    /** Receives the messages of a {@link MessageStream} one at a time. */
+    @FunctionalInterface
+    public interface MessageSink {
+        void accept(ConversationMessagesDto message) throws IOException;
+    }
+
+    /** All messages of one conversation, read when {@link #forEach} runs. */
+    @FunctionalInterface
+    public interface MessageStream {
+        void forEach(MessageSink sink) throws IOException;
+    }
+
+    // Rows per round-trip of the server-side cursor; bounds the memory a stream holds at once
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private static final String STREAM_MESSAGES_SQL = """
+            SELECT m.id, m.direction, m.timestamp, m.body,
+                   s.id AS sender_id, s.name AS sender_name, s.number AS sender_number,
+                   p.id AS part_id, p.file_path, p.ct
+            FROM messages m
+            LEFT JOIN contacts s ON s.id = m.sender_contact_id
+            LEFT JOIN message_parts p ON p.message_id = m.id
+            WHERE m.conversation_id = ? AND m.user_id = ?
+            ORDER BY m.timestamp, m.id, p.seq, p.id
+            """;
+
+    /**
+     * All messages of a conversation, oldest first, for client-side search/filter operations.
+     *
+     * Ownership is checked when the stream is opened, so a missing conversation fails before a
+     * response is started. Reading runs one query with parts joined in, through a server-side
+     * cursor with a fixed fetch size, and hands each message to the sink as soon as its rows
+     * are complete; memory use does not depend on the size of the conversation.
+     */
+    @Transactional(readOnly = true)
+    public MessageStream openConversationMessageStream(Long conversationId) {
         var user = currentUserProvider.getCurrentUser();
 
         // Verify conversation belongs to user
         Conversation conversation = conversationRepository.findByIdAndUser(conversationId, user)
                 .orElseThrow(() -> new ResourceNotFoundException("Conversation not found"));
 
-        // Load messages with safety limit of 50,000 (sorted by timestamp ascending)
-        // Uses batched query without @EntityGraph to avoid in-memory pagination
-        Pageable limit = PageRequest.of(0, 50000, Sort.by("timestamp").ascending());
-        List<Message> messages = messageRepository.findAllByConversationIdAndUserBatched(conversationId, user, limit);
+        // Primary contact (conversation counterparty) of a 1:1 conversation, the same for every message
+        String contactName = conversation.getParticipants().size() == 1
+                ? conversation.getParticipants().iterator().next().getName()
+                : null;
+        UUID userId = user.getId();
 
-        // Eagerly fetch all parts in a single query to avoid N batched queries
-        if (!messages.isEmpty()) {
-            List<Long> messageIds = messages.stream().map(Message::getId).toList();
-            List<MessagePart> parts = messagePartRepository.findByMessageIds(messageIds);
-            
-            // Group parts by message ID for efficient lookup
-            Map<Long, List<MessagePart>> partsByMessageId = parts.stream()
-                    .collect(Collectors.groupingBy(p -> p.getMessage().getId()));
-            
-            // Manually set parts on messages to avoid lazy loading
-            messages.forEach(msg -> {
-                List<MessagePart> msgParts = partsByMessageId.get(msg.getId());
-                if (msgParts != null) {
-                    msg.getParts().clear();
-                    msg.getParts().addAll(msgParts);
-                }
-            });
+        return sink -> {
+            try {
+                // A transaction keeps autocommit off, which the driver needs to fetch through a cursor
+                readOnlyTransaction.executeWithoutResult(_ -> jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(STREAM_MESSAGES_SQL);
+                    ps.setFetchSize(STREAM_FETCH_SIZE);
+                    ps.setLong(1, conversationId);
+                    ps.setObject(2, userId);
+                    return ps;
+                }, (ResultSetExtractor<Void>) rs -> {
+                    MessageRowGrouper grouper = new MessageRowGrouper(contactName, sink);
+                    while (rs.next()) grouper.processRow(rs);
+                    grouper.emit();
+                    return null;
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    /** Folds the joined rows of each message (one per part) back into one DTO. */
+    private static final class MessageRowGrouper {
+        private final String contactName;
+        private final MessageSink sink;
+        private long id;
+        private MessageDirection direction;
+        private Instant timestamp;
+        private String body;
+        private Long senderId;
+        private String senderName;
+        private String senderNumber;
+        private List<MessagePartDto> parts;
+
+        MessageRowGrouper(String contactName, MessageSink sink) {
+            this.contactName = contactName;
+            this.sink = sink;
         }
 
-        return messages.stream()
-                .map(MessageMapper::toLightDto)
-                .toList();
+        void processRow(ResultSet rs) throws SQLException {
+            long rowId = rs.getLong("id");
+            if (parts == null || rowId != id) {
+                emit();
+                id = rowId;
+                direction = MessageDirection.valueOf(rs.getString("direction"));
+                timestamp = rs.getTimestamp("timestamp").toInstant();
+                body = rs.getString("body");
+                senderId = rs.getObject("sender_id", Long.class);
+                senderName = rs.getString("sender_name");
+                senderNumber = rs.getString("sender_number");
+                parts = new ArrayList<>(1);
+            }
+            Long partId = rs.getObject("part_id", Long.class);
+            if (partId != null) {
+                parts.add(MessageMapper.toPartDto(partId, id, timestamp, rs.getString("file_path"), rs.getString("ct")));
+            }
+        }
+
+        void emit() {
+            if (parts == null) return;
+            try {
+                sink.accept(new ConversationMessagesDto(id, direction, senderId, senderName, senderNumber,
+                        contactName, timestamp, body, parts));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            parts = null;
+        }
     }
 
     /**
@@ -244,41 +365,34 @@ public class ConversationService {
         return messageRepository.countByConversationIdAndUser(conversationId, user);
     }
 
+    /** Year and month buckets of the conversation, read from its maintained month rollups. */
     @Transactional(readOnly = true)
-    @Cacheable(value = "conversationTimeline", key = "#conversationId")
     public ConversationTimelineDto getConversationTimeline(Long conversationId) {
         var user = currentUserProvider.getCurrentUser();
 
         // Verify conversation belongs to user
-        Conversation conversation = conversationRepository.findByIdAndUser(conversationId, user)
+        conversationRepository.findByIdAndUser(conversationId, user)
                 .orElseThrow(() -> new ResourceNotFoundException("Conversation not found"));
 
-        List<MessageRepository.TimelineBucketProjection> buckets =
-                messageRepository.getConversationTimeline(conversationId, user.getId());
-
-        // Group by year
-        Map<Integer, List<MessageRepository.TimelineBucketProjection>> byYear = buckets.stream()
-                .collect(Collectors.groupingBy(MessageRepository.TimelineBucketProjection::getYear));
+        // Rows come back ordered by year, then month
+        Map<Integer, List<ConversationMonthStatsRepository.MonthStats>> byYear = new LinkedHashMap<>();
+        for (var stats : monthStatsRepository.findByConversationId(conversationId)) {
+            byYear.computeIfAbsent(stats.year(), _ -> new ArrayList<>()).add(stats);
+        }
 
         List<ConversationTimelineDto.YearBucket> years = byYear.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
                 .map(yearEntry -> {
                     int year = yearEntry.getKey();
-                    List<MessageRepository.TimelineBucketProjection> monthBuckets = yearEntry.getValue();
-
-                    long yearCount = monthBuckets.stream().mapToLong(MessageRepository.TimelineBucketProjection::getCount).sum();
-
-                    List<ConversationTimelineDto.MonthBucket> months = monthBuckets.stream()
-                            .sorted(Comparator.comparingInt(MessageRepository.TimelineBucketProjection::getMonth))
+                    List<ConversationTimelineDto.MonthBucket> months = yearEntry.getValue().stream()
                             .map(mb -> new ConversationTimelineDto.MonthBucket(
                                     year,
-                                    mb.getMonth(),
-                                    mb.getCount(),
-                                    mb.getFirst_message_id(),
-                                    mb.getLast_message_id()
+                                    mb.month(),
+                                    mb.count(),
+                                    mb.firstMessageId(),
+                                    mb.lastMessageId()
                             ))
                             .toList();
-
+                    long yearCount = months.stream().mapToLong(ConversationTimelineDto.MonthBucket::getCount).sum();
                     return new ConversationTimelineDto.YearBucket(year, yearCount, months);
                 })
                 .toList();
@@ -318,24 +432,8 @@ public class ConversationService {
         Page<Long> idsPage = messageRepository.findIdsByConversationAndDateRange(
                 conversationId, dateFrom, dateTo, user, pageable);
 
-        // Step 2: Fetch full entities with associations
-        List<Message> messages;
-        if (!idsPage.getContent().isEmpty()) {
-            messages = messageRepository.findByIdsWithAssociations(idsPage.getContent());
-            // Restore original sort order from ID list
-            Map<Long, Message> messageMap = messages.stream()
-                    .collect(Collectors.toMap(Message::getId, m -> m));
-            messages = idsPage.getContent().stream()
-                    .map(messageMap::get)
-                    .filter(Objects::nonNull)
-                    .toList();
-        } else {
-            messages = Collections.emptyList();
-        }
-
-        List<MessageDto> content = messages.stream()
-                .map(MessageMapper::toDto)
-                .toList();
+        // Step 2: Build the page's DTOs in one query, in id order (no entity hydration)
+        List<MessageDto> content = messageDtoRepository.findByIds(idsPage.getContent(), user.getId());
 
         return new PagedResponse<>(
                 content,
@@ -381,40 +479,6 @@ public class ConversationService {
         return firstDayOfNextMonth.atStartOfDay(ZoneId.of("UTC")).toInstant();
     }
 
-    private ConversationSummaryDto toSummaryDto(Conversation conv) {
-        // Get participant names
-        List<String> participantNames = conv.getParticipants().stream()
-                .map(contact -> contact.getName() != null ? contact.getName() : contact.getNumber())
-                .collect(Collectors.toList());
-
-        // Get last message details
-        var user = currentUserProvider.getCurrentUser();
-        Message lastMessage = messageRepository.findLastMessageByConversation(conv.getId(), user);
-
-        String lastMessagePreview = null;
-        boolean lastMessageHasImage = false;
-
-        if (lastMessage != null) {
-            lastMessagePreview = lastMessage.getBody() != null && !lastMessage.getBody().isEmpty()
-                    ? lastMessage.getBody().substring(0, Math.min(200, lastMessage.getBody().length()))
-                    : "";
-            // Check media field instead of loading parts to avoid N+1 query
-            lastMessageHasImage = lastMessage.getMedia() != null && 
-                    !lastMessage.getMedia().isEmpty();
-        }
-
-        return new ConversationSummaryDto(
-                conv.getId(),
-                conv.getName(),
-                participantNames,
-                conv.getParticipants().size(),
-                conv.getLastMessageAt(),
-                lastMessagePreview,
-                lastMessageHasImage,
-                0L // TODO: implement unread count if needed
-        );
-    }
-
     // Methods for ImportService
 
     @Transactional
@@ -467,8 +531,7 @@ public class ConversationService {
             c.setUser(user);
             c.setNormalizedNumber(safeNormalized);
             // safeNormalized already has + prefix, use directly for display
-            String displayNumber = safeNormalized.equals("__unknown__") ? safeNormalized : safeNormalized;
-            c.setNumber(displayNumber);
+            c.setNumber(safeNormalized);
             c.setName(suggestedName != null && !suggestedName.isBlank() ? suggestedName : null);
             return contactRepository.save(c);
         } catch (DataIntegrityViolationException e) {
@@ -479,24 +542,7 @@ public class ConversationService {
     }
     
     private String normalizeNumberDefensive(String number) {
-        if (number == null || number.isBlank()) {
-            return "__unknown__";
-        }
-        // Strip all non-digits first
-        String digits = number.replaceAll("\\D", "");
-        if (digits.isEmpty()) return "__unknown__";
-        
-        // NANP canonicalization: always 11 digits with leading 1
-        if (digits.length() == 10) {
-            digits = "1" + digits;
-        } else if (digits.length() == 11 && digits.startsWith("1")) {
-            // already canonical
-        } else {
-            // Keep as-is for non-NANP
-        }
-        
-        // IMPORTANT: Add + prefix to match database standard (E.164 format)
-        return "+" + digits;
+        return phoneNumbers.canonical(number);
     }
 
     @Transactional
@@ -531,20 +577,21 @@ public class ConversationService {
     }
 
     @Transactional
-    @CacheEvict(value = "conversationList", allEntries = true)
     public ConversationSummaryDto renameConversation(Long conversationId, String newName) {
         var user = currentUserProvider.getCurrentUser();
         Conversation conversation = conversationRepository.findByIdAndUser(conversationId, user)
                 .orElseThrow(() -> new ResourceNotFoundException("Conversation not found"));
         
         conversation.setName(newName);
-        conversationRepository.save(conversation);
+        // Flushed so the summary read below sees the new name
+        conversationRepository.saveAndFlush(conversation);
         
-        return toSummaryDto(conversation);
+        return conversationSummaryRepository.findByIdAndUser(conversationId, user.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("Conversation not found"));
     }
 
     @Transactional
-    @CacheEvict(value = {"conversationList", "conversationMessages", "conversationMessageCount", "conversationTimeline", "contactSummaries"}, allEntries = true)
+    @CacheEvict(value = {"conversationMessageCount", "contactSummaries"}, allEntries = true)
     public void deleteConversationById(Long conversationId) {
         var user = currentUserProvider.getCurrentUser();
         Conversation conversation = conversationRepository.findByIdAndUser(conversationId, user)
@@ -557,7 +604,7 @@ public class ConversationService {
             messageRepository.deleteAll(messages);
             messageRepository.flush();
         }
-        // Finally delete the conversation
+        // Finally delete the conversation; its month rollups and summary go with it (ON DELETE CASCADE)
         conversationRepository.delete(conversation);
     }
 }
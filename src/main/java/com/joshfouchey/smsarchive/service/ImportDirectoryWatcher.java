@@ -5,34 +5,46 @@ import com.joshfouchey.smsarchive.repository.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static java.nio.file.StandardWatchEventKinds.*;
+
 /**
  * Watches a configured directory for XML files and automatically imports them.
  * This allows users to drop large XML files directly on the server file system,
  * bypassing upload size limits from reverse proxies or web servers.
  *
  * Directory structure: import-drop/username/*.xml
- * Each user has their own subdirectory named by their username.
+ * Each user has their own subdirectory named by their username. Backups may also be
+ * compressed: *.gz (e.g. backup.xml.gz), *.zip (one or more XML files) or *.zst.
  *
  * Features:
- * - Configurable scan interval (default: 5 minutes)
+ * - New files are noticed through a WatchService and imported as soon as their size and
+ *   modification time have stopped changing (debounced, so a slow copy is not picked up half-written)
+ * - Periodic scan as a safety net for missed events (default: every 5 minutes)
  * - Auto-delete or retain processed files
  * - Automatic cleanup of old processed files
  * - File age threshold before processing
  * - Can be paused/resumed via API
+ * - Imports interrupted by a restart are resumed from their last checkpoint at startup
  * - User isolation - each user's files go to their own account
  */
 @Slf4j
@@ -58,12 +70,46 @@ public class ImportDirectoryWatcher {
     @Value("${smsarchive.import.directory.fileAgeThresholdSeconds:30}")
     private long fileAgeThresholdSeconds;
 
+    // React to file system events instead of waiting for the next scan
+    @Value("${smsarchive.import.directory.watch:true}")
+    private boolean watchEnabled;
+
+    // A file is ready once its size and mtime have not changed for this long
+    @Value("${smsarchive.import.directory.stableSeconds:5}")
+    private long stableSeconds;
+
+    // Plain and compressed backups; the actual format is detected from the file's content
+    private static final String BACKUP_GLOB = "*.{xml,gz,zip,zst}";
+
+    // Per-user holding directory for files whose import is still running (deleteAfterImport mode)
+    private static final String INFLIGHT_DIR = ".importing";
+
     // Track files currently being processed to avoid duplicate processing
     private final Set<String> processingFiles = ConcurrentHashMap.newKeySet();
 
     // Allow pausing/resuming the scanner
     private final AtomicBoolean scanningEnabled = new AtomicBoolean(true);
 
+    // Files reported by the WatchService that have not been stable long enough yet, by user/file key
+    private final Map<String, PendingFile> pendingFiles = new ConcurrentHashMap<>();
+
+    private volatile WatchService watchService;
+    private volatile Thread watchThread;
+
+    /** Last observed size and mtime of a changing file, and when they last changed. */
+    private static final class PendingFile {
+        final Path path;
+        final String username;
+        long size = -1;
+        long modified = -1;
+        long changedAtNanos;
+
+        PendingFile(Path path, String username) {
+            this.path = path;
+            this.username = username;
+        }
+    }
+
     public ImportDirectoryWatcher(ImportService importService, UserRepository userRepository) {
         this.importService = importService;
         this.userRepository = userRepository;
@@ -90,8 +136,10 @@ public class ImportDirectoryWatcher {
             log.info("  - Drop directory: {}", importDir.toAbsolutePath());
             log.info("  - Structure: Each user has subdirectory named by username");
             log.info("  - Example: {}/your-username/*.xml", importDir.toAbsolutePath());
+            log.info("  - File system watch: {}", watchEnabled ? "enabled" : "disabled");
             log.info("  - Scan interval: {} seconds ({} minutes)", scanIntervalSeconds, scanIntervalSeconds / 60);
             log.info("  - File age threshold: {} seconds", fileAgeThresholdSeconds);
+            log.info("  - Stable for: {} seconds", stableSeconds);
             log.info("  - Delete after import: {}", deleteAfterImport);
             if (!deleteAfterImport) {
                 log.info("  - Retention period: {} days", retentionDays);
@@ -102,7 +150,180 @@ public class ImportDirectoryWatcher {
     }
 
     /**
-     * Scans the import directory for new XML files based on configured interval.
+     * Resume imports that were interrupted by a restart, from their last checkpoint.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedImports() {
+        try {
+            int resumed = importService.resumeInterruptedImports();
+            if (resumed > 0) {
+                log.info("Resumed {} interrupted import(s)", resumed);
+            }
+        } catch (Exception e) {
+            log.error("Failed to resume interrupted imports", e);
+        }
+    }
+
+    /**
+     * Start watching the drop directory and every user subdirectory. Files already present are
+     * picked up through the same stability check.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWatching() {
+        if (!watchEnabled || watchThread != null) return;
+        Path importDir = Paths.get(importDirectoryPath);
+        try {
+            WatchService ws = importDir.getFileSystem().newWatchService();
+            importDir.register(ws, ENTRY_CREATE);
+            watchService = ws;
+            try (DirectoryStream<Path> userDirs = Files.newDirectoryStream(importDir, Files::isDirectory)) {
+                for (Path userDir : userDirs) watchUserDirectory(userDir);
+            }
+        } catch (IOException e) {
+            log.error("Could not watch import directory {}, relying on periodic scans", importDir, e);
+            stopWatching();
+            return;
+        }
+        Thread t = new Thread(this::watchLoop, "import-dir-watcher");
+        t.setDaemon(true);
+        watchThread = t;
+        t.start();
+    }
+
+    @PreDestroy
+    public void stopWatching() {
+        Thread t = watchThread;
+        watchThread = null;
+        if (t != null) t.interrupt();
+        WatchService ws = watchService;
+        watchService = null;
+        if (ws != null) {
+            try { ws.close(); } catch (IOException e) { log.debug("Error closing watch service", e); }
+        }
+    }
+
+    private void watchLoop() {
+        Path importDir = Paths.get(importDirectoryPath);
+        while (watchThread == Thread.currentThread()) {
+            WatchService ws = watchService;
+            if (ws == null) return;
+            try {
+                // Wake up at least once a second to re-check files that are still being written
+                WatchKey key = ws.poll(1, TimeUnit.SECONDS);
+                while (key != null) {
+                    handleEvents(importDir, key);
+                    key = ws.poll();
+                }
+                checkPendingFiles();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Error in import directory watcher", e);
+            }
+        }
+    }
+
+    private void handleEvents(Path importDir, WatchKey key) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Events were dropped: look at everything again
+                enqueueExistingFiles(importDir);
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (dir.equals(importDir)) {
+                if (Files.isDirectory(child)) watchUserDirectory(child);
+            } else if (isBackupFile(child)) {
+                fileChanged(child, dir.getFileName().toString());
+            }
+        }
+        key.reset();
+    }
+
+    private void watchUserDirectory(Path userDir) {
+        String name = userDir.getFileName().toString();
+        if ("processed".equals(name) || INFLIGHT_DIR.equals(name)) return;
+        WatchService ws = watchService;
+        if (ws == null) return;
+        try {
+            userDir.register(ws, ENTRY_CREATE, ENTRY_MODIFY);
+            enqueueExistingFiles(userDir);
+        } catch (IOException e) {
+            log.warn("Could not watch user import directory {}", userDir, e);
+        }
+    }
+
+    /** Queue every XML file in a user directory (or, for the drop directory, in all of them). */
+    private void enqueueExistingFiles(Path dir) {
+        Path importDir = Paths.get(importDirectoryPath);
+        if (dir.equals(importDir)) {
+            try (DirectoryStream<Path> userDirs = Files.newDirectoryStream(importDir, Files::isDirectory)) {
+                for (Path userDir : userDirs) enqueueExistingFiles(userDir);
+            } catch (IOException e) {
+                log.warn("Could not list import directory {}", importDir, e);
+            }
+            return;
+        }
+        String username = dir.getFileName().toString();
+        if ("processed".equals(username) || INFLIGHT_DIR.equals(username)) return;
+        try (DirectoryStream<Path> xmlFiles = Files.newDirectoryStream(dir, BACKUP_GLOB)) {
+            for (Path xmlFile : xmlFiles) fileChanged(xmlFile, username);
+        } catch (IOException e) {
+            log.warn("Could not list user import directory {}", dir, e);
+        }
+    }
+
+    private static boolean isBackupFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(".xml") || name.endsWith(".gz") || name.endsWith(".zip") || name.endsWith(".zst");
+    }
+
+    /** Note a created or modified file; it is imported once it has been stable for {@link #stableSeconds}. */
+    void fileChanged(Path xmlFile, String username) {
+        pendingFiles.computeIfAbsent(username + "/" + xmlFile.getFileName(), _ -> new PendingFile(xmlFile, username));
+    }
+
+    /**
+     * Import pending files whose size and mtime have not changed for {@link #stableSeconds}.
+     * A change restarts the quiet period, so the file is only taken once the writer is done.
+     */
+    void checkPendingFiles() {
+        if (!scanningEnabled.get()) return;
+        long now = System.nanoTime();
+        long quietNanos = TimeUnit.SECONDS.toNanos(stableSeconds);
+        for (Iterator<Map.Entry<String, PendingFile>> it = pendingFiles.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, PendingFile> entry = it.next();
+            PendingFile pending = entry.getValue();
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(pending.path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                it.remove(); // deleted or moved away before it settled
+                continue;
+            }
+            long size = attrs.size();
+            long modified = attrs.lastModifiedTime().toMillis();
+            if (size != pending.size || modified != pending.modified) {
+                pending.size = size;
+                pending.modified = modified;
+                pending.changedAtNanos = now;
+                continue;
+            }
+            if (now - pending.changedAtNanos < quietNanos) continue;
+            it.remove();
+            if (processingFiles.contains(entry.getKey())) continue;
+            if (userRepository.findByUsername(pending.username).isEmpty()) {
+                log.warn("Skipping {} - user '{}' not found in database", entry.getKey(), pending.username);
+                continue;
+            }
+            processFile(pending.path, pending.username);
+        }
+    }
+
+    /**
+     * Scans the import directory for new XML files based on configured interval. With the
+     * WatchService running this only catches files whose events were missed.
      * Expects directory structure: import-drop/username/*.xml
      */
     @Scheduled(fixedDelayString = "${smsarchive.import.directory.scanIntervalSeconds:300}000", initialDelay = 30000)
@@ -139,7 +360,7 @@ public class ImportDirectoryWatcher {
                 }
 
                 // Scan for XML files in user's directory
-                try (DirectoryStream<Path> xmlFiles = Files.newDirectoryStream(userDir, "*.xml")) {
+                try (DirectoryStream<Path> xmlFiles = Files.newDirectoryStream(userDir, BACKUP_GLOB)) {
                     for (Path xmlFile : xmlFiles) {
                         totalFilesFound++;
 
@@ -151,6 +372,11 @@ public class ImportDirectoryWatcher {
                             continue;
                         }
 
+                        if (pendingFiles.containsKey(fileKey)) {
+                            log.debug("File {} is still being written, leaving it to the watcher", fileKey);
+                            continue;
+                        }
+
                         if (!isFileOldEnough(xmlFile)) {
                             log.debug("File {} is too recent (< {} seconds old), skipping",
                                     fileKey, fileAgeThresholdSeconds);
@@ -169,7 +395,7 @@ public class ImportDirectoryWatcher {
         }
 
         if (totalFilesFound > 0) {
-            log.info("Scan complete: found {} XML file(s), processed {}", totalFilesFound, totalFilesProcessed);
+            log.info("Scan complete: found {} backup file(s), processed {}", totalFilesFound, totalFilesProcessed);
         }
     }
 
@@ -199,7 +425,7 @@ public class ImportDirectoryWatcher {
                     continue;
                 }
 
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(processedDir, "*.xml")) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(processedDir, BACKUP_GLOB)) {
                     for (Path file : stream) {
                         try {
                             BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
@@ -229,15 +455,16 @@ public class ImportDirectoryWatcher {
     }
 
     /**
-     * Check if file is old enough to process (created at least X seconds ago)
-     * This is more reliable than checking size stability
+     * Check if file is old enough to process: created at least X seconds ago, and not modified
+     * within the stability window (a copy slower than the age threshold is still being written)
      */
     private boolean isFileOldEnough(Path file) {
         try {
             BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
             Instant creationTime = attrs.creationTime().toInstant();
             Instant threshold = Instant.now().minus(Duration.ofSeconds(fileAgeThresholdSeconds));
-            return creationTime.isBefore(threshold);
+            Instant quietSince = Instant.now().minus(Duration.ofSeconds(stableSeconds));
+            return creationTime.isBefore(threshold) && !attrs.lastModifiedTime().toInstant().isAfter(quietSince);
         } catch (IOException e) {
             log.warn("Could not read file attributes for {}, assuming not ready", file.getFileName());
             return false;
@@ -247,9 +474,12 @@ public class ImportDirectoryWatcher {
     private void processFile(Path xmlFile, String username) {
         String fileName = xmlFile.getFileName().toString();
         String fileKey = username + "/" + fileName;
-        processingFiles.add(fileKey);
+        // The scan and the watcher can both find a file; whoever gets here first imports it
+        if (!processingFiles.add(fileKey)) return;
 
         try {
+            if (!Files.exists(xmlFile)) return;
+
             log.info("Starting automatic import of file: {} for user: {} (size: {} MB)",
                     xmlFile.toAbsolutePath(),
                     username,
@@ -261,9 +491,14 @@ public class ImportDirectoryWatcher {
             log.info("Import job {} started for user: {}, file: {}", jobId, username, fileName);
 
             if (deleteAfterImport) {
-                // Delete the file after import starts
-                Files.delete(xmlFile);
-                log.info("Deleted {} after starting import for user: {}", fileName, username);
+                // Take the file out of the drop directory now, but keep it until the job is done
+                // so an interrupted import can still be resumed from it
+                Path inflightDir = xmlFile.getParent().resolve(INFLIGHT_DIR);
+                Files.createDirectories(inflightDir);
+                Path inflight = inflightDir.resolve(jobId + "-" + fileName);
+                Files.move(xmlFile, inflight, StandardCopyOption.REPLACE_EXISTING);
+                importService.relocateImportSource(jobId, inflight, true);
+                log.info("Removed {} from drop directory; it is deleted once import {} finishes", fileName, jobId);
             } else {
                 // Move to user's processed subdirectory
                 Path processedDir = xmlFile.getParent().resolve("processed");
@@ -278,6 +513,7 @@ public class ImportDirectoryWatcher {
                 }
 
                 Files.move(xmlFile, targetPath, StandardCopyOption.REPLACE_EXISTING);
+                importService.relocateImportSource(jobId, targetPath, false);
                 log.info("Moved {} to processed directory for user: {}", fileName, username);
             }
 
@@ -306,10 +542,12 @@ public class ImportDirectoryWatcher {
 
     public String getStatus() {
         return String.format(
-            "Scanning: %s, Directory: %s, Interval: %ds, Files in progress: %d",
+            "Scanning: %s, Watching: %s, Directory: %s, Interval: %ds, Files settling: %d, Files in progress: %d",
             scanningEnabled.get() ? "enabled" : "paused",
+            watchThread != null ? "yes" : "no",
             importDirectoryPath,
             scanIntervalSeconds,
+            pendingFiles.size(),
             processingFiles.size()
         );
     }
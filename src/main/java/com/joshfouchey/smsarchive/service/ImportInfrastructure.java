@@ -0,0 +1,234 @@
+package com.joshfouchey.smsarchive.service;
+
+import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.model.User;
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationMonthStatsRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.ConversationSummaryRepository;
+import com.joshfouchey.smsarchive.repository.ImportJobRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository;
+import com.joshfouchey.smsarchive.service.ImportService.ImportProgress;
+import com.joshfouchey.smsarchive.service.importpipeline.ContactBulkWriter;
+import com.joshfouchey.smsarchive.service.importpipeline.CopyMessageBulkLoader;
+import com.joshfouchey.smsarchive.service.importpipeline.ImportDirectory;
+import com.joshfouchey.smsarchive.service.importpipeline.LastMessageTracker;
+import com.joshfouchey.smsarchive.service.importpipeline.MessageBatchWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Everything a streaming import runs on and writes through besides the parser: the import
+ * executor, job records, the contact directory, message persistence with the conversation
+ * rollups, metrics and the thumbnail queue.
+ *
+ * How messages are written is chosen by smsarchive.import.persistBackend: jpa (Hibernate batch
+ * inserts, the default), copy (COPY into staging tables) or repository (MessageRepository.saveAll,
+ * the simplest and slowest). smsarchive.import.pipeline.contactDirectory=false resolves each
+ * message's contacts and conversation with its own lookups instead of a preloaded directory.
+ */
+@Slf4j
+@Component
+public class ImportInfrastructure {
+
+    private final TaskExecutor importTaskExecutor;
+    private final MessageRepository messageRepo;
+    private final ContactRepository contactRepo;
+    private final ConversationRepository conversationRepository;
+    private final ImportJobRepository importJobRepository;
+    private final ConversationMonthStatsRepository monthStats;
+    private final ConversationSummaryRepository conversationSummaries;
+    private final JdbcTemplate jdbcTemplate;
+    private final ThumbnailQueueService thumbnailQueueService;
+    private final MeterRegistry meterRegistry;
+    private final MessageBatchWriter batchWriter;
+    private final CopyMessageBulkLoader copyLoader;
+    private final TransactionTemplate persistTransaction;
+
+    @Value("${smsarchive.import.persistBackend:jpa}")
+    private String persistBackend;
+
+    @Value("${smsarchive.import.pipeline.contactDirectory:true}")
+    private boolean contactDirectory;
+
+    public ImportInfrastructure(@Qualifier("importTaskExecutor") TaskExecutor importTaskExecutor,
+                                MessageRepository messageRepo, ContactRepository contactRepo,
+                                ConversationRepository conversationRepository, ImportJobRepository importJobRepository,
+                                ConversationMonthStatsRepository monthStats,
+                                ConversationSummaryRepository conversationSummaries, JdbcTemplate jdbcTemplate,
+                                EntityManagerFactory entityManagerFactory, PlatformTransactionManager transactionManager,
+                                ThumbnailQueueService thumbnailQueueService, MeterRegistry meterRegistry) {
+        this.importTaskExecutor = importTaskExecutor;
+        this.messageRepo = messageRepo;
+        this.contactRepo = contactRepo;
+        this.conversationRepository = conversationRepository;
+        this.importJobRepository = importJobRepository;
+        this.monthStats = monthStats;
+        this.conversationSummaries = conversationSummaries;
+        this.jdbcTemplate = jdbcTemplate;
+        this.thumbnailQueueService = thumbnailQueueService;
+        this.meterRegistry = meterRegistry;
+        this.batchWriter = new MessageBatchWriter(
+                SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory), transactionManager);
+        this.copyLoader = new CopyMessageBulkLoader(jdbcTemplate);
+        this.persistTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    TaskExecutor importTaskExecutor() {
+        return importTaskExecutor;
+    }
+
+    ImportJobRepository importJobs() {
+        return importJobRepository;
+    }
+
+    ThumbnailQueueService thumbnailQueue() {
+        return thumbnailQueueService;
+    }
+
+    MeterRegistry meterRegistry() {
+        return meterRegistry;
+    }
+
+    /** Collects conversations' last_message_at for one bulk update per persisted batch. */
+    LastMessageTracker newLastMessageTracker() {
+        return new LastMessageTracker(jdbcTemplate);
+    }
+
+    /** The user's contacts and conversations, preloaded; empty when the directory is switched off. */
+    Optional<ImportDirectory> loadDirectory(User user) {
+        if (!contactDirectory || user == null) return Optional.empty();
+        return Optional.of(ImportDirectory.load(user, contactRepo, conversationRepository, new ContactBulkWriter(jdbcTemplate)));
+    }
+
+    /** Contact name upgrades and participants added by an import, also in conversations it did not write to. */
+    void refreshParticipantNames(User user) {
+        conversationSummaries.refreshParticipantNamesOfUser(user.getId());
+    }
+
+    /**
+     * Write a batch and clear it. Messages the database already holds are skipped and moved from
+     * imported to duplicate in {@code progress}; any other failure is thrown and nothing is written.
+     */
+    void write(List<Message> batch, ImportProgress progress) {
+        if ("copy".equalsIgnoreCase(persistBackend)) {
+            writeWithCopy(batch, progress);
+            return;
+        }
+        try {
+            persistUnit(batch, () -> {
+                insert(batch);
+                return null;
+            });
+            batch.clear();
+        }
+        catch (DataIntegrityViolationException dive) {
+            // Duplicate key constraint violation - retry individually
+            log.warn("Constraint violation during batch save (likely duplicates), retrying individually");
+            clearGeneratedIds(batch);
+            int saved = 0;
+            int skipped = 0;
+            for (Message msg : batch) {
+                try {
+                    saveOne(msg);
+                    saved++;
+                } catch (DataIntegrityViolationException ex) {
+                    // Skip this duplicate message
+                    log.debug("Skipped duplicate message: conversation={}, timestamp={}, direction={}",
+                        msg.getConversation().getId(), msg.getTimestamp(), msg.getDirection());
+                    skipped++;
+                    progress.reclassifyAsDuplicate();
+                }
+            }
+            log.info("Individual save complete: {} saved, {} skipped as duplicates", saved, skipped);
+            batch.clear();
+        }
+        catch (ObjectOptimisticLockingFailureException e) {
+            // A duplicate message was found during the batch save
+            // Try to save messages individually, skipping duplicates
+            log.warn("Optimistic locking failure during batch save, retrying individually");
+            clearGeneratedIds(batch);
+            int saved = 0;
+            int skipped = 0;
+            for (Message msg : batch) {
+                try {
+                    saveOne(msg);
+                    saved++;
+                } catch (DataIntegrityViolationException | ObjectOptimisticLockingFailureException ex) {
+                    // Skip this message, it's likely a duplicate
+                    log.debug("Skipped message during individual save: {}", ex.getMessage());
+                    skipped++;
+                    progress.reclassifyAsDuplicate();
+                }
+            }
+            log.info("Individual save complete: {} saved, {} skipped", saved, skipped);
+            batch.clear();
+        }
+        catch (RuntimeException e) {
+            // Fails the pipeline: the batch was rolled back and the checkpoint stays before it
+            log.error("Batch persist failed size={}", batch.size(), e);
+            throw new IllegalStateException("Persistence error: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeWithCopy(List<Message> batch, ImportProgress progress) {
+        try {
+            int skipped = persistUnit(batch, () -> copyLoader.load(batch));
+            for (int i = 0; i < skipped; i++) progress.reclassifyAsDuplicate();
+            batch.clear();
+        } catch (RuntimeException e) {
+            log.error("COPY batch persist failed size={}", batch.size(), e);
+            throw new IllegalStateException("Persistence error: " + e.getMessage(), e);
+        }
+    }
+
+    private void insert(List<Message> batch) {
+        if ("repository".equalsIgnoreCase(persistBackend)) messageRepo.saveAll(batch);
+        else batchWriter.write(batch);
+    }
+
+    private void saveOne(Message msg) {
+        persistUnit(List.of(msg), () -> {
+            if ("repository".equalsIgnoreCase(persistBackend)) messageRepo.save(msg);
+            else batchWriter.writeOne(msg);
+            return null;
+        });
+    }
+
+    // Inserts a batch and adds it to the conversations' month rollups and summaries in one
+    // transaction, so they never count a message that was rolled back nor miss a committed one
+    private <T> T persistUnit(List<Message> messages, Supplier<T> insert) {
+        return persistTransaction.execute(_ -> {
+            T result = insert.get();
+            // Skipped duplicates have no id (COPY) or no row; either way they are not counted
+            List<Long> ids = messages.stream().map(Message::getId).toList();
+            monthStats.addMessages(ids);
+            conversationSummaries.addMessages(ids);
+            return result;
+        });
+    }
+
+    // Ids are assigned from the sequence before the batch is sent; a rolled-back batch leaves
+    // them on the entities, and save() would then treat the rows as detached (merge) instead of new.
+    private void clearGeneratedIds(List<Message> batch) {
+        for (Message msg : batch) {
+            msg.setId(null);
+            if (msg.getParts() != null) msg.getParts().forEach(part -> part.setId(null));
+        }
+    }
+}
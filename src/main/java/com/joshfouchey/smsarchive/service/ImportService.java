@@ -6,51 +6,79 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.joshfouchey.smsarchive.event.ImportCompletedEvent;
 import com.joshfouchey.smsarchive.model.*;
 import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ImportJobRepository;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
 import com.joshfouchey.smsarchive.repository.UserRepository;
+import com.joshfouchey.smsarchive.service.importpipeline.BackupFormat;
+import com.joshfouchey.smsarchive.service.importpipeline.ChunkedBackupParser;
 import com.joshfouchey.smsarchive.service.importpipeline.ContactResolver;
 import com.joshfouchey.smsarchive.service.importpipeline.ConversationAssigner;
 import com.joshfouchey.smsarchive.service.importpipeline.DuplicateDetector;
+import com.joshfouchey.smsarchive.service.importpipeline.FingerprintSet;
+import com.joshfouchey.smsarchive.service.importpipeline.ImportCheckpoint;
+import com.joshfouchey.smsarchive.service.importpipeline.ImportDirectory;
+import com.joshfouchey.smsarchive.service.importpipeline.ImportMetrics;
+import com.joshfouchey.smsarchive.service.importpipeline.ImportPipeline;
+import com.joshfouchey.smsarchive.service.importpipeline.ImportScheduler;
+import com.joshfouchey.smsarchive.service.importpipeline.ImportScheduler.Priority;
+import com.joshfouchey.smsarchive.service.importpipeline.LastMessageTracker;
 import com.joshfouchey.smsarchive.service.importpipeline.MediaHandler;
+import com.joshfouchey.smsarchive.service.importpipeline.PendingMedia;
+import com.joshfouchey.smsarchive.service.importpipeline.PipelineItem;
+import com.joshfouchey.smsarchive.service.importpipeline.UploadSpool;
+import com.joshfouchey.smsarchive.service.importpipeline.XmlElementReader;
+import com.joshfouchey.smsarchive.service.importpipeline.XmlMessageBoundaries;
 import com.joshfouchey.smsarchive.service.importpipeline.XmlMessageParser;
 import com.joshfouchey.smsarchive.service.importpipeline.XmlMessageParser.ElementContext;
+import com.joshfouchey.smsarchive.service.importpipeline.XmlMessageParser.MediaSpooler;
+import com.joshfouchey.smsarchive.service.importpipeline.XmlParserBackend;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import lombok.Getter;
 import org.apache.commons.io.input.CountingInputStream;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
-import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.file.*;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
 
 @Slf4j
 @Service
 public class ImportService {
 
-    private final MessageRepository messageRepo;
     private final ContactRepository contactRepo;
     private final ThumbnailService thumbnailService;
     private final ConversationService conversationService;
     private final UserRepository userRepository;
-    private TaskExecutor importTaskExecutor;
     private final CurrentUserProvider currentUserProvider;
     private final ApplicationEventPublisher eventPublisher;
     private final DuplicateDetector duplicateDetector;
     private final ContactResolver contactResolver;
-    private final ConversationAssigner conversationAssigner;
+    private final ImportInfrastructure infrastructure;
+    private final ImportJobRepository importJobRepository;
+    private final XmlMessageParser xmlParser;
+    // Needs the configured media root, so built once properties are injected
     private MediaHandler mediaHandler;
-    private XmlMessageParser xmlParser;
+    private volatile ImportScheduler importScheduler;
+    // Jobs parsing an upload that is still arriving
+    private final Map<UUID, UploadSpool> liveUploads = new ConcurrentHashMap<>();
     private final ThreadLocal<User> threadLocalImportUser = new ThreadLocal<>();
 
     private final Cache<UUID, ImportProgress> progressMap = Caffeine.newBuilder()
@@ -61,85 +89,104 @@ public class ImportService {
     @Value("${smsarchive.import.inline:false}")
     private boolean importInline;
 
+    // Users whose imports may run at the same time; each user's own jobs always run one at a time
+    @Value("${smsarchive.import.maxConcurrentUsers:2}")
+    private int maxConcurrentUsers;
+
     @Value("${smsarchive.import.batchSize:500}")
     private int streamBatchSize;
 
+    @Value("${smsarchive.import.parser:scanner}")
+    private String parserBackend;
+
+    // Worker threads per pipeline stage
+    @Value("${smsarchive.import.pipeline.resolveWorkers:1}")
+    private int resolveWorkers;
+
+    @Value("${smsarchive.import.pipeline.dedupeWorkers:1}")
+    private int dedupeWorkers;
+
+    @Value("${smsarchive.import.pipeline.mediaWorkers:2}")
+    private int mediaWorkers;
+
+    @Value("${smsarchive.import.pipeline.persistWorkers:1}")
+    private int persistWorkers;
+
+    // Above 1, large files are cut at message boundaries and parsed on this many threads
+    @Value("${smsarchive.import.pipeline.parseWorkers:1}")
+    private int parseWorkers;
+
+    @Value("${smsarchive.import.pipeline.parseChunkMegabytes:4}")
+    private int parseChunkMegabytes;
+
+    @Value("${smsarchive.import.pipeline.queueCapacity:256}")
+    private int pipelineQueueCapacity;
+
+    // Fingerprints each dedupe worker remembers per generation; older ones fall back to the DB probe
+    @Value("${smsarchive.import.pipeline.seenFingerprints:500000}")
+    private int seenFingerprints;
+
+    // How often a running import records a resume checkpoint in import_jobs
+    @Value("${smsarchive.import.checkpointIntervalSeconds:15}")
+    private int checkpointIntervalSeconds;
+
     @Value("${smsarchive.media.root:./media/messages}")
     private String mediaRoot;
 
+    // Live uploads bypass multipart handling; hold them to the same limit
+    @Value("${spring.servlet.multipart.max-request-size:2GB}")
+    private DataSize maxUploadSize;
+
     Path getMediaRoot() {
         return Paths.get(mediaRoot);
     }
 
+    // visible for testing: services built outside Spring call it themselves
     @PostConstruct
-    private void logMediaRootAtStartup() {
-        log.info("Resolved media root: {}", Paths.get(mediaRoot).toAbsolutePath());
-        mediaRelocationHelper = new MediaRelocationHelper(thumbnailService, getMediaRoot());
-        mediaHandler = new MediaHandler(thumbnailService, getMediaRoot());
-        xmlParser = new XmlMessageParser(contactResolver, mediaHandler, mediaRelocationHelper, this::resolveImportUser);
+    void init() {
+        log.info("Resolved media root: {}", getMediaRoot().toAbsolutePath());
+        mediaHandler = new MediaHandler(thumbnailService, infrastructure.thumbnailQueue(), getMediaRoot());
     }
 
     public ImportService(MessageRepository messageRepo, ContactRepository contactRepo,
                          CurrentUserProvider currentUserProvider, ThumbnailService thumbnailService,
                          ConversationService conversationService, UserRepository userRepository,
-                         ApplicationEventPublisher eventPublisher) {
-        this.messageRepo = messageRepo;
+                         ApplicationEventPublisher eventPublisher, ImportInfrastructure infrastructure) {
         this.contactRepo = contactRepo;
         this.currentUserProvider = currentUserProvider;
         this.thumbnailService = thumbnailService;
         this.conversationService = conversationService;
         this.userRepository = userRepository;
         this.eventPublisher = eventPublisher;
+        this.infrastructure = infrastructure;
+        this.importJobRepository = infrastructure.importJobs();
         this.duplicateDetector = new DuplicateDetector(messageRepo);
         this.contactResolver = new ContactResolver(contactRepo);
-        this.conversationAssigner = new ConversationAssigner(conversationService);
-    }
-
-    @Autowired(required = false)
-    public void setImportTaskExecutor(@Qualifier("importTaskExecutor") TaskExecutor executor) {
-        this.importTaskExecutor = executor;
+        this.xmlParser = new XmlMessageParser(contactResolver, this::resolveImportUser);
     }
 
     // visible for testing
     Instant parseInstant(String millisStr) {
-        ensureXmlParser();
         return xmlParser.parseInstant(millisStr);
     }
 
-    private void ensureXmlParser() {
-        if (xmlParser == null) {
-            ensureMediaHelper();
-            xmlParser = new XmlMessageParser(contactResolver, mediaHandler, mediaRelocationHelper, this::resolveImportUser);
-        }
-    }
-
     // ===== Streaming Import (Large XML) =====
-    @CacheEvict(value = {"analyticsDashboard", "contactSummaries", "conversationList", "distinctContacts", "conversationTimeline"}, allEntries = true)
+    @CacheEvict(value = {"analyticsDashboard", "contactSummaries", "distinctContacts"}, allEntries = true)
     public UUID startImportAsync(Path xmlPath) throws Exception {
-        ensureMediaHelper();
         UUID jobId = UUID.randomUUID();
         long size = Files.size(xmlPath);
         ImportProgress progress = new ImportProgress(jobId, size);
         progressMap.put(jobId, progress);
         // Capture authenticated user now
         User importUser = currentUserProvider.getCurrentUser();
+        recordNewJob(jobId, importUser, xmlPath, size);
         Runnable task = () -> {
             threadLocalImportUser.set(importUser);
             try { runStreamingImportAsync(jobId, xmlPath); }
             finally { threadLocalImportUser.remove(); }
         };
-        if (importInline) {
-            task.run();
-            return jobId;
-        }
-        if (importTaskExecutor != null) {
-            importTaskExecutor.execute(task);
-        } else {
-            // Fallback: create a dedicated thread
-            Thread t = new Thread(task, "import-worker-fallback-" + jobId);
-            t.setDaemon(true);
-            t.start();
-        }
+        // An upload someone is watching goes ahead of queued drop-directory and resume jobs
+        schedule(importUser, Priority.INTERACTIVE, progress, size, task);
         return jobId;
     }
 
@@ -147,9 +194,8 @@ public class ImportService {
      * Start import for a specific user by username (used by ImportDirectoryWatcher).
      * This method does not require an authenticated security context.
      */
-    @CacheEvict(value = {"analyticsDashboard", "contactSummaries", "conversationList", "distinctContacts", "conversationTimeline"}, allEntries = true)
+    @CacheEvict(value = {"analyticsDashboard", "contactSummaries", "distinctContacts"}, allEntries = true)
     public UUID startImportAsyncForUser(Path xmlPath, String username) throws Exception {
-        ensureMediaHelper();
 
         // Look up user by username
         User importUser = userRepository.findByUsername(username)
@@ -159,6 +205,7 @@ public class ImportService {
         long size = Files.size(xmlPath);
         ImportProgress progress = new ImportProgress(jobId, size);
         progressMap.put(jobId, progress);
+        recordNewJob(jobId, importUser, xmlPath, size);
 
         Runnable task = () -> {
             threadLocalImportUser.set(importUser);
@@ -169,97 +216,332 @@ public class ImportService {
             }
         };
 
+        schedule(importUser, Priority.BACKGROUND, progress, size, task);
+        return jobId;
+    }
+
+    /**
+     * Import a backup while it is being uploaded. The body is written once to a spool file (kept
+     * for resume and deleted when the job is done) and the import parses that file as it grows,
+     * so it finishes shortly after the upload does. Returns once the whole body has been received.
+     * Bodies over the multipart size limit are refused, also when no length was declared.
+     *
+     * @param contentLength declared body size, or -1 if unknown
+     */
+    @CacheEvict(value = {"analyticsDashboard", "contactSummaries", "distinctContacts"}, allEntries = true)
+    public UUID startLiveImport(InputStream body, long contentLength) throws Exception {
+        long maxBytes = maxUploadSize != null ? maxUploadSize.toBytes() : Long.MAX_VALUE;
+        if (contentLength > maxBytes) throw new MaxUploadSizeExceededException(maxBytes);
+        UUID jobId = UUID.randomUUID();
+        UploadSpool spool = new UploadSpool(Files.createTempFile("sms-live", ".xml"));
+        ImportProgress progress = new ImportProgress(jobId, Math.max(0, contentLength));
+        progressMap.put(jobId, progress);
+        User importUser = currentUserProvider.getCurrentUser();
+        recordNewJob(jobId, importUser, spool.file(), contentLength);
+        relocateImportSource(jobId, spool.file(), true);
+        Runnable task = () -> {
+            threadLocalImportUser.set(importUser);
+            try { runStreamingImportAsync(jobId, spool.file()); }
+            finally { threadLocalImportUser.remove(); }
+        };
         if (importInline) {
+            // The import would run on this thread before anything has been read; receive first
+            try {
+                receiveUpload(jobId, spool, body, progress, maxBytes);
+            } catch (Exception e) {
+                abandonLiveUpload(jobId, spool, progress, e);
+                throw e;
+            }
             task.run();
             return jobId;
         }
+        liveUploads.put(jobId, spool);
+        // A refused job fails the spool, which stops receiving; a failed or oversized upload
+        // fails the spool's reader, and with it the scheduled import
+        schedule(importUser, Priority.INTERACTIVE, progress, Math.max(0, contentLength), task,
+                e -> abandonLiveUpload(jobId, spool, progress, e));
+        receiveUpload(jobId, spool, body, progress, maxBytes);
+        return jobId;
+    }
 
-        if (importTaskExecutor != null) {
-            importTaskExecutor.execute(task);
-        } else {
-            // Fallback: create a dedicated thread
-            Thread t = new Thread(task, "import-worker-" + username + "-" + jobId);
-            t.setDaemon(true);
-            t.start();
+    private void receiveUpload(UUID jobId, UploadSpool spool, InputStream body, ImportProgress progress,
+                               long maxBytes) throws IOException {
+        long received;
+        try {
+            received = spool.receive(body, maxBytes);
+        } catch (UploadSpool.TooLargeException e) {
+            throw new MaxUploadSizeExceededException(e.getMaxBytes(), e);
+        }
+        if (received != progress.getTotalBytes()) {
+            progress.setTotalBytes(received);
+            importJobRepository.findById(jobId).ifPresent(job -> {
+                job.setSourceSize(received);
+                importJobRepository.save(job);
+            });
         }
+        log.info("Upload for import {} complete ({} bytes)", jobId, received);
+    }
 
-        return jobId;
+    /** Fail a live upload whose import never started, and remove its spool file. */
+    private void abandonLiveUpload(UUID jobId, UploadSpool spool, ImportProgress progress, Exception cause) {
+        liveUploads.remove(jobId);
+        spool.fail(new IOException(cause.getMessage(), cause));
+        progress.setStatus("FAILED");
+        progress.setError(cause.getMessage());
+        progress.setFinishedAt(Instant.now());
+        importJobRepository.findById(jobId).ifPresent(job -> markJobFailed(job, cause.getMessage()));
+        try {
+            Files.deleteIfExists(spool.file());
+        } catch (IOException e) {
+            log.warn("Failed to delete upload spool {}: {}", spool.file(), e.getMessage());
+        }
     }
 
     public ImportProgress getProgress(UUID id) { return progressMap.getIfPresent(id); }
 
-    private XMLStreamReader createSecureXmlStreamReader(CountingInputStream cis) throws Exception {
-        XMLInputFactory factory = XMLInputFactory.newFactory();
-        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
-        try {
-            factory.setProperty("javax.xml.stream.isSupportingExternalEntities", Boolean.FALSE);
-        } catch (IllegalArgumentException _) { }
+    // ===== Persisted jobs / resume =====
+
+    /**
+     * Resume every import that was still running when the application stopped, from its last
+     * checkpoint. Jobs whose source file is gone or has changed size are marked FAILED.
+     */
+    public int resumeInterruptedImports() {
+        int resumed = 0;
+        for (ImportJob job : importJobRepository.findWithUserByStatusIn(List.of("PENDING", "RUNNING"))) {
+            if (progressMap.getIfPresent(job.getId()) != null) continue; // running in this process
+            Path source = Paths.get(job.getSourcePath());
+            try {
+                if (!Files.exists(source) || Files.size(source) != job.getSourceSize()) {
+                    markJobFailed(job, "Source file no longer available for resume: " + source);
+                    continue;
+                }
+                resumeImport(job, source);
+                resumed++;
+            } catch (Exception e) {
+                log.error("Failed to resume import {}", job.getId(), e);
+                markJobFailed(job, "Resume failed: " + e.getMessage());
+            }
+        }
+        return resumed;
+    }
+
+    /**
+     * Point a job at a new location of its source file (e.g. after the import directory moved it)
+     * so a later resume can find it. With {@code deleteWhenFinished} the file is removed once the
+     * job completes or fails rather than while it may still be needed.
+     */
+    public void relocateImportSource(UUID jobId, Path newPath, boolean deleteWhenFinished) {
+        importJobRepository.findById(jobId).ifPresent(job -> {
+            job.setSourcePath(newPath.toAbsolutePath().toString());
+            job.setDeleteSource(deleteWhenFinished);
+            importJobRepository.save(job);
+            if (isTerminal(job.getStatus())) deleteSourceIfRequested(job);
+        });
+    }
+
+    private void resumeImport(ImportJob job, Path source) throws Exception {
+        UUID jobId = job.getId();
+        // Offsets into a compressed file are not message boundaries: parse it again from the start
+        boolean restart = !BackupFormat.detect(source).isPlainXml();
+        long startOffset = restart ? 0 : XmlMessageBoundaries.nextMessageStart(source, job.getResumeOffset());
+        job.setResumeCount(job.getResumeCount() + 1);
+        if (startOffset < 0) {
+            // Interrupted after the last message was committed
+            job.setStatus("COMPLETED");
+            job.setFinishedAt(Instant.now());
+            importJobRepository.save(job);
+            deleteSourceIfRequested(job);
+            return;
+        }
+        importJobRepository.save(job);
+        ImportProgress progress = new ImportProgress(jobId, job.getSourceSize());
+        ImportCheckpoint checkpoint;
+        if (restart) {
+            // Messages committed by the interrupted run come back as duplicates
+            checkpoint = new ImportCheckpoint(0, 0);
+        } else {
+            progress.restoreCounters(job.getProcessedMessages(), job.getImportedMessages(), job.getDuplicateMessages());
+            progress.setBytesRead(startOffset);
+            checkpoint = new ImportCheckpoint(startOffset, job.getCommittedMessages());
+        }
+        progressMap.put(jobId, progress);
+        User importUser = job.getUser();
+        log.info("Resuming import {} from byte {} ({} messages already committed)", jobId, startOffset, job.getCommittedMessages());
+        Runnable task = () -> {
+            threadLocalImportUser.set(importUser);
+            try { runStreamingImport(jobId, source, startOffset, checkpoint); }
+            finally { threadLocalImportUser.remove(); }
+        };
+        schedule(importUser, Priority.BACKGROUND, progress, job.getSourceSize() - startOffset, task);
+    }
+
+    /**
+     * Run an import task through the scheduler, which serializes each user's jobs and caps how
+     * many users import at once. Inline mode runs it on the calling thread instead.
+     *
+     * @param bytes how much of the source the job will read, for queue ETAs
+     */
+    private void schedule(User user, Priority priority, ImportProgress progress, long bytes, Runnable task) {
+        // The scheduler logs a refused job; it stays PENDING and is picked up by the next resume
+        schedule(user, priority, progress, bytes, task, _ -> { });
+    }
+
+    /** @param onRejected called instead of the task if the import executor refuses it */
+    private void schedule(User user, Priority priority, ImportProgress progress, long bytes, Runnable task,
+                          Consumer<RuntimeException> onRejected) {
+        if (importInline) {
+            task.run();
+            return;
+        }
+        Object userKey = user != null && user.getId() != null ? user.getId() : "anonymous";
+        progress.attachTicket(scheduler().submit(userKey, priority, bytes,
+                () -> progress.getTotalBytes() - progress.getBytesRead(), task, onRejected));
+    }
+
+    private ImportScheduler scheduler() {
+        ImportScheduler s = importScheduler;
+        if (s == null) {
+            synchronized (this) {
+                s = importScheduler;
+                if (s == null) {
+                    s = importScheduler = new ImportScheduler(infrastructure.importTaskExecutor(),
+                            maxConcurrentUsers > 0 ? maxConcurrentUsers : 2);
+                }
+            }
+        }
+        return s;
+    }
+
+    private void recordNewJob(UUID jobId, User user, Path source, long size) {
         try {
-            factory.setProperty("javax.xml.stream.supportDTD", Boolean.FALSE);
-        } catch (IllegalArgumentException _) { }
+            ImportJob job = new ImportJob();
+            job.setId(jobId);
+            job.setUser(user);
+            job.setSourcePath(source.toAbsolutePath().toString());
+            job.setSourceSize(size);
+            importJobRepository.save(job);
+        } catch (Exception e) {
+            log.warn("Could not record import job {}; it will not be resumable: {}", jobId, e.getMessage());
+        }
+    }
+
+    private void saveCheckpoint(UUID jobId, String status, ImportCheckpoint checkpoint, ImportProgress progress) {
         try {
-            factory.setProperty("javax.xml.stream.isReplacingEntityReferences", Boolean.TRUE);
-        } catch (IllegalArgumentException _) { }
-        return factory.createXMLStreamReader(cis);
+            importJobRepository.findById(jobId).ifPresent(job -> {
+                ImportCheckpoint.Snapshot snap = checkpoint.snapshot();
+                job.setStatus(status);
+                job.setResumeOffset(snap.resumeOffset());
+                job.setCommittedMessages(snap.committedMessages());
+                job.setProcessedMessages(progress.getProcessedMessages());
+                job.setImportedMessages(progress.getImportedMessages());
+                job.setDuplicateMessages(progress.getDuplicateMessages());
+                job.setErrorMessage(progress.getError());
+                job.setCheckpointAt(Instant.now());
+                if (isTerminal(status)) {
+                    job.setFinishedAt(Instant.now());
+                    job.setReport(progress.getMetrics());
+                }
+                importJobRepository.save(job);
+                if (isTerminal(status)) deleteSourceIfRequested(job);
+            });
+        } catch (Exception e) {
+            log.warn("Failed to checkpoint import {}: {}", jobId, e.getMessage());
+        }
     }
 
-    private void handleSmsReady(Message msg, String suggestedName,
-                                ImportProgress progress, Set<String> seenKeys, List<Message> batch) {
-        conversationAssigner.assignConversationForSms(msg, suggestedName, resolveImportUser());
-        boolean dup = duplicateDetector.isDuplicateInRunOrDb(msg, seenKeys, batch);
-        if (dup) {
-            progress.incDuplicateMessages();
-        } else {
-            batch.add(msg);
-            progress.incImportedMessages();
+    private void markJobFailed(ImportJob job, String reason) {
+        log.warn("Import {} cannot be resumed: {}", job.getId(), reason);
+        job.setStatus("FAILED");
+        job.setErrorMessage(reason);
+        job.setFinishedAt(Instant.now());
+        importJobRepository.save(job);
+        deleteSourceIfRequested(job);
+    }
+
+    private void deleteSourceIfRequested(ImportJob job) {
+        if (!job.isDeleteSource()) return;
+        try {
+            Files.deleteIfExists(Paths.get(job.getSourcePath()));
+        } catch (Exception e) {
+            log.warn("Failed to delete import source {}: {}", job.getSourcePath(), e.getMessage());
         }
-        progress.incProcessedMessages();
-        flushStreamingIfNeeded(batch, progress);
     }
 
-    private void handleMultipartReady(Message msg, String threadKey, Set<String> participantNumbers,
-                                      String suggestedName, ImportProgress progress,
-                                      Set<String> seenKeys, List<Message> batch) {
-        conversationAssigner.assignConversationForMultipart(msg, threadKey, participantNumbers, suggestedName, resolveImportUser());
-        boolean dup = duplicateDetector.isDuplicateInRunOrDb(msg, seenKeys, batch);
-        if (dup) { progress.incDuplicateMessages(); }
-        else { batch.add(msg); progress.incImportedMessages(); }
-        progress.incProcessedMessages();
-        flushStreamingIfNeeded(batch, progress);
+    private static boolean isTerminal(String status) {
+        return "COMPLETED".equals(status) || "FAILED".equals(status);
+    }
+
+    private static InputStream openFrom(Path xmlPath, long offset) throws IOException {
+        InputStream in = Files.newInputStream(xmlPath);
+        if (offset > 0) in.skipNBytes(offset);
+        return in;
+    }
+
+    private static boolean isMessageElement(String localName) {
+        return "sms".equals(localName) || "mms".equals(localName) || "rcs".equals(localName);
     }
 
     protected void runStreamingImportAsync(UUID jobId, Path xmlPath) {
+        runStreamingImport(jobId, xmlPath, 0, new ImportCheckpoint(0, 0));
+    }
+
+    /**
+     * @param startOffset byte offset of a message start tag to begin at (0 = whole file); a
+     *                    resumed run parses from there behind a synthetic root element
+     */
+    private void runStreamingImport(UUID jobId, Path xmlPath, long startOffset, ImportCheckpoint checkpoint) {
         ImportProgress progress = progressMap.getIfPresent(jobId);
         if (progress == null) { log.warn("No progress entry for job {}", jobId); return; }
         progress.setStatus("RUNNING");
         progress.setStartedAt(Instant.now());
-        List<Message> batch = new ArrayList<>(streamBatchSize);
-        Set<String> seenKeys = new HashSet<>();
-        ensureXmlParser();
-        try (CountingInputStream cis = new CountingInputStream(Files.newInputStream(xmlPath))) {
-            XMLStreamReader r = createSecureXmlStreamReader(cis);
-            ElementContext ctx = new ElementContext();
-            XmlMessageParser.SmsReadyHandler onSms = (msg, name) ->
-                    handleSmsReady(msg, name, progress, seenKeys, batch);
-            XmlMessageParser.MultipartReadyHandler onMultipart = (msg, threadKey, participants, name) ->
-                    handleMultipartReady(msg, threadKey, participants, name, progress, seenKeys, batch);
-            while (r.hasNext()) {
-                int evt = r.next();
-                if (evt == XMLStreamConstants.START_ELEMENT) {
-                    xmlParser.handleStartElement(r, ctx, onSms);
-                } else if (evt == XMLStreamConstants.END_ELEMENT) {
-                    xmlParser.handleEndElement(r, ctx, onMultipart);
+        User importUser = resolveImportUser();
+        ImportMetrics metrics = new ImportMetrics(jobId.toString(), progress::getProcessedMessages, infrastructure.meterRegistry());
+        metrics.bind();
+        progress.attachMetrics(metrics);
+        // Conversations' last_message_at is written in bulk after each persisted batch, not per message
+        LastMessageTracker lastMessages = infrastructure.newLastMessageTracker();
+        ImportPipeline pipeline = buildImportPipeline(jobId, importUser, progress, checkpoint, lastMessages, metrics);
+        metrics.declareStage("parse");
+        pipeline.queueDepths().keySet().forEach(metrics::declareStage);
+        progress.attachPipeline(pipeline);
+        Path spoolDir = mediaHandler.spoolDirectory(jobId);
+        saveCheckpoint(jobId, "RUNNING", checkpoint, progress);
+        pipeline.start();
+        try {
+            MediaSpooler spooler = base64 -> mediaHandler.spool(base64, spoolDir);
+            long checkpointEvery = TimeUnit.SECONDS.toNanos(checkpointIntervalSeconds > 0 ? checkpointIntervalSeconds : 15);
+            long[] nextCheckpoint = {System.nanoTime() + checkpointEvery};
+            LongConsumer onPosition = position -> {
+                progress.setBytesRead(position);
+                if (System.nanoTime() >= nextCheckpoint[0]) {
+                    saveCheckpoint(jobId, "RUNNING", checkpoint, progress);
+                    nextCheckpoint[0] = System.nanoTime() + checkpointEvery;
                 }
-                progress.setBytesRead(cis.getByteCount());
+            };
+            long chunkBytes = (parseChunkMegabytes > 0 ? parseChunkMegabytes : 4) * 1024L * 1024L;
+            long parseStart = System.nanoTime();
+            UploadSpool live = liveUploads.get(jobId);
+            if (live != null) {
+                // Still arriving: the file cannot be cut into chunks yet
+                parseSequentially(live.openReader(), 0, spooler, pipeline, checkpoint, onPosition);
+            } else if (parseWorkers > 1 && Files.size(xmlPath) - startOffset > chunkBytes
+                    && BackupFormat.detect(xmlPath).isPlainXml()) {
+                parseInChunks(jobId, xmlPath, startOffset, chunkBytes, spooler, pipeline, checkpoint, onPosition);
+            } else {
+                parseSequentially(openFrom(xmlPath, startOffset), startOffset, spooler, pipeline, checkpoint, onPosition);
             }
-            flushStreamingBatch(batch, progress);
-            r.close();
+            // Time handing items to the pipeline is the stages' (or, when full, waiting on them)
+            metrics.recordStage("parse", (int) pipeline.nextSeq(), System.nanoTime() - parseStart - pipeline.submitNanos());
+            pipeline.finish();
+            lastMessages.flush();
+            if (importUser != null) infrastructure.refreshParticipantNames(importUser);
             progress.setDuplicateMessages((int) progress.getDuplicateMessages());
             progress.setStatus("COMPLETED");
             progress.setFinishedAt(Instant.now());
+            metrics.finish();
+            saveCheckpoint(jobId, "COMPLETED", checkpoint, progress);
             log.info("Streaming import {} completed: imported={}, duplicates={}", jobId, progress.getImportedMessages(), progress.getDuplicateMessages());
 
-            User importUser = threadLocalImportUser.get();
             if (importUser != null && progress.getImportedMessages() > 0) {
                 try {
                     eventPublisher.publishEvent(
@@ -269,29 +551,272 @@ public class ImportService {
                 }
             }
         } catch (Exception e) {
+            pipeline.abort(e);
             log.error("Streaming import {} failed", jobId, e);
             progress.setStatus("FAILED");
             progress.setError(e.getMessage());
             progress.setFinishedAt(Instant.now());
+            metrics.finish();
+            saveCheckpoint(jobId, "FAILED", checkpoint, progress);
+        } finally {
+            metrics.close();
+            ImportMetrics.unbind();
+            liveUploads.remove(jobId);
+            progress.detachPipeline();
+            mediaHandler.deleteSpoolDirectory(spoolDir);
         }
     }
 
-    private User resolveImportUser() {
-        User user = threadLocalImportUser.get();
-        return (user != null) ? user : currentUserProvider.getCurrentUser();
+    /**
+     * @param source the stored backup positioned at {@code startOffset}; gzip, zip and zstd
+     *               backups are decompressed as they are read, and positions count stored bytes
+     */
+    private void parseSequentially(InputStream source, long startOffset, MediaSpooler spooler, ImportPipeline pipeline,
+                                   ImportCheckpoint checkpoint, LongConsumer onPosition) throws Exception {
+        try (CountingInputStream cis = new CountingInputStream(source)) {
+            long[] messageStart = {startOffset};
+            XmlMessageParser.SmsReadyHandler onSms = (msg, name) ->
+                    submitParsed(pipeline, checkpoint, messageStart[0], seq -> PipelineItem.sms(seq, msg, name));
+            XmlMessageParser.MultipartReadyHandler onMultipart = (msg, threadKey, participants, name, media) ->
+                    submitParsed(pipeline, checkpoint, messageStart[0],
+                            seq -> PipelineItem.multipart(seq, msg, threadKey, participants, name, media));
+            BackupFormat format = BackupFormat.forEachDocument(cis, document -> {
+                InputStream xmlIn = startOffset > 0
+                        ? new SequenceInputStream(new ByteArrayInputStream(XmlMessageBoundaries.SYNTHETIC_ROOT), document)
+                        : document;
+                XmlElementReader r = XmlParserBackend.fromName(parserBackend).open(xmlIn);
+                ElementContext ctx = new ElementContext(spooler);
+                int evt;
+                while ((evt = r.next()) != XMLStreamConstants.END_DOCUMENT) {
+                    long position = startOffset + cis.getByteCount();
+                    if (evt == XMLStreamConstants.START_ELEMENT) {
+                        if (isMessageElement(r.getLocalName())) messageStart[0] = position;
+                        xmlParser.handleStartElement(r, ctx, onSms);
+                    } else if (evt == XMLStreamConstants.END_ELEMENT) {
+                        xmlParser.handleEndElement(r, ctx, onMultipart);
+                    }
+                    onPosition.accept(position);
+                }
+                r.close();
+            });
+            if (!format.isPlainXml()) {
+                // Read past a zip's central directory (or any trailer) so progress ends at 100%
+                cis.transferTo(OutputStream.nullOutputStream());
+                onPosition.accept(startOffset + cis.getByteCount());
+            }
+        }
     }
 
-    private MediaRelocationHelper mediaRelocationHelper;
+    /**
+     * Parse on smsarchive.import.pipeline.parseWorkers threads. Chunk results are merged back
+     * in file order on this thread, so the pipeline sees the same sequence as a sequential parse.
+     */
+    private void parseInChunks(UUID jobId, Path xmlPath, long startOffset, long chunkBytes, MediaSpooler spooler,
+                               ImportPipeline pipeline, ImportCheckpoint checkpoint, LongConsumer onPosition) throws Exception {
+        ChunkedBackupParser chunked = new ChunkedBackupParser(xmlParser, XmlParserBackend.fromName(parserBackend),
+                spooler, parseWorkers, chunkBytes);
+        chunked.parse(jobId.toString(), xmlPath, startOffset, parsed -> {
+            submitParsed(pipeline, checkpoint, parsed.offset(), parsed::toItem);
+            onPosition.accept(parsed.offset());
+        });
+        onPosition.accept(Files.size(xmlPath));
+    }
 
-    private void ensureMediaHelper() {
-        if (mediaRelocationHelper == null) {
-            mediaRelocationHelper = new MediaRelocationHelper(thumbnailService, getMediaRoot());
+    private void submitParsed(ImportPipeline pipeline, ImportCheckpoint checkpoint, long offset,
+                              LongFunction<PipelineItem> item) {
+        long seq = pipeline.nextSeq();
+        checkpoint.recordStart(seq, offset);
+        submitToPipeline(pipeline, item.apply(seq));
+    }
+
+    // ===== Pipeline stages =====
+
+    /**
+     * parse -> resolve/assign -> dedupe -> media -> persist. Parsing runs on this thread, or on
+     * parse workers whose output is merged back onto this thread in file order.
+     * Resolve is partitioned by counterparty so contact and conversation creation for one
+     * number or thread never races; dedupe and persist are partitioned by conversation so
+     * duplicates of the same message always meet in the same worker, in file order.
+     */
+    private ImportPipeline buildImportPipeline(UUID jobId, User importUser, ImportProgress progress,
+                                               ImportCheckpoint checkpoint, LastMessageTracker lastMessages,
+                                               ImportMetrics metrics) {
+        int batchSize = streamBatchSize;
+        // Inline imports keep every stage on the calling thread (and inside its transaction)
+        ImportPipeline pipeline = importInline
+                ? ImportPipeline.callerRuns(jobId.toString())
+                : new ImportPipeline(jobId.toString(),
+                        pipelineQueueCapacity > 0 ? pipelineQueueCapacity : 256,
+                        task -> () -> {
+                            threadLocalImportUser.set(importUser);
+                            metrics.bind();
+                            try { task.run(); }
+                            finally {
+                                threadLocalImportUser.remove();
+                                ImportMetrics.unbind();
+                            }
+                        });
+        pipeline.instrument(metrics::recordStage);
+        Optional<ImportDirectory> directory = infrastructure.loadDirectory(importUser);
+        if (directory.isPresent()) {
+            addDirectoryResolveStage(pipeline, importUser, directory.get(), batchSize > 0 ? batchSize : 500, lastMessages);
+        } else {
+            ConversationAssigner assigner = new ConversationAssigner(conversationService, null, null, lastMessages);
+            pipeline.stage("resolve", resolveWorkers, this::counterpartyPartition, () -> item -> {
+                Message msg = item.getMessage();
+                xmlParser.resolveContacts(msg, item.getSuggestedName(), item.isMultipart(), item.getParticipantNumbers());
+                if (item.isMultipart()) {
+                    assigner.assignConversationForMultipart(msg, item.getThreadKey(),
+                            item.getParticipantNumbers(), item.getSuggestedName(), importUser);
+                } else {
+                    assigner.assignConversationForSms(msg, item.getSuggestedName(), importUser);
+                }
+            });
         }
-        if (mediaHandler == null) {
-            mediaHandler = new MediaHandler(thumbnailService, getMediaRoot());
+        // Batched so the database is probed once per group of queued messages, not per message
+        pipeline.stage("dedupe", dedupeWorkers, this::conversationPartition, batchSize > 0 ? batchSize : 500,
+                () -> new ImportPipeline.StageWorker() {
+            // One bounded set per worker; partitioning keeps each conversation on one worker
+            private final FingerprintSet seen = new FingerprintSet(seenFingerprints > 0 ? seenFingerprints : 500_000);
+
+            @Override
+            public void process(PipelineItem item) {
+                processBatch(List.of(item));
+            }
+
+            @Override
+            public void processBatch(List<PipelineItem> items) {
+                List<Message> messages = new ArrayList<>(items.size());
+                for (PipelineItem item : items) messages.add(item.getMessage());
+                boolean[] dup = duplicateDetector.findDuplicates(messages, seen);
+                for (int i = 0; i < items.size(); i++) {
+                    if (dup[i]) {
+                        items.get(i).setDuplicate(true);
+                        progress.incDuplicateMessages();
+                    } else {
+                        progress.incImportedMessages();
+                    }
+                    progress.incProcessedMessages();
+                }
+            }
+        });
+        pipeline.stage("media", mediaWorkers, null, () -> item -> {
+            if (!item.isDuplicate()) {
+                for (PendingMedia pending : item.getPendingMedia()) {
+                    mediaHandler.storePendingMedia(pending);
+                    if (pending.part().getFilePath() != null) metrics.recordMediaBytes(pending.spooled().sizeBytes());
+                }
+            } else {
+                item.getPendingMedia().forEach(mediaHandler::discardPendingMedia);
+            }
+            item.setPendingMedia(List.of());
+        });
+        pipeline.stage("persist", persistWorkers, this::conversationPartition, () -> new ImportPipeline.StageWorker() {
+            private final List<Message> batch = new ArrayList<>(Math.max(batchSize, 1));
+            private final List<Long> batchSeqs = new ArrayList<>(Math.max(batchSize, 1));
+            private final Set<UUID> batchFingerprints = new HashSet<>();
+
+            @Override
+            public void process(PipelineItem item) {
+                if (item.isDuplicate()) {
+                    checkpoint.complete(item.getSeq());
+                    return;
+                }
+                UUID fingerprint = item.getMessage().getFingerprint();
+                if (fingerprint != null && !batchFingerprints.add(fingerprint)) {
+                    // A copy whose first one dedupe had already evicted from its seen set while it
+                    // was still uncommitted here; skip it rather than fail the batch on the index
+                    progress.reclassifyAsDuplicate();
+                    checkpoint.complete(item.getSeq());
+                    return;
+                }
+                batch.add(item.getMessage());
+                batchSeqs.add(item.getSeq());
+                flushStreamingIfNeeded(batch, progress);
+                committed();
+            }
+
+            @Override
+            public void finish() {
+                flushStreamingBatch(batch, progress);
+                committed();
+            }
+
+            // A failed flush throws and fails the pipeline, so only a cleared batch is ever committed
+            private void committed() {
+                if (!batch.isEmpty()) return;
+                batchFingerprints.clear();
+                // Before the checkpoint moves past these messages, so a resumed import never misses them
+                if (!batchSeqs.isEmpty()) lastMessages.flush();
+                batchSeqs.forEach(checkpoint::complete);
+                batchSeqs.clear();
+            }
+        });
+        return pipeline;
+    }
+
+    private void submitToPipeline(ImportPipeline pipeline, PipelineItem item) {
+        try {
+            pipeline.submit(item);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", ie);
         }
     }
 
+    /**
+     * Resolve stage backed by an {@link ImportDirectory}: the user's contacts and conversations are
+     * loaded once, and every batch first creates whatever it is missing in one insert per kind,
+     * so resolving and assigning the messages themselves never queries the database. Contact
+     * name upgrades found in a batch are written together once it is resolved.
+     */
+    private void addDirectoryResolveStage(ImportPipeline pipeline, User importUser, ImportDirectory directory,
+                                          int maxBatch, LastMessageTracker lastMessages) {
+        ContactResolver resolver = new ContactResolver(contactRepo, directory);
+        XmlMessageParser parser = new XmlMessageParser(resolver, () -> importUser);
+        ConversationAssigner assigner = new ConversationAssigner(conversationService, directory, resolver, lastMessages);
+        pipeline.stage("resolve", resolveWorkers, this::counterpartyPartition, maxBatch, () -> new ImportPipeline.StageWorker() {
+            @Override
+            public void process(PipelineItem item) {
+                processBatch(List.of(item));
+            }
+
+            @Override
+            public void processBatch(List<PipelineItem> items) {
+                parser.prepareContacts(items);
+                for (PipelineItem item : items) {
+                    parser.resolveContacts(item.getMessage(), item.getSuggestedName(), item.isMultipart(), item.getParticipantNumbers());
+                }
+                resolver.flushNameUpdates();
+                assigner.createMissing(items, importUser);
+                for (PipelineItem item : items) {
+                    Message msg = item.getMessage();
+                    if (item.isMultipart()) {
+                        assigner.assignConversationForMultipart(msg, item.getThreadKey(),
+                                item.getParticipantNumbers(), item.getSuggestedName(), importUser);
+                    } else {
+                        assigner.assignConversationForSms(msg, item.getSuggestedName(), importUser);
+                    }
+                }
+            }
+        });
+    }
+
+    private int counterpartyPartition(PipelineItem item) {
+        return Objects.hashCode(xmlParser.counterpartyKey(item.getMessage(), item.isMultipart(),
+                item.getThreadKey(), item.getParticipantNumbers()));
+    }
+
+    private int conversationPartition(PipelineItem item) {
+        Conversation convo = item.getMessage().getConversation();
+        return convo == null ? 0 : Objects.hashCode(convo.getId());
+    }
+
+    private User resolveImportUser() {
+        User user = threadLocalImportUser.get();
+        return (user != null) ? user : currentUserProvider.getCurrentUser();
+    }
+
     // visible for testing
     String normalizeNumber(String number) {
         return contactResolver.normalizeNumber(number);
@@ -299,10 +824,8 @@ public class ImportService {
 
     // visible for testing
     String guessExtension(String contentType, String name) {
-        ensureMediaHelper();
         return mediaHandler.guessExtension(contentType, name);
     }
-    /* visible for testing */ String computeDuplicateKeyForTest(Message msg) { return duplicateDetector.buildDuplicateKey(msg); }
 
     // Delegating methods for test compatibility (accessed via reflection)
     private String sanitizeContactName(String name) { return contactResolver.sanitizeContactName(name); }
@@ -312,7 +835,7 @@ public class ImportService {
         @Getter
         private final UUID id;
         @Getter
-        private final long totalBytes;
+        private volatile long totalBytes;
         @JsonIgnore
         private final AtomicLong bytesRead = new AtomicLong(0);
         @JsonIgnore
@@ -330,6 +853,12 @@ public class ImportService {
         private volatile Instant startedAt;
         @Getter
         private volatile Instant finishedAt;
+        @JsonIgnore
+        private volatile ImportPipeline pipeline;
+        @JsonIgnore
+        private volatile ImportScheduler.Ticket ticket;
+        @JsonIgnore
+        private volatile ImportMetrics metrics;
         public ImportProgress(UUID id, long totalBytes) { this.id=id; this.totalBytes=totalBytes; }
 
         public long getBytesRead(){return bytesRead.get();}
@@ -345,6 +874,7 @@ public class ImportService {
             return (int) ((current * 100) / totalBytes);
         }
 
+        void setTotalBytes(long v){totalBytes=v;}
         void setStatus(String s){status=s;}
         void setError(String e){error=e;}
         void setStartedAt(Instant t){startedAt=t;}
@@ -353,7 +883,41 @@ public class ImportService {
         void incProcessedMessages(){processedMessages.incrementAndGet();}
         void incImportedMessages(){importedMessages.incrementAndGet();}
         void incDuplicateMessages(){duplicateMessagesAtomic.incrementAndGet();}
+        // Dedupe counted it as imported; the insert found it already stored
+        void reclassifyAsDuplicate(){importedMessages.decrementAndGet(); duplicateMessagesAtomic.incrementAndGet();}
         void setDuplicateMessages(int v){duplicateMessages=v;}
+        void restoreCounters(long processed, long imported, long duplicates){
+            processedMessages.set(processed); importedMessages.set(imported); duplicateMessagesAtomic.set(duplicates);
+        }
+        void attachPipeline(ImportPipeline p){pipeline=p;}
+        void detachPipeline(){pipeline=null;}
+        void attachTicket(ImportScheduler.Ticket t){ticket=t;}
+        void attachMetrics(ImportMetrics m){metrics=m;}
+
+        /** Per-stage timings, DB statements, media bytes and flush latencies; empty until the job runs. */
+        public Map<String, Object> getMetrics() {
+            ImportMetrics m = metrics;
+            return m == null ? Map.of() : m.report();
+        }
+
+        /** 1-based place in the import queue while the job waits for its turn, otherwise 0. */
+        public int getQueuePosition() {
+            ImportScheduler.Ticket t = ticket;
+            return t == null ? 0 : t.position();
+        }
+
+        /** Estimated seconds until the import finishes, including queue time; null while unknown. */
+        public Long getEtaSeconds() {
+            ImportScheduler.Ticket t = ticket;
+            if (t == null) return null;
+            return isTerminal(status) ? Long.valueOf(0) : t.etaSeconds();
+        }
+
+        /** Items waiting in front of each pipeline stage; empty once the import has finished. */
+        public Map<String, Integer> getStageQueueDepths() {
+            ImportPipeline p = pipeline;
+            return p == null ? Map.of() : p.queueDepths();
+        }
     }
 
     // ===== Batch helpers =====
@@ -362,56 +926,10 @@ public class ImportService {
     }
     private void flushStreamingBatch(List<Message> batch, ImportProgress progress) {
         if (batch.isEmpty()) return;
-        try { 
-            messageRepo.saveAll(batch); 
-            batch.clear(); 
-        }
-        catch (org.springframework.dao.DataIntegrityViolationException dive) {
-            // Duplicate key constraint violation - retry individually
-            log.warn("Constraint violation during batch save (likely duplicates), retrying individually");
-            int saved = 0;
-            int skipped = 0;
-            for (Message msg : batch) {
-                try {
-                    messageRepo.save(msg);
-                    saved++;
-                } catch (org.springframework.dao.DataIntegrityViolationException ex) {
-                    // Skip this duplicate message
-                    log.debug("Skipped duplicate message: conversation={}, timestamp={}, direction={}", 
-                        msg.getConversation().getId(), msg.getTimestamp(), msg.getDirection());
-                    skipped++;
-                    progress.incDuplicateMessages();
-                } catch (Exception ex) {
-                    log.error("Failed to save message", ex);
-                    skipped++;
-                }
-            }
-            log.info("Individual save complete: {} saved, {} skipped as duplicates", saved, skipped);
-            batch.clear();
-        }
-        catch (org.springframework.orm.ObjectOptimisticLockingFailureException e) {
-            // A duplicate message was found during the batch save
-            // Try to save messages individually, skipping duplicates
-            log.warn("Optimistic locking failure during batch save, retrying individually");
-            int saved = 0;
-            int skipped = 0;
-            for (Message msg : batch) {
-                try {
-                    messageRepo.save(msg);
-                    saved++;
-                } catch (Exception ex) {
-                    // Skip this message, it's likely a duplicate
-                    log.debug("Skipped message during individual save: {}", ex.getMessage());
-                    skipped++;
-                }
-            }
-            log.info("Individual save complete: {} saved, {} skipped", saved, skipped);
-            batch.clear();
-        }
-        catch (Exception e) { 
-            log.error("Batch persist failed size={}", batch.size(), e); 
-            progress.setStatus("FAILED"); 
-            progress.setError("Persistence error: " + e.getMessage()); 
-        }
+        int rows = batch.size();
+        long start = System.nanoTime();
+        infrastructure.write(batch, progress);
+        ImportMetrics metrics = progress.metrics;
+        if (metrics != null) metrics.recordFlush(rows, System.nanoTime() - start);
     }
 }
@@ -12,15 +12,25 @@ import java.util.UUID;
  * Pattern: msg-{msgId}-seq{seq}-{epochSeconds}-{hash8}[optional -N]{ext}
  */
 public final class MediaFileNamer {
+    /** Only this many leading bytes of the payload feed the name hash. */
+    public static final int HASH_SLICE_BYTES = 65536;
+
     private MediaFileNamer() {}
 
     public static Path buildUniqueMediaPath(Path dir, Long messageId, Integer seq, Instant timestamp, byte[] dataBytes, String ext) {
+        return buildUniqueMediaPath(dir, messageId, seq, timestamp, shortHash(dataBytes), ext);
+    }
+
+    /**
+     * Variant for payloads that were hashed while streaming; {@code hashShort} comes from
+     * {@link #shortHash(MessageDigest, long)} over the first {@link #HASH_SLICE_BYTES} bytes.
+     */
+    public static Path buildUniqueMediaPath(Path dir, Long messageId, Integer seq, Instant timestamp, String hashShort, String ext) {
         if (dir == null) throw new IllegalArgumentException("dir required");
         if (seq == null) seq = 0;
         if (ext == null || ext.isBlank()) ext = ".bin";
         String msgIdStr = messageId == null ? "temp" : messageId.toString();
         long epoch = (timestamp != null ? timestamp.getEpochSecond() : Instant.now().getEpochSecond());
-        String hashShort = shortHash(dataBytes);
         String base = "msg-" + msgIdStr + "-seq" + seq + "-" + epoch + "-" + hashShort;
         Path candidate = dir.resolve(base + ext);
         int counter = 1;
@@ -35,9 +45,24 @@ public final class MediaFileNamer {
         return candidate;
     }
 
+    /** Digest to feed incrementally with the first {@link #HASH_SLICE_BYTES} bytes of a payload. */
+    public static MessageDigest newHashDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static String shortHash(MessageDigest digest, long bytesHashed) {
+        if (bytesHashed == 0) return "00000000";
+        if (digest == null) return UUID.randomUUID().toString().substring(0, 8);
+        return HexFormat.of().formatHex(digest.digest()).substring(0, 8);
+    }
+
     private static String shortHash(byte[] dataBytes) {
         if (dataBytes == null || dataBytes.length == 0) return "00000000";
-        int sliceLen = Math.min(dataBytes.length, 65536);
+        int sliceLen = Math.min(dataBytes.length, HASH_SLICE_BYTES);
         try {
             MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
             byte[] digest = sha1.digest(sliceLen == dataBytes.length ? dataBytes : slice(dataBytes, sliceLen));
@@ -3,6 +3,8 @@ package com.joshfouchey.smsarchive.service;
 import com.joshfouchey.smsarchive.model.MessagePart;
 import com.joshfouchey.smsarchive.repository.MessagePartRepository;
 import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationMonthStatsRepository;
+import com.joshfouchey.smsarchive.repository.ConversationSummaryRepository;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
@@ -21,13 +23,19 @@ public class MediaService {
     private final ContactRepository contactRepo;
     private final MessageRepository messageRepository;
     private final CurrentUserProvider currentUserProvider;
+    private final ConversationMonthStatsRepository monthStatsRepository;
+    private final ConversationSummaryRepository conversationSummaryRepository;
     private static final Logger log = LoggerFactory.getLogger(MediaService.class);
 
-    public MediaService(MessagePartRepository partRepo, ContactRepository contactRepo, MessageRepository messageRepository, CurrentUserProvider currentUserProvider) {
+    public MediaService(MessagePartRepository partRepo, ContactRepository contactRepo, MessageRepository messageRepository, CurrentUserProvider currentUserProvider,
+                        ConversationMonthStatsRepository monthStatsRepository,
+                        ConversationSummaryRepository conversationSummaryRepository) {
         this.partRepo = partRepo;
         this.contactRepo = contactRepo;
         this.messageRepository = messageRepository;
         this.currentUserProvider = currentUserProvider;
+        this.monthStatsRepository = monthStatsRepository;
+        this.conversationSummaryRepository = conversationSummaryRepository;
     }
 
     // Uses repository methods only; throws if contact not found
@@ -62,7 +70,15 @@ public class MediaService {
                 }
             }
         }
-        if (part.getMessage() != null) { messageRepository.deleteById(part.getMessage().getId()); }
+        if (part.getMessage() != null) {
+            var conversation = part.getMessage().getConversation();
+            messageRepository.deleteById(part.getMessage().getId());
+            // A deleted message may have been its month's first or last one, or the conversation's latest
+            if (conversation != null) {
+                monthStatsRepository.rebuildConversation(conversation.getId());
+                conversationSummaryRepository.rebuildConversation(conversation.getId());
+            }
+        }
         partRepo.delete(part);
         return true;
     }
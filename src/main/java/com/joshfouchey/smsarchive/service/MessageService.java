@@ -4,23 +4,29 @@ import com.joshfouchey.smsarchive.dto.ContactSummaryDto;
 import com.joshfouchey.smsarchive.dto.MessageContextDto;
 import com.joshfouchey.smsarchive.dto.MessageDto;
 import com.joshfouchey.smsarchive.dto.PagedResponse;
-import com.joshfouchey.smsarchive.mapper.MessageMapper;
-import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.repository.MessageDtoRepository;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Service
 public class MessageService {
 
     private final MessageRepository messageRepository;
+    private final MessageDtoRepository messageDtoRepository;
     private final CurrentUserProvider currentUserProvider;
 
-    public MessageService(MessageRepository messageRepository, CurrentUserProvider currentUserProvider) {
+    public MessageService(MessageRepository messageRepository, MessageDtoRepository messageDtoRepository,
+                          CurrentUserProvider currentUserProvider) {
         this.messageRepository = messageRepository;
+        this.messageDtoRepository = messageDtoRepository;
         this.currentUserProvider = currentUserProvider;
     }
 
@@ -48,10 +54,9 @@ public class MessageService {
         Sort sort = Sort.by("timestamp");
         sort = "asc".equalsIgnoreCase(sortDir) ? sort.ascending() : sort.descending();
         Pageable pageable = PageRequest.of(page, size, sort);
-        Page<Message> result = messageRepository.findByContactIdAndUser(contactId, currentUserProvider.getCurrentUser(), pageable);
-        List<MessageDto> content = result.getContent().stream()
-                .map(MessageMapper::toDto)
-                .toList();
+        var user = currentUserProvider.getCurrentUser();
+        Page<Long> result = messageRepository.findIdsByContactIdAndUser(contactId, user, pageable);
+        List<MessageDto> content = messageDtoRepository.findByIds(result.getContent(), user.getId());
         return new PagedResponse<>(
                 content,
                 result.getNumber(),
@@ -73,13 +78,20 @@ public class MessageService {
         if (centerEntity == null) { return null; }
         var conversationId = centerEntity.getConversation().getId();
         var centerTs = centerEntity.getTimestamp();
-        var beforePage = PageRequest.of(0, before);
-        var afterPage = PageRequest.of(0, after);
-        var beforeEntities = before == 0 ? List.<Message>of() : messageRepository.findBeforeInConversation(conversationId, centerTs, user, beforePage);
-        var afterEntities = after == 0 ? List.<Message>of() : messageRepository.findAfterInConversation(conversationId, centerTs, user, afterPage);
-        var centerDto = MessageMapper.toDto(centerEntity);
-        var beforeDtos = beforeEntities.stream().map(MessageMapper::toDto).toList();
-        var afterDtos = afterEntities.stream().map(MessageMapper::toDto).toList();
+        // Nearest first on both sides, then one DTO query for the whole window
+        var beforeIds = before == 0 ? List.<Long>of() : messageRepository.findIdsBeforeKey(
+                conversationId, user.getId(), centerTs, Long.MIN_VALUE, before);
+        var afterIds = after == 0 ? List.<Long>of() : messageRepository.findIdsAfterKey(
+                conversationId, user.getId(), centerTs, Long.MAX_VALUE, after);
+        List<Long> ids = new ArrayList<>(beforeIds.size() + 1 + afterIds.size());
+        ids.add(messageId);
+        ids.addAll(beforeIds);
+        ids.addAll(afterIds);
+        Map<Long, MessageDto> dtos = new HashMap<>();
+        messageDtoRepository.findByIds(ids, user.getId()).forEach(dto -> dtos.put(dto.id(), dto));
+        var centerDto = dtos.get(messageId);
+        var beforeDtos = beforeIds.stream().map(dtos::get).filter(Objects::nonNull).toList();
+        var afterDtos = afterIds.stream().map(dtos::get).filter(Objects::nonNull).toList();
         return new MessageContextDto(conversationId, centerDto, beforeDtos, afterDtos);
     }
 }
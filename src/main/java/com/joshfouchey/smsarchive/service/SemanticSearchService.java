@@ -1,11 +1,10 @@
 package com.joshfouchey.smsarchive.service;
 
+import com.joshfouchey.smsarchive.dto.MessageDto;
 import com.joshfouchey.smsarchive.dto.SemanticSearchHit;
 import com.joshfouchey.smsarchive.dto.SemanticSearchResult;
-import com.joshfouchey.smsarchive.mapper.MessageMapper;
-import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.repository.MessageDtoRepository;
 import com.joshfouchey.smsarchive.repository.MessageEmbeddingRepository;
-import com.joshfouchey.smsarchive.repository.MessageRepository;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import jakarta.persistence.EntityManager;
@@ -32,7 +31,7 @@ public class SemanticSearchService {
 
     private final EmbeddingService embeddingService;
     private final MessageEmbeddingRepository embeddingRepository;
-    private final MessageRepository messageRepository;
+    private final MessageDtoRepository messageDtoRepository;
     private final TransactionTemplate transactionTemplate;
 
     // Small bounded cache of query string → embedding vector. Repeated/paginated/identical
@@ -62,11 +61,11 @@ public class SemanticSearchService {
     public SemanticSearchService(
             EmbeddingService embeddingService,
             MessageEmbeddingRepository embeddingRepository,
-            MessageRepository messageRepository,
+            MessageDtoRepository messageDtoRepository,
             PlatformTransactionManager transactionManager) {
         this.embeddingService = embeddingService;
         this.embeddingRepository = embeddingRepository;
-        this.messageRepository = messageRepository;
+        this.messageDtoRepository = messageDtoRepository;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.transactionTemplate.setReadOnly(true);
     }
@@ -126,19 +125,19 @@ public class SemanticSearchService {
             }
         }
 
-        // Step 4: Load full message entities with associations for DTO mapping
+        // Step 4: Build the hits' message DTOs in one query
         List<Long> messageIds = dedupedResults.stream()
                 .map(row -> ((Number) row[0]).longValue())
                 .toList();
 
-        Map<Long, Message> messageMap = messageRepository.findAllById(messageIds).stream()
-                .collect(Collectors.toMap(Message::getId, m -> m));
+        Map<Long, MessageDto> messageMap = messageDtoRepository.findByIds(messageIds, userId).stream()
+                .collect(Collectors.toMap(MessageDto::id, m -> m));
 
         // Build hits preserving vector search order
         List<SemanticSearchHit> hits = new ArrayList<>();
         for (int i = 0; i < dedupedResults.size(); i++) {
             Long msgId = messageIds.get(i);
-            Message msg = messageMap.get(msgId);
+            MessageDto msg = messageMap.get(msgId);
             if (msg == null) continue;
 
             Object[] row = dedupedResults.get(i);
@@ -147,11 +146,11 @@ public class SemanticSearchService {
             if (i < 3) {
                 log.info("Semantic top-{}: msgId={} similarity={} body='{}'",
                         i + 1, msgId, String.format("%.4f", similarity),
-                        msg.getBody() != null ? msg.getBody().substring(0, Math.min(60, msg.getBody().length())) : "null");
+                        msg.body() != null ? msg.body().substring(0, Math.min(60, msg.body().length())) : "null");
             }
 
             if (similarity >= similarityThreshold) {
-                hits.add(new SemanticSearchHit(MessageMapper.toDto(msg), similarity));
+                hits.add(new SemanticSearchHit(msg, similarity));
             }
         }
 
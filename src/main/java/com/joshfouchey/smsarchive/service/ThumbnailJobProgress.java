@@ -56,6 +56,14 @@ public class ThumbnailJobProgress {
         totalParts.set(total);
     }
 
+    void incTotal() {
+        totalParts.incrementAndGet();
+    }
+
+    void addTotal(int parts) {
+        totalParts.addAndGet(parts);
+    }
+
     void incProcessed() {
         processedParts.incrementAndGet();
     }
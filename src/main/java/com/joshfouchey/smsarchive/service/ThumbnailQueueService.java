@@ -0,0 +1,199 @@
+package com.joshfouchey.smsarchive.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background queue for thumbnail generation so imports don't resize images on their own threads.
+ *
+ * The queue is the thumbnail_tasks table, keyed by original file path: queueing a path that is
+ * already waiting is a no-op. Up to {@code workers} drainers on the thumbnail pool lease the
+ * oldest unclaimed tasks a batch at a time: one UPDATE ... RETURNING over FOR UPDATE SKIP LOCKED
+ * stamps claimed_at/claimed_by and commits on its own, so drainers never wait on each other's
+ * rows and no transaction or connection is held while images are resized. The rows are deleted
+ * once the batch is written. Leases left by a process that stopped halfway are released on the
+ * next start, which then resumes them. {@link #drainBacklog()} runs periodically as a safety net
+ * for work no drainer was started for.
+ */
+@Slf4j
+@Service
+public class ThumbnailQueueService {
+
+    private static final int MAX_RECORDED_ERRORS = 100;
+
+    // Oldest first; rows another drainer is claiming right now are skipped, not waited for
+    private static final String CLAIM_SQL = """
+            UPDATE thumbnail_tasks SET claimed_at = now(), claimed_by = ?
+            WHERE file_path IN (
+                SELECT file_path FROM thumbnail_tasks
+                WHERE claimed_at IS NULL
+                ORDER BY enqueued_at
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED)
+            RETURNING file_path, content_type
+            """;
+
+    private final ThumbnailService thumbnailService;
+    private final JdbcTemplate jdbcTemplate;
+    // Identifies this process's leases
+    private final String instanceId = UUID.randomUUID().toString();
+    private TaskExecutor thumbnailTaskExecutor;
+
+    private final AtomicInteger drainers = new AtomicInteger();
+    // Bumped by every enqueue, so a drainer that is about to stop can tell it may have missed work
+    private final AtomicLong enqueued = new AtomicLong();
+    // Cumulative since startup; total grows as work is queued
+    private final ThumbnailJobProgress progress = new ThumbnailJobProgress();
+
+    @Value("${smsarchive.thumbnails.queue.async:true}")
+    private boolean async;
+
+    @Value("${smsarchive.thumbnails.queue.workers:2}")
+    private int workers;
+
+    @Value("${smsarchive.thumbnails.queue.batchSize:50}")
+    private int batchSize;
+
+    public ThumbnailQueueService(ThumbnailService thumbnailService, JdbcTemplate jdbcTemplate) {
+        this.thumbnailService = thumbnailService;
+        this.jdbcTemplate = jdbcTemplate;
+        progress.start();
+    }
+
+    @Autowired(required = false)
+    public void setThumbnailTaskExecutor(@Qualifier("thumbnailTaskExecutor") TaskExecutor executor) {
+        this.thumbnailTaskExecutor = executor;
+    }
+
+    /**
+     * Queue thumbnail generation for an original media file. Runs on the caller when the
+     * queue is disabled (smsarchive.thumbnails.queue.async=false) or no pool is configured.
+     */
+    public void enqueue(Path original, String contentType) {
+        String path = original.toString();
+        if (!async || thumbnailTaskExecutor == null) {
+            progress.incTotal();
+            generate(path, contentType);
+            return;
+        }
+        int inserted = jdbcTemplate.update(
+                "INSERT INTO thumbnail_tasks (file_path, content_type) VALUES (?, ?) ON CONFLICT (file_path) DO NOTHING",
+                path, contentType);
+        if (inserted == 0) return; // already waiting
+        progress.incTotal();
+        enqueued.incrementAndGet();
+        startDrainer();
+    }
+
+    /** Progress of all queued work since startup, in the same shape as rebuild jobs. */
+    public ThumbnailJobProgress getProgress() {
+        return progress;
+    }
+
+    /** Thumbnails waiting in the backlog, including those being generated right now. */
+    public long getBacklogSize() {
+        Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM thumbnail_tasks", Long.class);
+        return rows == null ? 0 : rows;
+    }
+
+    /** Resume whatever was left in the backlog when the application last stopped, leased or not. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeBacklog() {
+        if (!async || thumbnailTaskExecutor == null) return;
+        int released = jdbcTemplate.update(
+                "UPDATE thumbnail_tasks SET claimed_at = NULL, claimed_by = NULL WHERE claimed_by <> ?", instanceId);
+        if (released > 0) log.info("Released {} thumbnail task(s) leased before the last stop", released);
+        long left = getBacklogSize();
+        if (left == 0) return;
+        log.info("Resuming {} queued thumbnail(s) from backlog", left);
+        progress.addTotal((int) Math.min(Integer.MAX_VALUE, left));
+        startDrainer();
+    }
+
+    /** Start a drainer if tasks are waiting and none is running, e.g. after the pool refused one. */
+    @Scheduled(fixedDelayString = "${smsarchive.thumbnails.queue.refillInterval:PT60S}", initialDelayString = "PT60S")
+    public void drainBacklog() {
+        if (!async || thumbnailTaskExecutor == null || drainers.get() > 0) return;
+        Long unclaimed = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM thumbnail_tasks WHERE claimed_at IS NULL", Long.class);
+        if (unclaimed != null && unclaimed > 0) startDrainer();
+    }
+
+    private void startDrainer() {
+        int running;
+        do {
+            running = drainers.get();
+            if (running >= Math.max(1, workers)) return;
+        } while (!drainers.compareAndSet(running, running + 1));
+        try {
+            thumbnailTaskExecutor.execute(this::drain);
+        } catch (TaskRejectedException _) {
+            // Still in thumbnail_tasks; picked up by the next drainBacklog
+            drainers.decrementAndGet();
+        }
+    }
+
+    private void drain() {
+        long seen;
+        try {
+            do {
+                seen = enqueued.get();
+            } while (claimAndGenerate() > 0);
+        } finally {
+            drainers.decrementAndGet();
+        }
+        // Work queued after the last, empty claim may have found every drainer still busy
+        if (enqueued.get() != seen) startDrainer();
+    }
+
+    /** Lease the next batch, generate it with no transaction open, then delete it; returns the batch size. */
+    private int claimAndGenerate() {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(CLAIM_SQL, instanceId, batchSize > 0 ? batchSize : 50);
+        if (rows.isEmpty()) return 0;
+        for (Map<String, Object> row : rows) generate((String) row.get("file_path"), (String) row.get("content_type"));
+        // Only our lease: a task released and claimed again elsewhere is that drainer's to delete
+        jdbcTemplate.batchUpdate("DELETE FROM thumbnail_tasks WHERE file_path = ? AND claimed_by = ?",
+                rows.stream().map(row -> new Object[]{row.get("file_path"), instanceId}).toList());
+        return rows.size();
+    }
+
+    private void generate(String path, String contentType) {
+        try {
+            Path original = Paths.get(path);
+            if (!Files.exists(original)) {
+                progress.incSkipped();
+                return;
+            }
+            Path thumb = thumbnailService.deriveStemThumbnail(original);
+            if (thumbnailService.createThumbnail(original, thumb, contentType, true)) {
+                progress.incRegenerated();
+            } else {
+                progress.incSkipped();
+            }
+        } catch (Exception e) {
+            log.warn("Thumbnail generation failed for {}", path, e);
+            if (progress.getErrors().size() < MAX_RECORDED_ERRORS) progress.addError(path + ": " + e.getMessage());
+            progress.incSkipped();
+        } finally {
+            progress.incProcessed();
+        }
+    }
+}
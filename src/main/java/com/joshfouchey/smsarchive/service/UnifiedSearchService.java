@@ -1,8 +1,8 @@
 package com.joshfouchey.smsarchive.service;
 
 import com.joshfouchey.smsarchive.dto.*;
-import com.joshfouchey.smsarchive.mapper.MessageMapper;
 import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.repository.MessageDtoRepository;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -32,6 +32,7 @@ public class UnifiedSearchService {
 
     private final SemanticSearchService semanticSearchService;
     private final MessageRepository messageRepository;
+    private final MessageDtoRepository messageDtoRepository;
 
     @Value("${smsarchive.ai.search.min-score:0.005}")
     private double minScore;
@@ -44,9 +45,11 @@ public class UnifiedSearchService {
 
     public UnifiedSearchService(
             SemanticSearchService semanticSearchService,
-            MessageRepository messageRepository) {
+            MessageRepository messageRepository,
+            MessageDtoRepository messageDtoRepository) {
         this.semanticSearchService = semanticSearchService;
         this.messageRepository = messageRepository;
+        this.messageDtoRepository = messageDtoRepository;
     }
 
     public UnifiedSearchResult search(
@@ -285,6 +288,8 @@ public class UnifiedSearchService {
             semanticResult = new SemanticSearchResult(query, List.of(), 0);
         }
 
+        Map<Long, MessageDto> keywordDtos = dtosById(keywordMessages, userId);
+
         // Build RRF scores by message ID
         Map<Long, Double> rrfScores = new LinkedHashMap<>();
         Map<Long, MessageDto> messageDtos = new LinkedHashMap<>();
@@ -297,7 +302,9 @@ public class UnifiedSearchService {
             Long msgId = m.getId();
             double score = 1.0 / (RRF_K + i + 1);
             rrfScores.merge(msgId, score, Double::sum);
-            messageDtos.putIfAbsent(msgId, MessageMapper.toDto(m));
+            MessageDto dto = keywordDtos.get(msgId);
+            if (dto == null) continue;
+            messageDtos.putIfAbsent(msgId, dto);
             sources.merge(msgId, "KEYWORD", (a, b) -> "BOTH");
             if (m.getConversation() != null) {
                 conversationIds.putIfAbsent(msgId, m.getConversation().getId());
@@ -333,8 +340,10 @@ public class UnifiedSearchService {
             String query, UUID userId, Long conversationId, Long contactId, int topK) {
         List<Message> messages = keywordMessages(query, userId, conversationId, contactId, topK);
 
+        Map<Long, MessageDto> dtos = dtosById(messages, userId);
         List<UnifiedSearchHit> hits = messages.stream()
-                .map(m -> new UnifiedSearchHit(MessageMapper.toDto(m), 1.0 / (RRF_K + 1), "KEYWORD",
+                .filter(m -> dtos.containsKey(m.getId()))
+                .map(m -> new UnifiedSearchHit(dtos.get(m.getId()), 1.0 / (RRF_K + 1), "KEYWORD",
                         m.getConversation() != null ? m.getConversation().getId() : null, 0))
                 .toList();
 
@@ -355,4 +364,10 @@ public class UnifiedSearchService {
         return messageRepository.searchByTextUserPaginated(
                 query, userId, PageRequest.of(0, topK)).getContent();
     }
+
+    // Keyword queries return bare message rows; their DTOs come from the read model in one query
+    private Map<Long, MessageDto> dtosById(List<Message> messages, UUID userId) {
+        return messageDtoRepository.findByIds(messages.stream().map(Message::getId).toList(), userId).stream()
+                .collect(Collectors.toMap(MessageDto::id, dto -> dto));
+    }
 }
@@ -0,0 +1,98 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.github.luben.zstd.ZstdInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Container of a backup file, recognised by its leading magic bytes rather than its name.
+ *
+ * Compressed backups are decompressed on the fly while they are parsed: the caller counts the
+ * raw (compressed) bytes it hands in, so import progress is measured against the file as
+ * stored, and no decompressed copy is ever written. A zip may hold several backups; each
+ * {@code *.xml} entry is parsed as its own document, in archive order.
+ *
+ * Only plain XML can be cut into chunks for parallel parsing or resumed from a byte offset;
+ * compressed backups are parsed sequentially and resume from the start (already imported
+ * messages are then skipped as duplicates).
+ */
+public enum BackupFormat {
+
+    XML,
+    GZIP,
+    ZIP,
+    ZSTD;
+
+    private static final int MAGIC_LENGTH = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Receives each XML document of a backup; must not close the stream. */
+    @FunctionalInterface
+    public interface DocumentHandler {
+        void parse(InputStream document) throws Exception;
+    }
+
+    /** Whether offsets in the raw file are offsets in the XML. */
+    public boolean isPlainXml() {
+        return this == XML;
+    }
+
+    public static BackupFormat detect(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return detect(in.readNBytes(MAGIC_LENGTH));
+        }
+    }
+
+    static BackupFormat detect(byte[] head) {
+        if (head.length >= 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b) return GZIP;
+        if (head.length >= 4 && head[0] == 'P' && head[1] == 'K'
+                && ((head[2] == 3 && head[3] == 4) || (head[2] == 5 && head[3] == 6))) return ZIP;
+        if (head.length >= 4 && (head[0] & 0xff) == 0x28 && (head[1] & 0xff) == 0xb5
+                && (head[2] & 0xff) == 0x2f && (head[3] & 0xff) == 0xfd) return ZSTD;
+        return XML;
+    }
+
+    /**
+     * Detect the format of {@code raw} and pass every XML document in it to {@code handler}.
+     * Reads no further ahead of the handler than the decompressor needs, so a caller counting
+     * the bytes of {@code raw} sees how far into the stored file parsing has got.
+     */
+    public static BackupFormat forEachDocument(InputStream raw, DocumentHandler handler) throws Exception {
+        PushbackInputStream in = new PushbackInputStream(raw, MAGIC_LENGTH);
+        byte[] head = in.readNBytes(MAGIC_LENGTH);
+        in.unread(head);
+        BackupFormat format = detect(head);
+        switch (format) {
+            case XML -> handler.parse(in);
+            case GZIP -> handler.parse(new GZIPInputStream(in, BUFFER_SIZE));
+            case ZSTD -> handler.parse(new BufferedInputStream(new ZstdInputStream(in), BUFFER_SIZE));
+            case ZIP -> {
+                ZipInputStream zip = new ZipInputStream(in);
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    if (!entry.isDirectory() && isXmlEntry(entry.getName())) {
+                        handler.parse(CloseShieldInputStream.wrap(zip));
+                    }
+                    zip.closeEntry();
+                }
+            }
+        }
+        return format;
+    }
+
+    private static boolean isXmlEntry(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        // macOS archives carry resource-fork twins under __MACOSX/
+        return lower.endsWith(".xml") && !lower.startsWith("__macosx/");
+    }
+}
@@ -0,0 +1,183 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.CountingInputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses one backup file on several threads.
+ *
+ * The file is memory-mapped and cut at top-level message start tags (see
+ * {@link XmlMessageBoundaries#splitPoints}); every chunk is parsed on its own behind a
+ * synthetic root element. Chunk results are handed to the sink strictly in file order on the
+ * calling thread, so everything downstream (sequence numbers, checkpoints, conversation
+ * assignment, duplicate detection) sees exactly what a sequential parse would produce.
+ *
+ * Memory: at most {@code 2 * workers} chunks are parsed ahead of the sink, so roughly that
+ * many chunks' worth of parsed messages (attachments are already spooled to disk) are held.
+ */
+@Slf4j
+public class ChunkedBackupParser {
+
+    // Largest single mapping; bigger chunks are read as several consecutive mappings
+    private static final long MAX_MAPPING = 1L << 30;
+
+    /** A parsed message and the byte offset (approximate, see ImportCheckpoint) of its start tag. */
+    public record Parsed(long offset, Message message, String suggestedName, boolean multipart, String threadKey,
+                         Set<String> participantNumbers, List<PendingMedia> pendingMedia) {
+
+        public PipelineItem toItem(long seq) {
+            return multipart
+                    ? PipelineItem.multipart(seq, message, threadKey, participantNumbers, suggestedName, pendingMedia)
+                    : PipelineItem.sms(seq, message, suggestedName);
+        }
+    }
+
+    @FunctionalInterface
+    public interface ParsedSink {
+        void accept(Parsed parsed) throws Exception;
+    }
+
+    private final XmlMessageParser parser;
+    private final XmlParserBackend backend;
+    private final XmlMessageParser.MediaSpooler spooler;
+    private final int workers;
+    private final long chunkBytes;
+
+    public ChunkedBackupParser(XmlMessageParser parser, XmlParserBackend backend,
+                               XmlMessageParser.MediaSpooler spooler, int workers, long chunkBytes) {
+        this.parser = parser;
+        this.backend = backend;
+        this.spooler = spooler;
+        this.workers = Math.max(1, workers);
+        this.chunkBytes = Math.max(1, chunkBytes);
+    }
+
+    /**
+     * Parse {@code file} from {@code from} (0 or a message start offset) to the end.
+     *
+     * @return number of chunks the file was cut into
+     */
+    public int parse(String name, Path file, long from, ParsedSink sink) throws Exception {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Long> points = XmlMessageBoundaries.splitPoints(ch, from, chunkBytes);
+            int chunks = points.size() - 1;
+            log.info("Parsing {} in {} chunk(s) on {} thread(s)", file.getFileName(), chunks, Math.min(workers, chunks));
+            AtomicInteger threadNo = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, chunks), r -> {
+                Thread t = new Thread(r, "import-parse-" + threadNo.getAndIncrement() + "-" + name);
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                Deque<Future<List<Parsed>>> inFlight = new ArrayDeque<>();
+                int window = 2 * workers;
+                int next = 0;
+                while (next < chunks || !inFlight.isEmpty()) {
+                    while (next < chunks && inFlight.size() < window) {
+                        long start = points.get(next);
+                        long end = points.get(next + 1);
+                        boolean last = next == chunks - 1;
+                        inFlight.add(pool.submit(() -> parseChunk(ch, start, end, last)));
+                        next++;
+                    }
+                    for (Parsed parsed : await(inFlight.poll())) {
+                        sink.accept(parsed);
+                    }
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            return chunks;
+        }
+    }
+
+    private List<Parsed> parseChunk(FileChannel ch, long start, long end, boolean last) throws Exception {
+        List<Parsed> out = new ArrayList<>();
+        try (CountingInputStream cis = new CountingInputStream(mappedStream(ch, start, end))) {
+            InputStream xml = cis;
+            // Only a chunk at the very start of the file has the real XML declaration and root
+            if (start > 0) xml = new SequenceInputStream(new ByteArrayInputStream(XmlMessageBoundaries.SYNTHETIC_ROOT), xml);
+            if (!last) xml = new SequenceInputStream(xml, new ByteArrayInputStream(XmlMessageBoundaries.SYNTHETIC_ROOT_END));
+            XmlMessageParser.ElementContext ctx = new XmlMessageParser.ElementContext(spooler);
+            long[] messageStart = {start};
+            XmlMessageParser.SmsReadyHandler onSms = (msg, suggestedName) ->
+                    out.add(new Parsed(messageStart[0], msg, suggestedName, false, null, null, null));
+            XmlMessageParser.MultipartReadyHandler onMultipart = (msg, threadKey, participants, suggestedName, media) ->
+                    out.add(new Parsed(messageStart[0], msg, suggestedName, true, threadKey, participants, media));
+            try (XmlElementReader r = backend.open(xml)) {
+                int evt;
+                while ((evt = r.next()) != XMLStreamConstants.END_DOCUMENT) {
+                    if (evt == XMLStreamConstants.START_ELEMENT) {
+                        String local = r.getLocalName();
+                        if ("sms".equals(local) || "mms".equals(local) || "rcs".equals(local)) {
+                            messageStart[0] = start + cis.getByteCount();
+                        }
+                        parser.handleStartElement(r, ctx, onSms);
+                    } else {
+                        parser.handleEndElement(r, ctx, onMultipart);
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private static InputStream mappedStream(FileChannel ch, long start, long end) throws IOException {
+        List<InputStream> parts = new ArrayList<>();
+        for (long pos = start; pos < end; pos += MAX_MAPPING) {
+            parts.add(new ByteBufferInputStream(ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAX_MAPPING, end - pos))));
+        }
+        return parts.size() == 1 ? parts.getFirst() : new SequenceInputStream(Collections.enumeration(parts));
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(MappedByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
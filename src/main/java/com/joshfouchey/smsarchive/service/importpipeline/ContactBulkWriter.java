@@ -0,0 +1,115 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.Contact;
+import com.joshfouchey.smsarchive.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Set-based contact writes for imports.
+ *
+ * {@link #upsert} creates a whole window of contacts with one multi-row
+ * INSERT ... ON CONFLICT (user_id, normalized_number) DO UPDATE ... RETURNING, so a number
+ * created concurrently elsewhere comes back as the existing row instead of failing the batch
+ * (no lookup, no retry). {@link #updateNames} writes the name changes collected over a window
+ * in one UPDATE ... FROM (VALUES ...).
+ */
+@Slf4j
+public class ContactBulkWriter {
+
+    // Five bind parameters per row; keeps each statement well below the 32767 limit
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    // The no-op DO UPDATE (rather than DO NOTHING) makes RETURNING include rows that already existed
+    private static final String UPSERT_PREFIX = """
+            INSERT INTO contacts (id, user_id, number, normalized_number, name)
+            VALUES\s""";
+
+    private static final String UPSERT_SUFFIX = """
+
+            ON CONFLICT (user_id, normalized_number) DO UPDATE SET updated_at = contacts.updated_at
+            RETURNING id, number, normalized_number, name, created_at, updated_at
+            """;
+
+    private static final String UPDATE_NAMES_PREFIX = """
+            UPDATE contacts c
+            SET name = v.name, updated_at = now()
+            FROM (VALUES\s""";
+
+    private static final String UPDATE_NAMES_SUFFIX = """
+            ) AS v(id, name)
+            WHERE c.id = v.id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ContactBulkWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Insert the candidates (distinct normalized numbers, all for {@code user}) or return the rows
+     * already stored for them. Returned contacts are keyed by normalized number.
+     */
+    public Map<String, Contact> upsert(User user, List<Contact> candidates) {
+        Map<String, Contact> stored = new HashMap<>(candidates.size() * 2);
+        for (int from = 0; from < candidates.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Contact> rows = candidates.subList(from, Math.min(candidates.size(), from + MAX_ROWS_PER_STATEMENT));
+            // Pooled ids (see PooledIds); those of numbers that already existed go unused
+            long[] ids = jdbcTemplate.execute(
+                    (ConnectionCallback<long[]>) conn -> PooledIds.reserve(conn, "contacts_id_seq", rows.size()));
+            StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+            Object[] args = new Object[rows.size() * 5];
+            for (int i = 0; i < rows.size(); i++) {
+                Contact c = rows.get(i);
+                sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?)");
+                args[5 * i] = ids[i];
+                args[5 * i + 1] = user.getId();
+                args[5 * i + 2] = c.getNumber();
+                args[5 * i + 3] = c.getNormalizedNumber();
+                args[5 * i + 4] = c.getName();
+            }
+            sql.append(UPSERT_SUFFIX);
+            jdbcTemplate.query(sql.toString(), rs -> {
+                Contact c = new Contact();
+                c.setId(rs.getLong("id"));
+                c.setUser(user);
+                c.setNumber(rs.getString("number"));
+                c.setNormalizedNumber(rs.getString("normalized_number"));
+                c.setName(rs.getString("name"));
+                c.setCreatedAt(instant(rs.getTimestamp("created_at")));
+                c.setUpdatedAt(instant(rs.getTimestamp("updated_at")));
+                stored.put(c.getNormalizedNumber(), c);
+            }, args);
+        }
+        log.debug("Upserted {} contact(s)", stored.size());
+        return stored;
+    }
+
+    /** Write the current name of each contact (all must have ids). */
+    public void updateNames(Collection<Contact> contacts) {
+        List<Contact> rows = new ArrayList<>(contacts);
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Contact> chunk = rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_STATEMENT));
+            StringBuilder sql = new StringBuilder(UPDATE_NAMES_PREFIX);
+            Object[] args = new Object[chunk.size() * 2];
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append("(?::bigint, ?::text)");
+                args[2 * i] = chunk.get(i).getId();
+                args[2 * i + 1] = chunk.get(i).getName();
+            }
+            sql.append(UPDATE_NAMES_SUFFIX);
+            jdbcTemplate.update(sql.toString(), args);
+        }
+        log.debug("Updated {} contact name(s)", rows.size());
+    }
+
+    private static Instant instant(Timestamp ts) {
+        return ts == null ? null : ts.toInstant();
+    }
+}
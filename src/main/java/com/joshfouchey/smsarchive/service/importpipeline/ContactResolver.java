@@ -5,24 +5,39 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.joshfouchey.smsarchive.model.Contact;
 import com.joshfouchey.smsarchive.model.User;
 import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.util.PhoneNumberCanonicalizer;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 
 @Slf4j
 public class ContactResolver {
 
-    private static final String UNKNOWN_NORMALIZED = "__unknown__";
+    private static final String UNKNOWN_NORMALIZED = PhoneNumberCanonicalizer.UNKNOWN;
     private static final String UNKNOWN_NUMBER_DISPLAY = "unknown";
     private static final Set<String> GROUP_KEYWORDS = Set.of("group", "team", "vacation", "chat");
 
     private final ContactRepository contactRepo;
+    private final ImportDirectory directory;
     private final Cache<String, Contact> contactCache;
+    // Memoized: the parser canonicalizes every <addr>, and the same few addresses repeat throughout a backup
+    private final PhoneNumberCanonicalizer phoneNumbers = new PhoneNumberCanonicalizer();
+
+    /** A contact a message is about to resolve: the raw address and the name the backup suggests. */
+    public record ContactRequest(String number, String suggestedName) {}
 
     public ContactResolver(ContactRepository contactRepo) {
+        this(contactRepo, null);
+    }
+
+    /** With a directory, lookups are served from it and never query the database. */
+    public ContactResolver(ContactRepository contactRepo, ImportDirectory directory) {
         this.contactRepo = contactRepo;
+        this.directory = directory;
         this.contactCache = Caffeine.newBuilder()
                 .maximumSize(1000)
                 .expireAfterAccess(Duration.ofMinutes(10))
@@ -31,6 +46,9 @@ public class ContactResolver {
 
     public Contact resolveContact(User user, String number, String suggestedName) {
         String normalized = normalizeNumber(number);
+        if (directory != null) {
+            return resolveFromDirectory(user, number, normalized, suggestedName);
+        }
         String cacheKey = user.getId() + "|" + normalized;
         Contact cached = contactCache.getIfPresent(cacheKey);
         if (cached != null) {
@@ -45,13 +63,7 @@ public class ContactResolver {
         }
         Contact contact = contactRepo.findByUserAndNormalizedNumber(user, normalized).orElseGet(() -> {
             try {
-                Contact c = new Contact();
-                c.setUser(user);
-                c.setNumber(number == null ? UNKNOWN_NUMBER_DISPLAY : number);
-                c.setNormalizedNumber(normalized);
-                String sanitizedName = sanitizeContactName(suggestedName);
-                c.setName(sanitizedName != null ? sanitizedName : c.getNumber());
-                return contactRepo.save(c);
+                return contactRepo.save(newContact(user, number, normalized, suggestedName));
             } catch (org.springframework.dao.DataIntegrityViolationException e) {
                 return contactRepo.findByUserAndNormalizedNumber(user, normalized)
                         .orElseThrow(() -> new RuntimeException("Failed to find or create contact for: " + normalized));
@@ -66,19 +78,54 @@ public class ContactResolver {
         return contact;
     }
 
-    public String normalizeNumber(String number) {
-        if (number == null || number.isBlank()) {
-            return UNKNOWN_NORMALIZED;
+    /**
+     * Create, in one batch, every contact the given requests would resolve that does not exist
+     * yet, so resolving them afterwards is pure lookups. Only has an effect with a directory.
+     */
+    public void createMissing(User user, List<ContactRequest> requests) {
+        if (directory == null || requests.isEmpty()) return;
+        List<Contact> missing = new ArrayList<>();
+        for (ContactRequest request : requests) {
+            String normalized = normalizeNumber(request.number());
+            if (directory.contact(normalized) == null) {
+                missing.add(newContact(user, request.number(), normalized, request.suggestedName()));
+            }
         }
-        String digits = number.replaceAll("\\D", "");
-        if (digits.isEmpty()) return UNKNOWN_NORMALIZED;
+        directory.addContacts(missing);
+    }
+
+    /** Write the name changes made while resolving the current window (directory mode only). */
+    public void flushNameUpdates() {
+        if (directory != null) directory.flushNames();
+    }
 
-        // NANP canonicalization: always 11 digits with leading 1
-        if (digits.length() == 10) {
-            digits = "1" + digits;
+    private Contact resolveFromDirectory(User user, String number, String normalized, String suggestedName) {
+        Contact contact = directory.contact(normalized);
+        if (contact == null) {
+            directory.addContacts(List.of(newContact(user, number, normalized, suggestedName)));
+            contact = directory.contact(normalized);
         }
-        // Add + prefix to match database standard (E.164 format)
-        return "+" + digits;
+        if (shouldUpdateContactName(contact, suggestedName)) {
+            // The directory's instance is the one every conversation shares, so update it in place
+            contact.setName(sanitizeContactName(suggestedName));
+            directory.nameChanged(contact);
+            log.debug("Updated contact {} name", contact.getId());
+        }
+        return contact;
+    }
+
+    private Contact newContact(User user, String number, String normalized, String suggestedName) {
+        Contact c = new Contact();
+        c.setUser(user);
+        c.setNumber(number == null ? UNKNOWN_NUMBER_DISPLAY : number);
+        c.setNormalizedNumber(normalized);
+        String sanitizedName = sanitizeContactName(suggestedName);
+        c.setName(sanitizedName != null ? sanitizedName : c.getNumber());
+        return c;
+    }
+
+    public String normalizeNumber(String number) {
+        return phoneNumbers.canonical(number);
     }
 
     public String sanitizeContactName(String name) {
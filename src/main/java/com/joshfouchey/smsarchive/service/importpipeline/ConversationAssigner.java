@@ -1,5 +1,6 @@
 package com.joshfouchey.smsarchive.service.importpipeline;
 
+import com.joshfouchey.smsarchive.model.Contact;
 import com.joshfouchey.smsarchive.model.Conversation;
 import com.joshfouchey.smsarchive.model.Message;
 import com.joshfouchey.smsarchive.model.User;
@@ -15,9 +16,25 @@ public class ConversationAssigner {
     private static final String META_NORMALIZED_NUMBER = "_normalizedNumber";
 
     private final ConversationService conversationService;
+    private final ImportDirectory directory;
+    private final ContactResolver contactResolver;
+    private final LastMessageTracker lastMessages;
 
     public ConversationAssigner(ConversationService conversationService) {
+        this(conversationService, null, null, null);
+    }
+
+    /**
+     * With a directory, conversations (and participant contacts) are looked up in it and created
+     * the same way {@link ConversationService} would create them, without per-message queries.
+     * With a tracker, newer message times are only recorded and written back by the tracker.
+     */
+    public ConversationAssigner(ConversationService conversationService, ImportDirectory directory,
+                                ContactResolver contactResolver, LastMessageTracker lastMessages) {
         this.conversationService = conversationService;
+        this.directory = directory;
+        this.contactResolver = contactResolver;
+        this.lastMessages = lastMessages;
     }
 
     public void assignConversationForSms(Message msg, String suggestedName, User user) {
@@ -27,7 +44,7 @@ public class ConversationAssigner {
             cleanupNormalizedMetadata(msg);
             return;
         }
-        Conversation convo = conversationService.findOrCreateOneToOneForUser(user, normalized, suggestedName);
+        Conversation convo = findOrCreateOneToOne(user, normalized, suggestedName);
         if (isInvalidConversation(convo)) {
             log.error("Failed to create/find conversation for normalized number: {}", normalized);
             cleanupNormalizedMetadata(msg);
@@ -44,12 +61,10 @@ public class ConversationAssigner {
             log.debug("Skipping conversation assignment - no participant numbers");
             return;
         }
-        if ((threadKey == null || threadKey.isBlank()) && participantNumbers.size() > 1) {
-            threadKey = buildSyntheticThreadKey(participantNumbers);
-        }
+        threadKey = effectiveThreadKey(threadKey, participantNumbers);
         Conversation convo = (participantNumbers.size() == 1)
-                ? conversationService.findOrCreateOneToOneForUser(user, participantNumbers.iterator().next(), suggestedName)
-                : conversationService.findOrCreateGroupForUser(user, threadKey, participantNumbers, suggestedName);
+                ? findOrCreateOneToOne(user, participantNumbers.iterator().next(), suggestedName)
+                : findOrCreateGroup(user, threadKey, participantNumbers, suggestedName);
         if (isInvalidConversation(convo)) {
             log.error("Failed to create/find conversation for participants: {}", participantNumbers);
             return;
@@ -59,6 +74,124 @@ public class ConversationAssigner {
         log.debug("Assigned multipart message to conversation ID: {}", convo.getId());
     }
 
+    /**
+     * Create, in one batch each, the participant contacts and then the conversations that the
+     * given (contact-resolved) items will be assigned to and that do not exist yet. Only has an
+     * effect with a directory; assigning the items afterwards is pure lookups.
+     */
+    public void createMissing(List<PipelineItem> items, User user) {
+        if (directory == null || items.isEmpty()) return;
+        List<Contact> contacts = new ArrayList<>();
+        forEachMissingConversation(items, (normalized, threadKey, participants, suggestedName) -> {
+            if (threadKey == null) {
+                if (directory.contact(normalized) == null) contacts.add(newParticipant(user, normalized, suggestedName));
+            } else {
+                for (String number : participants) {
+                    String n = contactResolver.normalizeNumber(number);
+                    if (directory.contact(n) == null) contacts.add(newParticipant(user, n, null));
+                }
+            }
+        });
+        directory.addContacts(contacts);
+        List<Conversation> conversations = new ArrayList<>();
+        forEachMissingConversation(items, (normalized, threadKey, participants, suggestedName) -> conversations.add(
+                threadKey == null ? newOneToOne(user, normalized) : newGroup(user, threadKey, participants, suggestedName)));
+        directory.addConversations(conversations);
+    }
+
+    @FunctionalInterface
+    private interface MissingConversation {
+        // threadKey null = one-to-one with normalized; otherwise a group of participants
+        void accept(String normalized, String threadKey, Set<String> participants, String suggestedName);
+    }
+
+    private void forEachMissingConversation(List<PipelineItem> items, MissingConversation action) {
+        for (PipelineItem item : items) {
+            Set<String> participants = item.getParticipantNumbers();
+            if (!item.isMultipart() || (participants != null && participants.size() == 1)) {
+                String number = item.isMultipart() ? participants.iterator().next() : resolveNormalizedNumberForSms(item.getMessage());
+                if (number == null || number.isBlank() || UNKNOWN_NORMALIZED.equals(number)) continue;
+                String normalized = contactResolver.normalizeNumber(number);
+                if (directory.oneToOne(normalized) == null) action.accept(normalized, null, null, item.getSuggestedName());
+            } else if (participants != null && !participants.isEmpty()) {
+                String threadKey = effectiveThreadKey(item.getThreadKey(), participants);
+                if (directory.group(threadKey) == null) action.accept(null, threadKey, participants, item.getSuggestedName());
+            }
+        }
+    }
+
+    private Conversation findOrCreateOneToOne(User user, String normalizedNumber, String suggestedName) {
+        if (directory == null) {
+            return conversationService.findOrCreateOneToOneForUser(user, normalizedNumber, suggestedName);
+        }
+        String normalized = contactResolver.normalizeNumber(normalizedNumber);
+        Conversation conv = directory.oneToOne(normalized);
+        if (conv == null) {
+            if (directory.contact(normalized) == null) {
+                directory.addContacts(List.of(newParticipant(user, normalized, suggestedName)));
+            }
+            directory.addConversations(List.of(newOneToOne(user, normalized)));
+            conv = directory.oneToOne(normalized);
+        }
+        return conv;
+    }
+
+    private Conversation findOrCreateGroup(User user, String threadKey, Set<String> participantNumbers, String suggestedName) {
+        if (directory == null) {
+            return conversationService.findOrCreateGroupForUser(user, threadKey, participantNumbers, suggestedName);
+        }
+        Conversation conv = directory.group(threadKey);
+        if (conv == null) {
+            List<Contact> contacts = new ArrayList<>();
+            for (String number : participantNumbers) {
+                String n = contactResolver.normalizeNumber(number);
+                if (directory.contact(n) == null) contacts.add(newParticipant(user, n, null));
+            }
+            directory.addContacts(contacts);
+            directory.addConversations(List.of(newGroup(user, threadKey, participantNumbers, suggestedName)));
+            conv = directory.group(threadKey);
+        }
+        return conv;
+    }
+
+    // The builders below mirror ConversationService.findOrCreate* so both paths create identical rows
+
+    private static Contact newParticipant(User user, String normalized, String suggestedName) {
+        Contact c = new Contact();
+        c.setUser(user);
+        c.setNormalizedNumber(normalized);
+        c.setNumber(normalized);
+        c.setName(suggestedName != null && !suggestedName.isBlank() ? suggestedName : null);
+        return c;
+    }
+
+    private Conversation newOneToOne(User user, String normalized) {
+        Contact contact = directory.contact(normalized);
+        Conversation conv = new Conversation();
+        conv.setUser(user);
+        conv.setName(contact.getName() != null ? contact.getName() : contact.getNumber());
+        conv.getParticipants().add(contact);
+        return conv;
+    }
+
+    private Conversation newGroup(User user, String threadKey, Set<String> participantNumbers, String suggestedName) {
+        Set<Contact> contacts = new HashSet<>();
+        for (String number : participantNumbers) contacts.add(directory.contact(contactResolver.normalizeNumber(number)));
+        Conversation conv = new Conversation();
+        conv.setUser(user);
+        conv.setThreadKey(threadKey);
+        conv.setName(suggestedName != null && !suggestedName.isBlank() ? suggestedName : "Group Chat");
+        conv.setParticipants(contacts);
+        return conv;
+    }
+
+    private String effectiveThreadKey(String threadKey, Set<String> participantNumbers) {
+        if ((threadKey == null || threadKey.isBlank()) && participantNumbers.size() > 1) {
+            return buildSyntheticThreadKey(participantNumbers);
+        }
+        return threadKey;
+    }
+
     private String resolveNormalizedNumberForSms(Message msg) {
         if (msg.getSenderContact() != null) {
             return msg.getSenderContact().getNormalizedNumber();
@@ -84,7 +217,11 @@ public class ConversationAssigner {
     private void updateConversationLastMessage(Conversation convo, Message msg) {
         if (convo.getLastMessageAt() == null || msg.getTimestamp().isAfter(convo.getLastMessageAt())) {
             convo.setLastMessageAt(msg.getTimestamp());
-            conversationService.save(convo);
+            if (lastMessages != null) {
+                lastMessages.record(convo.getId(), msg.getTimestamp());
+            } else {
+                conversationService.save(convo);
+            }
         }
     }
 
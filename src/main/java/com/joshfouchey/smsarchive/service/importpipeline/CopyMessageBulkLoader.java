@@ -0,0 +1,215 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.model.MessagePart;
+import com.joshfouchey.smsarchive.util.MessageFingerprint;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Bulk persistence backend for streaming imports (smsarchive.import.persistBackend=copy).
+ *
+ * Each batch is streamed with COPY into the unlogged staging tables from V19, then moved
+ * into messages/message_parts with one set-based INSERT ... SELECT ... ON CONFLICT DO NOTHING.
+ * Rows that hit the unique message index are skipped by the database instead of forcing a
+ * row-by-row retry. Message and part ids are reserved up front in blocks from their sequences
+ * ({@link PooledIds}) so parts can reference their message inside the same statement.
+ */
+@Slf4j
+public class CopyMessageBulkLoader {
+
+    private static final String COPY_MESSAGES = """
+            COPY import_message_staging (load_id, id, user_id, protocol, direction, sender_contact_id,
+                conversation_id, timestamp, body, msg_box, delivered_at, read_at, media, metadata, fingerprint)
+            FROM STDIN WITH (FORMAT csv)
+            """;
+
+    private static final String COPY_PARTS = """
+            COPY import_message_part_staging (load_id, id, message_id, seq, ct, name, text, file_path, size_bytes)
+            FROM STDIN WITH (FORMAT csv)
+            """;
+
+    private static final String MOVE_STAGED_ROWS = """
+            WITH inserted AS (
+                INSERT INTO messages (id, user_id, protocol, direction, sender_contact_id, conversation_id,
+                                      timestamp, body, msg_box, delivered_at, read_at, media, metadata, fingerprint)
+                SELECT id, user_id, protocol, direction, sender_contact_id, conversation_id,
+                       timestamp, body, msg_box, delivered_at, read_at, media, metadata, fingerprint
+                FROM import_message_staging
+                WHERE load_id = ?
+                ORDER BY id
+                ON CONFLICT DO NOTHING
+                RETURNING id
+            ), parts AS (
+                INSERT INTO message_parts (id, message_id, seq, ct, name, text, file_path, size_bytes)
+                SELECT p.id, p.message_id, p.seq, p.ct, p.name, p.text, p.file_path, p.size_bytes
+                FROM import_message_part_staging p
+                JOIN inserted i ON i.id = p.message_id
+                WHERE p.load_id = ?
+                RETURNING 1
+            )
+            SELECT id FROM inserted
+            """;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CopyMessageBulkLoader(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Persist a batch. Inserted messages get their database id; messages skipped as
+     * duplicates keep a null id.
+     *
+     * @return number of messages skipped because they already existed
+     */
+    public int load(List<Message> batch) {
+        if (batch.isEmpty()) return 0;
+        Integer skipped = jdbcTemplate.execute((ConnectionCallback<Integer>) conn -> {
+            boolean ownTransaction = conn.getAutoCommit();
+            if (ownTransaction) conn.setAutoCommit(false);
+            try {
+                int result = loadInTransaction(conn, batch);
+                if (ownTransaction) conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                if (ownTransaction) conn.rollback();
+                batch.forEach(m -> m.setId(null));
+                throw e;
+            } finally {
+                if (ownTransaction) conn.setAutoCommit(true);
+            }
+        });
+        return skipped == null ? 0 : skipped;
+    }
+
+    private int loadInTransaction(Connection conn, List<Message> batch) throws SQLException {
+        UUID loadId = UUID.randomUUID();
+        assignIds(conn, batch);
+        CopyManager copy = conn.unwrap(PGConnection.class).getCopyAPI();
+        try {
+            copy.copyIn(COPY_MESSAGES, new StringReader(messageRows(loadId, batch)));
+            String partRows = partRows(conn, loadId, batch);
+            if (!partRows.isEmpty()) copy.copyIn(COPY_PARTS, new StringReader(partRows));
+        } catch (java.io.IOException e) {
+            throw new SQLException("COPY into import staging failed", e);
+        }
+
+        Set<Long> inserted = new HashSet<>(batch.size() * 2);
+        try (PreparedStatement ps = conn.prepareStatement(MOVE_STAGED_ROWS)) {
+            ps.setObject(1, loadId);
+            ps.setObject(2, loadId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) inserted.add(rs.getLong(1));
+            }
+        }
+        clearStaging(conn, loadId);
+
+        int skipped = 0;
+        for (Message msg : batch) {
+            if (!inserted.contains(msg.getId())) {
+                msg.setId(null);
+                skipped++;
+            }
+        }
+        if (skipped > 0) log.debug("COPY load {}: {} of {} messages already existed", loadId, skipped, batch.size());
+        return skipped;
+    }
+
+    private void assignIds(Connection conn, List<Message> batch) throws SQLException {
+        long[] ids = PooledIds.reserve(conn, "messages_id_seq", batch.size());
+        for (int i = 0; i < ids.length; i++) batch.get(i).setId(ids[i]);
+    }
+
+    private void clearStaging(Connection conn, UUID loadId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM import_message_part_staging WHERE load_id = ?")) {
+            ps.setObject(1, loadId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM import_message_staging WHERE load_id = ?")) {
+            ps.setObject(1, loadId);
+            ps.executeUpdate();
+        }
+    }
+
+    // ===== CSV rows =====
+
+    private String messageRows(UUID loadId, List<Message> batch) {
+        StringBuilder sb = new StringBuilder(batch.size() * 160);
+        for (Message m : batch) {
+            if (m.getFingerprint() == null && !m.isFingerprintCollision()) m.setFingerprint(MessageFingerprint.of(m));
+            row(sb, loadId, m.getId(),
+                    m.getUser() != null ? m.getUser().getId() : null,
+                    m.getProtocol() != null ? m.getProtocol().name() : null,
+                    m.getDirection() != null ? m.getDirection().name() : null,
+                    m.getSenderContact() != null ? m.getSenderContact().getId() : null,
+                    m.getConversation() != null ? m.getConversation().getId() : null,
+                    instant(m.getTimestamp()), m.getBody(), m.getMsgBox(),
+                    instant(m.getDeliveredAt()), instant(m.getReadAt()),
+                    json(m.getMedia()), json(m.getMetadata()), m.getFingerprint());
+        }
+        return sb.toString();
+    }
+
+    // Part ids are only written to the rows; the entities stay as they were for a retry through JPA
+    private String partRows(Connection conn, UUID loadId, List<Message> batch) throws SQLException {
+        int parts = 0;
+        for (Message m : batch) if (m.getParts() != null) parts += m.getParts().size();
+        long[] ids = PooledIds.reserve(conn, "message_parts_id_seq", parts);
+        StringBuilder sb = new StringBuilder();
+        int next = 0;
+        for (Message m : batch) {
+            if (m.getParts() == null) continue;
+            for (MessagePart p : m.getParts()) {
+                row(sb, loadId, ids[next++], m.getId(), p.getSeq(), p.getContentType(), p.getName(), p.getText(),
+                        p.getFilePath(), p.getSizeBytes());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void row(StringBuilder sb, Object... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            Object v = values[i];
+            if (v == null) continue; // unquoted empty = NULL in CSV COPY
+            String s = v.toString();
+            sb.append('"');
+            for (int c = 0; c < s.length(); c++) {
+                char ch = s.charAt(c);
+                if (ch == '"') sb.append('"');
+                if (ch != '\u0000') sb.append(ch); // Postgres text cannot hold NUL
+            }
+            sb.append('"');
+        }
+        sb.append('\n');
+    }
+
+    private static String instant(Instant t) {
+        return t == null ? null : t.toString(); // ISO-8601 UTC; staging columns are timestamptz
+    }
+
+    private static String json(Map<String, Object> map) {
+        if (map == null) return null;
+        try {
+            return JSON.writeValueAsString(map);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Unserializable message JSON: " + e.getMessage(), e);
+        }
+    }
+}
@@ -2,10 +2,16 @@ package com.joshfouchey.smsarchive.service.importpipeline;
 
 import com.joshfouchey.smsarchive.model.Message;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
-import com.joshfouchey.smsarchive.model.User;
+import com.joshfouchey.smsarchive.repository.MessageRepository.FingerprintedContentProjection;
+import com.joshfouchey.smsarchive.util.MessageFingerprint;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 
@@ -18,99 +24,114 @@ public class DuplicateDetector {
         this.messageRepo = messageRepo;
     }
 
-    public boolean isDuplicateInRunOrDb(Message msg, Set<String> seenKeys, List<Message> currentBatch) {
-        String key = buildDuplicateKey(msg);
-        if (seenKeys.contains(key)) {
-            log.debug("Duplicate found in seenKeys: {}", key);
-            return true;
-        }
-        if (isDuplicateInBatch(msg, currentBatch)) {
-            log.debug("Duplicate found in current batch: {}", key);
-            return true;
+    /**
+     * Classify a batch of messages (in file order) as duplicates or not.
+     * A message is a duplicate if an equal message was already accepted earlier in this run
+     * (including earlier in the same batch) or if its fingerprint already exists in the database.
+     * The database is probed once for the whole batch; if the probe fails, so does the batch,
+     * rather than inserting messages that may already exist. Accepted messages are added to
+     * {@code seen} and carry their fingerprint for the insert.
+     *
+     * Fingerprint hits in the run are confirmed on the content they were computed from: a
+     * repeat within the batch against the first copy, a hit in {@code seen} against the stored
+     * row (one more query, only for batches with such hits). A hit whose first copy is not
+     * committed yet cannot be compared and counts as a duplicate, as the unique index would have
+     * it. A message that differs from its match is kept and stored without a fingerprint.
+     */
+    public boolean[] findDuplicates(List<Message> batch, FingerprintSet seen) {
+        boolean[] duplicate = new boolean[batch.size()];
+        Map<UUID, Message> firstInBatch = new HashMap<>();
+        Set<UUID> seenHits = new HashSet<>();
+        Set<UUID> candidates = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Message msg = batch.get(i);
+            UUID fingerprint = MessageFingerprint.of(msg);
+            msg.setFingerprint(fingerprint);
+            // Repeats within the batch are duplicates whether the first copy is new or already in the DB
+            Message first = firstInBatch.putIfAbsent(fingerprint, msg);
+            if (first != null) {
+                if (sameContent(msg, first.getUser() != null ? first.getUser().getId() : null,
+                        first.getConversation() != null ? first.getConversation().getId() : null, first.getTimestamp(),
+                        first.getMsgBox(), str(first.getProtocol()), first.getBody())) {
+                    log.debug("Duplicate found in batch: {}", fingerprint);
+                    duplicate[i] = true;
+                } else {
+                    markCollision(msg);
+                }
+                continue;
+            }
+            if (seen.contains(fingerprint)) {
+                seenHits.add(fingerprint);
+            } else if (msg.getUser() == null) {
+                log.warn("Message has no user set, cannot check for duplicates properly");
+            } else {
+                candidates.add(fingerprint);
+            }
         }
-        boolean dbDup = isDuplicate(msg);
-        if (dbDup) {
-            log.debug("Duplicate found in database: {}", key);
+        Set<UUID> existing = existingFingerprints(candidates);
+        Map<UUID, FingerprintedContentProjection> stored = storedContent(seenHits);
+        for (int i = 0; i < batch.size(); i++) {
+            Message msg = batch.get(i);
+            if (duplicate[i] || msg.isFingerprintCollision()) continue;
+            UUID fingerprint = msg.getFingerprint();
+            if (seenHits.contains(fingerprint)) {
+                FingerprintedContentProjection row = stored.get(fingerprint);
+                if (row == null || sameContent(msg, row.getUserId(), row.getConversationId(),
+                        row.getTimestamp() != null ? row.getTimestamp().toInstant() : null,
+                        row.getMsgBox(), row.getProtocol(), row.getBody())) {
+                    log.debug("Duplicate found in run: {}", fingerprint);
+                    duplicate[i] = true;
+                } else {
+                    markCollision(msg);
+                }
+            } else if (existing.contains(fingerprint)) {
+                log.debug("Duplicate found in database: {}", fingerprint);
+                duplicate[i] = true;
+            } else {
+                seen.add(fingerprint);
+            }
         }
-        if (!dbDup) seenKeys.add(key);
-        return dbDup;
+        return duplicate;
     }
 
-    private boolean isDuplicateInBatch(Message msg, List<Message> batch) {
-        if (batch == null || batch.isEmpty()) return false;
-        String bodyNorm = msg.getBody() == null ? "" : msg.getBody().trim().toLowerCase();
-        for (Message existing : batch) {
-            if (areMessagesDuplicate(msg, existing, bodyNorm)) {
-                return true;
-            }
-        }
-        return false;
+    private Set<UUID> existingFingerprints(Set<UUID> candidates) {
+        if (candidates.isEmpty()) return Set.of();
+        return new HashSet<>(messageRepo.findExistingFingerprints(candidates.toArray(UUID[]::new)));
     }
 
-    private boolean areMessagesDuplicate(Message msg1, Message msg2, String body1Normalized) {
-        if (!msg1.getTimestamp().equals(msg2.getTimestamp())) {
-            return false;
-        }
-        String body2Norm = msg2.getBody() == null ? "" : msg2.getBody().trim().toLowerCase();
-        if (!body1Normalized.equals(body2Norm)) {
-            return false;
-        }
-        UUID userId1 = msg1.getUser() != null ? msg1.getUser().getId() : null;
-        UUID userId2 = msg2.getUser() != null ? msg2.getUser().getId() : null;
-        if (userId1 != null && userId2 != null && !userId1.equals(userId2)) {
-            return false;
-        }
-        Long convId1 = msg1.getConversation() != null ? msg1.getConversation().getId() : null;
-        Long convId2 = msg2.getConversation() != null ? msg2.getConversation().getId() : null;
-        if (convId1 != null && convId2 != null && !convId1.equals(convId2)) {
-            return false;
+    private Map<UUID, FingerprintedContentProjection> storedContent(Set<UUID> fingerprints) {
+        if (fingerprints.isEmpty()) return Map.of();
+        Map<UUID, FingerprintedContentProjection> rows = new HashMap<>();
+        for (FingerprintedContentProjection row : messageRepo.findFingerprintedContent(fingerprints.toArray(UUID[]::new))) {
+            rows.put(row.getFingerprint(), row);
         }
-        if (msg1.getMsgBox() != msg2.getMsgBox()) {
-            return false;
-        }
-        if (msg1.getProtocol() != msg2.getProtocol()) {
-            return false;
-        }
-        return true;
+        return rows;
     }
 
-    public String buildDuplicateKey(Message msg) {
-        String bodyNorm = msg.getBody() == null ? "" : msg.getBody().trim().toLowerCase();
-        Long conversationId = msg.getConversation() == null ? null : msg.getConversation().getId();
-        String conversationStr = (conversationId == null) ? "null" : conversationId.toString();
-        UUID userId = msg.getUser() != null ? msg.getUser().getId() : null;
-        String userStr = (userId == null) ? "null" : userId.toString();
-        return userStr + "|" + conversationStr + "|" + msg.getTimestamp() + "|" + msg.getMsgBox() + "|" + msg.getProtocol() + "|" + bodyNorm;
+    // The fields the fingerprint is computed from, compared as it normalises them
+    private static boolean sameContent(Message msg, UUID userId, Long conversationId, Instant timestamp,
+                                       Integer msgBox, String protocol, String body) {
+        return Objects.equals(msg.getUser() != null ? msg.getUser().getId() : null, userId)
+                && Objects.equals(msg.getConversation() != null ? msg.getConversation().getId() : null, conversationId)
+                && Objects.equals(millis(msg.getTimestamp()), millis(timestamp))
+                && Objects.equals(msg.getMsgBox(), msgBox)
+                && Objects.equals(str(msg.getProtocol()), protocol)
+                && MessageFingerprint.sameBody(msg.getBody(), body);
     }
 
-    private boolean isDuplicate(Message msg) {
-        try {
-            String normalizedBody = msg.getBody() == null ? null : msg.getBody().trim().toLowerCase();
-            User user = msg.getUser();
-            if (user == null) {
-                log.warn("Message has no user set, cannot check for duplicates properly");
-                return false;
-            }
-            if (msg.getConversation() != null && msg.getConversation().getId() != null) {
-                return messageRepo.existsByConversationAndTimestampAndBody(
-                    msg.getConversation(),
-                    msg.getTimestamp(),
-                    normalizedBody,
-                    msg.getMsgBox(),
-                    msg.getProtocol(),
-                    user
-                );
-            }
-            return messageRepo.existsByTimestampAndBody(
-                msg.getTimestamp(),
-                normalizedBody,
-                msg.getMsgBox(),
-                msg.getProtocol(),
-                user
-            );
-        } catch (Exception e) {
-            log.warn("Duplicate check failed, proceeding to insert message: {}", e.getMessage());
-            return false;
-        }
+    // Two different messages with one fingerprint: keep this one, without a fingerprint (the unique index allows NULLs)
+    private static void markCollision(Message msg) {
+        log.warn("Fingerprint collision: {} is shared by a message with different content; storing it without one",
+                msg.getFingerprint());
+        msg.setFingerprint(null);
+        msg.setFingerprintCollision(true);
+    }
+
+    private static Long millis(Instant instant) {
+        return instant != null ? instant.toEpochMilli() : null;
+    }
+
+    private static String str(Object o) {
+        return o != null ? o.toString() : null;
     }
 }
@@ -0,0 +1,162 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Bounded-memory set of 128-bit message fingerprints used for in-run duplicate tracking.
+ *
+ * Storage is two open-addressing tables of {@code long} pairs (a current and a previous
+ * generation): 16 bytes per slot at a load of at most 0.6, i.e. 27 bytes per entry in a full
+ * table. Tables start small and double until they hold {@code maxEntries} (rounded up to a
+ * power-of-two slot count); once the current generation is full it becomes the previous one
+ * and the oldest generation is dropped. Heap use is therefore capped at two full-size tables
+ * whatever the file size: 32 MB for the default 500,000, where 500,000 key strings took 95 MB.
+ * Averaged over tables that are still filling, a remembered message cost 34-45 bytes in that
+ * benchmark (FingerprintSetTest, 0.1M-4M messages), against about 200 for a key string.
+ *
+ * False positives: a hit only means an equal fingerprint (a colliding pair has p ~ n^2 / 2^129,
+ * below 1e-20 for 100M messages), so {@link DuplicateDetector} confirms every hit against the
+ * stored row before calling the message a duplicate. False negatives only come from eviction,
+ * and those messages fall back to the database probe; copies still in flight are settled by
+ * the unique index at insert time.
+ *
+ * Not thread-safe: each dedupe worker owns one (workers are partitioned by conversation,
+ * which is part of the fingerprint).
+ */
+public class FingerprintSet {
+
+    private static final int INITIAL_SLOTS = 1024;
+    private static final double MAX_LOAD = 0.6;
+
+    private final int maxEntries;
+    private final int maxSlots;
+    private Table current;
+    private Table previous;
+    private long evictions;
+
+    public FingerprintSet(int maxEntries) {
+        this.maxEntries = Math.max(16, maxEntries);
+        this.maxSlots = tableSizeFor((int) Math.ceil(this.maxEntries / MAX_LOAD));
+        this.current = new Table(Math.min(INITIAL_SLOTS, maxSlots));
+    }
+
+    public boolean contains(UUID fingerprint) {
+        long hi = fingerprint.getMostSignificantBits();
+        long lo = nonZero(hi, fingerprint.getLeastSignificantBits());
+        return current.contains(hi, lo) || (previous != null && previous.contains(hi, lo));
+    }
+
+    /** @return false if the fingerprint was already present */
+    public boolean add(UUID fingerprint) {
+        long hi = fingerprint.getMostSignificantBits();
+        long lo = nonZero(hi, fingerprint.getLeastSignificantBits());
+        if (current.contains(hi, lo) || (previous != null && previous.contains(hi, lo))) return false;
+        if (current.size >= current.capacity) {
+            if (current.slots() < maxSlots) {
+                current = current.resize(current.slots() * 2);
+            } else {
+                rotate();
+            }
+        }
+        return current.add(hi, lo);
+    }
+
+    public int size() {
+        return current.size + (previous != null ? previous.size : 0);
+    }
+
+    /** Entries dropped by generation rotation since creation. */
+    public long evictions() {
+        return evictions;
+    }
+
+    /** Bytes held by the backing arrays. */
+    public long footprintBytes() {
+        return current.bytes() + (previous != null ? previous.bytes() : 0);
+    }
+
+    private void rotate() {
+        Table recycled = previous;
+        if (recycled != null) {
+            evictions += recycled.size;
+            recycled.clear();
+        } else {
+            recycled = new Table(maxSlots);
+        }
+        previous = current;
+        current = recycled;
+    }
+
+    // (0, 0) marks an empty slot; remap the one fingerprint that would clash with it
+    private static long nonZero(long hi, long lo) {
+        return (hi == 0 && lo == 0) ? 1 : lo;
+    }
+
+    private static int tableSizeFor(int n) {
+        int size = Integer.highestOneBit(Math.max(INITIAL_SLOTS, n) - 1) << 1;
+        return size > 0 ? size : 1 << 30;
+    }
+
+    private static final class Table {
+        private final long[] keys; // hi/lo pairs
+        private final int mask;
+        private final int capacity;
+        private int size;
+
+        Table(int slots) {
+            this.keys = new long[slots * 2];
+            this.mask = slots - 1;
+            this.capacity = (int) (slots * MAX_LOAD);
+        }
+
+        int slots() { return mask + 1; }
+
+        long bytes() { return (long) keys.length * Long.BYTES; }
+
+        boolean contains(long hi, long lo) {
+            int i = index(hi, lo);
+            while (true) {
+                long h = keys[i * 2];
+                long l = keys[i * 2 + 1];
+                if (h == 0 && l == 0) return false;
+                if (h == hi && l == lo) return true;
+                i = (i + 1) & mask;
+            }
+        }
+
+        boolean add(long hi, long lo) {
+            int i = index(hi, lo);
+            while (true) {
+                long h = keys[i * 2];
+                long l = keys[i * 2 + 1];
+                if (h == 0 && l == 0) {
+                    keys[i * 2] = hi;
+                    keys[i * 2 + 1] = lo;
+                    size++;
+                    return true;
+                }
+                if (h == hi && l == lo) return false;
+                i = (i + 1) & mask;
+            }
+        }
+
+        Table resize(int slots) {
+            Table bigger = new Table(slots);
+            for (int i = 0; i < keys.length; i += 2) {
+                if (keys[i] != 0 || keys[i + 1] != 0) bigger.add(keys[i], keys[i + 1]);
+            }
+            return bigger;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0L);
+            size = 0;
+        }
+
+        private int index(long hi, long lo) {
+            // fingerprints are already uniformly distributed hash output
+            return (int) (hi ^ lo) & mask;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Tracks how far into the source file an import is durably done, for resuming after a restart.
+ *
+ * The parse thread records the byte offset at which each message starts; the persist stage
+ * reports each item once it is committed (or dropped as a duplicate). Items finish out of order
+ * across persist workers, so the checkpoint is the low watermark: every message before it is
+ * committed. The resume offset is deliberately conservative (see {@link #READ_AHEAD_MARGIN});
+ * anything re-read after a resume is caught by duplicate detection.
+ */
+public class ImportCheckpoint {
+
+    /**
+     * The XML reader buffers ahead of the element it reports, so the counted byte offset at a
+     * message's start tag can be past the tag itself. Resuming this much earlier covers that.
+     */
+    public static final long READ_AHEAD_MARGIN = 1L << 20;
+
+    private static final int SAMPLE_EVERY = 64;
+
+    private final long baseOffset;
+    private final long baseMessages;
+    private final NavigableMap<Long, Long> startOffsets = new ConcurrentSkipListMap<>();
+    private final PriorityQueue<Long> doneAhead = new PriorityQueue<>();
+    private long nextUncommitted;
+
+    /**
+     * @param baseOffset   byte offset this run started reading from
+     * @param baseMessages messages committed before this run (seq 0 of this run is the next one)
+     */
+    public ImportCheckpoint(long baseOffset, long baseMessages) {
+        this.baseOffset = baseOffset;
+        this.baseMessages = baseMessages;
+        startOffsets.put(0L, baseOffset);
+    }
+
+    /** Called by the parse thread with the absolute byte count seen at a message's start tag. */
+    public void recordStart(long seq, long absoluteOffset) {
+        if (seq % SAMPLE_EVERY == 0) startOffsets.putIfAbsent(seq, absoluteOffset);
+    }
+
+    /** Called once per item when it is committed or needs no write. */
+    public synchronized void complete(long seq) {
+        if (seq < nextUncommitted) return;
+        doneAhead.add(seq);
+        while (!doneAhead.isEmpty() && doneAhead.peek() == nextUncommitted) {
+            doneAhead.poll();
+            nextUncommitted++;
+        }
+    }
+
+    public synchronized Snapshot snapshot() {
+        Map.Entry<Long, Long> sample = startOffsets.floorEntry(nextUncommitted);
+        long resumeOffset = baseOffset;
+        if (sample != null && sample.getKey() > 0) {
+            resumeOffset = Math.max(baseOffset, sample.getValue() - READ_AHEAD_MARGIN);
+            startOffsets.headMap(sample.getKey(), false).clear();
+        }
+        return new Snapshot(resumeOffset, baseMessages + nextUncommitted);
+    }
+
+    /**
+     * @param resumeOffset      every message starting before this offset is committed
+     * @param committedMessages messages committed so far; messages re-read after a resume
+     *                          (between resumeOffset and the watermark) are counted again
+     */
+    public record Snapshot(long resumeOffset, long committedMessages) {}
+}
@@ -0,0 +1,185 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.Contact;
+import com.joshfouchey.smsarchive.model.Conversation;
+import com.joshfouchey.smsarchive.model.User;
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Import-scoped copy of one user's contacts and conversations, so resolving a message is a
+ * hash lookup instead of a query per message.
+ *
+ * Everything is loaded once when the import starts: contacts by normalized number, one-to-one
+ * conversations by their single participant's number and group conversations by thread key.
+ * Whatever is missing is created through {@link #addContacts} / {@link #addConversations},
+ * which insert a whole batch at once and register the results, so the maps always reflect
+ * what is in the database for this import. With a {@link ContactBulkWriter}, contacts are
+ * upserted in one statement and name changes are collected and written once per batch
+ * ({@link #nameChanged} / {@link #flushNames}).
+ *
+ * Each contact exists as a single object: conversation participants point at the same
+ * instances the contact map hands out, so a name change is never overwritten by a stale copy
+ * when a conversation is saved later.
+ *
+ * Lookups are lock-free; creation is serialised so two resolve workers never insert the same
+ * number. Rows created outside the import meanwhile are picked up when an insert conflicts.
+ */
+@Slf4j
+public class ImportDirectory {
+
+    private final User user;
+    private final ContactRepository contactRepo;
+    private final ConversationRepository conversationRepo;
+    private final ContactBulkWriter contactWriter;
+    private final Map<String, Contact> contacts = new ConcurrentHashMap<>();
+    private final Map<String, Conversation> oneToOne = new ConcurrentHashMap<>();
+    private final Map<String, Conversation> groups = new ConcurrentHashMap<>();
+    // Contacts whose name changed since the last flush (identity set: Contact has no equals)
+    private final Set<Contact> renamed = ConcurrentHashMap.newKeySet();
+
+    private ImportDirectory(User user, ContactRepository contactRepo, ConversationRepository conversationRepo,
+                            ContactBulkWriter contactWriter) {
+        this.user = user;
+        this.contactRepo = contactRepo;
+        this.conversationRepo = conversationRepo;
+        this.contactWriter = contactWriter;
+    }
+
+    /** {@code contactWriter} may be null, in which case contacts are written through the repository. */
+    public static ImportDirectory load(User user, ContactRepository contactRepo, ConversationRepository conversationRepo,
+                                       ContactBulkWriter contactWriter) {
+        ImportDirectory directory = new ImportDirectory(user, contactRepo, conversationRepo, contactWriter);
+        directory.preload();
+        return directory;
+    }
+
+    private void preload() {
+        List<Conversation> conversations = new ArrayList<>(conversationRepo.findAllByUserOrderByLastMessage(user));
+        // Lowest id wins when several rows share a key, so lookups are stable between runs
+        conversations.sort(Comparator.comparing(Conversation::getId));
+        Map<Long, Contact> byId = new HashMap<>();
+        for (Conversation conv : conversations) {
+            for (Contact participant : conv.getParticipants()) byId.putIfAbsent(participant.getId(), participant);
+        }
+        for (Contact contact : contactRepo.findAllByUser(user)) {
+            Contact canonical = byId.computeIfAbsent(contact.getId(), _ -> contact);
+            contacts.putIfAbsent(canonical.getNormalizedNumber(), canonical);
+        }
+        for (Conversation conv : conversations) {
+            Set<Contact> participants = new HashSet<>();
+            for (Contact participant : conv.getParticipants()) participants.add(byId.get(participant.getId()));
+            // Swap in the canonical instances
+            conv.getParticipants().clear();
+            conv.getParticipants().addAll(participants);
+            register(conv);
+        }
+        log.info("Import directory for {}: {} contacts, {} one-to-one and {} group conversations",
+                user.getUsername(), contacts.size(), oneToOne.size(), groups.size());
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public Contact contact(String normalizedNumber) {
+        return contacts.get(normalizedNumber);
+    }
+
+    public Conversation oneToOne(String normalizedNumber) {
+        return oneToOne.get(normalizedNumber);
+    }
+
+    public Conversation group(String threadKey) {
+        return groups.get(threadKey);
+    }
+
+    /** Insert the candidates whose number is not known yet (first one per number wins) in one batch. */
+    public synchronized void addContacts(Collection<Contact> candidates) {
+        Map<String, Contact> missing = new LinkedHashMap<>();
+        for (Contact c : candidates) {
+            if (!contacts.containsKey(c.getNormalizedNumber())) missing.putIfAbsent(c.getNormalizedNumber(), c);
+        }
+        if (missing.isEmpty()) return;
+        if (contactWriter != null) {
+            // Conflicts come back as the existing rows, so there is nothing to retry
+            contacts.putAll(contactWriter.upsert(user, new ArrayList<>(missing.values())));
+            return;
+        }
+        try {
+            for (Contact saved : contactRepo.saveAll(missing.values())) contacts.put(saved.getNormalizedNumber(), saved);
+        } catch (DataIntegrityViolationException e) {
+            // Someone else created one of these meanwhile: settle them one at a time
+            log.debug("Batch contact insert conflicted, retrying individually: {}", e.getMessage());
+            for (Contact candidate : missing.values()) {
+                Contact contact = contactRepo.findByUserAndNormalizedNumber(user, candidate.getNormalizedNumber())
+                        .orElseGet(() -> contactRepo.save(copyOf(candidate)));
+                contacts.put(contact.getNormalizedNumber(), contact);
+            }
+        }
+    }
+
+    /** Note a name changed in place on one of the directory's contacts; written by {@link #flushNames}. */
+    public void nameChanged(Contact contact) {
+        renamed.add(contact);
+    }
+
+    /** Write every name change noted so far, in one statement with a bulk writer. */
+    public void flushNames() {
+        if (renamed.isEmpty()) return;
+        List<Contact> batch = new ArrayList<>(renamed.size());
+        for (Iterator<Contact> it = renamed.iterator(); it.hasNext(); ) {
+            batch.add(it.next());
+            it.remove();
+        }
+        if (contactWriter != null) {
+            contactWriter.updateNames(batch);
+        } else {
+            contactRepo.saveAll(batch);
+        }
+    }
+
+    /**
+     * Insert the candidates whose key is not known yet in one batch. Groups are keyed by thread
+     * key, everything else by its single participant. Participants must come from this directory.
+     */
+    public synchronized void addConversations(Collection<Conversation> candidates) {
+        Map<String, Conversation> missing = new LinkedHashMap<>();
+        for (Conversation c : candidates) {
+            String key = key(c);
+            if (key != null && lookup(c) == null) missing.putIfAbsent(key, c);
+        }
+        if (missing.isEmpty()) return;
+        for (Conversation saved : conversationRepo.saveAll(missing.values())) register(saved);
+    }
+
+    private void register(Conversation conv) {
+        if (conv.getThreadKey() != null && !conv.getThreadKey().isBlank()) groups.putIfAbsent(conv.getThreadKey(), conv);
+        if (conv.getParticipants().size() == 1) {
+            oneToOne.putIfAbsent(conv.getParticipants().iterator().next().getNormalizedNumber(), conv);
+        }
+    }
+
+    private Conversation lookup(Conversation c) {
+        return c.getThreadKey() != null ? groups.get(c.getThreadKey()) : oneToOne.get(key(c));
+    }
+
+    private static String key(Conversation c) {
+        if (c.getThreadKey() != null) return "G:" + c.getThreadKey();
+        return c.getParticipants().size() == 1 ? c.getParticipants().iterator().next().getNormalizedNumber() : null;
+    }
+
+    private static Contact copyOf(Contact c) {
+        Contact copy = new Contact();
+        copy.setUser(c.getUser());
+        copy.setNumber(c.getNumber());
+        copy.setNormalizedNumber(c.getNormalizedNumber());
+        copy.setName(c.getName());
+        return copy;
+    }
+}
@@ -0,0 +1,219 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Instrumentation of one import job: busy time and item counts per stage (parse, resolve,
+ * dedupe, media, persist), JDBC statements executed on the job's threads, media bytes written
+ * and a latency histogram of persisted batches.
+ *
+ * The numbers are shown live in the progress JSON ({@link #report}), persisted with the job when
+ * it ends, and, when a {@link MeterRegistry} is available, published as Micrometer meters tagged
+ * with the job id ({@code smsarchive.import.*}). Those meters are removed again by {@link #close}
+ * so finished jobs do not accumulate in the registry.
+ *
+ * Statements are attributed through a thread binding: the job's threads {@link #bind} it and the
+ * data source counts every execute on a bound thread (see {@link #countStatement}). That counting
+ * data source is opt-in, so the statement figures are left out of the report while none were counted.
+ */
+public class ImportMetrics implements AutoCloseable {
+
+    private static final ThreadLocal<ImportMetrics> CURRENT = new ThreadLocal<>();
+
+    // Upper bounds (ms) of the flush latency buckets shown in the progress JSON; the last is open
+    private static final long[] FLUSH_BUCKETS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000};
+
+    private final String jobId;
+    private final LongSupplier processedMessages;
+    private final MeterRegistry registry;
+    private final List<Meter> meters = new CopyOnWriteArrayList<>();
+    private final long startedNanos = System.nanoTime();
+    private final Map<String, StageStats> stages = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder mediaBytes = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLongArray flushBuckets = new AtomicLongArray(FLUSH_BUCKETS_MS.length + 1);
+    private volatile long finishedNanos;
+    private final Counter statementCounter;
+    private final Counter mediaBytesCounter;
+    private final Timer flushTimer;
+
+    private static final class StageStats {
+        final LongAdder items = new LongAdder();
+        final LongAdder calls = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+        Timer timer;
+        Counter itemCounter;
+    }
+
+    /**
+     * @param processedMessages messages the job has processed so far, for rates
+     * @param registry          where to publish meters, or null
+     */
+    public ImportMetrics(String jobId, LongSupplier processedMessages, MeterRegistry registry) {
+        this.jobId = jobId;
+        this.processedMessages = processedMessages;
+        this.registry = registry;
+        if (registry == null) {
+            statementCounter = null;
+            mediaBytesCounter = null;
+            flushTimer = null;
+            return;
+        }
+        statementCounter = register(Counter.builder("smsarchive.import.db.statements")
+                .description("JDBC statements executed by an import").tag("job", jobId).register(registry));
+        mediaBytesCounter = register(Counter.builder("smsarchive.import.media.bytes").baseUnit("bytes")
+                .description("Attachment bytes written by an import").tag("job", jobId).register(registry));
+        flushTimer = register(Timer.builder("smsarchive.import.flush")
+                .description("Latency of persisting one batch of messages").tag("job", jobId)
+                .publishPercentileHistogram().register(registry));
+        register(FunctionCounter.builder("smsarchive.import.messages", processedMessages, LongSupplier::getAsLong)
+                .description("Messages processed by an import").tag("job", jobId).register(registry));
+    }
+
+    private <M extends Meter> M register(M meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    /** Attribute JDBC statements executed on this thread to this job until {@link #unbind}. */
+    public void bind() {
+        CURRENT.set(this);
+    }
+
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    /** Called by the data source for every statement execution. */
+    public static void countStatement() {
+        ImportMetrics current = CURRENT.get();
+        if (current != null) current.recordStatement();
+    }
+
+    public void recordStatement() {
+        statements.increment();
+        if (statementCounter != null) statementCounter.increment();
+    }
+
+    /** Fix the position of a stage in the report (stages otherwise appear as they first run). */
+    public void declareStage(String stage) {
+        stages.computeIfAbsent(stage, this::newStage);
+    }
+
+    /** Time spent in one call of a stage's worker, for {@code items} messages. */
+    public void recordStage(String stage, int items, long nanos) {
+        StageStats stats = stages.computeIfAbsent(stage, this::newStage);
+        stats.calls.increment();
+        stats.items.add(items);
+        stats.busyNanos.add(nanos);
+        if (stats.timer != null) {
+            stats.timer.record(nanos, TimeUnit.NANOSECONDS);
+            stats.itemCounter.increment(items);
+        }
+    }
+
+    private StageStats newStage(String stage) {
+        StageStats stats = new StageStats();
+        if (registry != null) {
+            stats.timer = register(Timer.builder("smsarchive.import.stage")
+                    .description("Busy time of an import stage").tags("job", jobId, "stage", stage).register(registry));
+            stats.itemCounter = register(Counter.builder("smsarchive.import.stage.items")
+                    .description("Messages handled by an import stage").tags("job", jobId, "stage", stage).register(registry));
+        }
+        return stats;
+    }
+
+    public void recordMediaBytes(long bytes) {
+        mediaBytes.add(bytes);
+        if (mediaBytesCounter != null) mediaBytesCounter.increment(bytes);
+    }
+
+    /** One persisted batch of {@code rows} messages. */
+    public void recordFlush(int rows, long nanos) {
+        flushes.increment();
+        flushedRows.add(rows);
+        flushNanos.add(nanos);
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < FLUSH_BUCKETS_MS.length && ms > FLUSH_BUCKETS_MS[bucket]) bucket++;
+        flushBuckets.incrementAndGet(bucket);
+        if (flushTimer != null) flushTimer.record(Duration.ofNanos(nanos));
+    }
+
+    /** Freeze elapsed time for rates; the report stays readable afterwards. */
+    public void finish() {
+        if (finishedNanos == 0) finishedNanos = System.nanoTime();
+    }
+
+    /** Current figures as plain JSON-friendly values. */
+    public Map<String, Object> report() {
+        long end = finishedNanos != 0 ? finishedNanos : System.nanoTime();
+        double seconds = Math.max(1e-9, (end - startedNanos) / 1e9);
+        long messages = processedMessages.getAsLong();
+        long statementCount = statements.sum();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("elapsedSeconds", round(seconds));
+        report.put("messagesPerSecond", round(messages / seconds));
+        if (statementCount > 0) {
+            report.put("dbStatements", statementCount);
+            report.put("dbStatementsPerMessage", messages == 0 ? 0.0 : round((double) statementCount / messages));
+        }
+        report.put("mediaBytesWritten", mediaBytes.sum());
+
+        Map<String, Object> stageReport = new LinkedHashMap<>();
+        synchronized (stages) {
+            stages.forEach((name, stats) -> {
+                long items = stats.items.sum();
+                double busy = stats.busyNanos.sum() / 1e9;
+                Map<String, Object> s = new LinkedHashMap<>();
+                s.put("items", items);
+                s.put("calls", stats.calls.sum());
+                s.put("busySeconds", round(busy));
+                s.put("itemsPerBusySecond", busy == 0 ? 0.0 : round(items / busy));
+                stageReport.put(name, s);
+            });
+        }
+        report.put("stages", stageReport);
+
+        long flushCount = flushes.sum();
+        Map<String, Object> flush = new LinkedHashMap<>();
+        flush.put("count", flushCount);
+        flush.put("rows", flushedRows.sum());
+        flush.put("meanMillis", flushCount == 0 ? 0.0 : round(flushNanos.sum() / 1e6 / flushCount));
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < FLUSH_BUCKETS_MS.length; i++) {
+            histogram.put("le" + FLUSH_BUCKETS_MS[i] + "ms", flushBuckets.get(i));
+        }
+        histogram.put("gt" + FLUSH_BUCKETS_MS[FLUSH_BUCKETS_MS.length - 1] + "ms", flushBuckets.get(FLUSH_BUCKETS_MS.length));
+        flush.put("histogram", histogram);
+        report.put("flush", flush);
+        return report;
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+
+    /** Remove this job's meters from the registry. */
+    @Override
+    public void close() {
+        finish();
+        if (registry != null) meters.forEach(registry::remove);
+    }
+}
@@ -0,0 +1,364 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Staged import pipeline: the parse thread submits items, and each stage runs on its own
+ * worker threads connected by bounded hand-off queues.
+ *
+ * Ordering: each stage hands its items to the next one in parse order, whatever order its
+ * workers finished them in. Processing order is only kept within a partition key: with several
+ * workers, items are routed by the stage's partition key, so items sharing a key are processed
+ * in parse order by one worker, while items with different keys (and all items of a stage
+ * without a key) are processed concurrently. Work that depends on the order of two items needs
+ * them to share the key.
+ *
+ * Backpressure: a full queue blocks the upstream stage, so at most
+ * {@code workers * (queueCapacity + 1)} items are in flight per stage.
+ *
+ * A {@link #callerRuns(String) caller-runs} pipeline executes every stage synchronously on
+ * the submitting thread instead, so the whole import shares the caller's transaction.
+ */
+@Slf4j
+public class ImportPipeline {
+
+    /** Per-thread processing logic for one stage. Instances are never shared between workers. */
+    public interface StageWorker {
+        void process(PipelineItem item) throws Exception;
+
+        /**
+         * Process several consecutive items at once. Only called for stages registered with a
+         * batch size above one; items are in parse order and are released after this returns.
+         */
+        default void processBatch(List<PipelineItem> items) throws Exception {
+            for (PipelineItem item : items) process(item);
+        }
+
+        /** Called once after the last item, e.g. to flush a partially filled batch. */
+        default void finish() throws Exception { }
+    }
+
+    /** Told how long each worker call took and how many items it handled (0 for finish). */
+    @FunctionalInterface
+    public interface StageListener {
+        void stageRan(String stage, int items, long nanos);
+    }
+
+    private static final PipelineItem END_OF_STREAM = PipelineItem.sms(-1, null, null);
+    private static final long POLL_MILLIS = 100;
+
+    private final String name;
+    private final int queueCapacity;
+    private final TaskDecorator taskDecorator;
+    private final boolean callerRuns;
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<StageWorker> callerWorkers = new ArrayList<>();
+    private StageListener listener = (stage, items, nanos) -> { };
+    private volatile Throwable failure;
+    private long nextSeq;
+    private long submitNanos;
+    private boolean started;
+
+    public ImportPipeline(String name, int queueCapacity, TaskDecorator taskDecorator) {
+        this(name, queueCapacity, taskDecorator, false);
+    }
+
+    private ImportPipeline(String name, int queueCapacity, TaskDecorator taskDecorator, boolean callerRuns) {
+        this.name = name;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.taskDecorator = taskDecorator;
+        this.callerRuns = callerRuns;
+    }
+
+    /** Pipeline that runs every stage inline on the submitting thread (no worker threads). */
+    public static ImportPipeline callerRuns(String name) {
+        return new ImportPipeline(name, 1, null, true);
+    }
+
+    /**
+     * Append a stage. Items are routed by {@code partitionKey}; pass {@code null} for stateless
+     * stages where any worker may take any item.
+     */
+    public ImportPipeline stage(String stageName, int workers, ToIntFunction<PipelineItem> partitionKey,
+                                Supplier<? extends StageWorker> workerFactory) {
+        return stage(stageName, workers, partitionKey, 1, workerFactory);
+    }
+
+    /**
+     * Append a stage whose workers take up to {@code maxBatch} queued items per
+     * {@link StageWorker#processBatch} call. Batches are whatever is already waiting, so a
+     * lightly loaded pipeline still moves items one at a time.
+     */
+    public ImportPipeline stage(String stageName, int workers, ToIntFunction<PipelineItem> partitionKey,
+                                int maxBatch, Supplier<? extends StageWorker> workerFactory) {
+        if (started) throw new IllegalStateException("Pipeline already started");
+        Stage stage = new Stage(stageName, Math.max(1, workers), partitionKey, Math.max(1, maxBatch), workerFactory);
+        if (!stages.isEmpty()) stages.get(stages.size() - 1).next = stage;
+        stages.add(stage);
+        return this;
+    }
+
+    /** Report the time spent in every worker call; set before {@link #start}. */
+    public ImportPipeline instrument(StageListener stageListener) {
+        if (started) throw new IllegalStateException("Pipeline already started");
+        this.listener = stageListener;
+        return this;
+    }
+
+    public void start() {
+        if (stages.isEmpty()) throw new IllegalStateException("Pipeline has no stages");
+        started = true;
+        if (callerRuns) {
+            stages.forEach(stage -> callerWorkers.add(stage.workerFactory.get()));
+            return;
+        }
+        stages.forEach(Stage::start);
+    }
+
+    /** Hand the next parsed item to the first stage, blocking while its queue is full. */
+    public void submit(PipelineItem item) throws InterruptedException {
+        if (item.getSeq() != nextSeq) {
+            throw new IllegalArgumentException("Out of order submit: expected seq " + nextSeq + " but got " + item.getSeq());
+        }
+        nextSeq++;
+        rethrowFailure();
+        long start = System.nanoTime();
+        try {
+            handOff(item);
+        } finally {
+            submitNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void handOff(PipelineItem item) throws InterruptedException {
+        if (callerRuns) {
+            for (int i = 0; i < callerWorkers.size(); i++) {
+                StageWorker worker = callerWorkers.get(i);
+                if (stages.get(i).maxBatch > 1) {
+                    runInline(stages.get(i).name, 1, () -> worker.processBatch(List.of(item)));
+                } else {
+                    runInline(stages.get(i).name, 1, () -> worker.process(item));
+                }
+            }
+            return;
+        }
+        stages.get(0).enqueue(item);
+        rethrowFailure();
+    }
+
+    /** Sequence number to use for the next submitted item. */
+    public long nextSeq() { return nextSeq; }
+
+    /**
+     * Time the submitting thread spent in {@link #submit}: running the stages for a caller-runs
+     * pipeline, otherwise waiting for room in the first stage's queue.
+     */
+    public long submitNanos() { return submitNanos; }
+
+    /** Drain every stage in order, run each worker's finish hook and wait for all threads. */
+    public void finish() throws InterruptedException {
+        if (callerRuns) {
+            for (int i = 0; i < callerWorkers.size(); i++) {
+                runInline(stages.get(i).name, 0, callerWorkers.get(i)::finish);
+            }
+            return;
+        }
+        for (Stage stage : stages) {
+            stage.close();
+            stage.join();
+        }
+        rethrowFailure();
+    }
+
+    /** Stop all stages after a parse failure; items still queued are discarded. */
+    public void abort(Throwable cause) {
+        synchronized (this) {
+            if (failure == null) failure = cause;
+        }
+        for (Stage stage : stages) {
+            stage.join();
+        }
+    }
+
+    /** Items waiting in front of each stage, keyed by stage name in pipeline order. */
+    public Map<String, Integer> queueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        for (Stage stage : stages) {
+            depths.put(stage.name, stage.queueDepth());
+        }
+        return depths;
+    }
+
+    private interface InlineStep {
+        void run() throws Exception;
+    }
+
+    private void runInline(String stageName, int items, InlineStep step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+            listener.stageRan(stageName, items, System.nanoTime() - start);
+        } catch (Exception e) {
+            fail(stageName, e);
+            rethrowFailure();
+        }
+    }
+
+    private void rethrowFailure() {
+        Throwable t = failure;
+        if (t == null) return;
+        throw new IllegalStateException("Import pipeline failed: " + t.getMessage(), t);
+    }
+
+    private synchronized void fail(String stageName, Throwable t) {
+        if (failure == null) {
+            failure = t;
+            log.error("Import pipeline {} stage '{}' failed", name, stageName, t);
+        }
+    }
+
+    private final class Stage {
+        private final String name;
+        private final ToIntFunction<PipelineItem> partitionKey;
+        private final int maxBatch;
+        private final Supplier<? extends StageWorker> workerFactory;
+        private final List<BlockingQueue<PipelineItem>> queues = new ArrayList<>();
+        private final List<Thread> threads = new ArrayList<>();
+        private final PriorityQueue<PipelineItem> completed =
+                new PriorityQueue<>(Comparator.comparingLong(PipelineItem::getSeq));
+        private long nextRelease;
+        private Stage next;
+
+        Stage(String name, int workers, ToIntFunction<PipelineItem> partitionKey, int maxBatch,
+              Supplier<? extends StageWorker> workerFactory) {
+            this.name = name;
+            this.partitionKey = partitionKey;
+            this.maxBatch = maxBatch;
+            this.workerFactory = workerFactory;
+            for (int i = 0; i < workers; i++) {
+                queues.add(new ArrayBlockingQueue<>(queueCapacity));
+            }
+        }
+
+        void start() {
+            for (int i = 0; i < queues.size(); i++) {
+                BlockingQueue<PipelineItem> queue = queues.get(i);
+                Runnable body = () -> runWorker(queue);
+                Thread t = new Thread(taskDecorator != null ? taskDecorator.decorate(body) : body,
+                        "import-" + name + "-" + i + "-" + ImportPipeline.this.name);
+                t.setDaemon(true);
+                threads.add(t);
+                t.start();
+            }
+        }
+
+        private void runWorker(BlockingQueue<PipelineItem> queue) {
+            StageWorker worker;
+            try {
+                worker = workerFactory.get();
+            } catch (Exception e) {
+                fail(name, e);
+                return;
+            }
+            List<PipelineItem> batch = new ArrayList<>(maxBatch);
+            try {
+                boolean end = false;
+                while (!end) {
+                    PipelineItem item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (item == null) {
+                        if (failure != null) return;
+                        continue;
+                    }
+                    if (item == END_OF_STREAM) break;
+                    if (maxBatch == 1) {
+                        if (failure != null) continue; // drain without processing
+                        long start = System.nanoTime();
+                        worker.process(item);
+                        listener.stageRan(name, 1, System.nanoTime() - start);
+                        release(item);
+                        continue;
+                    }
+                    batch.clear();
+                    batch.add(item);
+                    queue.drainTo(batch, maxBatch - 1);
+                    // END_OF_STREAM is always the last element offered to a queue
+                    if (batch.get(batch.size() - 1) == END_OF_STREAM) {
+                        batch.remove(batch.size() - 1);
+                        end = true;
+                    }
+                    if (failure != null) continue;
+                    long start = System.nanoTime();
+                    worker.processBatch(batch);
+                    listener.stageRan(name, batch.size(), System.nanoTime() - start);
+                    for (PipelineItem done : batch) release(done);
+                }
+                if (failure == null) {
+                    long start = System.nanoTime();
+                    worker.finish();
+                    listener.stageRan(name, 0, System.nanoTime() - start);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                fail(name, ie);
+            } catch (Exception | Error e) {
+                fail(name, e);
+            }
+        }
+
+        /** Forward completed items to the next stage in parse order. */
+        private synchronized void release(PipelineItem item) throws InterruptedException {
+            if (next == null) return;
+            completed.add(item);
+            while (!completed.isEmpty() && completed.peek().getSeq() == nextRelease) {
+                next.enqueue(completed.poll());
+                nextRelease++;
+            }
+        }
+
+        void enqueue(PipelineItem item) throws InterruptedException {
+            BlockingQueue<PipelineItem> queue = queues.get(route(item));
+            while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure != null) return;
+            }
+        }
+
+        private int route(PipelineItem item) {
+            if (queues.size() == 1) return 0;
+            long key = partitionKey != null ? partitionKey.applyAsInt(item) : item.getSeq();
+            return (int) Math.floorMod(key, (long) queues.size());
+        }
+
+        void close() throws InterruptedException {
+            for (BlockingQueue<PipelineItem> queue : queues) {
+                while (!queue.offer(END_OF_STREAM, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (failure != null) return;
+                }
+            }
+        }
+
+        void join() {
+            for (Thread t : threads) {
+                try {
+                    t.join();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        int queueDepth() {
+            int depth = 0;
+            for (BlockingQueue<PipelineItem> queue : queues) depth += queue.size();
+            return depth;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control for import jobs in front of the import executor.
+ *
+ * Jobs of the same user run one at a time, in submission order within a priority; jobs of
+ * different users run in parallel, at most {@code maxConcurrentUsers} at once. When a slot
+ * frees up the scheduler starts the first waiting job, by priority then submission order,
+ * whose user has nothing running, so an interactive upload overtakes drop-directory and resume
+ * jobs that are still waiting (it never preempts one that has started).
+ *
+ * Every job gets a {@link Ticket} reporting its place in line and an estimate of when it will
+ * be done, based on the byte throughput of recently finished and currently running imports.
+ */
+@Slf4j
+public class ImportScheduler {
+
+    public enum Priority { INTERACTIVE, BACKGROUND }
+
+    // Weight of the latest finished job in the throughput average
+    private static final double THROUGHPUT_ALPHA = 0.3;
+
+    private final Executor executor;
+    private final int maxConcurrentUsers;
+    private final List<Ticket> waiting = new ArrayList<>();
+    private final Map<Object, Ticket> running = new HashMap<>();
+    private long nextSeq;
+    private double bytesPerSecond; // 0 until a job has finished
+
+    public ImportScheduler(Executor executor, int maxConcurrentUsers) {
+        this.executor = executor;
+        this.maxConcurrentUsers = Math.max(1, maxConcurrentUsers);
+    }
+
+    /**
+     * Queue {@code task} for {@code userKey}.
+     *
+     * @param totalBytes     size of the job's input, for the estimate of jobs queued behind it
+     * @param remainingBytes bytes the job still has to read once it runs
+     */
+    public Ticket submit(Object userKey, Priority priority, long totalBytes, LongSupplier remainingBytes, Runnable task) {
+        return submit(userKey, priority, totalBytes, remainingBytes, task, _ -> { });
+    }
+
+    /**
+     * Like {@link #submit(Object, Priority, long, LongSupplier, Runnable)}; {@code onRejected} is
+     * called, instead of the task, if the executor refuses the job when its turn comes. That may
+     * be within this call or later on the thread that finished the previous job.
+     */
+    public Ticket submit(Object userKey, Priority priority, long totalBytes, LongSupplier remainingBytes, Runnable task,
+                         Consumer<RuntimeException> onRejected) {
+        Ticket ticket;
+        synchronized (this) {
+            ticket = new Ticket(userKey, priority, nextSeq++, totalBytes, remainingBytes, task, onRejected);
+            waiting.add(ticket);
+            waiting.sort(Comparator.comparing((Ticket t) -> t.priority).thenComparingLong(t -> t.seq));
+        }
+        dispatch();
+        return ticket;
+    }
+
+    /** Jobs that have not started yet. */
+    public synchronized int queuedJobs() {
+        return waiting.size();
+    }
+
+    /** Jobs currently running (one per user). */
+    public synchronized int runningJobs() {
+        return running.size();
+    }
+
+    private void dispatch() {
+        while (true) {
+            Ticket next = null;
+            synchronized (this) {
+                if (running.size() >= maxConcurrentUsers) return;
+                for (Iterator<Ticket> it = waiting.iterator(); it.hasNext(); ) {
+                    Ticket t = it.next();
+                    if (!running.containsKey(t.userKey)) {
+                        it.remove();
+                        running.put(t.userKey, t);
+                        t.startedNanos = System.nanoTime();
+                        next = t;
+                        break;
+                    }
+                }
+                if (next == null) return;
+            }
+            Ticket started = next;
+            try {
+                executor.execute(() -> run(started));
+            } catch (RuntimeException e) {
+                log.error("Import executor rejected a job for user {}", started.userKey, e);
+                synchronized (this) { running.remove(started.userKey, started); }
+                started.done = true;
+                started.onRejected.accept(e);
+            }
+        }
+    }
+
+    private void run(Ticket ticket) {
+        try {
+            ticket.task.run();
+        } finally {
+            synchronized (this) {
+                running.remove(ticket.userKey, ticket);
+                recordThroughput(ticket);
+                ticket.done = true;
+            }
+            dispatch();
+        }
+    }
+
+    private void recordThroughput(Ticket ticket) {
+        long read = ticket.totalBytes - Math.max(0, ticket.remainingBytes.getAsLong());
+        double seconds = (System.nanoTime() - ticket.startedNanos) / 1e9;
+        if (read <= 0 || seconds < 0.5) return; // too little to measure
+        double rate = read / seconds;
+        bytesPerSecond = bytesPerSecond == 0 ? rate : THROUGHPUT_ALPHA * rate + (1 - THROUGHPUT_ALPHA) * bytesPerSecond;
+    }
+
+    /** Bytes per second a single import is expected to sustain, or 0 if nothing to go by yet. */
+    private double throughput() {
+        if (bytesPerSecond > 0) return bytesPerSecond;
+        double sum = 0;
+        int n = 0;
+        long now = System.nanoTime();
+        for (Ticket t : running.values()) {
+            double seconds = (now - t.startedNanos) / 1e9;
+            long read = t.totalBytes - Math.max(0, t.remainingBytes.getAsLong());
+            if (seconds >= 0.5 && read > 0) { sum += read / seconds; n++; }
+        }
+        return n == 0 ? 0 : sum / n;
+    }
+
+    private synchronized int position(Ticket ticket) {
+        int i = waiting.indexOf(ticket);
+        return i < 0 ? 0 : i + 1;
+    }
+
+    /**
+     * Seconds until {@code ticket} has finished: the larger of what its own user still has to
+     * work through and the whole backlog ahead of it spread over every slot, plus its own size.
+     */
+    private synchronized Long etaSeconds(Ticket ticket) {
+        if (ticket.done) return 0L;
+        double rate = throughput();
+        if (rate <= 0) return null;
+        if (ticket.startedNanos != 0) return (long) Math.ceil(Math.max(0, ticket.remainingBytes.getAsLong()) / rate);
+        long userAhead = 0;
+        long allAhead = 0;
+        for (Ticket t : running.values()) {
+            long remaining = Math.max(0, t.remainingBytes.getAsLong());
+            allAhead += remaining;
+            if (t.userKey.equals(ticket.userKey)) userAhead += remaining;
+        }
+        for (Ticket t : waiting) {
+            if (t == ticket) break;
+            allAhead += t.totalBytes;
+            if (t.userKey.equals(ticket.userKey)) userAhead += t.totalBytes;
+        }
+        double waitBytes = Math.max(userAhead, (double) allAhead / maxConcurrentUsers);
+        return (long) Math.ceil((waitBytes + ticket.totalBytes) / rate);
+    }
+
+    /** A submitted job as seen by the progress API. */
+    public final class Ticket {
+        private final Object userKey;
+        private final Priority priority;
+        private final long seq;
+        private final long totalBytes;
+        private final LongSupplier remainingBytes;
+        private final Runnable task;
+        private final Consumer<RuntimeException> onRejected;
+        private volatile long startedNanos;
+        private volatile boolean done;
+
+        private Ticket(Object userKey, Priority priority, long seq, long totalBytes, LongSupplier remainingBytes, Runnable task,
+                       Consumer<RuntimeException> onRejected) {
+            this.userKey = userKey;
+            this.priority = priority;
+            this.seq = seq;
+            this.totalBytes = totalBytes;
+            this.remainingBytes = remainingBytes;
+            this.task = task;
+            this.onRejected = onRejected;
+        }
+
+        /** 1-based place among waiting jobs in start order; 0 once the job has started. */
+        public int position() {
+            return ImportScheduler.this.position(this);
+        }
+
+        /** Estimated seconds until the job finishes, or null when there is no throughput to go by yet. */
+        public Long etaSeconds() {
+            return ImportScheduler.this.etaSeconds(this);
+        }
+
+        public Priority priority() {
+            return priority;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the newest message time per conversation during an import and writes them back in
+ * one set-based UPDATE, instead of saving the conversation whenever a message is newer.
+ *
+ * {@link #record} is called by the resolve stage, {@link #flush} after every persisted batch
+ * and at the end of the job. The UPDATE only ever moves last_message_at forward, so flushing
+ * a value whose message is still in flight (or was a duplicate) is harmless.
+ */
+@Slf4j
+public class LastMessageTracker {
+
+    private static final String UPDATE_PREFIX = """
+            UPDATE conversations c
+            SET last_message_at = v.last_message_at, updated_at = now()
+            FROM (VALUES\s""";
+
+    private static final String UPDATE_SUFFIX = """
+            ) AS v(id, last_message_at)
+            WHERE c.id = v.id AND (c.last_message_at IS NULL OR c.last_message_at < v.last_message_at)
+            """;
+
+    // Keeps each statement well below the 32767 bind parameter limit
+    private static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, Instant> pending = new ConcurrentHashMap<>();
+
+    public LastMessageTracker(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void record(Long conversationId, Instant timestamp) {
+        if (conversationId == null || timestamp == null) return;
+        pending.merge(conversationId, timestamp, (a, b) -> a.isAfter(b) ? a : b);
+    }
+
+    /** Write everything recorded so far. Returns the number of conversations sent. */
+    public int flush() {
+        if (pending.isEmpty()) return 0;
+        List<Map.Entry<Long, Instant>> drained = new ArrayList<>(pending.size());
+        for (Map.Entry<Long, Instant> e : pending.entrySet()) {
+            // Only drop the entry if no newer time was recorded meanwhile; that one goes next flush
+            if (pending.remove(e.getKey(), e.getValue())) drained.add(Map.entry(e.getKey(), e.getValue()));
+        }
+        int updated = 0;
+        for (int from = 0; from < drained.size(); from += MAX_ROWS_PER_STATEMENT) {
+            updated += update(drained.subList(from, Math.min(drained.size(), from + MAX_ROWS_PER_STATEMENT)));
+        }
+        log.debug("Updated last_message_at of {} conversation(s) ({} sent)", updated, drained.size());
+        return drained.size();
+    }
+
+    private int update(List<Map.Entry<Long, Instant>> rows) {
+        StringBuilder sql = new StringBuilder(UPDATE_PREFIX);
+        Object[] args = new Object[rows.size() * 2];
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?::bigint, ?::timestamptz)");
+            args[2 * i] = rows.get(i).getKey();
+            args[2 * i + 1] = rows.get(i).getValue().toString(); // ISO-8601 UTC, as in CopyMessageBulkLoader
+        }
+        sql.append(UPDATE_SUFFIX);
+        return jdbcTemplate.update(sql.toString(), args);
+    }
+}
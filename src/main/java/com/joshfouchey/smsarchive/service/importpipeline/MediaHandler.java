@@ -3,16 +3,25 @@ package com.joshfouchey.smsarchive.service.importpipeline;
 import com.joshfouchey.smsarchive.model.Message;
 import com.joshfouchey.smsarchive.model.MessagePart;
 import com.joshfouchey.smsarchive.service.MediaFileNamer;
+import com.joshfouchey.smsarchive.service.ThumbnailQueueService;
 import com.joshfouchey.smsarchive.service.ThumbnailService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.Base64;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 @Slf4j
 public class MediaHandler {
@@ -32,50 +41,142 @@ public class MediaHandler {
             Map.entry("text/plain", ".txt")
     );
 
+    private static final String SPOOL_DIR_NAME = ".incoming";
+    private static final int STREAM_BUFFER_BYTES = 64 * 1024;
+
     private final ThumbnailService thumbnailService;
+    private final ThumbnailQueueService thumbnailQueue;
     private final Path mediaRoot;
 
     public MediaHandler(ThumbnailService thumbnailService, Path mediaRoot) {
+        this(thumbnailService, null, mediaRoot);
+    }
+
+    /** With a queue, thumbnails are generated in the background instead of on the import thread. */
+    public MediaHandler(ThumbnailService thumbnailService, ThumbnailQueueService thumbnailQueue, Path mediaRoot) {
         this.thumbnailService = thumbnailService;
+        this.thumbnailQueue = thumbnailQueue;
         this.mediaRoot = mediaRoot;
     }
 
-    public Optional<String> saveMediaPart(String base64, MessagePart part) {
+    /**
+     * Decode a base64 payload into a new file in {@code spoolDir}, hashing the leading bytes
+     * for the final file name as they pass. Memory use is a couple of fixed buffers however
+     * large the attachment is. Returns empty (and leaves no file) if the input is not valid
+     * base64.
+     */
+    public Optional<SpooledMedia> spool(CharSequence base64, Path spoolDir) {
+        Path file = null;
+        try {
+            Files.createDirectories(spoolDir);
+            file = Files.createTempFile(spoolDir, "part-", ".tmp");
+            MessageDigest digest = MediaFileNamer.newHashDigest();
+            long size = 0;
+            byte[] buf = new byte[STREAM_BUFFER_BYTES];
+            try (InputStream in = Base64.getDecoder().wrap(new AsciiInputStream(base64));
+                 OutputStream out = Files.newOutputStream(file)) {
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    if (digest != null && size < MediaFileNamer.HASH_SLICE_BYTES) {
+                        digest.update(buf, 0, (int) Math.min(n, MediaFileNamer.HASH_SLICE_BYTES - size));
+                    }
+                    out.write(buf, 0, n);
+                    size += n;
+                }
+            }
+            return Optional.of(new SpooledMedia(file, MediaFileNamer.shortHash(digest, size), size));
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Invalid Base64 input ({} chars): {}", base64.length(), e.getMessage());
+            deleteQuietly(file);
+            return Optional.empty();
+        }
+    }
+
+    public Optional<String> saveMediaPart(SpooledMedia spooled, MessagePart part) {
         try {
-            if (!isValidBase64(base64)) { log.error("Invalid Base64 input: {}", base64); return Optional.empty(); }
             Message message = part.getMessage();
             String conversationDirName = (message.getConversation() != null && message.getConversation().getId() != null)
                     ? message.getConversation().getId().toString() : "_noconversation";
             Path dir = mediaRoot.resolve(conversationDirName);
             Files.createDirectories(dir);
-            byte[] dataBytes = Base64.getDecoder().decode(base64);
             String ext = guessExtension(part.getContentType(), part.getName());
-            Path original = MediaFileNamer.buildUniqueMediaPath(dir, message.getId(), part.getSeq(), message.getTimestamp(), dataBytes, ext);
-            Files.write(original, dataBytes);
-            ensureThumbnail(original, part.getContentType(), false);
+            Path original = MediaFileNamer.buildUniqueMediaPath(dir, message.getId(), part.getSeq(), message.getTimestamp(), spooled.hashShort(), ext);
+            moveIntoPlace(spooled.file(), original);
+            ensureThumbnail(original, part.getContentType());
             part.setFilePath(original.toString());
-            safeSetSize(part, original);
+            part.setSizeBytes(spooled.sizeBytes());
             return Optional.of(original.toString());
-        } catch (Exception e) { log.error("Media save failed", e); return Optional.empty(); }
+        } catch (Exception e) {
+            log.error("Media save failed", e);
+            deleteQuietly(spooled.file());
+            return Optional.empty();
+        }
     }
 
-    public void ensureThumbnail(Path original, String contentType, boolean allowExisting) {
+    /**
+     * Move a spooled attachment into place, then record the resulting path on the part and
+     * on its entry in the message's media summary.
+     */
+    public void storePendingMedia(PendingMedia pending) {
+        MessagePart part = pending.part();
+        saveMediaPart(pending.spooled(), part).ifPresent(part::setFilePath);
+        if (pending.mediaEntry() == null) return;
+        String fp = part.getFilePath();
+        if (fp == null) {
+            log.warn("Media part seq={} skipped (no filePath, invalid/missing Base64)", part.getSeq());
+            return;
+        }
+        pending.mediaEntry().put("filePath", Paths.get(fp).normalize().toString());
+    }
+
+    /** Drop the spool file of an attachment that will not be stored (e.g. duplicate message). */
+    public void discardPendingMedia(PendingMedia pending) {
+        deleteQuietly(pending.spooled().file());
+    }
+
+    /** Per-import spool directory; same filesystem as the media root so moves are renames. */
+    public Path spoolDirectory(UUID jobId) {
+        return mediaRoot.resolve(SPOOL_DIR_NAME).resolve(jobId.toString());
+    }
+
+    /** Remove a spool directory and anything left in it by an aborted import. */
+    public void deleteSpoolDirectory(Path spoolDir) {
+        if (!Files.isDirectory(spoolDir)) return;
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            files.forEach(this::deleteQuietly);
+        } catch (IOException e) {
+            log.debug("Unable to list spool directory {}: {}", spoolDir, e.getMessage());
+        }
+        deleteQuietly(spoolDir);
+    }
+
+    private void moveIntoPlace(Path source, Path target) throws IOException {
         try {
-            Path thumb = thumbnailService.deriveStemThumbnail(original);
-            if (Files.exists(thumb) && allowExisting) return;
-            thumbnailService.createThumbnail(original, thumb, contentType, true);
-        } catch (Exception ex) {
-            log.warn("Thumbnail generation failed for {}", original, ex);
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException _) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
-    public void safeSetSize(MessagePart part, Path path) {
+    private void deleteQuietly(Path path) {
+        if (path == null) return;
         try {
-            if (Files.exists(path)) {
-                part.setSizeBytes(Files.size(path));
-            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("Unable to delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    public void ensureThumbnail(Path original, String contentType) {
+        if (thumbnailQueue != null) {
+            thumbnailQueue.enqueue(original, contentType);
+            return;
+        }
+        try {
+            Path thumb = thumbnailService.deriveStemThumbnail(original);
+            thumbnailService.createThumbnail(original, thumb, contentType, true);
         } catch (Exception ex) {
-            log.debug("Unable to determine size for media part at {}: {}", path, ex.getMessage());
+            log.warn("Thumbnail generation failed for {}", original, ex);
         }
     }
 
@@ -89,7 +190,38 @@ public class MediaHandler {
         return CONTENT_TYPE_EXT_MAP.getOrDefault(lower, ".bin");
     }
 
-    public boolean isValidBase64(String base64) {
-        try { Base64.getDecoder().decode(base64); return true; } catch (IllegalArgumentException _) { return false; }
+    /**
+     * Feeds the chars of an attribute value to the base64 decoder without copying it into a
+     * byte array. Non-ASCII chars map to a byte the decoder rejects.
+     */
+    private static final class AsciiInputStream extends InputStream {
+        private final CharSequence chars;
+        private int pos;
+
+        AsciiInputStream(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int read() {
+            if (pos >= chars.length()) return -1;
+            return ascii(chars.charAt(pos++));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            int remaining = chars.length() - pos;
+            if (remaining <= 0) return -1;
+            int n = Math.min(len, remaining);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) ascii(chars.charAt(pos++));
+            }
+            return n;
+        }
+
+        private static int ascii(char c) {
+            return c < 0x80 ? c : '!';
+        }
     }
 }
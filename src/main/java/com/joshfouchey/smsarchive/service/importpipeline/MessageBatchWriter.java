@@ -0,0 +1,104 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.Contact;
+import com.joshfouchey.smsarchive.model.Conversation;
+import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Default (jpa) persistence backend for streaming imports: one batch is one unit of work.
+ *
+ * Messages are persisted (never merged) with their parts, the unit is flushed as JDBC batches
+ * and the batch's messages (and, by cascade, their parts) are detached before the transaction
+ * ends, so nothing from a batch stays managed afterwards, even when the caller runs inside a
+ * longer transaction. The rest of the persistence context is left alone: in caller-runs mode
+ * it holds the caller's own managed entities. Contacts,
+ * conversations and the user are only foreign keys here: they are replaced by uninitialised
+ * references by id, which keeps them out of dirty checking and avoids loading or merging the
+ * import directory's detached instances. Heap use and flush latency therefore stay the same
+ * for the last batch of an import as for the first.
+ */
+public class MessageBatchWriter {
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    /** @param entityManager a shared (transaction-bound) entity manager */
+    public MessageBatchWriter(EntityManager entityManager, PlatformTransactionManager transactionManager) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Insert the batch in one transaction. On a constraint violation nothing is written and
+     * a {@link DataAccessException} is thrown; ids assigned in the attempt remain on the entities.
+     */
+    public void write(List<Message> batch) {
+        inUnitOfWork(batch);
+    }
+
+    /** Insert a single message in its own transaction (row-by-row retry of a failed batch). */
+    public void writeOne(Message message) {
+        inUnitOfWork(List.of(message));
+    }
+
+    private void inUnitOfWork(List<Message> messages) {
+        List<Runnable> restores = new ArrayList<>(messages.size());
+        try {
+            transactionTemplate.executeWithoutResult(_ -> {
+                try {
+                    for (Message message : messages) restores.add(persist(message));
+                    entityManager.flush();
+                } finally {
+                    // Not clear(): the context may be the caller's
+                    for (Message message : messages) {
+                        if (entityManager.contains(message)) entityManager.detach(message);
+                    }
+                }
+            });
+        } catch (PersistenceException e) {
+            // Not thrown through a repository proxy, so translate here like Spring Data would
+            DataAccessException translated = EntityManagerFactoryUtils.convertJpaAccessExceptionIfPossible(e);
+            throw translated != null ? translated : e;
+        } finally {
+            // Callers keep working with their own instances, not proxies of a closed context
+            restores.forEach(Runnable::run);
+        }
+    }
+
+    /** Persist with references in place of the message's associations; returns how to put them back. */
+    private Runnable persist(Message message) {
+        User user = message.getUser();
+        Conversation conversation = message.getConversation();
+        Contact sender = message.getSenderContact();
+        Runnable restore = () -> {
+            message.setUser(user);
+            message.setConversation(conversation);
+            message.setSenderContact(sender);
+        };
+        message.setUser(reference(User.class, user, user == null ? null : user.getId()));
+        message.setConversation(reference(Conversation.class, conversation, conversation == null ? null : conversation.getId()));
+        message.setSenderContact(reference(Contact.class, sender, sender == null ? null : sender.getId()));
+        try {
+            entityManager.persist(message); // cascades to parts
+        } catch (RuntimeException e) {
+            restore.run();
+            throw e;
+        }
+        return restore;
+    }
+
+    // Unsaved instances are kept as they are so Hibernate reports them instead of writing a null key
+    private <T> T reference(Class<T> type, T entity, Object id) {
+        return entity == null || id == null ? entity : entityManager.getReference(type, id);
+    }
+}
@@ -0,0 +1,14 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.MessagePart;
+
+import java.util.Map;
+
+/**
+ * Attachment captured by the parser whose payload has not been placed yet.
+ * The payload is decoded to a spool file while parsing; the media stage moves it
+ * into place once the message has a conversation and is known not to be a
+ * duplicate, then fills in {@code filePath} on both the part and the message's
+ * media summary entry.
+ */
+public record PendingMedia(MessagePart part, SpooledMedia spooled, Map<String, Object> mediaEntry) {}
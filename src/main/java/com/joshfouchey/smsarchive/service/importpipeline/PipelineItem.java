@@ -0,0 +1,49 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.Message;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One parsed message travelling through the staged import pipeline.
+ * The sequence number is assigned by the parse stage and is used to restore
+ * file order after stages that run with more than one worker.
+ */
+@Getter
+public class PipelineItem {
+
+    private final long seq;
+    private final Message message;
+    private final String suggestedName;
+    private final boolean multipart;
+    private final String threadKey;
+    private final Set<String> participantNumbers;
+    @Setter
+    private List<PendingMedia> pendingMedia;
+    @Setter
+    private boolean duplicate;
+
+    private PipelineItem(long seq, Message message, String suggestedName, boolean multipart,
+                         String threadKey, Set<String> participantNumbers, List<PendingMedia> pendingMedia) {
+        this.seq = seq;
+        this.message = message;
+        this.suggestedName = suggestedName;
+        this.multipart = multipart;
+        this.threadKey = threadKey;
+        this.participantNumbers = participantNumbers;
+        this.pendingMedia = pendingMedia;
+    }
+
+    public static PipelineItem sms(long seq, Message message, String suggestedName) {
+        return new PipelineItem(seq, message, suggestedName, false, null, null, List.of());
+    }
+
+    public static PipelineItem multipart(long seq, Message message, String threadKey, Set<String> participantNumbers,
+                                         String suggestedName, List<PendingMedia> pendingMedia) {
+        return new PipelineItem(seq, message, suggestedName, true, threadKey, participantNumbers,
+                pendingMedia == null ? List.of() : pendingMedia);
+    }
+}
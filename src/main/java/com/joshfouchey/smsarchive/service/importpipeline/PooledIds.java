@@ -0,0 +1,42 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Ids for rows the import inserts with plain SQL into tables whose sequences step by 50 (V18).
+ *
+ * Each nextval of such a sequence is the low end of a block of 50 ids nobody else will get
+ * (Hibernate's pooled-lo scheme), so a column default would spend a whole block on one row.
+ * Plain-SQL inserts take their ids from here instead and write them explicitly.
+ */
+final class PooledIds {
+
+    // Must match allocationSize on the entities and the INCREMENT BY set in V18
+    static final int BLOCK_SIZE = 50;
+
+    private PooledIds() {
+    }
+
+    /** Reserve {@code count} ids from {@code sequence}, drawing one block per 50. */
+    static long[] reserve(Connection conn, String sequence, int count) throws SQLException {
+        long[] ids = new long[count];
+        if (count == 0) return ids;
+        int filled = 0;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT nextval(CAST(? AS regclass)) FROM generate_series(1, ?)")) {
+            ps.setString(1, sequence);
+            ps.setInt(2, (count + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next() && filled < count) {
+                    long lo = rs.getLong(1);
+                    for (int i = 0; i < BLOCK_SIZE && filled < count; i++) ids[filled++] = lo + i;
+                }
+            }
+        }
+        if (filled < count) throw new SQLException("Could not reserve " + count + " ids from " + sequence);
+        return ids;
+    }
+}
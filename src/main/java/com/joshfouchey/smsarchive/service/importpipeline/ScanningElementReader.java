@@ -0,0 +1,688 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static javax.xml.stream.XMLStreamConstants.END_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Pull parser specialised for SMS Backup & Restore files that works on the raw UTF-8 bytes.
+ *
+ * Tags are parsed in place: attributes are kept as byte ranges and only turned into Strings
+ * when asked for, element names come from a fixed table, and {@link #getAttributeChars}
+ * hands base64 payloads to the media spooler as a view instead of a 2-bytes-per-char copy.
+ * Attribute values over {@link #SPILL_THRESHOLD} are written to a temp file as they are
+ * scanned and read back from it through a small window, so heap use stays at a few MB however
+ * large an attachment is; the buffer only grows to hold the largest tag without them. Input is
+ * read in fixed chunks so the stream is never more than one chunk past the tag being reported
+ * (checkpoints rely on it).
+ *
+ * Only what the schema needs is supported; the rest is rejected rather than half-handled:
+ * DOCTYPE declarations, entities other than the five predefined ones, entity references in
+ * spilled values, and encodings other than UTF-8. Text, comments, CDATA sections and processing instructions are skipped.
+ * Attribute values get the same whitespace normalisation a conforming parser applies.
+ */
+final class ScanningElementReader implements XmlElementReader {
+
+    private static final int READ_CHUNK = 64 * 1024;
+    private static final int MAX_IDLE_BUFFER = 16 * READ_CHUNK;
+    static final int SPILL_THRESHOLD = MAX_IDLE_BUFFER;
+    private static final String[] KNOWN_NAMES = {"smses", "sms", "mms", "rcs", "parts", "part", "addrs", "addr"};
+    private static final byte[] COMMENT_END = "-->".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CDATA_END = "]]>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PI_END = "?>".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern DECLARED_ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    // attribute layout in attrs: name start, name end, value start, value end, flags
+    private static final int ATTR_FIELDS = 5;
+    private static final int NEEDS_DECODING = 1;
+    private static final int NON_ASCII = 2;
+    private static final int ENTITY = 4;
+    private static final int SPILLED = 8;
+
+    private final InputStream in;
+    private byte[] buf = new byte[2 * READ_CHUNK];
+    private int pos;
+    private int limit;
+    private long discarded; // bytes dropped from buf (from the front, or spilled), for error offsets
+    private boolean eof;
+    private boolean started;
+
+    private final ArrayDeque<String> openElements = new ArrayDeque<>();
+    private String localName;
+    private boolean pendingEnd;
+    private int[] attrs = new int[ATTR_FIELDS * 16];
+    private Spill[] attrSpills = new Spill[16];
+    private int attrCount;
+    private int valueFlags;
+    private Spill valueSpill;
+    private final List<Spill> spills = new ArrayList<>();
+
+    ScanningElementReader(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        releaseSpills();
+        attrCount = 0;
+        if (pendingEnd) {
+            // second half of a self-closing tag; the name is unchanged
+            pendingEnd = false;
+            openElements.pop();
+            return END_ELEMENT;
+        }
+        shrinkIfOversized();
+        if (!started) {
+            started = true;
+            skipByteOrderMark();
+        }
+        while (true) {
+            if (!skipToTagOpen()) {
+                if (!openElements.isEmpty()) throw error("Unexpected end of document inside <" + openElements.peek() + ">");
+                localName = null;
+                return END_DOCUMENT;
+            }
+            pos++; // '<'
+            int c = peek(0);
+            if (c == '/') {
+                pos++;
+                return endTag();
+            } else if (c == '?') {
+                skipProcessingInstruction();
+            } else if (c == '!') {
+                skipMarkupDeclaration();
+            } else {
+                return startTag();
+            }
+        }
+    }
+
+    @Override
+    public String getLocalName() {
+        return localName;
+    }
+
+    @Override
+    public String getAttributeValue(String name) {
+        int a = findAttribute(name);
+        if (a < 0) return null;
+        if ((attrs[a + 4] & SPILLED) != 0) return attrSpills[a / ATTR_FIELDS].readString();
+        int start = attrs[a + 2];
+        int end = attrs[a + 3];
+        return (attrs[a + 4] & NEEDS_DECODING) != 0
+                ? decode(start, end)
+                : new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CharSequence getAttributeChars(String name) {
+        int a = findAttribute(name);
+        if (a < 0) return null;
+        if (attrs[a + 4] == SPILLED) return attrSpills[a / ATTR_FIELDS].chars();
+        if (attrs[a + 4] != 0) return getAttributeValue(name);
+        return new AsciiChars(buf, attrs[a + 2], attrs[a + 3] - attrs[a + 2]);
+    }
+
+    @Override
+    public void close() {
+        // like XMLStreamReader.close(), the underlying stream belongs to the caller
+        releaseSpills();
+        buf = new byte[0];
+        pos = limit = 0;
+        eof = true;
+    }
+
+    // ===== Tags =====
+
+    private int startTag() throws XMLStreamException {
+        // offsets are relative to pos until the whole tag is buffered; filling may move pos
+        int nameEnd = scanName(0);
+        if (nameEnd == 0) throw error("Malformed start tag");
+        int k = nameEnd;
+        int count = 0;
+        while (true) {
+            int afterPrevious = k;
+            k = skipWhitespace(k);
+            int c = peek(k);
+            if (c == '>') {
+                k++;
+                break;
+            }
+            if (c == '/') {
+                if (peek(k + 1) != '>') throw error("Malformed start tag");
+                k += 2;
+                pendingEnd = true;
+                break;
+            }
+            if (c < 0) throw error("Unexpected end of document in start tag");
+            if (k == afterPrevious) throw error("Missing whitespace between attributes");
+            int attrNameStart = k;
+            k = scanName(k);
+            if (k == attrNameStart) throw error("Malformed attribute");
+            int attrNameEnd = k;
+            k = skipWhitespace(k);
+            if (peek(k) != '=') throw error("Attribute without value");
+            k = skipWhitespace(k + 1);
+            int quote = peek(k);
+            if (quote != '"' && quote != '\'') throw error("Unquoted attribute value");
+            int valueStart = ++k;
+            k = scanValue(k, (byte) quote);
+            recordAttribute(count++, attrNameStart, attrNameEnd, valueStart, k, valueFlags, valueSpill);
+            k++;
+        }
+        for (int a = 0; a < count * ATTR_FIELDS; a += ATTR_FIELDS) {
+            for (int f = 0; f < 4; f++) attrs[a + f] += pos;
+            if ((attrs[a + 4] & NEEDS_DECODING) != 0) checkEntities(attrs[a + 2], attrs[a + 3]);
+        }
+        attrCount = count;
+        localName = elementName(pos, pos + nameEnd);
+        openElements.push(localName);
+        pos += k;
+        return START_ELEMENT;
+    }
+
+    private int endTag() throws XMLStreamException {
+        int nameEnd = scanName(0);
+        if (nameEnd == 0) throw error("Malformed end tag");
+        String name = elementName(pos, pos + nameEnd);
+        int k = skipWhitespace(nameEnd);
+        if (peek(k) != '>') throw error("Malformed end tag </" + name + ">");
+        String expected = openElements.poll();
+        if (!name.equals(expected)) throw error("</" + name + "> does not close <" + expected + ">");
+        pos += k + 1;
+        localName = name;
+        return END_ELEMENT;
+    }
+
+    private int scanName(int k) throws XMLStreamException {
+        while (true) {
+            int c = peek(k);
+            if (c < 0 || isWhitespace(c) || c == '>' || c == '/' || c == '=' || c == '<' || c == '"' || c == '\'') return k;
+            k++;
+        }
+    }
+
+    /** @return offset of the closing quote; sets {@link #valueFlags} and {@link #valueSpill} */
+    private int scanValue(int k, byte quote) throws XMLStreamException {
+        int flags = 0;
+        int valueStart = k;
+        Spill spill = null;
+        while (true) {
+            int i = pos + k;
+            for (; i < limit; i++) {
+                byte b = buf[i];
+                if (b > '<') continue; // every byte that matters here sorts at or below '<'
+                if (b == quote) {
+                    if (spill != null) {
+                        if ((flags & ENTITY) != 0) throw error("Entity reference in an attribute value over " + SPILL_THRESHOLD + " bytes");
+                        spill.append(buf, pos + valueStart, i);
+                        spill.finish();
+                        flags = SPILLED | (flags & NON_ASCII);
+                    }
+                    valueFlags = flags;
+                    valueSpill = spill;
+                    return i - pos;
+                }
+                if (b < 0) flags |= NON_ASCII;
+                else if (b == '&') flags |= NEEDS_DECODING | ENTITY;
+                else if (b == '\n' || b == '\r' || b == '\t') flags |= NEEDS_DECODING;
+                else if (b == '<') throw error("'<' in attribute value");
+            }
+            k = i - pos;
+            if (k - valueStart >= SPILL_THRESHOLD) {
+                // Move what was scanned of the value out of the buffer and scan on in its place
+                if (spill == null) spills.add(spill = new Spill());
+                spill.append(buf, pos + valueStart, pos + k);
+                discarded += k - valueStart;
+                limit = pos + valueStart;
+                k = valueStart;
+            }
+            if (!fill(k + 1)) throw error("Unexpected end of document in attribute value");
+        }
+    }
+
+    private void recordAttribute(int index, int nameStart, int nameEnd, int valueStart, int valueEnd, int flags, Spill spill) {
+        int a = index * ATTR_FIELDS;
+        if (a + ATTR_FIELDS > attrs.length) attrs = Arrays.copyOf(attrs, attrs.length * 2);
+        if (index >= attrSpills.length) attrSpills = Arrays.copyOf(attrSpills, attrSpills.length * 2);
+        attrSpills[index] = spill;
+        attrs[a] = nameStart;
+        attrs[a + 1] = nameEnd;
+        attrs[a + 2] = valueStart;
+        attrs[a + 3] = valueEnd;
+        attrs[a + 4] = flags;
+    }
+
+    private int findAttribute(String name) {
+        for (int a = 0; a < attrCount * ATTR_FIELDS; a += ATTR_FIELDS) {
+            if (asciiEquals(name, attrs[a], attrs[a + 1] - attrs[a])) return a;
+        }
+        return -1;
+    }
+
+    private String elementName(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buf[i] == ':') start = i + 1; // local name only, like StAX
+        }
+        int len = end - start;
+        for (String known : KNOWN_NAMES) {
+            if (asciiEquals(known, start, len)) return known;
+        }
+        return new String(buf, start, len, StandardCharsets.UTF_8);
+    }
+
+    private boolean asciiEquals(String s, int start, int len) {
+        if (s.length() != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (buf[start + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // ===== Attribute decoding =====
+
+    private void checkEntities(int start, int end) throws XMLStreamException {
+        for (int i = start; i < end; i++) {
+            if (buf[i] != '&') continue;
+            int semi = indexOf((byte) ';', i + 1, end);
+            if (semi < 0 || resolveEntity(i + 1, semi) < 0) {
+                String ref = new String(buf, i, Math.min(end, semi < 0 ? i + 12 : semi + 1) - i, StandardCharsets.UTF_8);
+                throw error("Unsupported entity or character reference " + ref);
+            }
+            i = semi;
+        }
+    }
+
+    // Entity references were validated when the tag was scanned
+    private String decode(int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        int segment = start;
+        for (int i = start; i < end; i++) {
+            byte b = buf[i];
+            if (b == '&') {
+                sb.append(new String(buf, segment, i - segment, StandardCharsets.UTF_8));
+                int semi = indexOf((byte) ';', i + 1, end);
+                sb.appendCodePoint(resolveEntity(i + 1, semi));
+                i = semi;
+                segment = semi + 1;
+            } else if (b == '\n' || b == '\r' || b == '\t') {
+                // XML attribute-value normalisation; CRLF counts as one line break
+                sb.append(new String(buf, segment, i - segment, StandardCharsets.UTF_8)).append(' ');
+                if (b == '\r' && i + 1 < end && buf[i + 1] == '\n') i++;
+                segment = i + 1;
+            }
+        }
+        sb.append(new String(buf, segment, end - segment, StandardCharsets.UTF_8));
+        return sb.toString();
+    }
+
+    /** @return the referenced code point, or -1 if it is not a predefined entity or a valid XML char */
+    private int resolveEntity(int start, int semi) {
+        int len = semi - start;
+        if (len >= 2 && buf[start] == '#') {
+            boolean hex = buf[start + 1] == 'x';
+            int radix = hex ? 16 : 10;
+            int i = start + (hex ? 2 : 1);
+            if (i == semi) return -1;
+            int cp = 0;
+            for (; i < semi; i++) {
+                int digit = Character.digit(buf[i], radix);
+                if (digit < 0) return -1;
+                cp = cp * radix + digit;
+                if (cp > Character.MAX_CODE_POINT) return -1;
+            }
+            return isXmlChar(cp) ? cp : -1;
+        }
+        return switch (new String(buf, start, len, StandardCharsets.ISO_8859_1)) {
+            case "lt" -> '<';
+            case "gt" -> '>';
+            case "amp" -> '&';
+            case "quot" -> '"';
+            case "apos" -> '\'';
+            default -> -1;
+        };
+    }
+
+    private static boolean isXmlChar(int cp) {
+        return cp == 0x9 || cp == 0xA || cp == 0xD
+                || (cp >= 0x20 && cp <= 0xD7FF)
+                || (cp >= 0xE000 && cp <= 0xFFFD)
+                || (cp >= 0x10000 && cp <= Character.MAX_CODE_POINT);
+    }
+
+    private int indexOf(byte b, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buf[i] == b) return i;
+        }
+        return -1;
+    }
+
+    // ===== Markup that is skipped =====
+
+    private void skipByteOrderMark() throws XMLStreamException {
+        int b0 = peek(0);
+        if (b0 == 0xEF && peek(1) == 0xBB && peek(2) == 0xBF) {
+            pos += 3;
+        } else if ((b0 == 0xFE && peek(1) == 0xFF) || (b0 == 0xFF && peek(1) == 0xFE)) {
+            throw error("UTF-16 input is not supported by the scanner parser; use smsarchive.import.parser=jdk");
+        }
+    }
+
+    private void skipProcessingInstruction() throws XMLStreamException {
+        if (peek(1) == 'x' && peek(2) == 'm' && peek(3) == 'l' && isWhitespace(peek(4))) {
+            int k = 5;
+            while (!(peek(k) == '?' && peek(k + 1) == '>')) {
+                if (peek(k) < 0) throw error("Unterminated XML declaration");
+                k++;
+            }
+            checkDeclaredEncoding(new String(buf, pos, k, StandardCharsets.ISO_8859_1));
+            pos += k + 2;
+            return;
+        }
+        skipPast(PI_END, "processing instruction");
+    }
+
+    private void checkDeclaredEncoding(String declaration) throws XMLStreamException {
+        Matcher m = DECLARED_ENCODING.matcher(declaration);
+        if (!m.find()) return;
+        String encoding = m.group(1).toUpperCase(Locale.ROOT);
+        if (!encoding.equals("UTF-8") && !encoding.equals("UTF8") && !encoding.equals("US-ASCII")) {
+            throw error("Encoding " + m.group(1) + " is not supported by the scanner parser; use smsarchive.import.parser=jdk");
+        }
+    }
+
+    private void skipMarkupDeclaration() throws XMLStreamException {
+        if (lookingAt("!--")) {
+            pos += 3;
+            skipPast(COMMENT_END, "comment");
+        } else if (lookingAt("![CDATA[")) {
+            pos += 8;
+            skipPast(CDATA_END, "CDATA section");
+        } else if (lookingAt("!DOCTYPE")) {
+            throw error("DOCTYPE declarations are not allowed");
+        } else {
+            throw error("Malformed markup declaration");
+        }
+    }
+
+    private boolean lookingAt(String s) throws XMLStreamException {
+        for (int i = 0; i < s.length(); i++) {
+            if (peek(i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void skipPast(byte[] terminator, String what) throws XMLStreamException {
+        int n = terminator.length;
+        while (true) {
+            if (!fill(n)) throw error("Unterminated " + what);
+            int last = limit - n;
+            for (int i = pos; i <= last; i++) {
+                if (buf[i] == terminator[0] && Arrays.equals(buf, i, i + n, terminator, 0, n)) {
+                    pos = i + n;
+                    return;
+                }
+            }
+            // keep the tail, it may be the start of the terminator
+            pos = last + 1;
+        }
+    }
+
+    private boolean skipToTagOpen() throws XMLStreamException {
+        while (true) {
+            for (int i = pos; i < limit; i++) {
+                if (buf[i] == '<') {
+                    pos = i;
+                    return true;
+                }
+            }
+            pos = limit;
+            if (!fill(1)) return false;
+        }
+    }
+
+    private int skipWhitespace(int k) throws XMLStreamException {
+        while (isWhitespace(peek(k))) k++;
+        return k;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+    }
+
+    // ===== Buffer =====
+
+    /** Byte at pos + k (0-255), reading more input if needed; -1 at end of input. */
+    private int peek(int k) throws XMLStreamException {
+        if (pos + k >= limit && !fill(k + 1)) return -1;
+        return buf[pos + k] & 0xFF;
+    }
+
+    /** Make at least {@code need} bytes available from pos. May move the buffered bytes to the front. */
+    private boolean fill(int need) throws XMLStreamException {
+        while (limit - pos < need) {
+            if (eof) return false;
+            if (limit == buf.length) {
+                if (pos > 0) {
+                    System.arraycopy(buf, pos, buf, 0, limit - pos);
+                    discarded += pos;
+                    limit -= pos;
+                    pos = 0;
+                } else {
+                    buf = Arrays.copyOf(buf, Math.multiplyExact(buf.length, 2));
+                }
+            }
+            int n;
+            try {
+                n = in.read(buf, limit, Math.min(READ_CHUNK, buf.length - limit));
+            } catch (IOException e) {
+                throw new XMLStreamException("Failed to read backup", e);
+            }
+            if (n < 0) eof = true;
+            else limit += n;
+        }
+        return true;
+    }
+
+    // Give the memory back once a huge attachment tag has been consumed
+    private void shrinkIfOversized() {
+        if (buf.length <= MAX_IDLE_BUFFER || limit - pos > READ_CHUNK) return;
+        byte[] smaller = new byte[2 * READ_CHUNK];
+        System.arraycopy(buf, pos, smaller, 0, limit - pos);
+        discarded += pos;
+        limit -= pos;
+        pos = 0;
+        buf = smaller;
+    }
+
+    private void releaseSpills() {
+        if (spills.isEmpty()) return;
+        spills.forEach(Spill::delete);
+        spills.clear();
+        Arrays.fill(attrSpills, null);
+    }
+
+    private XMLStreamException error(String message) {
+        return new XMLStreamException(message + " at byte " + (discarded + pos));
+    }
+
+    /** Zero-copy view over an ASCII byte range; only valid until the reader moves on. */
+    private record AsciiChars(byte[] bytes, int offset, int length) implements CharSequence {
+        @Override
+        public char charAt(int index) {
+            return (char) bytes[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiChars(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * An attribute value moved out of the buffer into a temp file, with the same whitespace
+     * normalisation {@link #decode} applies. Deleted when the reader moves on.
+     */
+    private final class Spill {
+        private final Path file;
+        private OutputStream out;
+        private long length;
+        private boolean afterCr;
+        private FileChannel channel;
+
+        Spill() throws XMLStreamException {
+            try {
+                file = Files.createTempFile("smsarchive-attr-", ".tmp");
+                out = Files.newOutputStream(file);
+            } catch (IOException e) {
+                throw new XMLStreamException("Failed to spill attribute value", e);
+            }
+        }
+
+        /** Normalises bytes[from, to) in place, then writes it out. */
+        void append(byte[] bytes, int from, int to) throws XMLStreamException {
+            int w = from;
+            for (int i = from; i < to; i++) {
+                byte b = bytes[i];
+                if (b == '\n' && afterCr) {
+                    afterCr = false; // CRLF counts as one line break
+                    continue;
+                }
+                afterCr = b == '\r';
+                bytes[w++] = b == '\n' || b == '\r' || b == '\t' ? (byte) ' ' : b;
+            }
+            try {
+                out.write(bytes, from, w - from);
+            } catch (IOException e) {
+                throw new XMLStreamException("Failed to spill attribute value", e);
+            }
+            length += w - from;
+        }
+
+        void finish() throws XMLStreamException {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new XMLStreamException("Failed to spill attribute value", e);
+            }
+            if (length > Integer.MAX_VALUE) throw error("Attribute value over 2 GB");
+        }
+
+        String readString() {
+            try {
+                return Files.readString(file, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        CharSequence chars() {
+            try {
+                if (channel == null) channel = FileChannel.open(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new SpilledChars(channel, 0, (int) length);
+        }
+
+        void delete() {
+            try {
+                if (out != null) out.close();
+                if (channel != null) channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException _) {
+                // a temp file left behind is not worth failing the import for
+            }
+        }
+    }
+
+    /** ASCII view over a range of a spill file, read through a window as it is walked. */
+    private static final class SpilledChars implements CharSequence {
+        private static final int WINDOW = READ_CHUNK;
+
+        private final FileChannel channel;
+        private final int offset;
+        private final int length;
+        private byte[] window;
+        private int windowStart;
+        private int windowLength;
+
+        SpilledChars(FileChannel channel, int offset, int length) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+            if (index < windowStart || index >= windowStart + windowLength) load(index);
+            return (char) window[index - windowStart];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new SpilledChars(channel, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = read(0, length);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+        private void load(int index) {
+            if (window == null) window = new byte[WINDOW];
+            windowLength = Math.min(WINDOW, length - index);
+            ByteBuffer target = ByteBuffer.wrap(window, 0, windowLength);
+            readFully(target, offset + (long) index);
+            windowStart = index;
+        }
+
+        private byte[] read(int index, int count) {
+            byte[] bytes = new byte[count];
+            readFully(ByteBuffer.wrap(bytes), offset + (long) index);
+            return bytes;
+        }
+
+        private void readFully(ByteBuffer target, long position) {
+            try {
+                while (target.hasRemaining()) {
+                    int n = channel.read(target, position);
+                    if (n < 0) throw new IOException("Spill file is shorter than the attribute value");
+                    position += n;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
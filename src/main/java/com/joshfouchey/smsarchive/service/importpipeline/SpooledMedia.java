@@ -0,0 +1,10 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import java.nio.file.Path;
+
+/**
+ * Attachment payload already decoded to a spool file under the media root.
+ * {@code hashShort} is the file-name hash computed while decoding, so the media
+ * stage only has to move the file into its conversation directory.
+ */
+public record SpooledMedia(Path file, String hashShort, long sizeBytes) {}
@@ -0,0 +1,39 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/** {@link XmlElementReader} over any StAX implementation (JDK, Woodstox, Aalto). */
+class StaxElementReader implements XmlElementReader {
+
+    private final XMLStreamReader reader;
+
+    StaxElementReader(XMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int evt = reader.next();
+            if (evt == XMLStreamConstants.START_ELEMENT || evt == XMLStreamConstants.END_ELEMENT) return evt;
+        }
+        return XMLStreamConstants.END_DOCUMENT;
+    }
+
+    @Override
+    public String getLocalName() {
+        return reader.getLocalName();
+    }
+
+    @Override
+    public String getAttributeValue(String name) {
+        return reader.getAttributeValue(null, name);
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+        reader.close();
+    }
+}
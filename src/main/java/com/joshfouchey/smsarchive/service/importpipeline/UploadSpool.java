@@ -0,0 +1,156 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A backup that is still being uploaded, written once to a spool file that the import parses
+ * while it grows.
+ *
+ * The request thread {@link #receive receives} the body straight into the file; {@link #openReader}
+ * returns a stream over the same file that blocks at the current end until more bytes arrive
+ * and only reports end of file once the upload is complete. The spool file doubles as the
+ * import's source for resume, and the reader is normally served from the page cache, so the
+ * body is written to disk once and read back from memory.
+ */
+public class UploadSpool {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final Object lock = new Object();
+    private long written;
+    private boolean complete;
+    private IOException failure;
+
+    public UploadSpool(Path file) {
+        this.file = file;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Copy the upload body into the spool file; returns the number of bytes received. A body
+     * longer than {@code maxBytes} is not read further: the spool fails with
+     * {@link TooLargeException}.
+     */
+    public long receive(InputStream body, long maxBytes) throws IOException {
+        checkNotFailed();
+        // Never CREATE: an abandoned spool's file is gone and must stay gone
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = body.read(buf)) != -1) {
+                checkNotFailed();
+                if (bytesReceived() + n > maxBytes) throw new TooLargeException(maxBytes);
+                // Unbuffered channel stream: each write is visible to readers once it returns
+                out.write(buf, 0, n);
+                synchronized (lock) {
+                    written += n;
+                    lock.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+            throw e;
+        }
+        synchronized (lock) {
+            complete = true;
+            lock.notifyAll();
+            return written;
+        }
+    }
+
+    // Stop receiving once the spool was failed from elsewhere, e.g. its job was abandoned
+    private void checkNotFailed() throws IOException {
+        synchronized (lock) {
+            if (failure != null) throw new IOException("Upload abandoned: " + failure.getMessage(), failure);
+        }
+    }
+
+    /** Make readers fail, e.g. when the client disconnected, and stop {@link #receive}. */
+    public void fail(IOException cause) {
+        synchronized (lock) {
+            if (failure == null) failure = cause;
+            lock.notifyAll();
+        }
+    }
+
+    public long bytesReceived() {
+        synchronized (lock) {
+            return written;
+        }
+    }
+
+    /** A stream over the spool file from its start, following the upload as it arrives. */
+    public InputStream openReader() throws IOException {
+        return new Reader(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    /** The upload was longer than the limit passed to {@link #receive}. */
+    public static final class TooLargeException extends IOException {
+        private final long maxBytes;
+
+        TooLargeException(long maxBytes) {
+            super("Upload exceeds the maximum size of " + maxBytes + " bytes");
+            this.maxBytes = maxBytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+    }
+
+    private final class Reader extends InputStream {
+        private final FileChannel channel;
+        private long position;
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            long available;
+            synchronized (lock) {
+                while (position >= written && !complete && failure == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for upload data");
+                    }
+                }
+                if (failure != null) throw new IOException("Upload failed: " + failure.getMessage(), failure);
+                available = written - position;
+                if (available <= 0) return -1; // complete
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available)), position);
+            if (n > 0) position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * The slice of a pull parser that {@link XmlMessageParser} needs: start/end tags and their
+ * attributes. Backups carry everything in attributes, so text, comments and processing
+ * instructions are skipped by the reader itself. Backends are picked by {@link XmlParserBackend}.
+ *
+ * Attribute values are only valid until the next call to {@link #next()}.
+ */
+public interface XmlElementReader extends AutoCloseable {
+
+    /**
+     * Advance to the next start tag, end tag or the end of the document.
+     *
+     * @return {@link XMLStreamConstants#START_ELEMENT}, {@link XMLStreamConstants#END_ELEMENT}
+     *         or {@link XMLStreamConstants#END_DOCUMENT}
+     */
+    int next() throws XMLStreamException;
+
+    String getLocalName();
+
+    /** Value of an un-prefixed attribute of the current start tag, or null when absent. */
+    String getAttributeValue(String name);
+
+    /**
+     * Same as {@link #getAttributeValue(String)} but may return a view over the reader's
+     * buffer instead of a copy. Meant for large ASCII payloads such as base64 attachments.
+     */
+    default CharSequence getAttributeChars(String name) {
+        return getAttributeValue(name);
+    }
+
+    @Override
+    void close() throws XMLStreamException;
+}
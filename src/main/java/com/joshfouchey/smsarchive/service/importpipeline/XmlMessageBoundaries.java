@@ -0,0 +1,94 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Locates top-level message start tags ({@code <sms}, {@code <mms}, {@code <rcs}) in a backup
+ * file by byte offset. Attribute values cannot contain a literal '<' and these elements have
+ * no text content, so a raw byte match is always a real tag start.
+ */
+public final class XmlMessageBoundaries {
+
+    private static final byte[][] TAGS = {
+            "<sms".getBytes(StandardCharsets.US_ASCII),
+            "<mms".getBytes(StandardCharsets.US_ASCII),
+            "<rcs".getBytes(StandardCharsets.US_ASCII)
+    };
+    private static final int TAG_LEN = 4;
+    private static final int CHUNK = 64 * 1024;
+
+    /** Root element to put in front of a stream that starts at a message boundary. */
+    public static final byte[] SYNTHETIC_ROOT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><smses>"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /** Closes {@link #SYNTHETIC_ROOT} (or the real root) after a stream that stops at a message boundary. */
+    public static final byte[] SYNTHETIC_ROOT_END = "</smses>".getBytes(StandardCharsets.US_ASCII);
+
+    private XmlMessageBoundaries() {}
+
+    /**
+     * Cut {@code [from, size)} into pieces of roughly {@code chunkBytes}, each starting at a
+     * message start tag (except the first, which starts at {@code from}).
+     *
+     * @return ascending chunk start offsets followed by the file size as the final end
+     */
+    public static List<Long> splitPoints(FileChannel ch, long from, long chunkBytes) throws IOException {
+        long size = ch.size();
+        List<Long> points = new ArrayList<>();
+        points.add(from);
+        long step = Math.max(1, chunkBytes);
+        long last = from;
+        while (size - last > step) {
+            long boundary = nextMessageStart(ch, last + step);
+            if (boundary < 0) break;
+            points.add(boundary);
+            last = boundary;
+        }
+        points.add(size);
+        return points;
+    }
+
+    /** @return offset of the first message start tag at or after {@code from}, or -1 if none */
+    public static long nextMessageStart(Path file, long from) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return nextMessageStart(ch, from);
+        }
+    }
+
+    public static long nextMessageStart(FileChannel ch, long from) throws IOException {
+        long size = ch.size();
+        ByteBuffer buf = ByteBuffer.allocate(CHUNK + TAG_LEN);
+        long pos = Math.max(0, from);
+        while (pos < size) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n <= 0) break;
+            byte[] a = buf.array();
+            // The tag name must be followed by whitespace, '/' or '>' (excludes e.g. "<smses")
+            for (int i = 0; i + TAG_LEN < n; i++) {
+                if (a[i] == '<' && isMessageTag(a, i) && isTagNameEnd(a[i + TAG_LEN])) return pos + i;
+            }
+            if (pos + n >= size) break;
+            pos += Math.max(1, n - TAG_LEN);
+        }
+        return -1;
+    }
+
+    private static boolean isMessageTag(byte[] a, int i) {
+        for (byte[] tag : TAGS) {
+            if (a[i + 1] == tag[1] && a[i + 2] == tag[2] && a[i + 3] == tag[3]) return true;
+        }
+        return false;
+    }
+
+    private static boolean isTagNameEnd(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '/' || b == '>';
+    }
+}
@@ -1,15 +1,11 @@
 package com.joshfouchey.smsarchive.service.importpipeline;
 
 import com.joshfouchey.smsarchive.model.*;
-import com.joshfouchey.smsarchive.service.MediaRelocationHelper;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
-import javax.xml.stream.XMLStreamReader;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
 import java.util.*;
@@ -32,17 +28,10 @@ public class XmlMessageParser {
     private static final String META_NORMALIZED_NUMBER = "_normalizedNumber";
 
     private final ContactResolver contactResolver;
-    private final MediaHandler mediaHandler;
-    private final MediaRelocationHelper mediaRelocationHelper;
     private final Supplier<User> userSupplier;
 
-    public XmlMessageParser(ContactResolver contactResolver,
-                            MediaHandler mediaHandler,
-                            MediaRelocationHelper mediaRelocationHelper,
-                            Supplier<User> userSupplier) {
+    public XmlMessageParser(ContactResolver contactResolver, Supplier<User> userSupplier) {
         this.contactResolver = contactResolver;
-        this.mediaHandler = mediaHandler;
-        this.mediaRelocationHelper = mediaRelocationHelper;
         this.userSupplier = userSupplier;
     }
 
@@ -55,7 +44,14 @@ public class XmlMessageParser {
 
     @FunctionalInterface
     public interface MultipartReadyHandler {
-        void handle(Message msg, String threadKey, Set<String> participantNumbers, String suggestedName);
+        void handle(Message msg, String threadKey, Set<String> participantNumbers, String suggestedName,
+                    List<PendingMedia> pendingMedia);
+    }
+
+    /** Decodes an attachment payload out of the parse buffers; empty if it is not valid base64. */
+    @FunctionalInterface
+    public interface MediaSpooler {
+        Optional<SpooledMedia> spool(CharSequence base64);
     }
 
     // ===== Element context (mutable parsing state) =====
@@ -65,14 +61,20 @@ public class XmlMessageParser {
         Message cur;
         List<MessagePart> curParts;
         List<Map<String, Object>> curMedia;
+        List<PendingMedia> pendingMedia;
         StringBuilder textAgg;
         String suggestedName;
         boolean inMultipart;
         Set<String> participantNumbers;
         String threadKey;
+        MediaSpooler mediaSpooler;
 
         public ElementContext() {}
 
+        public ElementContext(MediaSpooler mediaSpooler) {
+            this.mediaSpooler = mediaSpooler;
+        }
+
         public ElementContext(Message c, List<MessagePart> parts, List<Map<String, Object>> media,
                               StringBuilder agg, String name, boolean multi,
                               Set<String> participants, String thread) {
@@ -90,6 +92,7 @@ public class XmlMessageParser {
             cur = null;
             curParts = null;
             curMedia = null;
+            pendingMedia = null;
             textAgg = null;
             inMultipart = false;
             suggestedName = null;
@@ -100,7 +103,7 @@ public class XmlMessageParser {
 
     // ===== Top-level XML dispatch =====
 
-    public void handleStartElement(XMLStreamReader r, ElementContext ctx, SmsReadyHandler onSms) {
+    public void handleStartElement(XmlElementReader r, ElementContext ctx, SmsReadyHandler onSms) {
         String local = r.getLocalName();
         switch (local) {
             case "sms" -> handleStartSms(r, ctx, onSms);
@@ -111,22 +114,20 @@ public class XmlMessageParser {
         }
     }
 
-    public void handleEndElement(XMLStreamReader r, ElementContext ctx, MultipartReadyHandler onMultipart) {
+    public void handleEndElement(XmlElementReader r, ElementContext ctx, MultipartReadyHandler onMultipart) {
         String local = r.getLocalName();
         if (ctx.inMultipart && ctx.cur != null && ("mms".equals(local) || "rcs".equals(local))) {
-            finalizeMultipart(ctx.cur, ctx.suggestedName, ctx.curParts, ctx.curMedia,
-                    ctx.textAgg, ctx.participantNumbers);
-            onMultipart.handle(ctx.cur, ctx.threadKey, ctx.participantNumbers, ctx.suggestedName);
+            finalizeMultipart(ctx.cur, ctx.curParts, ctx.curMedia, ctx.textAgg);
+            onMultipart.handle(ctx.cur, ctx.threadKey, ctx.participantNumbers, ctx.suggestedName, ctx.pendingMedia);
             ctx.reset();
         }
     }
 
     // ===== SMS handling =====
 
-    private void handleStartSms(XMLStreamReader r, ElementContext ctx, SmsReadyHandler onSms) {
+    private void handleStartSms(XmlElementReader r, ElementContext ctx, SmsReadyHandler onSms) {
         ctx.suggestedName = nullIfBlank(attr(r, "contact_name"));
         ctx.cur = buildSmsStreaming(r);
-        finalizeStreamingContact(ctx.cur, ctx.suggestedName);
         onSms.handle(ctx.cur, ctx.suggestedName);
         ctx.cur = null;
         ctx.suggestedName = null;
@@ -134,26 +135,27 @@ public class XmlMessageParser {
 
     // ===== Multipart setup =====
 
-    private void startMultipartMessage(XMLStreamReader r, ElementContext ctx, String local) {
+    private void startMultipartMessage(XmlElementReader r, ElementContext ctx, String local) {
         ctx.suggestedName = nullIfBlank(attr(r, "contact_name"));
         ctx.cur = buildMultipartHeaderStreaming(r, local.equals("mms") ? MessageProtocol.MMS : MessageProtocol.RCS);
         ctx.threadKey = nullIfBlank(attr(r, XML_ATTR_ADDRESS));
         ctx.curParts = new ArrayList<>();
         ctx.curMedia = new ArrayList<>();
+        ctx.pendingMedia = new ArrayList<>();
         ctx.textAgg = new StringBuilder();
         ctx.inMultipart = true;
         ctx.participantNumbers = new LinkedHashSet<>();
     }
 
-    private void handleMultipartPart(XMLStreamReader r, ElementContext ctx) {
+    private void handleMultipartPart(XmlElementReader r, ElementContext ctx) {
         if (ctx.inMultipart && ctx.cur != null) {
-            handlePart(r, ctx.cur, ctx.curParts, ctx.curMedia, ctx.textAgg);
+            handlePart(r, ctx.cur, ctx.curParts, ctx.curMedia, ctx.pendingMedia, ctx.textAgg, ctx.mediaSpooler);
         }
     }
 
     // ===== Address element processing =====
 
-    private void processAddrElement(XMLStreamReader r, ElementContext ctx) {
+    private void processAddrElement(XmlElementReader r, ElementContext ctx) {
         if (!(ctx.inMultipart && ctx.cur != null)) return;
         accumulateAddressStreaming(r, ctx.cur);
         String addrVal = attr(r, XML_ATTR_ADDRESS);
@@ -175,7 +177,69 @@ public class XmlMessageParser {
         return false;
     }
 
-    // ===== Contact finalization =====
+    // ===== Contact finalization (run by the resolve stage, off the parse thread) =====
+
+    /**
+     * Resolve sender/counterparty contacts for a parsed message. SMS and one-to-one
+     * multipart messages resolve the counterparty; group messages resolve only the sender.
+     */
+    public void resolveContacts(Message msg, String suggestedName, boolean multipart, Set<String> participantNumbers) {
+        boolean isGroup = multipart && participantNumbers != null && participantNumbers.size() > 1;
+        if (isGroup) {
+            finalizeGroupMessageContact(msg);
+        } else {
+            finalizeStreamingContact(msg, suggestedName);
+        }
+    }
+
+    /**
+     * Create up front, in one batch, the contacts that {@link #resolveContacts} will look up for
+     * these items (a no-op unless the contact resolver has an import directory).
+     */
+    public void prepareContacts(List<PipelineItem> items) {
+        List<ContactResolver.ContactRequest> requests = new ArrayList<>(items.size());
+        for (PipelineItem item : items) {
+            Message msg = item.getMessage();
+            Map<String, Object> meta = msg.getMetadata();
+            String tempSender = meta != null ? (String) meta.get(META_TEMP_SENDER) : null;
+            String tempAddress = meta != null ? (String) meta.get(META_TEMP_ADDRESS) : null;
+            boolean inbound = msg.getDirection() == MessageDirection.INBOUND;
+            Set<String> participants = item.getParticipantNumbers();
+            if (item.isMultipart() && participants != null && participants.size() > 1) {
+                // Same choice as finalizeGroupMessageContact: only an inbound sender is resolved
+                String sender = inbound ? (tempSender != null ? tempSender : tempAddress) : null;
+                if (sender != null && !sender.isBlank()) requests.add(new ContactResolver.ContactRequest(sender, null));
+            } else {
+                // Same choice as finalizeStreamingContact
+                String tempRecipient = meta != null ? (String) meta.get(META_TEMP_RECIPIENT) : null;
+                String counterparty = inbound
+                        ? (tempSender != null ? tempSender : tempAddress)
+                        : pickFirstNonMe(tempRecipient != null ? tempRecipient : tempAddress);
+                requests.add(new ContactResolver.ContactRequest(counterparty, item.getSuggestedName()));
+            }
+        }
+        contactResolver.createMissing(userSupplier.get(), requests);
+    }
+
+    /**
+     * Key identifying who a parsed (not yet resolved) message is with: the normalized
+     * counterparty number for SMS and one-to-one messages, the thread key for groups.
+     * Used to route messages so one contact/conversation is only ever created by one worker.
+     */
+    public String counterpartyKey(Message msg, boolean multipart, String threadKey, Set<String> participantNumbers) {
+        if (multipart && participantNumbers != null && !participantNumbers.isEmpty()) {
+            if (participantNumbers.size() == 1) return participantNumbers.iterator().next();
+            return (threadKey != null && !threadKey.isBlank()) ? threadKey : String.join(",", new TreeSet<>(participantNumbers));
+        }
+        Map<String, Object> meta = msg.getMetadata();
+        if (meta == null) return null;
+        String address = (String) meta.get(META_TEMP_ADDRESS);
+        if (address == null) {
+            address = (String) (msg.getDirection() == MessageDirection.INBOUND
+                    ? meta.get(META_TEMP_SENDER) : meta.get(META_TEMP_RECIPIENT));
+        }
+        return address == null ? null : contactResolver.normalizeNumber(pickFirstNonMe(address));
+    }
 
     void finalizeStreamingContact(Message msg, String suggestedName) {
         Map<String, Object> meta = msg.getMetadata();
@@ -233,9 +297,8 @@ public class XmlMessageParser {
 
     // ===== Multipart finalization =====
 
-    private void finalizeMultipart(Message cur, String suggestedName,
-                                   List<MessagePart> curParts, List<Map<String, Object>> curMedia,
-                                   StringBuilder textAgg, Set<String> participantNumbers) {
+    private void finalizeMultipart(Message cur, List<MessagePart> curParts, List<Map<String, Object>> curMedia,
+                                   StringBuilder textAgg) {
         if (cur == null) return;
         if (StringUtils.isBlank(cur.getBody()) && textAgg != null && textAgg.length() > 0) {
             cur.setBody(textAgg.toString().trim());
@@ -244,39 +307,32 @@ public class XmlMessageParser {
             cur.setMedia(Map.of("parts", curMedia));
         }
         cur.setParts(Objects.requireNonNullElse(curParts, Collections.emptyList()));
-        boolean isGroup = participantNumbers != null && participantNumbers.size() > 1;
-        if (isGroup) {
-            finalizeGroupMessageContact(cur);
-        } else {
-            finalizeStreamingContact(cur, suggestedName);
-        }
-        mediaRelocationHelper.relocate(cur);
     }
 
     // ===== Message building =====
 
-    Message buildSmsStreaming(XMLStreamReader r) {
+    Message buildSmsStreaming(XmlElementReader r) {
         Message msg = new Message();
         msg.setProtocol(MessageProtocol.SMS);
-        msg.setTimestamp(parseInstant(r.getAttributeValue(null, "date")));
-        msg.setBody(r.getAttributeValue(null, "body"));
-        int box = parseInt(r.getAttributeValue(null, "type"), 0);
+        msg.setTimestamp(parseInstant(r.getAttributeValue("date")));
+        msg.setBody(r.getAttributeValue("body"));
+        int box = parseInt(r.getAttributeValue("type"), 0);
         msg.setMsgBox(box);
         msg.setDirection(box == MSG_BOX_INBOX ? MessageDirection.INBOUND : MessageDirection.OUTBOUND);
-        String address = r.getAttributeValue(null, XML_ATTR_ADDRESS);
+        String address = r.getAttributeValue(XML_ATTR_ADDRESS);
         if (address != null) msg.setMetadata(new HashMap<>(Map.of(META_TEMP_ADDRESS, address)));
         return msg;
     }
 
-    Message buildMultipartHeaderStreaming(XMLStreamReader r, MessageProtocol protocol) {
+    Message buildMultipartHeaderStreaming(XmlElementReader r, MessageProtocol protocol) {
         Message msg = new Message();
         msg.setProtocol(protocol);
-        msg.setTimestamp(parseInstant(r.getAttributeValue(null, "date")));
-        int box = parseInt(r.getAttributeValue(null, "msg_box"), 0);
+        msg.setTimestamp(parseInstant(r.getAttributeValue("date")));
+        int box = parseInt(r.getAttributeValue("msg_box"), 0);
         msg.setMsgBox(box);
         msg.setDirection(box == MSG_BOX_INBOX ? MessageDirection.INBOUND : MessageDirection.OUTBOUND);
         if (protocol == MessageProtocol.RCS) {
-            String bodyAttr = nullIfBlank(r.getAttributeValue(null, "body"));
+            String bodyAttr = nullIfBlank(r.getAttributeValue("body"));
             if (bodyAttr != null) msg.setBody(bodyAttr);
         }
         return msg;
@@ -284,53 +340,49 @@ public class XmlMessageParser {
 
     // ===== Part handling =====
 
-    private void handlePart(XMLStreamReader r, Message cur, List<MessagePart> curParts,
-                            List<Map<String, Object>> curMedia, StringBuilder textAgg) {
+    private void handlePart(XmlElementReader r, Message cur, List<MessagePart> curParts,
+                            List<Map<String, Object>> curMedia, List<PendingMedia> pendingMedia,
+                            StringBuilder textAgg, MediaSpooler spooler) {
         MessagePart part = buildPartStreaming(r, cur, curParts.size());
         curParts.add(part);
         String ct = Optional.ofNullable(part.getContentType()).orElse("");
         if (part.getText() != null && ct.startsWith(TEXT_PLAIN)) textAgg.append(part.getText()).append(' ');
+        Map<String, Object> mediaMap = null;
         if (!ct.equalsIgnoreCase(TEXT_PLAIN) && !ct.equalsIgnoreCase(APPLICATION_SMIL)) {
-            Map<String, Object> mediaMap = new LinkedHashMap<>();
+            mediaMap = new LinkedHashMap<>();
             mediaMap.put("seq", part.getSeq());
             mediaMap.put("contentType", ct);
             mediaMap.put("name", Optional.ofNullable(part.getName()).orElse(""));
-            String fp = part.getFilePath();
-            if (fp == null) {
-                log.warn("Media part seq={} skipped (no filePath, invalid/missing Base64)", part.getSeq());
-                mediaMap.put("filePath", null);
-                curMedia.add(mediaMap);
-            } else {
-                Path mediaPath = Paths.get(fp).normalize();
-                mediaMap.put("filePath", mediaPath.toString());
-                curMedia.add(mediaMap);
-                mediaHandler.ensureThumbnail(mediaPath, ct, true);
-            }
+            // filePath is filled in by the media stage once the payload has been written
+            mediaMap.put("filePath", null);
+            curMedia.add(mediaMap);
+        }
+        // Decode now: the payload only lives in the reader's buffers until the next element
+        CharSequence data = r.getAttributeChars("data");
+        Optional<SpooledMedia> spooled = (!StringUtils.isBlank(data) && spooler != null)
+                ? spooler.spool(data) : Optional.empty();
+        if (spooled.isPresent()) {
+            pendingMedia.add(new PendingMedia(part, spooled.get(), mediaMap));
+        } else if (mediaMap != null) {
+            log.warn("Media part seq={} skipped (no filePath, invalid/missing Base64)", part.getSeq());
         }
     }
 
-    private MessagePart buildPartStreaming(XMLStreamReader r, Message msg, int idx) {
+    private MessagePart buildPartStreaming(XmlElementReader r, Message msg, int idx) {
         MessagePart part = new MessagePart();
         part.setMessage(msg);
-        part.setSeq(parseInt(r.getAttributeValue(null, "seq"), idx));
-        part.setContentType(r.getAttributeValue(null, "ct"));
-        part.setName(nullIfBlank(r.getAttributeValue(null, "name")));
-        part.setText(nullIfBlank(r.getAttributeValue(null, "text")));
-        String data = r.getAttributeValue(null, "data");
-        if (data != null && !data.isBlank()) {
-            mediaHandler.saveMediaPart(data, part).ifPresent(part::setFilePath);
-            if (part.getFilePath() != null) {
-                mediaHandler.safeSetSize(part, Path.of(part.getFilePath()));
-            }
-        }
+        part.setSeq(parseInt(r.getAttributeValue("seq"), idx));
+        part.setContentType(r.getAttributeValue("ct"));
+        part.setName(nullIfBlank(r.getAttributeValue("name")));
+        part.setText(nullIfBlank(r.getAttributeValue("text")));
         return part;
     }
 
     // ===== Address/metadata helpers =====
 
-    private void accumulateAddressStreaming(XMLStreamReader r, Message msg) {
-        String type = r.getAttributeValue(null, "type");
-        String address = r.getAttributeValue(null, XML_ATTR_ADDRESS);
+    private void accumulateAddressStreaming(XmlElementReader r, Message msg) {
+        String type = r.getAttributeValue("type");
+        String address = r.getAttributeValue(XML_ATTR_ADDRESS);
         if (type == null || address == null) return;
         Map<String, Object> meta = ensureMetadata(msg);
         if (ADDR_TYPE_FROM.equals(type)) {
@@ -391,5 +443,5 @@ public class XmlMessageParser {
 
     String nullIfBlank(String s) { return StringUtils.isBlank(s) ? null : s; }
 
-    String attr(XMLStreamReader r, String name) { return r.getAttributeValue(null, name); }
+    String attr(XmlElementReader r, String name) { return r.getAttributeValue(name); }
 }
@@ -0,0 +1,97 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * XML parser used by streaming imports (smsarchive.import.parser).
+ *
+ * All backends refuse external entities and DTD processing, so a backup cannot make the
+ * server read local files or expand entity bombs. The StAX backends get the same factory
+ * settings the import has always used; {@link #SCANNER} rejects any DOCTYPE outright and
+ * only knows the five predefined entities and character references.
+ *
+ * {@link #SCANNER} is the default: the StAX parsers turn every attribute into a String, so a
+ * 100 MB video costs a few hundred MB of heap, where the scanner spills large values to disk.
+ * It only reads UTF-8, which is what SMS Backup & Restore writes; other encodings need jdk.
+ */
+public enum XmlParserBackend {
+
+    /** The JDK's built-in StAX parser, whatever else is on the classpath. */
+    JDK {
+        @Override
+        public XmlElementReader open(InputStream in) throws XMLStreamException {
+            return openStax(XMLInputFactory.newDefaultFactory(), in);
+        }
+    },
+
+    WOODSTOX {
+        @Override
+        public XmlElementReader open(InputStream in) throws XMLStreamException {
+            XMLInputFactory factory = new WstxInputFactory();
+            // Woodstox caps attributes at 512KB by default; MMS attachments are attributes
+            factory.setProperty(WstxInputProperties.P_MAX_ATTRIBUTE_SIZE, Integer.MAX_VALUE);
+            return openStax(factory, in);
+        }
+    },
+
+    AALTO {
+        @Override
+        public XmlElementReader open(InputStream in) throws XMLStreamException {
+            return openStax(new InputFactoryImpl(), in);
+        }
+    },
+
+    /** Hand-written UTF-8 byte scanner for the SMS Backup & Restore schema; the default. */
+    SCANNER {
+        @Override
+        public XmlElementReader open(InputStream in) {
+            return new ScanningElementReader(in);
+        }
+    };
+
+    public abstract XmlElementReader open(InputStream in) throws XMLStreamException;
+
+    /**
+     * The factory settings every StAX backend shares. A parser that will not switch off external
+     * entities or DTDs is refused rather than used unprotected.
+     */
+    // visible for testing
+    static XmlElementReader openStax(XMLInputFactory factory, InputStream in) throws XMLStreamException {
+        // Only attributes are read, so there is no point in merging text events
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        disable(factory, XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES);
+        disable(factory, XMLInputFactory.SUPPORT_DTD);
+        try {
+            factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+        } catch (IllegalArgumentException _) { }
+        return new StaxElementReader(factory.createXMLStreamReader(in));
+    }
+
+    private static void disable(XMLInputFactory factory, String property) throws XMLStreamException {
+        try {
+            factory.setProperty(property, Boolean.FALSE);
+        } catch (IllegalArgumentException e) {
+            throw new XMLStreamException("XML parser " + factory.getClass().getName() + " cannot disable " + property
+                    + "; refusing to parse backups with it", e);
+        }
+    }
+
+    /** Resolve a configured name (case-insensitive); blank means {@link #SCANNER}. */
+    public static XmlParserBackend fromName(String name) {
+        if (name == null || name.isBlank()) return SCANNER;
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException _) {
+            throw new IllegalArgumentException("Unknown XML parser backend '" + name + "', expected one of "
+                    + Arrays.toString(values()).toLowerCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.joshfouchey.smsarchive.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Keyset position in a conversation: the (timestamp, id) of a message plus the direction to read
+ * from it. Pages are "the next N messages after/before this key", which the
+ * (conversation_id, timestamp, id) index serves in the same time at any depth.
+ *
+ * Clients treat the token as opaque; the format is private to the server.
+ */
+public record MessageCursor(Instant timestamp, long id, boolean newer) {
+
+    private static final String VERSION = "v1";
+
+    /** Cursor reading the other way from this key. */
+    public MessageCursor reversed() {
+        return new MessageCursor(timestamp, id, !newer);
+    }
+
+    public String encode() {
+        String raw = String.join("|", VERSION, Long.toString(timestamp.getEpochSecond()),
+                Integer.toString(timestamp.getNano()), Long.toString(id), newer ? "n" : "o");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MessageCursor decode(String token) {
+        try {
+            String[] f = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|");
+            if (f.length != 5 || !VERSION.equals(f[0]) || !(f[4].equals("n") || f[4].equals("o"))) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            Instant timestamp = Instant.ofEpochSecond(Long.parseLong(f[1]), Integer.parseInt(f[2]));
+            return new MessageCursor(timestamp, Long.parseLong(f[3]), f[4].equals("n"));
+        } catch (IllegalArgumentException | java.time.DateTimeException e) {
+            // NumberFormatException and bad base64 are IllegalArgumentExceptions too
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.joshfouchey.smsarchive.util;
+
+import com.joshfouchey.smsarchive.model.Message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Content fingerprint stored in messages.fingerprint (unique) and used for duplicate detection.
+ *
+ * First 128 bits of SHA-256 over
+ * {@code userId|conversationId|epochMillis|msgBox|protocol|lower(trim(body))}, packed into a UUID.
+ * Nulls are rendered as empty strings. Existing rows were fingerprinted by V20_1 with a frozen
+ * copy of this logic, so any change here needs a migration that recomputes them, in Java rather
+ * than SQL.
+ */
+public final class MessageFingerprint {
+    private MessageFingerprint() {}
+
+    public static UUID of(Message msg) {
+        UUID userId = msg.getUser() != null ? msg.getUser().getId() : null;
+        Long conversationId = msg.getConversation() != null ? msg.getConversation().getId() : null;
+        String canonical = str(userId)
+                + '|' + str(conversationId)
+                + '|' + (msg.getTimestamp() != null ? msg.getTimestamp().toEpochMilli() : "")
+                + '|' + str(msg.getMsgBox())
+                + '|' + str(msg.getProtocol())
+                + '|' + normalizeBody(msg.getBody());
+        ByteBuffer hash = ByteBuffer.wrap(sha256(canonical));
+        return new UUID(hash.getLong(), hash.getLong());
+    }
+
+    /** Whether two bodies are the same once normalised as for the fingerprint. */
+    public static boolean sameBody(String a, String b) {
+        return normalizeBody(a).equals(normalizeBody(b));
+    }
+
+    /** Only spaces are trimmed; lower-casing is Locale.ROOT, whatever the database collation. */
+    static String normalizeBody(String body) {
+        if (body == null) return "";
+        int start = 0;
+        int end = body.length();
+        while (start < end && body.charAt(start) == ' ') start++;
+        while (end > start && body.charAt(end - 1) == ' ') end--;
+        return body.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static String str(Object o) {
+        return o == null ? "" : o.toString();
+    }
+
+    private static byte[] sha256(String s) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.joshfouchey.smsarchive.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical form of a phone address as stored in contacts.normalized_number: {@code +} followed
+ * by the digits, E.164 style, or {@link #UNKNOWN} when the address has no digits at all.
+ *
+ * Rules, applied to the digits of the address:
+ * <ul>
+ *   <li>an address written with a leading {@code +} is already international and kept as is;</li>
+ *   <li>the ITU international prefix {@code 00} and the NANP exit code {@code 011} (followed by
+ *       more than a national number) are dropped, e.g. {@code 0044 20...} and {@code 011 44 20...}
+ *       both become {@code +4420...};</li>
+ *   <li>a bare 10-digit number is a NANP national number and gets country code 1;</li>
+ *   <li>anything else (11-digit NANP, short codes, other national numbers) keeps its digits.</li>
+ * </ul>
+ *
+ * {@link #canonicalize} is a single pass over the characters with no regex and no intermediate
+ * strings. An instance adds a bounded memo of raw address to canonical form, for the import path
+ * where the same few addresses repeat on every message. Instances are thread-safe; the memo is
+ * simply dropped when it reaches its size limit.
+ */
+public final class PhoneNumberCanonicalizer {
+
+    public static final String UNKNOWN = "__unknown__";
+
+    private static final int DEFAULT_MEMO_SIZE = 10_000;
+
+    private final int maxEntries;
+    private final Map<String, String> memo = new ConcurrentHashMap<>();
+
+    public PhoneNumberCanonicalizer() {
+        this(DEFAULT_MEMO_SIZE);
+    }
+
+    public PhoneNumberCanonicalizer(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /** Memoized {@link #canonicalize}. */
+    public String canonical(String raw) {
+        if (raw == null) return UNKNOWN;
+        String cached = memo.get(raw);
+        if (cached != null) return cached;
+        String canonical = canonicalize(raw);
+        if (memo.size() >= maxEntries) memo.clear();
+        memo.put(raw, canonical);
+        return canonical;
+    }
+
+    public static String canonicalize(CharSequence raw) {
+        if (raw == null) return UNKNOWN;
+        int len = raw.length();
+        int digits = 0;
+        boolean plus = false;
+        int d0 = -1, d1 = -1, d2 = -1; // first three digits
+        for (int i = 0; i < len; i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits == 0) d0 = c;
+                else if (digits == 1) d1 = c;
+                else if (digits == 2) d2 = c;
+                digits++;
+            } else if (c == '+' && digits == 0) {
+                plus = true;
+            }
+        }
+        if (digits == 0) return UNKNOWN;
+
+        int skip = 0;
+        boolean nanpNational = false;
+        if (!plus) {
+            if (d0 == '0' && d1 == '0' && digits > 2) {
+                skip = 2;
+            } else if (d0 == '0' && d1 == '1' && d2 == '1' && digits > 11) {
+                skip = 3;
+            } else if (digits == 10) {
+                nanpNational = true;
+            }
+        }
+
+        char[] out = new char[1 + (nanpNational ? 1 : 0) + digits - skip];
+        int o = 0;
+        out[o++] = '+';
+        if (nanpNational) out[o++] = '1';
+        int seen = 0;
+        for (int i = 0; i < len; i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9' && seen++ >= skip) out[o++] = c;
+        }
+        return new String(out);
+    }
+}
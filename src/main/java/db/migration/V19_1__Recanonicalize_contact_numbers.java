@@ -0,0 +1,270 @@
+package db.migration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * V19.1: re-key contacts to the canonical form the import now uses (util/PhoneNumberCanonicalizer),
+ * which no longer adds a NANP 1 to ten-digit numbers written with a leading + and drops the 00 /
+ * 011 international prefixes. Without this, the next import of a backup that was imported under
+ * the previous rules would create a second contact and conversation for those numbers and insert
+ * every message of their threads again.
+ *
+ * A contact's new key is computed from the address it was created from (contacts.number), but
+ * only while that address still yields the stored key under the previous rules; contacts that
+ * were created or edited otherwise keep their key. Contacts that now share a key are merged into
+ * the oldest one. Then conversations that now share a key (one-to-one: the same participant;
+ * groups: the same thread key, synthetic GROUP: keys being re-keyed as well) are merged into the
+ * oldest one; a moved message that the target conversation already holds is deleted.
+ *
+ * Both rule sets are frozen copies, so the migration does the same thing on every database
+ * whatever later becomes of the canonicalizer. It runs before message fingerprints (V20) and the
+ * conversation rollups (V25, V26) exist, which are computed from the merged rows.
+ */
+@Slf4j
+public class V19_1__Recanonicalize_contact_numbers extends BaseJavaMigration {
+
+    private static final String SYNTHETIC_GROUP_PREFIX = "GROUP:";
+    private static final String UNKNOWN = "__unknown__";
+
+    private record ContactRow(long id, UUID userId, String number, String key) {}
+
+    private record ConversationRow(long id, UUID userId, String threadKey, Long onlyParticipant) {}
+
+    @Override
+    public void migrate(Context context) {
+        recanonicalize(new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true)));
+    }
+
+    /** The migration itself, on whatever connection the template uses. */
+    public static void recanonicalize(JdbcTemplate jdbc) {
+        Map<UUID, Map<String, String>> rekeyed = rekeyContacts(jdbc);
+        if (rekeyed.isEmpty()) return;
+        mergeConversations(jdbc, rekeyed);
+    }
+
+    /** Returns, per user, the stored keys that changed and what they changed to. */
+    private static Map<UUID, Map<String, String>> rekeyContacts(JdbcTemplate jdbc) {
+        List<ContactRow> contacts = jdbc.query(
+                "SELECT id, user_id, number, normalized_number FROM contacts ORDER BY user_id, id",
+                (rs, _) -> new ContactRow(rs.getLong("id"), rs.getObject("user_id", UUID.class),
+                        rs.getString("number"), rs.getString("normalized_number")));
+
+        Map<UUID, Map<String, List<ContactRow>>> byTarget = new LinkedHashMap<>();
+        Map<UUID, Map<String, String>> rekeyed = new HashMap<>();
+        for (ContactRow c : contacts) {
+            String target = target(c);
+            byTarget.computeIfAbsent(c.userId(), _ -> new LinkedHashMap<>())
+                    .computeIfAbsent(target, _ -> new ArrayList<>()).add(c);
+            if (!target.equals(c.key())) rekeyed.computeIfAbsent(c.userId(), _ -> new HashMap<>()).put(c.key(), target);
+        }
+        if (rekeyed.isEmpty()) return rekeyed;
+
+        Map<Long, String> newKeys = new LinkedHashMap<>();
+        int mergedContacts = 0;
+        for (Map<String, List<ContactRow>> userContacts : byTarget.values()) {
+            for (Map.Entry<String, List<ContactRow>> entry : userContacts.entrySet()) {
+                List<ContactRow> rows = entry.getValue();
+                ContactRow winner = rows.getFirst();
+                for (ContactRow loser : rows.subList(1, rows.size())) {
+                    mergeContact(jdbc, loser.id(), winner.id());
+                    mergedContacts++;
+                }
+                if (!winner.key().equals(entry.getKey())) newKeys.put(winner.id(), entry.getKey());
+            }
+        }
+        // Park the changing keys first so no update trips the (user_id, normalized_number) index mid-way
+        for (Long id : newKeys.keySet()) {
+            jdbc.update("UPDATE contacts SET normalized_number = ? WHERE id = ?", "__rekey__" + id, id);
+        }
+        newKeys.forEach((id, key) -> jdbc.update("UPDATE contacts SET normalized_number = ? WHERE id = ?", key, id));
+        log.info("Re-keyed {} contacts, merged {} contacts that now share a number", newKeys.size(), mergedContacts);
+        return rekeyed;
+    }
+
+    private static String target(ContactRow c) {
+        if (c.number() != null && legacyCanonical(c.number()).equals(c.key())) {
+            return canonical(c.number());
+        }
+        return c.key();
+    }
+
+    /** Canonical form before this migration: the digits, with a 1 in front of ten of them. */
+    private static String legacyCanonical(String number) {
+        if (number.isBlank()) return UNKNOWN;
+        String digits = number.replaceAll("\\D", "");
+        if (digits.isEmpty()) return UNKNOWN;
+        if (digits.length() == 10) digits = "1" + digits;
+        return "+" + digits;
+    }
+
+    /**
+     * Canonical form from this migration on: a leading + keeps the digits as they are, a 00 or
+     * (before more than a national number) 011 prefix is dropped, and ten bare digits get a 1.
+     */
+    private static String canonical(String number) {
+        boolean plus = false;
+        StringBuilder digits = new StringBuilder(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') digits.append(c);
+            else if (c == '+' && digits.isEmpty()) plus = true;
+        }
+        if (digits.isEmpty()) return UNKNOWN;
+        if (!plus) {
+            if (digits.length() > 2 && digits.charAt(0) == '0' && digits.charAt(1) == '0') {
+                digits.delete(0, 2);
+            } else if (digits.length() > 11 && digits.charAt(0) == '0' && digits.charAt(1) == '1' && digits.charAt(2) == '1') {
+                digits.delete(0, 3);
+            } else if (digits.length() == 10) {
+                digits.insert(0, '1');
+            }
+        }
+        return "+" + digits;
+    }
+
+    private static void mergeContact(JdbcTemplate jdbc, long loser, long winner) {
+        jdbc.update("UPDATE messages SET sender_contact_id = ? WHERE sender_contact_id = ?", winner, loser);
+        jdbc.update("""
+                INSERT INTO conversation_contacts (conversation_id, contact_id)
+                SELECT conversation_id, ? FROM conversation_contacts WHERE contact_id = ?
+                ON CONFLICT DO NOTHING""", winner, loser);
+        jdbc.update("""
+                INSERT INTO kg_entity_contact_links (entity_id, contact_id, confidence, created_at)
+                SELECT entity_id, ?, confidence, created_at FROM kg_entity_contact_links WHERE contact_id = ?
+                ON CONFLICT DO NOTHING""", winner, loser);
+        jdbc.update("UPDATE contacts SET merged_into_id = ? WHERE merged_into_id = ?", winner, loser);
+        // Keep a real name over a name that is just the number
+        jdbc.update("""
+                UPDATE contacts w SET name = l.name
+                FROM contacts l
+                WHERE w.id = ? AND l.id = ?
+                  AND (w.name IS NULL OR w.name = w.number)
+                  AND l.name IS NOT NULL AND l.name <> l.number""", winner, loser);
+        jdbc.update("DELETE FROM contacts WHERE id = ?", loser);
+    }
+
+    private static void mergeConversations(JdbcTemplate jdbc, Map<UUID, Map<String, String>> rekeyed) {
+        List<ConversationRow> conversations = jdbc.query("""
+                SELECT c.id, c.user_id, c.thread_key,
+                       CASE WHEN count(cc.contact_id) = 1 THEN min(cc.contact_id) END AS only_participant
+                FROM conversations c
+                LEFT JOIN conversation_contacts cc ON cc.conversation_id = c.id
+                GROUP BY c.id
+                ORDER BY c.user_id, c.id""",
+                (rs, _) -> new ConversationRow(rs.getLong("id"), rs.getObject("user_id", UUID.class),
+                        rs.getString("thread_key"), rs.getObject("only_participant", Long.class)));
+
+        Map<UUID, Map<String, List<ConversationRow>>> byKey = new LinkedHashMap<>();
+        for (ConversationRow c : conversations) {
+            Map<String, String> userRekeyed = rekeyed.getOrDefault(c.userId(), Map.of());
+            String key;
+            if (c.threadKey() != null && !c.threadKey().isBlank()) {
+                String threadKey = rekeyThreadKey(c.threadKey(), userRekeyed);
+                if (!threadKey.equals(c.threadKey())) {
+                    jdbc.update("UPDATE conversations SET thread_key = ? WHERE id = ?", threadKey, c.id());
+                }
+                key = "G:" + threadKey;
+            } else if (c.onlyParticipant() != null) {
+                key = "C:" + c.onlyParticipant();
+            } else {
+                continue;
+            }
+            byKey.computeIfAbsent(c.userId(), _ -> new LinkedHashMap<>())
+                    .computeIfAbsent(key, _ -> new ArrayList<>()).add(c);
+        }
+
+        int winners = 0;
+        int duplicates = 0;
+        for (Map<String, List<ConversationRow>> userConversations : byKey.values()) {
+            for (List<ConversationRow> rows : userConversations.values()) {
+                ConversationRow winner = rows.getFirst();
+                for (ConversationRow loser : rows.subList(1, rows.size())) {
+                    duplicates += mergeConversation(jdbc, loser, winner.id());
+                }
+                if (rows.size() > 1) winners++;
+            }
+        }
+        log.info("Merged conversations into {} that now share a key, deleted {} duplicate messages",
+                winners, duplicates);
+    }
+
+    /** Synthetic group keys list the canonical participant numbers; other thread keys are raw addresses. */
+    private static String rekeyThreadKey(String threadKey, Map<String, String> rekeyed) {
+        if (rekeyed.isEmpty() || !threadKey.startsWith(SYNTHETIC_GROUP_PREFIX)) return threadKey;
+        Set<String> numbers = new TreeSet<>();
+        for (String n : threadKey.substring(SYNTHETIC_GROUP_PREFIX.length()).split(";")) {
+            numbers.add(rekeyed.getOrDefault(n, n));
+        }
+        return SYNTHETIC_GROUP_PREFIX + String.join(";", numbers);
+    }
+
+    /** Move the loser's messages and participants into the winner and delete it; returns the duplicates dropped. */
+    private static int mergeConversation(JdbcTemplate jdbc, ConversationRow loser, long winner) {
+        // A message is held already when the winner has one with the same content (what the
+        // import's fingerprint compares) or a second copy is among the moved ones
+        Set<UUID> held = new HashSet<>(jdbc.query(
+                "SELECT user_id, timestamp, msg_box, protocol, body FROM messages WHERE conversation_id = ?",
+                (rs, _) -> contentKey(rs), winner));
+        List<Object[]> duplicateIds = new ArrayList<>();
+        jdbc.query("SELECT id, user_id, timestamp, msg_box, protocol, body FROM messages WHERE conversation_id = ? ORDER BY id",
+                rs -> {
+                    if (!held.add(contentKey(rs))) duplicateIds.add(new Object[]{rs.getLong("id")});
+                }, loser.id());
+        jdbc.batchUpdate("DELETE FROM messages WHERE id = ?", duplicateIds);
+        // The same row under the older unique index on (conversation, timestamp, direction, body)
+        int duplicates = duplicateIds.size() + jdbc.update("""
+                DELETE FROM messages m
+                WHERE m.conversation_id = ?
+                  AND EXISTS (SELECT 1 FROM messages x
+                              WHERE x.conversation_id = ? AND x.user_id = m.user_id
+                                AND x.timestamp = m.timestamp AND x.direction = m.direction
+                                AND md5(COALESCE(x.body, '')) = md5(COALESCE(m.body, '')))""", loser.id(), winner);
+        jdbc.update("UPDATE messages SET conversation_id = ? WHERE conversation_id = ?", winner, loser.id());
+
+        jdbc.update("""
+                INSERT INTO conversation_contacts (conversation_id, contact_id)
+                SELECT ?, contact_id FROM conversation_contacts WHERE conversation_id = ?
+                ON CONFLICT DO NOTHING""", winner, loser.id());
+        jdbc.update("""
+                UPDATE conversations w SET last_message_at = GREATEST(w.last_message_at, l.last_message_at)
+                FROM conversations l
+                WHERE w.id = ? AND l.id = ?""", winner, loser.id());
+        jdbc.update("DELETE FROM conversations WHERE id = ?", loser.id());
+        return duplicates;
+    }
+
+    // SHA-256 of user|epochMillis|msgBox|protocol|body with spaces trimmed and Locale.ROOT lower case
+    private static UUID contentKey(ResultSet rs) throws SQLException {
+        Timestamp ts = rs.getTimestamp("timestamp");
+        String body = rs.getString("body");
+        if (body == null) body = "";
+        int start = 0;
+        int end = body.length();
+        while (start < end && body.charAt(start) == ' ') start++;
+        while (end > start && body.charAt(end - 1) == ' ') end--;
+        String key = Objects.toString(rs.getObject("user_id", UUID.class), "")
+                + '|' + (ts != null ? ts.toInstant().toEpochMilli() : "")
+                + '|' + Objects.toString(rs.getObject("msg_box", Integer.class), "")
+                + '|' + Objects.toString(rs.getString("protocol"), "")
+                + '|' + body.substring(start, end).toLowerCase(Locale.ROOT);
+        try {
+            ByteBuffer hash = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+            return new UUID(hash.getLong(), hash.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
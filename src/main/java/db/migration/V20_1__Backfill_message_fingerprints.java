@@ -0,0 +1,114 @@
+package db.migration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * V20.1: fingerprint every existing message (column added by V20) and build the unique index.
+ * Computed in Java because SQL lower() follows the database collation (and leaves non-ASCII
+ * letters alone under C) where the application lower-cases with Locale.ROOT.
+ *
+ * The hashing is a copy of util/MessageFingerprint as of this version, so the migration does
+ * the same thing on every database whatever later becomes of that class. Rows that collide keep
+ * the fingerprint on the oldest row only.
+ */
+@Slf4j
+public class V20_1__Backfill_message_fingerprints extends BaseJavaMigration {
+
+    private static final int BATCH = 5_000;
+
+    @Override
+    public void migrate(Context context) {
+        backfill(new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true)));
+    }
+
+    /** The migration itself; must run inside a transaction (the temp table lives until commit). */
+    public static void backfill(JdbcTemplate jdbc) {
+        jdbc.execute("CREATE TEMP TABLE v20_fingerprints (id BIGINT PRIMARY KEY, fingerprint UUID) ON COMMIT DROP");
+        List<Object[]> rows = new ArrayList<>(BATCH);
+        int[] total = {0};
+        JdbcTemplate cursor = new JdbcTemplate(jdbc.getDataSource());
+        cursor.setFetchSize(BATCH);
+        cursor.query("SELECT id, user_id, conversation_id, timestamp, msg_box, protocol, body FROM messages", rs -> {
+            Timestamp ts = rs.getTimestamp("timestamp");
+            rows.add(new Object[]{rs.getLong("id"), fingerprint(
+                    rs.getObject("user_id", UUID.class), rs.getObject("conversation_id", Long.class),
+                    ts == null ? null : ts.toInstant(), rs.getObject("msg_box", Integer.class),
+                    rs.getString("protocol"), rs.getString("body"))});
+            if (rows.size() == BATCH) total[0] += insert(jdbc, rows);
+        });
+        total[0] += insert(jdbc, rows);
+
+        jdbc.execute("DROP INDEX IF EXISTS ux_messages_fingerprint");
+        jdbc.update("""
+                UPDATE messages m SET fingerprint = t.fingerprint
+                FROM v20_fingerprints t
+                WHERE m.id = t.id AND m.fingerprint IS DISTINCT FROM t.fingerprint""");
+        // Older rows may collide (the previous unique index was case-sensitive and ignored msg_box/protocol)
+        int collisions = jdbc.update("""
+                UPDATE messages m
+                SET fingerprint = NULL
+                FROM (
+                    SELECT id, row_number() OVER (PARTITION BY fingerprint ORDER BY id) AS rn
+                    FROM messages
+                    WHERE fingerprint IS NOT NULL
+                ) d
+                WHERE m.id = d.id AND d.rn > 1""");
+        jdbc.execute("CREATE UNIQUE INDEX ux_messages_fingerprint ON messages (fingerprint)");
+        log.info("Fingerprinted {} messages, {} collisions left without one", total[0], collisions);
+    }
+
+    private static int insert(JdbcTemplate jdbc, List<Object[]> rows) {
+        if (rows.isEmpty()) return 0;
+        jdbc.batchUpdate("INSERT INTO v20_fingerprints (id, fingerprint) VALUES (?, ?)", rows);
+        int n = rows.size();
+        rows.clear();
+        return n;
+    }
+
+    // First 128 bits of SHA-256 over userId|conversationId|epochMillis|msgBox|protocol|body, nulls as ""
+    static UUID fingerprint(UUID userId, Long conversationId, Instant timestamp, Integer msgBox, String protocol,
+                            String body) {
+        String canonical = str(userId)
+                + '|' + str(conversationId)
+                + '|' + (timestamp != null ? timestamp.toEpochMilli() : "")
+                + '|' + str(msgBox)
+                + '|' + str(protocol)
+                + '|' + normalizeBody(body);
+        try {
+            ByteBuffer hash = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.getBytes(StandardCharsets.UTF_8)));
+            return new UUID(hash.getLong(), hash.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Only spaces are trimmed; lower-casing is Locale.ROOT
+    private static String normalizeBody(String body) {
+        if (body == null) return "";
+        int start = 0;
+        int end = body.length();
+        while (start < end && body.charAt(start) == ' ') start++;
+        while (end > start && body.charAt(end - 1) == ' ') end--;
+        return body.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static String str(Object o) {
+        return o == null ? "" : o.toString();
+    }
+}
@@ -0,0 +1,18 @@
+-- V18: Switch messages, message_parts, conversations and contacts to pooled sequence ids.
+-- With IDENTITY, Hibernate must INSERT each row immediately to learn its id, which disables
+-- JDBC batching. The entities now reserve ids 50 at a time (pooled-lo optimizer), so the
+-- BIGSERIAL sequences are re-seated to step by 50 and to start past the current max(id).
+-- Column defaults keep working for ad-hoc SQL inserts: pooled-lo treats every nextval as the
+-- low end of a private block, so a raw nextval can never collide with a Hibernate block.
+
+ALTER SEQUENCE messages_id_seq INCREMENT BY 50;
+SELECT setval('messages_id_seq', COALESCE((SELECT MAX(id) FROM messages), 0) + 1, false);
+
+ALTER SEQUENCE message_parts_id_seq INCREMENT BY 50;
+SELECT setval('message_parts_id_seq', COALESCE((SELECT MAX(id) FROM message_parts), 0) + 1, false);
+
+ALTER SEQUENCE conversations_id_seq INCREMENT BY 50;
+SELECT setval('conversations_id_seq', COALESCE((SELECT MAX(id) FROM conversations), 0) + 1, false);
+
+ALTER SEQUENCE contacts_id_seq INCREMENT BY 50;
+SELECT setval('contacts_id_seq', COALESCE((SELECT MAX(id) FROM contacts), 0) + 1, false);
@@ -0,0 +1,39 @@
+-- V19: Unlogged staging tables for the COPY-based import backend (smsarchive.import.persistBackend=copy).
+-- Each import batch is COPY'd here under its own load_id, moved into messages/message_parts with a
+-- single INSERT ... SELECT ... ON CONFLICT DO NOTHING, and deleted in the same transaction.
+-- UNLOGGED: staging rows are transient, so skipping WAL is safe and keeps COPY cheap.
+-- Ids are staged with the rows: the loader reserves them in blocks of the pooled sequences (V18),
+-- where a column default would spend a whole block per row.
+
+CREATE UNLOGGED TABLE IF NOT EXISTS import_message_staging (
+    load_id           UUID        NOT NULL,
+    id                BIGINT      NOT NULL,
+    user_id           UUID,
+    protocol          VARCHAR(10),
+    direction         VARCHAR(10),
+    sender_contact_id BIGINT,
+    conversation_id   BIGINT,
+    timestamp         TIMESTAMPTZ,
+    body              TEXT,
+    msg_box           INTEGER,
+    delivered_at      TIMESTAMPTZ,
+    read_at           TIMESTAMPTZ,
+    media             JSONB,
+    metadata          JSONB
+);
+
+CREATE INDEX IF NOT EXISTS idx_import_message_staging_load ON import_message_staging (load_id);
+
+CREATE UNLOGGED TABLE IF NOT EXISTS import_message_part_staging (
+    load_id     UUID    NOT NULL,
+    id          BIGINT  NOT NULL,
+    message_id  BIGINT  NOT NULL,
+    seq         INTEGER,
+    ct          VARCHAR(100),
+    name        TEXT,
+    text        TEXT,
+    file_path   TEXT,
+    size_bytes  BIGINT
+);
+
+CREATE INDEX IF NOT EXISTS idx_import_message_part_staging_load ON import_message_part_staging (load_id);
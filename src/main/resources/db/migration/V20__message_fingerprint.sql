@@ -0,0 +1,12 @@
+-- V20: Persisted content fingerprint for set-based duplicate detection.
+-- fingerprint = first 128 bits of sha256(user_id|conversation_id|epoch_millis|msg_box|protocol|lower(trim(body))),
+-- stored as UUID. The lower(trim(coalesce(body,''))) predicate used by the old per-message exists
+-- queries was not covered by any index; imports now probe a whole batch with one
+-- "fingerprint = ANY(array)" lookup against the unique index.
+-- Existing rows are fingerprinted, and the unique index built, by the Java migration V20_1: SQL's
+-- lower() follows the database collation and would not match what the application computes.
+
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS fingerprint UUID;
+
+-- COPY import backend carries the fingerprint through staging as well
+ALTER TABLE import_message_staging ADD COLUMN IF NOT EXISTS fingerprint UUID;
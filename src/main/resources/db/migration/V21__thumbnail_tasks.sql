@@ -0,0 +1,16 @@
+-- V21: Persisted backlog for the asynchronous thumbnail queue (ThumbnailQueueService).
+-- A row exists from the moment an original is queued until its thumbnail has been written,
+-- so work still pending at shutdown is picked up again on the next start.
+-- file_path is the key: queueing the same original twice is a no-op.
+-- A drainer leases a batch (claimed_at/claimed_by), generates it outside any transaction and
+-- then deletes the rows; leases left by a stopped process are released on the next start.
+
+CREATE TABLE IF NOT EXISTS thumbnail_tasks (
+    file_path     TEXT        PRIMARY KEY,
+    content_type  VARCHAR(100),
+    enqueued_at   TIMESTAMPTZ NOT NULL DEFAULT now(),
+    claimed_at    TIMESTAMPTZ,
+    claimed_by    TEXT
+);
+
+CREATE INDEX IF NOT EXISTS idx_thumbnail_tasks_unclaimed ON thumbnail_tasks (enqueued_at) WHERE claimed_at IS NULL;
@@ -0,0 +1,26 @@
+-- V22: Persisted streaming import jobs with resume checkpoints.
+-- resume_offset is a byte offset in source_path at or before the first message that is not yet
+-- known to be committed; committed_messages counts the messages before it. Jobs left RUNNING
+-- by a crash or redeploy are resumed from there at startup (see ImportService#resumeInterruptedImports).
+
+CREATE TABLE IF NOT EXISTS import_jobs (
+    id                   UUID         PRIMARY KEY,
+    user_id              UUID         REFERENCES users(id) ON DELETE CASCADE,
+    source_path          TEXT         NOT NULL,
+    source_size          BIGINT       NOT NULL,
+    delete_source        BOOLEAN      NOT NULL DEFAULT FALSE,
+    status               VARCHAR(20)  NOT NULL,
+    resume_offset        BIGINT       NOT NULL DEFAULT 0,
+    committed_messages   BIGINT       NOT NULL DEFAULT 0,
+    processed_messages   BIGINT       NOT NULL DEFAULT 0,
+    imported_messages    BIGINT       NOT NULL DEFAULT 0,
+    duplicate_messages   BIGINT       NOT NULL DEFAULT 0,
+    resume_count         INTEGER      NOT NULL DEFAULT 0,
+    error_message        TEXT,
+    created_at           TIMESTAMPTZ  NOT NULL DEFAULT now(),
+    checkpoint_at        TIMESTAMPTZ,
+    finished_at          TIMESTAMPTZ
+);
+
+CREATE INDEX IF NOT EXISTS idx_import_jobs_status ON import_jobs (status);
+CREATE INDEX IF NOT EXISTS idx_import_jobs_user ON import_jobs (user_id);
@@ -0,0 +1,5 @@
+-- V23: Final instrumentation report of an import (per-stage busy time and throughput, JDBC
+-- statements per message, media bytes written, batch flush latency histogram), written when
+-- the job completes or fails.
+
+ALTER TABLE import_jobs ADD COLUMN IF NOT EXISTS report JSONB;
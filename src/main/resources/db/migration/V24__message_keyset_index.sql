@@ -0,0 +1,8 @@
+-- V24: Keyset pagination of conversation messages.
+-- Pages are read as "(timestamp, id) before/after the cursor" in (timestamp, id) order, which this
+-- index answers with a bounded range scan at any depth. It also covers every query that only
+-- filtered on conversation_id, so the single-column index is dropped.
+
+CREATE INDEX IF NOT EXISTS idx_messages_conversation_keyset ON messages (conversation_id, "timestamp", id);
+
+DROP INDEX IF EXISTS idx_messages_conversation;
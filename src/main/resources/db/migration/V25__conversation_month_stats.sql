@@ -0,0 +1,28 @@
+-- V25: Per-month message rollups for conversation timelines.
+-- The timeline endpoint used to group every message of a conversation by year and month on each
+-- cold cache. These rows hold the same buckets and are kept current as messages are written:
+-- imports add each committed batch to them, deletes recompute the conversation's months, and
+-- rows go away with their conversation.
+
+CREATE TABLE IF NOT EXISTS conversation_month_stats (
+    conversation_id  BIGINT    NOT NULL REFERENCES conversations(id) ON DELETE CASCADE,
+    year             INTEGER   NOT NULL,
+    month            INTEGER   NOT NULL,
+    message_count    BIGINT    NOT NULL,
+    first_message_id BIGINT    NOT NULL,
+    last_message_id  BIGINT    NOT NULL,
+    first_timestamp  TIMESTAMP NOT NULL,
+    last_timestamp   TIMESTAMP NOT NULL,
+    PRIMARY KEY (conversation_id, year, month)
+);
+
+INSERT INTO conversation_month_stats (conversation_id, year, month, message_count,
+                                      first_message_id, last_message_id, first_timestamp, last_timestamp)
+SELECT m.conversation_id,
+       EXTRACT(YEAR FROM m.timestamp)::int,
+       EXTRACT(MONTH FROM m.timestamp)::int,
+       COUNT(*), MIN(m.id), MAX(m.id), MIN(m.timestamp), MAX(m.timestamp)
+FROM messages m
+WHERE m.conversation_id IS NOT NULL
+GROUP BY 1, 2, 3
+ON CONFLICT DO NOTHING;
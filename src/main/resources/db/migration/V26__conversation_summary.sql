@@ -0,0 +1,50 @@
+-- V26: Materialized conversation list rows.
+-- The conversation list used to find each conversation's last message with a LATERAL top-1 over
+-- messages and load every conversation with its participants. conversation_summary keeps what
+-- the list shows per conversation: last message preview and whether it has media, message and
+-- media counts and participant display names. Imports add each committed batch to it;
+-- deletes, contact renames/merges and participant repairs recompute the affected rows.
+
+CREATE TABLE IF NOT EXISTS conversation_summary (
+    conversation_id        BIGINT    PRIMARY KEY REFERENCES conversations(id) ON DELETE CASCADE,
+    message_count          BIGINT    NOT NULL DEFAULT 0,
+    media_count            BIGINT    NOT NULL DEFAULT 0,   -- messages carrying media
+    last_message_id        BIGINT,
+    last_message_at        TIMESTAMP,
+    last_message_preview   TEXT,                           -- first 200 characters of the body
+    last_message_has_media BOOLEAN   NOT NULL DEFAULT FALSE,
+    participant_names      TEXT[]    NOT NULL DEFAULT '{}' -- contact name, or number when unnamed
+);
+
+INSERT INTO conversation_summary (conversation_id, message_count, media_count, last_message_id, last_message_at,
+                                  last_message_preview, last_message_has_media, participant_names)
+SELECT c.id,
+       agg.message_count,
+       agg.media_count,
+       lm.id,
+       lm.timestamp,
+       left(lm.body, 200),
+       COALESCE(lm.media IS NOT NULL AND lm.media <> '{}'::jsonb, FALSE),
+       ARRAY(SELECT COALESCE(ct.name, ct.number)
+             FROM conversation_contacts cc JOIN contacts ct ON ct.id = cc.contact_id
+             WHERE cc.conversation_id = c.id
+             ORDER BY ct.id)
+FROM conversations c
+CROSS JOIN LATERAL (
+    SELECT count(*) AS message_count,
+           count(*) FILTER (WHERE m.media IS NOT NULL AND m.media <> '{}'::jsonb) AS media_count
+    FROM messages m
+    WHERE m.conversation_id = c.id
+) agg
+LEFT JOIN LATERAL (
+    SELECT m.id, m.timestamp, m.body, m.media
+    FROM messages m
+    WHERE m.conversation_id = c.id
+    ORDER BY m.timestamp DESC, m.id DESC
+    LIMIT 1
+) lm ON TRUE
+ON CONFLICT DO NOTHING;
+
+-- The list reads a user's conversations in this order, joining each one's summary row by key
+CREATE INDEX IF NOT EXISTS idx_conversations_user_last_message
+    ON conversations (user_id, last_message_at DESC NULLS LAST, id DESC);
@@ -2,11 +2,21 @@
 package com.joshfouchey.smsarchive.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.joshfouchey.smsarchive.model.Conversation;
+import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.model.MessageDirection;
+import com.joshfouchey.smsarchive.model.MessagePart;
+import com.joshfouchey.smsarchive.model.MessageProtocol;
 import com.joshfouchey.smsarchive.model.User;
 import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.ConversationSummaryRepository;
 import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationMonthStatsRepository;
+import com.joshfouchey.smsarchive.repository.MessagePartRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository;
 import com.joshfouchey.smsarchive.repository.UserRepository;
+import com.joshfouchey.smsarchive.service.ContactService;
 import com.joshfouchey.smsarchive.service.ConversationService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,9 +27,20 @@ import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -33,6 +54,11 @@ class ConversationControllerTest extends com.joshfouchey.smsarchive.config.Enhan
     @Autowired ConversationRepository conversationRepository;
     @Autowired ContactRepository contactRepository;
     @Autowired UserRepository userRepository;
+    @Autowired MessageRepository messageRepository;
+    @Autowired MessagePartRepository messagePartRepository;
+    @Autowired ConversationMonthStatsRepository monthStatsRepository;
+    @Autowired ConversationSummaryRepository conversationSummaryRepository;
+    @Autowired ContactService contactService;
     @Autowired ObjectMapper objectMapper;
 
     private User user;
@@ -40,6 +66,8 @@ class ConversationControllerTest extends com.joshfouchey.smsarchive.config.Enhan
     @BeforeEach
     void setup() {
         // Clean tables (order matters)
+        messagePartRepository.deleteAll();
+        messageRepository.deleteAll();
         conversationRepository.deleteAll();
         contactRepository.deleteAll();
         userRepository.deleteAll();
@@ -69,5 +97,201 @@ class ConversationControllerTest extends com.joshfouchey.smsarchive.config.Enhan
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNotFound());
     }
-}
 
+    @Test
+    void cursorPagesWalkTheWholeConversationBothWays() throws Exception {
+        Conversation conv = conversationService.findOrCreateOneToOne("15550123456", "Test Person");
+        // Two messages share a timestamp so the id breaks the tie
+        List<Instant> times = List.of(1000L, 2000L, 3000L, 3000L, 4000L, 5000L, 6000L).stream()
+                .map(Instant::ofEpochMilli).toList();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < times.size(); i++) {
+            Message m = new Message();
+            m.setUser(user);
+            m.setConversation(conv);
+            m.setProtocol(MessageProtocol.SMS);
+            m.setDirection(MessageDirection.INBOUND);
+            m.setTimestamp(times.get(i));
+            m.setBody("message " + i);
+            ids.add(messageRepository.save(m).getId());
+        }
+        List<Long> newestFirst = ids.reversed();
+
+        List<Long> seen = new ArrayList<>();
+        JsonNode page = cursorPage(conv.getId(), "size=3");
+        assertThat(page.get("prevCursor").isNull()).isTrue();
+        List<String> prevCursors = new ArrayList<>();
+        while (true) {
+            page.get("content").forEach(m -> seen.add(m.get("id").asLong()));
+            if (page.get("nextCursor").isNull()) break;
+            page = cursorPage(conv.getId(), "size=3&cursor=" + page.get("nextCursor").asText());
+            prevCursors.add(page.get("prevCursor").asText());
+        }
+        assertThat(seen).containsExactlyElementsOf(newestFirst);
+
+        // Going back from the last page returns the previous page in the same (descending) order
+        JsonNode back = cursorPage(conv.getId(), "size=3&cursor=" + prevCursors.getLast());
+        assertThat(back.get("content").findValues("id")).extracting(JsonNode::asLong)
+                .containsExactlyElementsOf(newestFirst.subList(3, 6));
+
+        // Jump to a date, oldest first
+        JsonNode fromDate = cursorPage(conv.getId(), "size=2&sort=asc&at=" + Instant.ofEpochMilli(3000));
+        assertThat(fromDate.get("content").findValues("id")).extracting(JsonNode::asLong)
+                .containsExactlyElementsOf(ids.subList(2, 4));
+        assertThat(fromDate.get("prevCursor").isNull()).isFalse();
+    }
+
+    @Test
+    void timelineIsServedFromMonthRollupsAndFollowsAddsAndRebuilds() throws Exception {
+        Conversation conv = conversationService.findOrCreateOneToOne("15550123456", "Test Person");
+        List<Instant> times = List.of("2023-12-15T10:00:00Z", "2024-01-05T10:00:00Z", "2024-01-20T10:00:00Z",
+                "2024-03-01T10:00:00Z").stream().map(Instant::parse).toList();
+        List<Long> ids = new ArrayList<>();
+        for (Instant time : times) {
+            Message m = new Message();
+            m.setUser(user);
+            m.setConversation(conv);
+            m.setProtocol(MessageProtocol.SMS);
+            m.setDirection(MessageDirection.INBOUND);
+            m.setTimestamp(time);
+            m.setBody("at " + time);
+            ids.add(messageRepository.save(m).getId());
+        }
+        // Written the way an import does: in two batches
+        monthStatsRepository.addMessages(ids.subList(0, 2));
+        monthStatsRepository.addMessages(ids.subList(2, 4));
+
+        mockMvc.perform(get("/api/conversations/" + conv.getId() + "/timeline"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.years.length()").value(2))
+                .andExpect(jsonPath("$.years[0].year").value(2023))
+                .andExpect(jsonPath("$.years[0].count").value(1))
+                .andExpect(jsonPath("$.years[1].count").value(3))
+                .andExpect(jsonPath("$.years[1].months[0].month").value(1))
+                .andExpect(jsonPath("$.years[1].months[0].count").value(2))
+                .andExpect(jsonPath("$.years[1].months[0].firstMessageId").value(ids.get(1)))
+                .andExpect(jsonPath("$.years[1].months[0].lastMessageId").value(ids.get(2)))
+                .andExpect(jsonPath("$.years[1].months[1].month").value(3));
+
+        messageRepository.deleteById(ids.get(2));
+        monthStatsRepository.rebuildConversation(conv.getId());
+        mockMvc.perform(get("/api/conversations/" + conv.getId() + "/timeline"))
+                .andExpect(jsonPath("$.years[1].months[0].count").value(1))
+                .andExpect(jsonPath("$.years[1].months[0].lastMessageId").value(ids.get(1)));
+    }
+
+    @Test
+    void conversationListIsServedFromSummariesAndFollowsRenames() throws Exception {
+        Conversation conv = conversationService.findOrCreateOneToOne("15550123456", "Test Person");
+        Conversation empty = conversationService.findOrCreateOneToOne("15550999999", "Nobody Yet");
+
+        // No summary row yet: listed with its participants and zero counts
+        mockMvc.perform(get("/api/conversations"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[?(@.id == " + conv.getId() + ")].messageCount").value(0))
+                .andExpect(jsonPath("$[?(@.id == " + conv.getId() + ")].participantCount").value(1));
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Message m = new Message();
+            m.setUser(user);
+            m.setConversation(conv);
+            m.setProtocol(i == 1 ? MessageProtocol.MMS : MessageProtocol.SMS);
+            m.setDirection(MessageDirection.INBOUND);
+            m.setTimestamp(Instant.ofEpochMilli(1000L * (i + 1)));
+            m.setBody("message " + i);
+            if (i == 1) m.setMedia(java.util.Map.of("count", 1));
+            ids.add(messageRepository.save(m).getId());
+        }
+        // Two batches, the second one older than the first: the newest message stays the last one
+        conversationSummaryRepository.addMessages(List.of(ids.get(2)));
+        conversationSummaryRepository.addMessages(ids.subList(0, 2));
+
+        String convPath = "$[?(@.id == " + conv.getId() + ")]";
+        mockMvc.perform(get("/api/conversations"))
+                .andExpect(jsonPath(convPath + ".messageCount").value(3))
+                .andExpect(jsonPath(convPath + ".mediaCount").value(1))
+                .andExpect(jsonPath(convPath + ".lastMessagePreview").value("message 2"))
+                .andExpect(jsonPath(convPath + ".lastMessageHasImage").value(false))
+                .andExpect(jsonPath("$[?(@.id == " + empty.getId() + ")].messageCount").value(0));
+
+        Long contactId = contactRepository.findAll().stream()
+                .filter(c -> "15550123456".equals(c.getNormalizedNumber()))
+                .findFirst().orElseThrow().getId();
+        contactService.updateContactName(contactId, "Renamed Person");
+        mockMvc.perform(patch("/api/conversations/" + conv.getId() + "/name")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Best Friend\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Best Friend"))
+                .andExpect(jsonPath("$.participantNames[0]").value("Renamed Person"))
+                .andExpect(jsonPath("$.messageCount").value(3));
+    }
+
+    @Test
+    void invalidCursorIsABadRequest() throws Exception {
+        Conversation conv = conversationService.findOrCreateOneToOne("15550123456", "Test Person");
+        mockMvc.perform(get("/api/conversations/" + conv.getId() + "/messages/cursor?cursor=bogus"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void messagesStreamAsNdjsonAndAsOneArrayWithPartsJoined() throws Exception {
+        Conversation conv = conversationService.findOrCreateOneToOne("15550123456", "Test Person");
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Message m = new Message();
+            m.setUser(user);
+            m.setConversation(conv);
+            m.setProtocol(MessageProtocol.MMS);
+            m.setDirection(i % 2 == 0 ? MessageDirection.INBOUND : MessageDirection.OUTBOUND);
+            m.setTimestamp(Instant.ofEpochMilli(10_000L - i)); // saved newest first
+            m.setBody("message " + i);
+            for (int p = 0; p < i; p++) {
+                MessagePart part = new MessagePart();
+                part.setMessage(m);
+                part.setSeq(p);
+                part.setContentType("image/jpeg");
+                part.setFilePath("media\\" + i + "\\" + p + ".jpg");
+                m.getParts().add(part);
+            }
+            ids.add(messageRepository.save(m).getId());
+        }
+        List<Long> oldestFirst = ids.reversed();
+
+        MvcResult started = mockMvc.perform(get("/api/conversations/" + conv.getId() + "/messages/stream"))
+                .andExpect(request().asyncStarted()).andReturn();
+        String ndjson = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : ndjson.split("\n")) lines.add(objectMapper.readTree(line));
+        assertThat(lines).extracting(n -> n.get("id").asLong()).containsExactlyElementsOf(oldestFirst);
+        assertThat(lines).extracting(n -> n.get("parts").size()).containsExactly(3, 2, 1, 0);
+        assertThat(lines.getFirst().get("parts").get(0).get("filePath").asText()).isEqualTo("media/3/0.jpg");
+        assertThat(lines.getFirst().get("contactName").asText()).isEqualTo("Test Person");
+
+        started = mockMvc.perform(get("/api/conversations/" + conv.getId() + "/messages/all"))
+                .andExpect(request().asyncStarted()).andReturn();
+        JsonNode all = objectMapper.readTree(mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        assertThat(all.findValues("body")).extracting(JsonNode::asText)
+                .containsExactly("message 3", "message 2", "message 1", "message 0");
+    }
+
+    @Test
+    void streamingAMissingConversationIs404() throws Exception {
+        mockMvc.perform(get("/api/conversations/999999/messages/stream"))
+                .andExpect(status().isNotFound());
+    }
+
+    private JsonNode cursorPage(Long conversationId, String query) throws Exception {
+        String body = mockMvc.perform(get("/api/conversations/" + conversationId + "/messages/cursor?" + query))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+}
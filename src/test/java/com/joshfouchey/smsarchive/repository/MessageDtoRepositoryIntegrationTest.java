@@ -0,0 +1,146 @@
+package com.joshfouchey.smsarchive.repository;
+
+import com.joshfouchey.smsarchive.config.EnhancedPostgresTestContainer;
+import com.joshfouchey.smsarchive.dto.MessageDto;
+import com.joshfouchey.smsarchive.mapper.MessageMapper;
+import com.joshfouchey.smsarchive.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class MessageDtoRepositoryIntegrationTest extends EnhancedPostgresTestContainer {
+
+    @Autowired MessageDtoRepository messageDtoRepository;
+    @Autowired MessageRepository messageRepository;
+    @Autowired MessagePartRepository messagePartRepository;
+    @Autowired ConversationRepository conversationRepository;
+    @Autowired ContactRepository contactRepository;
+    @Autowired UserRepository userRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private User user;
+    private User otherUser;
+    private final List<Long> ids = new ArrayList<>();
+    private Long otherUsersMessage;
+
+    @BeforeEach
+    void setup() {
+        messagePartRepository.deleteAll();
+        messageRepository.deleteAll();
+        conversationRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+        ids.clear();
+
+        user = user("dtouser");
+        otherUser = user("dtoother");
+        Contact alice = contact(user, "Alice", "+15550000001");
+        Contact bob = contact(user, "Bob", "+15550000002");
+        Conversation direct = conversation(user, "Alice", alice);
+        Conversation group = conversation(user, "Friends", alice, bob);
+
+        ids.add(message(user, direct, null, MessageDirection.OUTBOUND, 0, null).getId());
+        ids.add(message(user, direct, alice, MessageDirection.INBOUND, 1, List.of("image/jpeg", "text/plain")).getId());
+        ids.add(message(user, group, bob, MessageDirection.INBOUND, 2, List.of("image/png")).getId());
+        ids.add(message(user, group, null, MessageDirection.OUTBOUND, 3, null).getId());
+
+        Contact carol = contact(otherUser, "Carol", "+15550000003");
+        otherUsersMessage = message(otherUser, conversation(otherUser, "Carol", carol), carol,
+                MessageDirection.INBOUND, 4, null).getId();
+    }
+
+    @Test
+    void readModelMatchesTheEntityMapping() {
+        List<MessageDto> fromReadModel = messageDtoRepository.findByIds(ids, user.getId());
+
+        List<MessageDto> fromEntities = new TransactionTemplate(transactionManager).execute(_ -> {
+            Map<Long, Message> byId = new HashMap<>();
+            messageRepository.findByIdsWithAssociations(ids).forEach(m -> byId.put(m.getId(), m));
+            return ids.stream().map(id -> MessageMapper.toDto(byId.get(id))).toList();
+        });
+
+        assertThat(fromReadModel).hasSize(4);
+        for (int i = 0; i < ids.size(); i++) {
+            assertThat(fromReadModel.get(i))
+                    .usingRecursiveComparison()
+                    .withComparatorForType(Comparator.comparing((Instant t) -> t.toEpochMilli()), Instant.class)
+                    .isEqualTo(fromEntities.get(i));
+        }
+        // 1:1 conversations carry the counterparty, groups only the participant count
+        assertThat(fromReadModel.get(1).contactName()).isEqualTo("Alice");
+        assertThat(fromReadModel.get(2).contactName()).isNull();
+        assertThat(fromReadModel.get(2).conversationParticipantCount()).isEqualTo(2);
+        assertThat(fromReadModel.get(1).parts()).extracting("contentType").containsExactly("image/jpeg", "text/plain");
+    }
+
+    @Test
+    void keepsRequestedOrderAndSkipsOtherUsersAndMissingIds() {
+        List<Long> requested = List.of(ids.get(3), otherUsersMessage, ids.get(0), -1L, ids.get(2));
+
+        assertThat(messageDtoRepository.findByIds(requested, user.getId()))
+                .extracting(MessageDto::id)
+                .containsExactly(ids.get(3), ids.get(0), ids.get(2));
+        assertThat(messageDtoRepository.findByIds(List.of(), user.getId())).isEmpty();
+    }
+
+    private User user(String username) {
+        User u = new User();
+        u.setUsername(username);
+        u.setPasswordHash("$2a$10$dummyhash");
+        return userRepository.save(u);
+    }
+
+    private Contact contact(User owner, String name, String number) {
+        Contact c = new Contact();
+        c.setUser(owner);
+        c.setName(name);
+        c.setNumber(number);
+        c.setNormalizedNumber(number.substring(1));
+        return contactRepository.save(c);
+    }
+
+    private Conversation conversation(User owner, String name, Contact... participants) {
+        Conversation c = new Conversation();
+        c.setUser(owner);
+        c.setName(name);
+        c.getParticipants().addAll(List.of(participants));
+        return conversationRepository.save(c);
+    }
+
+    private Message message(User owner, Conversation conversation, Contact sender, MessageDirection direction,
+                            int n, List<String> partTypes) {
+        Message m = new Message();
+        m.setUser(owner);
+        m.setConversation(conversation);
+        m.setSenderContact(sender);
+        m.setProtocol(partTypes == null ? MessageProtocol.SMS : MessageProtocol.MMS);
+        m.setDirection(direction);
+        m.setTimestamp(Instant.parse("2024-03-01T10:00:00Z").plusSeconds(n * 60L));
+        m.setMsgBox(direction == MessageDirection.INBOUND ? 1 : 2);
+        m.setBody("message " + n);
+        m.setMetadata(Map.of("subject", "s" + n, "reactions", List.of("like")));
+        if (partTypes != null) {
+            m.setMedia(Map.of("count", partTypes.size()));
+            for (int seq = 0; seq < partTypes.size(); seq++) {
+                MessagePart part = new MessagePart();
+                part.setMessage(m);
+                part.setSeq(seq);
+                part.setContentType(partTypes.get(seq));
+                part.setFilePath("/media/" + n + "/" + seq);
+                m.getParts().add(part);
+            }
+        }
+        return messageRepository.save(m);
+    }
+}
@@ -0,0 +1,157 @@
+package com.joshfouchey.smsarchive.schema;
+
+import com.joshfouchey.smsarchive.config.EnhancedPostgresTestContainer;
+import com.joshfouchey.smsarchive.model.*;
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.MessagePartRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository;
+import com.joshfouchey.smsarchive.repository.UserRepository;
+import com.joshfouchey.smsarchive.service.ImportService;
+import db.migration.V19_1__Recanonicalize_contact_numbers;
+import db.migration.V20_1__Backfill_message_fingerprints;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Data written under the canonicalization rules before V19_1 ("+49 30 123456" keyed as
+ * +14930123456, "0044 ..." keyed as +0044...) must be re-keyed so that importing the same
+ * backup again finds its contacts, conversations and messages. The fingerprint backfill (V20_1)
+ * runs after it, as it does in the migration order.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@WithMockUser(username = "testuser")
+class ContactRecanonicalizationMigrationTest extends EnhancedPostgresTestContainer {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Autowired ImportService importService;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired MessageRepository messageRepository;
+    @Autowired MessagePartRepository messagePartRepository;
+    @Autowired ConversationRepository conversationRepository;
+    @Autowired ContactRepository contactRepository;
+    @Autowired UserRepository userRepository;
+
+    private User user;
+
+    @BeforeEach
+    void setup() {
+        messagePartRepository.deleteAll();
+        messageRepository.deleteAll();
+        conversationRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+        User u = new User();
+        u.setUsername("testuser");
+        u.setPasswordHash("$2a$10$dummyhash");
+        user = userRepository.save(u);
+    }
+
+    @Test
+    void reimportAfterMigrationAddsNothing() throws Exception {
+        // Before V19_1: one contact per legacy key, and two contacts for the same London number
+        Contact berlin = contact("+49 30 123456", "+14930123456", "Berlin Office");
+        Conversation berlinChat = conversation(berlin);
+        message(berlinChat, berlin, 0, "Hallo");
+        message(berlinChat, berlin, 1, "Tschüss");
+        Contact londonExitCode = contact("0044 20 7946 0958", "+00442079460958", "London");
+        message(conversation(londonExitCode), londonExitCode, 2, "Cheers");
+        Contact londonPlus = contact("+44 20 7946 0958", "+442079460958", "+44 20 7946 0958");
+        Conversation londonPlusChat = conversation(londonPlus);
+        message(londonPlusChat, londonPlus, 2, "Cheers");
+        message(londonPlusChat, londonPlus, 3, "See you");
+
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(_ -> {
+                    V19_1__Recanonicalize_contact_numbers.recanonicalize(jdbc);
+                    V20_1__Backfill_message_fingerprints.backfill(jdbc);
+                });
+
+        assertThat(jdbc.queryForList("SELECT normalized_number FROM contacts ORDER BY id", String.class))
+                .containsExactly("+4930123456", "+442079460958");
+        assertThat(jdbc.queryForObject("SELECT name FROM contacts WHERE normalized_number = '+442079460958'", String.class))
+                .isEqualTo("London");
+        assertThat(conversationRepository.count()).isEqualTo(2);
+        assertThat(messageRepository.count()).isEqualTo(4); // the second "Cheers" was the same message
+
+        Path xml = Files.createTempFile("recanonicalized", ".xml");
+        try {
+            Files.writeString(xml, """
+                    <?xml version='1.0' encoding='UTF-8' standalone='yes' ?>
+                    <smses count="5">
+                    %s%s%s%s%s</smses>
+                    """.formatted(
+                    sms("+49 30 123456", 0, "Hallo", "Berlin Office"),
+                    sms("+49 30 123456", 1, "Tschüss", "Berlin Office"),
+                    sms("0044 20 7946 0958", 2, "Cheers", "London"),
+                    sms("+44 20 7946 0958", 2, "Cheers", "London"),
+                    sms("+44 20 7946 0958", 3, "See you", "London")));
+            UUID job = importService.startImportAsync(xml);
+            Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> {
+                var progress = importService.getProgress(job);
+                return progress != null && "COMPLETED".equals(progress.getStatus());
+            });
+
+            assertThat(importService.getProgress(job).getImportedMessages()).isZero();
+            assertThat(contactRepository.count()).isEqualTo(2);
+            assertThat(conversationRepository.count()).isEqualTo(2);
+            assertThat(messageRepository.count()).isEqualTo(4);
+        } finally {
+            Files.deleteIfExists(xml);
+        }
+    }
+
+    private static String sms(String address, int n, String body, String name) {
+        return "<sms protocol=\"0\" address=\"%s\" date=\"%d\" type=\"1\" body=\"%s\" contact_name=\"%s\" />\n"
+                .formatted(address, T0 + n * 60_000L, body, name);
+    }
+
+    private Contact contact(String number, String legacyKey, String name) {
+        Contact c = new Contact();
+        c.setUser(user);
+        c.setNumber(number);
+        c.setNormalizedNumber(legacyKey);
+        c.setName(name);
+        return contactRepository.save(c);
+    }
+
+    private Conversation conversation(Contact participant) {
+        Conversation c = new Conversation();
+        c.setUser(user);
+        c.setName(participant.getName());
+        c.getParticipants().add(participant);
+        return conversationRepository.save(c);
+    }
+
+    private void message(Conversation conversation, Contact sender, int n, String body) {
+        Message m = new Message();
+        m.setUser(user);
+        m.setConversation(conversation);
+        m.setSenderContact(sender);
+        m.setProtocol(MessageProtocol.SMS);
+        m.setDirection(MessageDirection.INBOUND);
+        m.setMsgBox(1);
+        m.setTimestamp(Instant.ofEpochMilli(T0 + n * 60_000L));
+        m.setBody(body);
+        messageRepository.save(m);
+    }
+}
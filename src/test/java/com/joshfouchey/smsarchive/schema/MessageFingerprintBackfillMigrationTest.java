@@ -0,0 +1,115 @@
+package com.joshfouchey.smsarchive.schema;
+
+import com.joshfouchey.smsarchive.config.EnhancedPostgresTestContainer;
+import com.joshfouchey.smsarchive.model.*;
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.MessagePartRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository;
+import com.joshfouchey.smsarchive.repository.UserRepository;
+import com.joshfouchey.smsarchive.util.MessageFingerprint;
+import db.migration.V20_1__Backfill_message_fingerprints;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fingerprints given to existing rows must equal what an import computes for the same message,
+ * including bodies where SQL lower()/trim() and Java disagree: the migration's frozen copy of the
+ * hashing has to stay identical to MessageFingerprint.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class MessageFingerprintBackfillMigrationTest extends EnhancedPostgresTestContainer {
+
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired MessageRepository messageRepository;
+    @Autowired MessagePartRepository messagePartRepository;
+    @Autowired ConversationRepository conversationRepository;
+    @Autowired ContactRepository contactRepository;
+    @Autowired UserRepository userRepository;
+
+    private User user;
+    private Conversation conversation;
+
+    @BeforeEach
+    void setup() {
+        messagePartRepository.deleteAll();
+        messageRepository.deleteAll();
+        conversationRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+        User u = new User();
+        u.setUsername("fingerprintuser");
+        u.setPasswordHash("$2a$10$dummyhash");
+        user = userRepository.save(u);
+        Conversation c = new Conversation();
+        c.setUser(user);
+        c.setName("Backfill");
+        conversation = conversationRepository.save(c);
+    }
+
+    @Test
+    void backfillMatchesTheImportFingerprint() {
+        List<String> bodies = List.of("İstanbul'DA ÇAY", "Grüße aus München", "\tTab padded\n", "  plain  ", "");
+        for (int i = 0; i < bodies.size(); i++) {
+            jdbc.update("""
+                    INSERT INTO messages (protocol, timestamp, msg_box, direction, user_id, conversation_id, body)
+                    VALUES ('SMS', ?, 1, 'INBOUND', ?, ?, ?)""",
+                    Timestamp.from(Instant.ofEpochMilli(1_700_000_000_123L + i)), user.getId(), conversation.getId(),
+                    bodies.get(i));
+        }
+        // Rows written before V20 have no fingerprint
+        jdbc.update("UPDATE messages SET fingerprint = NULL");
+
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(_ -> V20_1__Backfill_message_fingerprints.backfill(jdbc));
+
+        List<Message> messages = messageRepository.findAll();
+        assertThat(messages).hasSize(bodies.size());
+        for (Message stored : messages) {
+            // What the next import computes for the same message
+            Message imported = new Message();
+            imported.setUser(user);
+            imported.setConversation(conversation);
+            imported.setTimestamp(stored.getTimestamp());
+            imported.setMsgBox(1);
+            imported.setProtocol(MessageProtocol.SMS);
+            imported.setBody(stored.getBody());
+            assertThat(stored.getFingerprint()).as(stored.getBody()).isEqualTo(MessageFingerprint.of(imported));
+        }
+        assertThat(jdbc.queryForObject(
+                "SELECT count(*) FROM pg_indexes WHERE indexname = 'ux_messages_fingerprint'", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void rowsThatNowCollideKeepTheFingerprintOnTheOldest() {
+        for (String body : List.of("Same", "same ")) {
+            jdbc.update("""
+                    INSERT INTO messages (protocol, timestamp, msg_box, direction, user_id, conversation_id, body)
+                    VALUES ('SMS', ?, 1, 'INBOUND', ?, ?, ?)""",
+                    Timestamp.from(Instant.ofEpochMilli(1_700_000_000_000L)), user.getId(), conversation.getId(), body);
+        }
+
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(_ -> V20_1__Backfill_message_fingerprints.backfill(jdbc));
+
+        List<UUID> fingerprints = jdbc.query("SELECT fingerprint FROM messages ORDER BY id",
+                (rs, _) -> rs.getObject(1, UUID.class));
+        assertThat(fingerprints.get(0)).isNotNull();
+        assertThat(fingerprints.get(1)).isNull();
+    }
+}
@@ -0,0 +1,111 @@
+package com.joshfouchey.smsarchive.service;
+
+import com.joshfouchey.smsarchive.config.EnhancedPostgresTestContainer;
+import com.joshfouchey.smsarchive.model.Contact;
+import com.joshfouchey.smsarchive.model.User;
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.MessagePartRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository;
+import com.joshfouchey.smsarchive.repository.UserRepository;
+import com.joshfouchey.smsarchive.service.importpipeline.ContactBulkWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ContactBulkWriterIntegrationTest extends EnhancedPostgresTestContainer {
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired MessagePartRepository messagePartRepository;
+    @Autowired MessageRepository messageRepository;
+    @Autowired ContactRepository contactRepository;
+    @Autowired ConversationRepository conversationRepository;
+    @Autowired UserRepository userRepository;
+
+    private User user;
+
+    @BeforeEach
+    void cleanDb() {
+        messagePartRepository.deleteAll();
+        messageRepository.deleteAll();
+        conversationRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+        User u = new User();
+        u.setUsername("bulkuser");
+        u.setPasswordHash("$2a$10$dummyhash");
+        user = userRepository.save(u);
+    }
+
+    @Test
+    void upsertInsertsNewContactsAndReturnsExistingOnes() {
+        Contact existing = contactRepository.save(contact("+15550000001", "Already Here"));
+        ContactBulkWriter writer = new ContactBulkWriter(jdbcTemplate);
+
+        Map<String, Contact> stored = writer.upsert(user, List.of(
+                contact("+15550000001", "Ignored"),
+                contact("+15550000002", "New Person"),
+                contact("+15550000003", null)));
+
+        assertThat(stored).hasSize(3);
+        assertThat(stored.get("+15550000001").getId()).isEqualTo(existing.getId());
+        assertThat(stored.get("+15550000001").getName()).isEqualTo("Already Here");
+        assertThat(stored.get("+15550000002").getName()).isEqualTo("New Person");
+        assertThat(stored.get("+15550000003").getName()).isNull();
+        assertThat(contactRepository.countByUser(user)).isEqualTo(3);
+        // Rows inserted by SQL and by Hibernate's pooled-lo ids must never collide
+        Contact later = contactRepository.save(contact("+15550000004", "Later"));
+        assertThat(stored.values()).extracting(Contact::getId).doesNotContain(later.getId());
+    }
+
+    @Test
+    void upsertHandlesMoreRowsThanOneStatementTakes() {
+        List<Contact> candidates = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) candidates.add(contact("+1555" + String.format("%07d", i), null));
+
+        Map<String, Contact> stored = new ContactBulkWriter(jdbcTemplate).upsert(user, candidates);
+
+        assertThat(stored).hasSize(2_500);
+        assertThat(contactRepository.countByUser(user)).isEqualTo(2_500);
+        // Explicit pooled ids: a 50-id block per 50 rows, not per row
+        LongSummaryStatistics ids = stored.values().stream().mapToLong(Contact::getId).summaryStatistics();
+        assertThat(ids.getMax() - ids.getMin()).isLessThan(2_600);
+    }
+
+    @Test
+    void updateNamesWritesEveryChangeInOneGo() {
+        ContactBulkWriter writer = new ContactBulkWriter(jdbcTemplate);
+        Map<String, Contact> stored = writer.upsert(user, List.of(
+                contact("+15550000001", "+15550000001"), contact("+15550000002", "+15550000002")));
+        stored.get("+15550000001").setName("Alice");
+        stored.get("+15550000002").setName("Bob");
+
+        writer.updateNames(stored.values());
+
+        assertThat(contactRepository.findByUserAndNormalizedNumber(user, "+15550000001").orElseThrow().getName())
+                .isEqualTo("Alice");
+        assertThat(contactRepository.findByUserAndNormalizedNumber(user, "+15550000002").orElseThrow().getName())
+                .isEqualTo("Bob");
+    }
+
+    private Contact contact(String normalized, String name) {
+        Contact c = new Contact();
+        c.setUser(user);
+        c.setNumber(normalized);
+        c.setNormalizedNumber(normalized);
+        c.setName(name);
+        return c;
+    }
+}
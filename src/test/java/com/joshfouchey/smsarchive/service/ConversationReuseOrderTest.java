@@ -78,12 +78,13 @@ class ConversationReuseOrderTest {
             if (c.getId() == null) c.setId(500L + (long)(Math.random()*100));
             return c;
         });
-        when(messageRepository.existsByConversationAndTimestampAndBody(any(), any(), any(), any(), any(), any())).thenReturn(false);
-        when(messageRepository.existsByTimestampAndBody(any(), any(), any(), any(), any())).thenReturn(false);
+        when(messageRepository.findExistingFingerprints(any())).thenReturn(java.util.List.of());
 
-        service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher));
+        service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher,
+                ImportTestInfrastructure.repositoryBacked(messageRepository, contactRepository)));
         Files.createDirectories(Path.of("test-media-root"));
         Mockito.doReturn(Path.of("test-media-root")).when(service).getMediaRoot();
+        service.init();
     }
 
     @Test
@@ -0,0 +1,101 @@
+package com.joshfouchey.smsarchive.service;
+
+import com.joshfouchey.smsarchive.config.EnhancedPostgresTestContainer;
+import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.model.MessagePart;
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.MessagePartRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository;
+import com.joshfouchey.smsarchive.repository.UserRepository;
+import com.joshfouchey.smsarchive.service.importpipeline.CopyMessageBulkLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "smsarchive.import.persistBackend=copy")
+@ActiveProfiles("test")
+@WithMockUser(username = "testuser")
+class CopyBulkLoaderIntegrationTest extends EnhancedPostgresTestContainer {
+
+    @Autowired ImportService importService;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired MessageRepository messageRepository;
+    @Autowired MessagePartRepository messagePartRepository;
+    @Autowired ContactRepository contactRepository;
+    @Autowired ConversationRepository conversationRepository;
+    @Autowired UserRepository userRepository;
+
+    @BeforeEach
+    void cleanDb() {
+        messagePartRepository.deleteAll();
+        messageRepository.deleteAll();
+        conversationRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void importsMessagesAndPartsThroughStaging() throws Exception {
+        UUID job = importService.startImportAsync(Path.of("src/test/resources/test-messages.xml"));
+        var progress = importService.getProgress(job);
+
+        assertThat(progress.getStatus()).isEqualTo("COMPLETED");
+        assertThat(count("messages")).isEqualTo(4);
+        assertThat(count("message_parts")).isEqualTo(3);
+        // Part ids come from one reserved block rather than a block per row
+        assertThat(jdbcTemplate.queryForObject("SELECT max(id) - min(id) FROM message_parts", Long.class)).isLessThan(50);
+        assertThat(count("import_message_staging")).isZero();
+        assertThat(count("import_message_part_staging")).isZero();
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM messages WHERE conversation_id IS NULL", Long.class)).isZero();
+    }
+
+    @Test
+    void conflictingRowsAreSkippedInOneStatement() throws Exception {
+        importService.startImportAsync(Path.of("src/test/resources/test-messages.xml"));
+        List<Message> existing = messageRepository.findAllByIdWithContacts(
+                jdbcTemplate.queryForList("SELECT id FROM messages ORDER BY id", Long.class));
+
+        List<Message> batch = new ArrayList<>();
+        for (Message m : existing) {
+            Message copy = new Message();
+            copy.setUser(m.getUser());
+            copy.setConversation(m.getConversation());
+            copy.setProtocol(m.getProtocol());
+            copy.setDirection(m.getDirection());
+            copy.setTimestamp(m.getTimestamp());
+            copy.setBody(m.getBody());
+            copy.setMsgBox(m.getMsgBox());
+            MessagePart part = new MessagePart();
+            part.setMessage(copy);
+            part.setSeq(0);
+            part.setContentType("text/plain");
+            part.setText("dup");
+            copy.getParts().add(part);
+            batch.add(copy);
+        }
+
+        int skipped = new CopyMessageBulkLoader(jdbcTemplate).load(batch);
+
+        assertThat(skipped).isEqualTo(existing.size());
+        assertThat(batch).allMatch(m -> m.getId() == null);
+        assertThat(count("messages")).isEqualTo(existing.size());
+        assertThat(count("message_parts")).isEqualTo(3);
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Long.class);
+    }
+}
@@ -3,7 +3,11 @@ package com.joshfouchey.smsarchive.service;
 import com.joshfouchey.smsarchive.model.*;
 import com.joshfouchey.smsarchive.repository.ContactRepository;
 import com.joshfouchey.smsarchive.repository.MessageRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository.FingerprintedContentProjection;
 import com.joshfouchey.smsarchive.repository.UserRepository;
+import com.joshfouchey.smsarchive.service.importpipeline.DuplicateDetector;
+import com.joshfouchey.smsarchive.service.importpipeline.FingerprintSet;
+import com.joshfouchey.smsarchive.util.MessageFingerprint;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -18,6 +22,7 @@ import org.springframework.context.ApplicationEventPublisher;
 import java.io.ByteArrayInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
@@ -88,15 +93,16 @@ class DuplicateDetectionTest {
         lenient().when(conversationService.save(any())).thenAnswer(inv -> inv.getArgument(0));
 
         // Mock duplicate checks - return false (no duplicates in DB)
-        lenient().when(messageRepository.existsByConversationAndTimestampAndBody(any(), any(), any(), any(), any(), any())).thenReturn(false);
-        lenient().when(messageRepository.existsByTimestampAndBody(any(), any(), any(), any(), any())).thenReturn(false);
+        lenient().when(messageRepository.findExistingFingerprints(any())).thenReturn(java.util.List.of());
 
         // Capture saved messages
         lenient().when(messageRepository.saveAll(any())).thenAnswer(inv -> inv.getArgument(0));
 
-        service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher));
+        service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher,
+                ImportTestInfrastructure.repositoryBacked(messageRepository, contactRepository)));
         Files.createDirectories(Path.of("test-media-root"));
         Mockito.doReturn(Path.of("test-media-root")).when(service).getMediaRoot();
+        service.init();
     }
 
     @Test
@@ -238,5 +244,122 @@ class DuplicateDetectionTest {
             Files.deleteIfExists(xmlFile);
         }
     }
-}
 
+    @Test
+    @DisplayName("Should skip messages whose fingerprint already exists in the database")
+    void testDatabaseDuplicatesDetectedByFingerprintProbe() throws Exception {
+        // Every probed fingerprint is reported as already stored
+        when(messageRepository.findExistingFingerprints(any())).thenAnswer(inv -> List.of((UUID[]) inv.getArgument(0)));
+        String xml = """
+            <?xml version='1.0' encoding='UTF-8' standalone='yes' ?>
+            <smses count="3">
+              <sms protocol="0" address="5551234567" date="1444417958196" type="1" body="Hello" />
+              <sms protocol="0" address="5551234567" date="1444417958196" type="1" body="hello" />
+              <sms protocol="0" address="5551234567" date="1444418000000" type="2" body="World" />
+            </smses>
+            """;
+
+        Path xmlFile = Path.of("test-db-duplicates.xml");
+        Files.writeString(xmlFile, xml);
+
+        try {
+            UUID jobId = service.startImportAsyncForUser(xmlFile, "testuser");
+
+            int maxWait = 200;
+            while (maxWait-- > 0 && !"COMPLETED".equals(service.getProgress(jobId).getStatus())) {
+                Thread.sleep(25);
+            }
+
+            ImportService.ImportProgress progress = service.getProgress(jobId);
+            assertThat(progress.getStatus()).isEqualTo("COMPLETED");
+            assertThat(progress.getProcessedMessages()).isEqualTo(3);
+            assertThat(progress.getImportedMessages()).isZero();
+            assertThat(progress.getDuplicateMessages()).isEqualTo(3);
+            verify(messageRepository, never()).saveAll(any());
+        } finally {
+            Files.deleteIfExists(xmlFile);
+        }
+    }
+
+    @Test
+    @DisplayName("Should fail the import when the duplicate probe fails instead of inserting blindly")
+    void testFailedFingerprintProbeFailsImport() throws Exception {
+        when(messageRepository.findExistingFingerprints(any())).thenThrow(new IllegalStateException("probe failed"));
+        String xml = """
+            <?xml version='1.0' encoding='UTF-8' standalone='yes' ?>
+            <smses count="1">
+              <sms protocol="0" address="5551234567" date="1444417958196" type="1" body="Hello" />
+            </smses>
+            """;
+
+        Path xmlFile = Path.of("test-probe-failure.xml");
+        Files.writeString(xmlFile, xml);
+
+        try {
+            UUID jobId = service.startImportAsyncForUser(xmlFile, "testuser");
+
+            int maxWait = 200;
+            while (maxWait-- > 0 && !"FAILED".equals(service.getProgress(jobId).getStatus())) {
+                Thread.sleep(25);
+            }
+
+            assertThat(service.getProgress(jobId).getStatus()).isEqualTo("FAILED");
+            verify(messageRepository, never()).saveAll(any());
+        } finally {
+            Files.deleteIfExists(xmlFile);
+        }
+    }
+
+    @Test
+    @DisplayName("Should confirm an in-run fingerprint hit against the stored row before skipping")
+    void testSeenFingerprintHitIsConfirmedAgainstStoredRow() {
+        DuplicateDetector detector = new DuplicateDetector(messageRepository);
+        Message msg = message("Hello");
+        UUID fingerprint = MessageFingerprint.of(msg);
+        FingerprintSet seen = new FingerprintSet(16);
+        seen.add(fingerprint);
+
+        // Same content stored under the fingerprint: a duplicate
+        when(messageRepository.findFingerprintedContent(any())).thenReturn(List.of(stored(fingerprint, msg, " HELLO")));
+        assertThat(detector.findDuplicates(List.of(msg), seen)).containsExactly(true);
+
+        // Different content under the same fingerprint: kept, and stored without a fingerprint
+        Message other = message("Hello");
+        when(messageRepository.findFingerprintedContent(any())).thenReturn(List.of(stored(fingerprint, msg, "Goodbye")));
+        assertThat(detector.findDuplicates(List.of(other), seen)).containsExactly(false);
+        assertThat(other.getFingerprint()).isNull();
+        assertThat(other.isFingerprintCollision()).isTrue();
+
+        // First copy not committed yet: nothing to compare with, the hit stands
+        Message inFlight = message("Hello");
+        when(messageRepository.findFingerprintedContent(any())).thenReturn(List.of());
+        assertThat(detector.findDuplicates(List.of(inFlight), seen)).containsExactly(true);
+        verify(messageRepository, never()).findExistingFingerprints(any());
+    }
+
+    private Message message(String body) {
+        Conversation conv = new Conversation();
+        conv.setId(1L);
+        Message m = new Message();
+        m.setUser(testUser);
+        m.setConversation(conv);
+        m.setProtocol(MessageProtocol.SMS);
+        m.setDirection(MessageDirection.INBOUND);
+        m.setMsgBox(1);
+        m.setTimestamp(Instant.ofEpochMilli(1444417958196L));
+        m.setBody(body);
+        return m;
+    }
+
+    private static FingerprintedContentProjection stored(UUID fingerprint, Message like, String body) {
+        return new FingerprintedContentProjection() {
+            public UUID getFingerprint() { return fingerprint; }
+            public UUID getUserId() { return like.getUser().getId(); }
+            public Long getConversationId() { return like.getConversation().getId(); }
+            public Timestamp getTimestamp() { return Timestamp.from(like.getTimestamp()); }
+            public Integer getMsgBox() { return like.getMsgBox(); }
+            public String getProtocol() { return like.getProtocol().name(); }
+            public String getBody() { return body; }
+        };
+    }
+}
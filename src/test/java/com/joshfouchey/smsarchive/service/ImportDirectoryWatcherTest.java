@@ -25,6 +25,7 @@ import static org.mockito.Mockito.*;
  * - Scanning and processing files (delete vs retain mode)
  * - File age threshold enforcement
  * - Pause / resume logic
+ * - Debounced pickup of watched files
  */
 class ImportDirectoryWatcherTest {
 
@@ -165,5 +166,35 @@ class ImportDirectoryWatcherTest {
         watcher.scanImportDirectory();
         verify(importService, times(1)).startImportAsyncForUser(any(Path.class), eq(username));
     }
+
+    @Test
+    @DisplayName("Watched file is imported only after its size and mtime stop changing")
+    void watchedFileWaitsUntilStable() throws Exception {
+        setField("deleteAfterImport", true);
+        setField("stableSeconds", 1L);
+        watcher.init();
+        String username = "erin";
+        Path userDir = tempRoot.resolve(username);
+        Files.createDirectories(userDir);
+        when(userRepository.findByUsername(username)).thenReturn(Optional.of(makeUser(username)));
+        when(importService.startImportAsyncForUser(any(Path.class), eq(username))).thenReturn(UUID.randomUUID());
+
+        Path xml = userDir.resolve("copying.xml");
+        Files.writeString(xml, "<messages>");
+        watcher.fileChanged(xml, username);
+        watcher.checkPendingFiles();
+        Thread.sleep(700);
+        // Still being written: the quiet period starts over
+        Files.writeString(xml, "<messages></messages>");
+        watcher.checkPendingFiles();
+        Thread.sleep(700);
+        watcher.checkPendingFiles();
+        verify(importService, never()).startImportAsyncForUser(any(Path.class), eq(username));
+
+        Thread.sleep(400);
+        watcher.checkPendingFiles();
+        verify(importService, times(1)).startImportAsyncForUser(any(Path.class), eq(username));
+        assertThat(Files.exists(xml)).isFalse();
+    }
 }
 
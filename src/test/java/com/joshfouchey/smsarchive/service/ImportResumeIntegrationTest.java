@@ -0,0 +1,137 @@
+package com.joshfouchey.smsarchive.service;
+
+import com.joshfouchey.smsarchive.config.EnhancedPostgresTestContainer;
+import com.joshfouchey.smsarchive.model.ImportJob;
+import com.joshfouchey.smsarchive.model.User;
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.ImportJobRepository;
+import com.joshfouchey.smsarchive.repository.MessagePartRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository;
+import com.joshfouchey.smsarchive.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@WithMockUser(username = "testuser")
+class ImportResumeIntegrationTest extends EnhancedPostgresTestContainer {
+
+    private static final int MESSAGES = 2_000;
+
+    @Autowired ImportService importService;
+    @Autowired ImportJobRepository importJobRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired MessageRepository messageRepository;
+    @Autowired MessagePartRepository messagePartRepository;
+    @Autowired ContactRepository contactRepository;
+    @Autowired ConversationRepository conversationRepository;
+    @Autowired UserRepository userRepository;
+
+    @BeforeEach
+    void cleanDb() {
+        importJobRepository.deleteAll();
+        messagePartRepository.deleteAll();
+        messageRepository.deleteAll();
+        conversationRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void completedImportIsRecordedAsJob() throws Exception {
+        UUID jobId = importService.startImportAsync(Path.of("src/test/resources/test-messages.xml"));
+
+        ImportJob job = importJobRepository.findById(jobId).orElseThrow();
+        assertThat(job.getStatus()).isEqualTo("COMPLETED");
+        assertThat(job.getImportedMessages()).isEqualTo(4);
+        assertThat(job.getFinishedAt()).isNotNull();
+    }
+
+    @Test
+    void interruptedImportResumesFromCheckpointWithoutLosingOrDuplicatingMessages() throws Exception {
+        Path xml = ImportThroughputBenchmarkTest.writeSyntheticBackup(MESSAGES, 20);
+        try {
+            importService.startImportAsync(xml);
+            assertThat(count()).isEqualTo(MESSAGES);
+
+            // Simulate a crash after the first half was committed
+            int half = MESSAGES / 2;
+            long halfMillis = 1_600_000_000_000L + half * 1000L;
+            jdbcTemplate.update("DELETE FROM messages WHERE timestamp >= ?", Timestamp.from(Instant.ofEpochMilli(halfMillis)));
+            assertThat(count()).isEqualTo(half);
+
+            String content = Files.readString(xml, StandardCharsets.UTF_8);
+            long halfOffset = content.lastIndexOf("<sms", content.indexOf("date=\"" + halfMillis + "\""));
+            User user = userRepository.findByUsername("testuser").orElseThrow();
+            ImportJob job = new ImportJob();
+            job.setId(UUID.randomUUID());
+            job.setUser(user);
+            job.setSourcePath(xml.toAbsolutePath().toString());
+            job.setSourceSize(Files.size(xml));
+            job.setStatus("RUNNING");
+            job.setResumeOffset(halfOffset - 5_000); // checkpoints are conservative
+            job.setCommittedMessages(half);
+            importJobRepository.save(job);
+
+            int resumed = importService.resumeInterruptedImports();
+
+            assertThat(resumed).isEqualTo(1);
+            assertThat(count()).isEqualTo(MESSAGES);
+            ImportJob after = importJobRepository.findById(job.getId()).orElseThrow();
+            assertThat(after.getStatus()).isEqualTo("COMPLETED");
+            assertThat(after.getResumeCount()).isEqualTo(1);
+            assertThat(after.getImportedMessages()).isEqualTo(half);
+            assertThat(after.getDuplicateMessages()).isPositive(); // the overlap before the checkpoint
+        } finally {
+            Files.deleteIfExists(xml);
+        }
+    }
+
+    @Test
+    void persistFailureFailsTheJobAndKeepsTheCheckpointAtCommittedMessages() throws Exception {
+        Path xml = ImportThroughputBenchmarkTest.writeSyntheticBackup(MESSAGES, 20);
+        jdbcTemplate.execute("""
+                CREATE OR REPLACE FUNCTION test_fail_insert() RETURNS trigger AS $$
+                BEGIN
+                    IF NEW.body = 'Synthetic message 1500 for benchmark' THEN
+                        RAISE EXCEPTION 'simulated persist failure';
+                    END IF;
+                    RETURN NEW;
+                END $$ LANGUAGE plpgsql""");
+        jdbcTemplate.execute("CREATE TRIGGER trg_test_fail_insert BEFORE INSERT ON messages "
+                + "FOR EACH ROW EXECUTE FUNCTION test_fail_insert()");
+        try {
+            UUID jobId = importService.startImportAsync(xml);
+
+            ImportJob job = importJobRepository.findById(jobId).orElseThrow();
+            assertThat(job.getStatus()).isEqualTo("FAILED");
+            assertThat(importService.getProgress(jobId).getStatus()).isEqualTo("FAILED");
+            assertThat(count()).isLessThan(MESSAGES);
+            // A resume would start at or before the first message that never made it
+            assertThat(job.getCommittedMessages()).isLessThanOrEqualTo(count());
+        } finally {
+            jdbcTemplate.execute("DROP TRIGGER IF EXISTS trg_test_fail_insert ON messages");
+            jdbcTemplate.execute("DROP FUNCTION IF EXISTS test_fail_insert()");
+            Files.deleteIfExists(xml);
+        }
+    }
+
+    private long count() {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM messages", Long.class);
+    }
+}
@@ -92,11 +92,12 @@ class ImportServiceGroupParticipantExpansionCanonicalTest {
                 });
 
         when(conversationService.save(any(Conversation.class))).thenAnswer(inv -> inv.getArgument(0));
-        when(messageRepository.existsByConversationAndTimestampAndBody(any(), any(), any(), any(), any(), any())).thenReturn(false);
-        when(messageRepository.existsByTimestampAndBody(any(), any(), any(), any(), any())).thenReturn(false);
+        when(messageRepository.findExistingFingerprints(any())).thenReturn(java.util.List.of());
 
-        service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher));
+        service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher,
+                ImportTestInfrastructure.repositoryBacked(messageRepository, contactRepository)));
         doReturn(Path.of("test-media-root")).when(service).getMediaRoot();
+        service.init();
         Files.createDirectories(Path.of("test-media-root"));
     }
 
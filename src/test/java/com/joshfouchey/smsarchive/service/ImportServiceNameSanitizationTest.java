@@ -45,8 +45,10 @@ class ImportServiceNameSanitizationTest {
         // minimal conversation stubs (not used directly but constructor requires service)
         when(conversationService.findOrCreateOneToOneForUser(testUser, "123", "Bob"))
                 .thenReturn(Conversation.builder().id(1L).user(testUser).name("Bob").build());
-        service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher));
+        service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher,
+                ImportTestInfrastructure.repositoryBacked(messageRepository, contactRepository)));
         doReturn(Path.of("test-media-root")).when(service).getMediaRoot();
+        service.init();
         sanitizeMethod = ImportService.class.getDeclaredMethod("sanitizeContactName", String.class);
         sanitizeMethod.setAccessible(true);
         isGroupLikeMethod = ImportService.class.getDeclaredMethod("isGroupLikeName", String.class);
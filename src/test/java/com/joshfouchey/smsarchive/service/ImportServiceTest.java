@@ -10,6 +10,7 @@ import org.awaitility.Awaitility;
 import org.junit.jupiter.api.*;
 import org.mockito.Mockito;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
@@ -21,10 +22,13 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
@@ -44,6 +48,7 @@ class ImportServiceTest {
         private ThumbnailService thumbnailService;
         private ConversationService conversationService;
         private UserRepository userRepository;
+        private volatile TaskExecutor importExecutor = task -> Thread.ofPlatform().daemon().start(task);
 
         @BeforeEach
         void setup() {
@@ -83,8 +88,10 @@ class ImportServiceTest {
                 return convo;
             });
 
-            service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher));
+            service = Mockito.spy(new ImportService(messageRepository, contactRepository, currentUserProvider, thumbnailService, conversationService, userRepository, eventPublisher,
+                    ImportTestInfrastructure.repositoryBacked(messageRepository, contactRepository, task -> importExecutor.execute(task))));
             doReturn(Path.of("test-media-root")).when(service).getMediaRoot(); // Mock media root
+            service.init();
         }
 
         @Test
@@ -161,37 +168,6 @@ class ImportServiceTest {
             assertEquals(Instant.EPOCH, service.parseInstant(null));
         }
 
-        @Test
-        @DisplayName("duplicate key stable for trimmed body and null contact")
-        void testDuplicateKeyStable() {
-            Message m = new Message();
-            m.setProtocol(MessageProtocol.SMS);
-            m.setDirection(MessageDirection.INBOUND);
-            m.setTimestamp(Instant.ofEpochMilli(123456789));
-            m.setMsgBox(1);
-            m.setBody("  Hello World  ");
-            String key1 = service.computeDuplicateKeyForTest(m);
-            m.setBody("Hello World");
-            String key2 = service.computeDuplicateKeyForTest(m);
-            assertEquals(key1, key2, "Body trimming should not change duplicate key");
-
-            // With a conversation id, key should change
-            com.joshfouchey.smsarchive.model.Conversation conv = new com.joshfouchey.smsarchive.model.Conversation();
-            conv.setId(42L);
-            m.setConversation(conv);
-            String key3 = service.computeDuplicateKeyForTest(m);
-            assertNotEquals(key1, key3);
-            assertTrue(key3.contains("|42|"), "Conversation id should be in the key");
-
-            // With a user, key should change
-            User user = new User();
-            user.setId(java.util.UUID.randomUUID());
-            m.setUser(user);
-            String key4 = service.computeDuplicateKeyForTest(m);
-            assertNotEquals(key1, key4);
-            assertTrue(key4.startsWith(user.getId().toString() + "|"), "User id should prefix the key");
-        }
-
         @Test
         @DisplayName("streaming import (mock) processes all messages and tracks progress")
         void streamingImportProcessesAllMessagesAndTracksProgress() throws Exception {
@@ -202,9 +178,8 @@ class ImportServiceTest {
                 if (c.getId() == null) c.setId(1L);
                 return c;
             });
-            // Mock the conversation-based duplicate checks
-            when(messageRepository.existsByConversationAndTimestampAndBody(any(), any(), any(), any(), any(), any())).thenReturn(false);
-            when(messageRepository.existsByTimestampAndBody(any(), any(), any(), any(), any())).thenReturn(false);
+            // Mock the batch fingerprint duplicate probe (nothing in DB yet)
+            when(messageRepository.findExistingFingerprints(any())).thenReturn(java.util.List.of());
             // Capture saved messages count
             final java.util.concurrent.atomic.AtomicInteger saved = new java.util.concurrent.atomic.AtomicInteger();
             doAnswer(inv -> {
@@ -231,6 +206,119 @@ class ImportServiceTest {
             assertThat(progress.getImportedMessages()).isEqualTo(5);
             assertThat(saved.get()).isEqualTo(5);
         }
+
+        @Test
+        @DisplayName("streaming import (mock) fails instead of completing when a batch cannot be persisted")
+        void streamingImportFailsWhenPersistFails() throws Exception {
+            when(contactRepository.findByUserAndNormalizedNumber(any(), anyString())).thenReturn(java.util.Optional.empty());
+            when(contactRepository.save(any(Contact.class))).thenAnswer(inv -> {
+                Contact c = inv.getArgument(0);
+                if (c.getId() == null) c.setId(1L);
+                return c;
+            });
+            when(messageRepository.findExistingFingerprints(any())).thenReturn(java.util.List.of());
+            doThrow(new org.springframework.dao.DataAccessResourceFailureException("connection lost"))
+                    .when(messageRepository).saveAll(anyList());
+
+            var jobId = service.startImportAsync(Path.of("src/test/resources/test-streaming-large.xml"));
+            ImportService.ImportProgress progress = null;
+            long start = System.currentTimeMillis();
+            while (System.currentTimeMillis() - start < 5000) {
+                progress = service.getProgress(jobId);
+                if (progress != null && ("COMPLETED".equals(progress.getStatus()) || "FAILED".equals(progress.getStatus()))) {
+                    break;
+                }
+                Thread.sleep(50);
+            }
+            assertThat(progress).isNotNull();
+            assertThat(progress.getStatus()).isEqualTo("FAILED");
+            assertThat(progress.getError()).contains("connection lost");
+        }
+
+        @Test
+        @DisplayName("streaming import (mock) counts a copy of an evicted, still uncommitted message as a duplicate")
+        void evictedInFlightDuplicateIsCountedNotWritten() throws Exception {
+            when(contactRepository.findByUserAndNormalizedNumber(any(), anyString())).thenReturn(java.util.Optional.empty());
+            when(contactRepository.save(any(Contact.class))).thenAnswer(inv -> {
+                Contact c = inv.getArgument(0);
+                if (c.getId() == null) c.setId(1L);
+                return c;
+            });
+            // The first copy is not committed yet, so the database probe cannot see it
+            when(messageRepository.findExistingFingerprints(any())).thenReturn(java.util.List.of());
+            java.util.List<Message> saved = new java.util.ArrayList<>();
+            doAnswer(inv -> {
+                @SuppressWarnings("unchecked") java.util.List<Message> batch = (java.util.List<Message>) inv.getArgument(0);
+                saved.addAll(batch);
+                return null;
+            }).when(messageRepository).saveAll(anyList());
+            // Smallest seen set (two generations of 614) and one persist batch for the whole file
+            org.springframework.test.util.ReflectionTestUtils.setField(service, "seenFingerprints", 16);
+            org.springframework.test.util.ReflectionTestUtils.setField(service, "streamBatchSize", 5_000);
+
+            StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8' standalone='yes' ?>\n<smses count=\"1501\">\n");
+            for (int i = 0; i <= 1500; i++) {
+                int n = i == 1500 ? 0 : i; // the last message repeats the first
+                xml.append("<sms protocol=\"0\" address=\"+15551234567\" date=\"").append(1_600_000_000_000L + n * 1000L)
+                        .append("\" type=\"1\" body=\"Message ").append(n).append("\" />\n");
+            }
+            xml.append("</smses>\n");
+            Path file = Files.createTempFile("evicted-duplicate", ".xml");
+            try {
+                Files.writeString(file, xml);
+                var jobId = service.startImportAsync(file);
+                ImportService.ImportProgress progress = null;
+                long start = System.currentTimeMillis();
+                while (System.currentTimeMillis() - start < 10_000) {
+                    progress = service.getProgress(jobId);
+                    if (progress != null && ("COMPLETED".equals(progress.getStatus()) || "FAILED".equals(progress.getStatus()))) {
+                        break;
+                    }
+                    Thread.sleep(50);
+                }
+                assertThat(progress).isNotNull();
+                assertThat(progress.getStatus()).isEqualTo("COMPLETED");
+                assertThat(progress.getImportedMessages()).isEqualTo(1500);
+                assertThat(progress.getDuplicateMessages()).isEqualTo(1);
+                assertThat(saved).hasSize(1500);
+                assertThat(saved).extracting(Message::getFingerprint).doesNotHaveDuplicates();
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Test
+        @DisplayName("live upload declaring more than the upload limit is refused before anything is spooled")
+        void liveUploadOverDeclaredLimitIsRefused() {
+            org.springframework.test.util.ReflectionTestUtils.setField(service, "maxUploadSize",
+                    org.springframework.util.unit.DataSize.ofKilobytes(1));
+
+            assertThatThrownBy(() -> service.startLiveImport(new java.io.ByteArrayInputStream(new byte[0]), 4096))
+                    .isInstanceOf(org.springframework.web.multipart.MaxUploadSizeExceededException.class);
+            verifyNoInteractions(currentUserProvider);
+        }
+
+        @Test
+        @DisplayName("live upload without a declared length stops at the upload limit and fails")
+        void liveUploadOverLimitWhileSpoolingFails() {
+            org.springframework.test.util.ReflectionTestUtils.setField(service, "maxUploadSize",
+                    org.springframework.util.unit.DataSize.ofKilobytes(1));
+            org.springframework.test.util.ReflectionTestUtils.setField(service, "importInline", true);
+
+            assertThatThrownBy(() -> service.startLiveImport(new java.io.ByteArrayInputStream(new byte[64 * 1024]), -1))
+                    .isInstanceOf(org.springframework.web.multipart.MaxUploadSizeExceededException.class);
+            verify(messageRepository, never()).saveAll(anyList());
+        }
+
+        @Test
+        @DisplayName("live upload whose import cannot be scheduled leaves no spool behind")
+        void liveUploadRejectedBySchedulerIsCleanedUp() {
+            importExecutor = task -> { throw new java.util.concurrent.RejectedExecutionException("queue full"); };
+
+            assertThatThrownBy(() -> service.startLiveImport(new java.io.ByteArrayInputStream(new byte[16]), 16))
+                    .isInstanceOf(java.io.IOException.class).hasMessageContaining("queue full");
+            assertThat((Map<?, ?>) org.springframework.test.util.ReflectionTestUtils.getField(service, "liveUploads")).isEmpty();
+        }
     }
 
     // ------------------------ INTEGRATION TESTS (Spring + DB) ------------------------
@@ -245,6 +333,8 @@ class ImportServiceTest {
         @Autowired ContactRepository contactRepository;
         @Autowired com.joshfouchey.smsarchive.repository.UserRepository userRepository;
         @Autowired com.joshfouchey.smsarchive.repository.ConversationRepository conversationRepository;
+        @Autowired org.springframework.jdbc.core.JdbcTemplate jdbcTemplate;
+        @Autowired com.joshfouchey.smsarchive.repository.ConversationSummaryRepository conversationSummaryRepository;
 
         private com.joshfouchey.smsarchive.model.User testUser;
 
@@ -302,51 +392,6 @@ class ImportServiceTest {
             assertThat(progress.getError()).isNotBlank();
         }
 
-        @Test
-        void duplicateKeyTrimsBodyAndUsesConversationIdOrNull() {
-            // Use a distinct number not present in streamed XML fixtures to avoid unique constraint collisions
-            Contact contact = contactRepository.save(Contact.builder().number("+15550000001").normalizedNumber("5550000001").name("TestPerson").user(testUser).build());
-            com.joshfouchey.smsarchive.model.Conversation conv = new com.joshfouchey.smsarchive.model.Conversation();
-            conv.setUser(testUser);
-            conv.setName("Test Conversation");
-            conv.getParticipants().add(contact);
-            conv = conversationRepository.save(conv);
-
-            Message msg = new Message();
-            msg.setConversation(conv);
-            msg.setUser(testUser);
-            msg.setBody("  Hello World  ");
-            msg.setTimestamp(Instant.ofEpochMilli(123456789L));
-            msg.setMsgBox(1);
-            msg.setDirection(MessageDirection.INBOUND);
-            msg.setProtocol(MessageProtocol.SMS);
-            String key = importService.computeDuplicateKeyForTest(msg);
-            assertThat(key)
-                .startsWith(testUser.getId().toString() + "|")
-                .contains(conv.getId().toString())
-                .contains("hello world")  // lowercase now since we normalize
-                .endsWith("hello world");
-            Message msg2 = new Message();
-            msg2.setConversation(conv);
-            msg2.setUser(testUser);
-            msg2.setBody(null);
-            msg2.setTimestamp(Instant.ofEpochMilli(123456789L));
-            msg2.setMsgBox(1);
-            msg2.setDirection(MessageDirection.INBOUND);
-            msg2.setProtocol(MessageProtocol.SMS);
-            String key2 = importService.computeDuplicateKeyForTest(msg2);
-            assertThat(key2).endsWith("|");
-            Message msg3 = new Message();
-            msg3.setConversation(null);
-            msg3.setBody("Test");
-            msg3.setTimestamp(Instant.ofEpochMilli(123456789L));
-            msg3.setMsgBox(1);
-            msg3.setDirection(MessageDirection.INBOUND);
-            msg3.setProtocol(MessageProtocol.SMS);
-            String key3 = importService.computeDuplicateKeyForTest(msg3);
-            assertThat(key3).startsWith("null|");
-        }
-
         private File createXmlWithDuplicates() throws Exception {
             String xml = """
                     <?xml version="1.0" encoding="UTF-8"?>
@@ -431,6 +476,96 @@ class ImportServiceTest {
             assertThat(messageRepository.count() - before).isEqualTo(5);
         }
 
+        @Test
+        void gzippedBackupImportsLikeThePlainFileWithProgressOnCompressedBytes() throws Exception {
+            Path gz = Files.createTempFile("streaming-large", ".xml.gz");
+            try (var out = new java.util.zip.GZIPOutputStream(Files.newOutputStream(gz))) {
+                Files.copy(Path.of("src/test/resources/test-streaming-large.xml"), out);
+            }
+            long before = messageRepository.count();
+            UUID jobId = importService.startImportAsync(gz);
+            ImportService.ImportProgress progress = awaitCompletion(jobId);
+            assertThat(progress.getStatus()).isEqualTo("COMPLETED");
+            assertThat(progress.getImportedMessages()).isEqualTo(5);
+            assertThat(messageRepository.count() - before).isEqualTo(5);
+            assertThat(progress.getTotalBytes()).isEqualTo(Files.size(gz));
+            assertThat(progress.getPercentBytes()).isEqualTo(100);
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void finishedImportReportsStageMetricsAndPersistsThem() throws Exception {
+            UUID jobId = importService.startImportAsync(Path.of("src/test/resources/test-streaming-large.xml"));
+            ImportService.ImportProgress progress = awaitCompletion(jobId);
+            assertThat(progress.getStatus()).isEqualTo("COMPLETED");
+
+            var metrics = progress.getMetrics();
+            assertThat((Map<String, Object>) metrics.get("stages")).containsKeys("parse", "resolve", "dedupe", "media", "persist");
+            assertThat(metrics).doesNotContainKey("dbStatements"); // statement counting is opt-in
+            assertThat((Map<String, Object>) metrics.get("flush")).containsEntry("rows", progress.getImportedMessages());
+            String report = jdbcTemplate.queryForObject("SELECT report::text FROM import_jobs WHERE id = ?", String.class, jobId);
+            assertThat(report).contains("\"messagesPerSecond\"", "\"persist\"");
+        }
+
+        @Test
+        void conversationLastMessageAtIsNewestImportedMessage() throws Exception {
+            UUID jobId = importService.startImportAsync(Path.of("src/test/resources/test-streaming-large.xml"));
+            assertThat(awaitCompletion(jobId).getStatus()).isEqualTo("COMPLETED");
+
+            assertThat(conversationRepository.count()).isPositive();
+            Long mismatched = jdbcTemplate.queryForObject("""
+                    SELECT count(*) FROM conversations c
+                    WHERE c.last_message_at IS DISTINCT FROM
+                          (SELECT max(m.timestamp) FROM messages m WHERE m.conversation_id = c.id)
+                    """, Long.class);
+            assertThat(mismatched).isZero();
+        }
+
+        @Test
+        void conversationMonthStatsMatchTheMessagesAfterRepeatedImports() throws Exception {
+            Path duplicates = createXmlWithDuplicates().toPath();
+            for (Path xml : List.of(duplicates, Path.of("src/test/resources/test-streaming-large.xml"), duplicates)) {
+                assertThat(awaitCompletion(importService.startImportAsync(xml)).getStatus()).isEqualTo("COMPLETED");
+            }
+
+            String fromMessages = """
+                    SELECT m.conversation_id, EXTRACT(YEAR FROM m.timestamp)::int, EXTRACT(MONTH FROM m.timestamp)::int,
+                           count(*), min(m.id), max(m.id), min(m.timestamp), max(m.timestamp)
+                    FROM messages m WHERE m.conversation_id IS NOT NULL GROUP BY 1, 2, 3
+                    """;
+            String fromStats = """
+                    SELECT conversation_id, year, month, message_count, first_message_id, last_message_id,
+                           first_timestamp, last_timestamp
+                    FROM conversation_month_stats
+                    """;
+            assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM conversation_month_stats", Long.class)).isPositive();
+            assertThat(jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM ((" + fromMessages + " EXCEPT " + fromStats + ") UNION ALL ("
+                            + fromStats + " EXCEPT " + fromMessages + ")) diff", Long.class)).isZero();
+        }
+
+        @Test
+        void conversationSummariesMatchARebuildAfterRepeatedImports() throws Exception {
+            Path duplicates = createXmlWithDuplicates().toPath();
+            for (Path xml : List.of(Path.of("src/test/resources/test-streaming-large.xml"), duplicates, duplicates)) {
+                assertThat(awaitCompletion(importService.startImportAsync(xml)).getStatus()).isEqualTo("COMPLETED");
+            }
+            String snapshot = """
+                    SELECT conversation_id, message_count, media_count, last_message_id, last_message_at,
+                           last_message_preview, last_message_has_media, array_to_string(participant_names, '|') AS names
+                    FROM conversation_summary
+                    WHERE message_count > 0
+                    """;
+            List<Map<String, Object>> maintained = jdbcTemplate.queryForList(snapshot + " ORDER BY conversation_id");
+            assertThat(maintained).isNotEmpty();
+            assertThat(maintained.stream().mapToLong(row -> ((Number) row.get("message_count")).longValue()).sum())
+                    .isEqualTo(jdbcTemplate.queryForObject(
+                            "SELECT count(*) FROM messages WHERE conversation_id IS NOT NULL", Long.class));
+
+            conversationSummaryRepository.rebuildAll();
+            assertThat(jdbcTemplate.queryForList(snapshot + " ORDER BY conversation_id")).isEqualTo(maintained);
+        }
+
         @Test
         @Transactional
         @DisplayName("SMS messages are assigned to conversations after contact resolution")
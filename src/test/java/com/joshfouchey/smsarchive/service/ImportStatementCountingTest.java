@@ -0,0 +1,51 @@
+package com.joshfouchey.smsarchive.service;
+
+import com.joshfouchey.smsarchive.config.EnhancedPostgresTestContainer;
+import com.joshfouchey.smsarchive.model.User;
+import com.joshfouchey.smsarchive.repository.UserRepository;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * With statement counting switched on, an import reports the JDBC statements its threads ran.
+ */
+@SpringBootTest(properties = "smsarchive.import.metrics.countStatements=true")
+@ActiveProfiles("test")
+@WithMockUser(username = "countuser")
+class ImportStatementCountingTest extends EnhancedPostgresTestContainer {
+
+    @Autowired ImportService importService;
+    @Autowired UserRepository userRepository;
+
+    @Test
+    void importReportsStatementsPerMessage() throws Exception {
+        if (userRepository.findByUsername("countuser").isEmpty()) {
+            User u = new User();
+            u.setUsername("countuser");
+            u.setPasswordHash("$2a$10$dummyhash");
+            userRepository.save(u);
+        }
+        UUID job = importService.startImportAsync(Path.of("src/test/resources/test-streaming-large.xml"));
+        Awaitility.await().atMost(Duration.ofSeconds(10)).until(() -> {
+            var progress = importService.getProgress(job);
+            return progress != null && ("COMPLETED".equals(progress.getStatus()) || "FAILED".equals(progress.getStatus()));
+        });
+
+        var progress = importService.getProgress(job);
+        assertThat(progress.getStatus()).isEqualTo("COMPLETED");
+        Map<String, Object> metrics = progress.getMetrics();
+        assertThat((Long) metrics.get("dbStatements")).isPositive();
+        assertThat((Double) metrics.get("dbStatementsPerMessage")).isPositive();
+    }
+}
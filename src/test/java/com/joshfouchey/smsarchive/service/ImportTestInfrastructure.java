@@ -0,0 +1,45 @@
+package com.joshfouchey.smsarchive.service;
+
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationMonthStatsRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.ConversationSummaryRepository;
+import com.joshfouchey.smsarchive.repository.ImportJobRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * {@link ImportInfrastructure} for mock-based ImportService tests: messages are written through
+ * MessageRepository.saveAll, each message's contacts and conversation are looked up on their own
+ * (through the ConversationService the test stubs), and everything else is a mock.
+ */
+final class ImportTestInfrastructure {
+
+    private ImportTestInfrastructure() {
+    }
+
+    /** Imports run on a new thread each. */
+    static ImportInfrastructure repositoryBacked(MessageRepository messageRepository, ContactRepository contactRepository) {
+        return repositoryBacked(messageRepository, contactRepository,
+                task -> Thread.ofPlatform().daemon().name("import-worker-test").start(task));
+    }
+
+    static ImportInfrastructure repositoryBacked(MessageRepository messageRepository, ContactRepository contactRepository,
+                                                 TaskExecutor importTaskExecutor) {
+        ImportInfrastructure infrastructure = new ImportInfrastructure(importTaskExecutor, messageRepository,
+                contactRepository, mock(ConversationRepository.class), mock(ImportJobRepository.class),
+                mock(ConversationMonthStatsRepository.class), mock(ConversationSummaryRepository.class),
+                mock(JdbcTemplate.class), mock(EntityManagerFactory.class), mock(PlatformTransactionManager.class),
+                mock(ThumbnailQueueService.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(infrastructure, "persistBackend", "repository");
+        ReflectionTestUtils.setField(infrastructure, "contactDirectory", false);
+        return infrastructure;
+    }
+}
@@ -0,0 +1,95 @@
+package com.joshfouchey.smsarchive.service;
+
+import com.joshfouchey.smsarchive.config.EnhancedPostgresTestContainer;
+import jakarta.persistence.EntityManagerFactory;
+import org.awaitility.Awaitility;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Synthetic end-to-end import throughput check. Skipped by default; run with
+ * {@code ./gradlew test --tests '*ImportThroughputBenchmarkTest' -Dsmsarchive.benchmark=true}
+ * and optionally {@code -Dsmsarchive.benchmark.messages=N} (default 500k).
+ * Reports messages/s and JDBC statements per message so runs before/after a
+ * persistence change can be compared on the same machine.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        // measure the threaded pipeline, not the caller-runs mode the test profile uses
+        "smsarchive.import.inline=false"
+})
+@ActiveProfiles("test")
+@WithMockUser(username = "benchuser")
+@EnabledIfSystemProperty(named = "smsarchive.benchmark", matches = "true")
+class ImportThroughputBenchmarkTest extends EnhancedPostgresTestContainer {
+
+    @Autowired ImportService importService;
+    @Autowired EntityManagerFactory entityManagerFactory;
+    @Autowired JdbcTemplate jdbcTemplate;
+
+    @Test
+    void syntheticImportThroughput() throws Exception {
+        int messages = Integer.getInteger("smsarchive.benchmark.messages", 500_000);
+        Path xml = writeSyntheticBackup(messages, 200);
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+        try {
+            long start = System.nanoTime();
+            UUID job = importService.startImportAsync(xml);
+            Awaitility.await().atMost(Duration.ofHours(1)).pollInterval(Duration.ofSeconds(1)).until(() -> {
+                var p = importService.getProgress(job);
+                return p != null && ("COMPLETED".equals(p.getStatus()) || "FAILED".equals(p.getStatus()));
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+            var progress = importService.getProgress(job);
+            assertThat(progress.getStatus()).isEqualTo("COMPLETED");
+
+            long statements = stats.getPrepareStatementCount();
+            System.out.printf("Import benchmark: %d messages in %.1fs = %.0f msg/s, %d statements (%.2f per message), %d entity inserts%n",
+                    progress.getImportedMessages(), seconds, progress.getImportedMessages() / seconds,
+                    statements, statements / (double) Math.max(1, progress.getImportedMessages()),
+                    stats.getEntityInsertCount());
+            // Sequence values spent per row; about 1 unless a writer falls back to the column default
+            for (String table : List.of("messages", "message_parts", "contacts")) {
+                System.out.printf("  %s: %.2f ids per row%n", table, jdbcTemplate.queryForObject(
+                        "SELECT (max(id) - min(id) + 1)::float8 / greatest(count(*), 1) FROM " + table, Double.class));
+            }
+        } finally {
+            Files.deleteIfExists(xml);
+        }
+    }
+
+    /** SMS-only backup spread over {@code contacts} counterparties, one message per second. */
+    static Path writeSyntheticBackup(int messages, int contacts) throws Exception {
+        Path xml = Files.createTempFile("bench-import", ".xml");
+        long baseMillis = 1_600_000_000_000L;
+        try (BufferedWriter w = Files.newBufferedWriter(xml, StandardCharsets.UTF_8)) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<smses count=\"" + messages + "\">\n");
+            for (int i = 0; i < messages; i++) {
+                int contact = i % contacts;
+                w.write("  <sms protocol=\"0\" address=\"+1555" + String.format("%07d", contact)
+                        + "\" date=\"" + (baseMillis + i * 1000L) + "\" type=\"" + (i % 3 == 0 ? 2 : 1)
+                        + "\" body=\"Synthetic message " + i + " for benchmark\" contact_name=\"Contact " + contact + "\"/>\n");
+            }
+            w.write("</smses>\n");
+        }
+        return xml;
+    }
+}
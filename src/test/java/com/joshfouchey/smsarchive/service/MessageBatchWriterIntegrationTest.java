@@ -0,0 +1,160 @@
+package com.joshfouchey.smsarchive.service;
+
+import com.joshfouchey.smsarchive.config.EnhancedPostgresTestContainer;
+import com.joshfouchey.smsarchive.model.*;
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.repository.MessagePartRepository;
+import com.joshfouchey.smsarchive.repository.MessageRepository;
+import com.joshfouchey.smsarchive.repository.UserRepository;
+import com.joshfouchey.smsarchive.service.importpipeline.MessageBatchWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class MessageBatchWriterIntegrationTest extends EnhancedPostgresTestContainer {
+
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired MessageRepository messageRepository;
+    @Autowired MessagePartRepository messagePartRepository;
+    @Autowired ContactRepository contactRepository;
+    @Autowired ConversationRepository conversationRepository;
+    @Autowired UserRepository userRepository;
+    @PersistenceContext EntityManager entityManager;
+
+    private MessageBatchWriter writer;
+    private User user;
+    private Contact contact;
+    private Conversation conversation;
+
+    @BeforeEach
+    void setup() {
+        messagePartRepository.deleteAll();
+        messageRepository.deleteAll();
+        conversationRepository.deleteAll();
+        contactRepository.deleteAll();
+        userRepository.deleteAll();
+        writer = new MessageBatchWriter(entityManager, transactionManager);
+
+        user = new User();
+        user.setUsername("writeruser");
+        user.setPasswordHash("$2a$10$dummyhash");
+        user = userRepository.save(user);
+        contact = new Contact();
+        contact.setUser(user);
+        contact.setNumber("+15550001111");
+        contact.setNormalizedNumber("15550001111");
+        contact = contactRepository.save(contact);
+        conversation = new Conversation();
+        conversation.setUser(user);
+        conversation.setName("Writer");
+        conversation = conversationRepository.save(conversation);
+    }
+
+    @Test
+    void batchesLeaveNothingManagedEvenInsideALongerTransaction() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(_ -> {
+            for (int b = 0; b < 3; b++) {
+                List<Message> batch = batch(b * 10, 10);
+                writer.write(batch);
+
+                assertThat(batch).allMatch(m -> m.getId() != null);
+                assertThat(entityManager.unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+                // The caller's own (detached) instances are handed back, not references
+                assertThat(batch).allMatch(m -> m.getConversation() == conversation && m.getSenderContact() == contact);
+            }
+        });
+
+        assertThat(count("messages")).isEqualTo(30);
+        assertThat(count("message_parts")).isEqualTo(30);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM messages WHERE conversation_id = ? AND sender_contact_id = ? AND fingerprint IS NOT NULL",
+                Long.class, conversation.getId(), contact.getId())).isEqualTo(30);
+    }
+
+    @Test
+    void callersManagedEntitiesStayManaged() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(_ -> {
+            Conversation managed = entityManager.find(Conversation.class, conversation.getId());
+            Contact managedContact = entityManager.find(Contact.class, contact.getId());
+            List<Message> batch = batch(0, 5);
+            batch.forEach(m -> {
+                m.setConversation(managed);
+                m.setSenderContact(managedContact);
+            });
+
+            writer.write(batch);
+
+            assertThat(entityManager.contains(managed)).isTrue();
+            assertThat(entityManager.contains(managedContact)).isTrue();
+            assertThat(batch).noneMatch(entityManager::contains);
+            // Changes the caller makes afterwards are still flushed
+            managed.setName("Renamed");
+        });
+
+        assertThat(jdbcTemplate.queryForObject("SELECT name FROM conversations WHERE id = ?", String.class,
+                conversation.getId())).isEqualTo("Renamed");
+        assertThat(count("messages")).isEqualTo(5);
+    }
+
+    @Test
+    void batchWithADuplicateWritesNothingAndSingleWritesTellThemApart() {
+        writer.write(batch(0, 1));
+        List<Message> batch = batch(0, 2);
+
+        assertThatThrownBy(() -> writer.write(batch)).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(count("messages")).isEqualTo(1);
+
+        Message fresh = batch(1, 1).getFirst();
+        writer.writeOne(fresh);
+        assertThatThrownBy(() -> writer.writeOne(batch(0, 1).getFirst())).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(count("messages")).isEqualTo(2);
+        assertThat(fresh.getId()).isNotNull();
+    }
+
+    private List<Message> batch(int from, int size) {
+        List<Message> batch = new ArrayList<>();
+        for (int i = from; i < from + size; i++) {
+            Message m = new Message();
+            m.setUser(user);
+            m.setConversation(conversation);
+            m.setSenderContact(contact);
+            m.setProtocol(MessageProtocol.SMS);
+            m.setDirection(MessageDirection.INBOUND);
+            m.setTimestamp(Instant.ofEpochMilli(1_000_000L + i));
+            m.setMsgBox(1);
+            m.setBody("message " + i);
+            MessagePart part = new MessagePart();
+            part.setMessage(m);
+            part.setSeq(0);
+            part.setContentType("text/plain");
+            part.setText("message " + i);
+            m.getParts().add(part);
+            batch.add(m);
+        }
+        return batch;
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Long.class);
+    }
+}
@@ -0,0 +1,127 @@
+package com.joshfouchey.smsarchive.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ThumbnailQueueServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<Runnable> submitted = new ArrayList<>();
+    private JdbcTemplate jdbcTemplate;
+    private ThumbnailService thumbnailService;
+    private ThumbnailQueueService queue;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        thumbnailService = spy(new ThumbnailService());
+        queue = new ThumbnailQueueService(thumbnailService, jdbcTemplate);
+        ReflectionTestUtils.setField(queue, "async", true);
+        ReflectionTestUtils.setField(queue, "workers", 2);
+        ReflectionTestUtils.setField(queue, "batchSize", 50);
+        queue.setThumbnailTaskExecutor(submitted::add);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void samePathIsQueuedOnceAndLeasedInABatch() throws Exception {
+        Path original = Files.createFile(tempDir.resolve("a.png"));
+        when(jdbcTemplate.update(startsWith("INSERT INTO thumbnail_tasks"), eq(original.toString()), eq("image/png")))
+                .thenReturn(1, 0);
+
+        queue.enqueue(original, "image/png");
+        queue.enqueue(original, "image/png");
+
+        assertThat(submitted).hasSize(1);
+        assertThat(queue.getProgress().getTotalParts()).isEqualTo(1);
+        verify(thumbnailService, never()).createThumbnail(any(), any(), any(), anyBoolean());
+
+        ArgumentCaptor<Object> leaseHolder = ArgumentCaptor.forClass(Object.class);
+        when(jdbcTemplate.queryForList(startsWith("UPDATE thumbnail_tasks SET claimed_at = now()"), leaseHolder.capture(), eq(50)))
+                .thenReturn(List.of(Map.of("file_path", original.toString(), "content_type", "image/png")), List.of());
+        submitted.getFirst().run();
+
+        // One auto-committed lease per batch, generation after it, and one batched delete of the lease
+        InOrder order = inOrder(jdbcTemplate, thumbnailService);
+        order.verify(jdbcTemplate).queryForList(startsWith("UPDATE thumbnail_tasks SET claimed_at = now()"), any(), eq(50));
+        order.verify(thumbnailService).createThumbnail(eq(original), any(), eq("image/png"), eq(true));
+        ArgumentCaptor<List<Object[]>> deleted = ArgumentCaptor.forClass(List.class);
+        order.verify(jdbcTemplate).batchUpdate(startsWith("DELETE FROM thumbnail_tasks"), deleted.capture());
+        assertThat(deleted.getValue()).containsExactly(new Object[]{original.toString(), leaseHolder.getAllValues().getFirst()});
+        verify(jdbcTemplate, times(2)).queryForList(startsWith("UPDATE thumbnail_tasks SET claimed_at = now()"), any(), eq(50));
+        assertThat(queue.getProgress().getProcessedParts()).isEqualTo(1);
+    }
+
+    @Test
+    void drainersAreCappedAtTheWorkerCount() throws Exception {
+        when(jdbcTemplate.update(startsWith("INSERT INTO thumbnail_tasks"), anyString(), anyString())).thenReturn(1);
+
+        for (String name : List.of("a.png", "b.png", "c.png")) {
+            queue.enqueue(Files.createFile(tempDir.resolve(name)), "image/png");
+        }
+
+        assertThat(submitted).hasSize(2);
+        assertThat(queue.getProgress().getTotalParts()).isEqualTo(3);
+    }
+
+    @Test
+    void refusedDrainerIsStartedAgainByTheBacklogPass() throws Exception {
+        Path original = Files.createFile(tempDir.resolve("b.jpg"));
+        when(jdbcTemplate.update(startsWith("INSERT INTO thumbnail_tasks"), anyString(), anyString())).thenReturn(1);
+        queue.setThumbnailTaskExecutor(task -> { throw new TaskRejectedException("full"); });
+
+        queue.enqueue(original, "image/jpeg");
+
+        queue.setThumbnailTaskExecutor(submitted::add);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT count(*) FROM thumbnail_tasks"), eq(Long.class))).thenReturn(1L);
+
+        queue.drainBacklog();
+
+        assertThat(submitted).hasSize(1);
+        assertThat(queue.getProgress().getTotalParts()).isEqualTo(1);
+    }
+
+    @Test
+    void backlogLeftAtShutdownIsResumedOnStart() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT count(*) FROM thumbnail_tasks"), eq(Long.class))).thenReturn(7L);
+
+        queue.resumeBacklog();
+
+        // Leases of the previous process are released before the backlog is counted
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).update(startsWith("UPDATE thumbnail_tasks SET claimed_at = NULL"), anyString());
+        order.verify(jdbcTemplate).queryForObject(startsWith("SELECT count(*) FROM thumbnail_tasks"), eq(Long.class));
+        assertThat(submitted).hasSize(1);
+        assertThat(queue.getProgress().getTotalParts()).isEqualTo(7);
+    }
+
+    @Test
+    void runsOnCallerWhenQueueDisabled() throws Exception {
+        ReflectionTestUtils.setField(queue, "async", false);
+        Path original = Files.createFile(tempDir.resolve("c.png"));
+
+        queue.enqueue(original, "image/png");
+
+        assertThat(submitted).isEmpty();
+        verify(thumbnailService).createThumbnail(eq(original), any(), eq("image/png"), eq(true));
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
@@ -0,0 +1,94 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BackupFormatTest {
+
+    private static final String DOC_A = "<smses count=\"1\"><sms address=\"+15551234567\" body=\"a\"/></smses>";
+    private static final String DOC_B = "<smses count=\"1\"><sms address=\"+15557654321\" body=\"b\"/></smses>";
+
+    @Test
+    void formatIsDetectedFromMagicBytesNotName() throws Exception {
+        assertThat(BackupFormat.detect(DOC_A.getBytes(StandardCharsets.UTF_8))).isEqualTo(BackupFormat.XML);
+        assertThat(BackupFormat.detect(gzip(DOC_A))).isEqualTo(BackupFormat.GZIP);
+        assertThat(BackupFormat.detect(zip(List.of("a.xml"), List.of(DOC_A)))).isEqualTo(BackupFormat.ZIP);
+        assertThat(BackupFormat.detect(zstd(DOC_A))).isEqualTo(BackupFormat.ZSTD);
+        assertThat(BackupFormat.detect(new byte[0])).isEqualTo(BackupFormat.XML);
+    }
+
+    @Test
+    void compressedBackupsAreDecompressedWhileRead() throws Exception {
+        for (byte[] stored : List.of(gzip(DOC_A), zstd(DOC_A), DOC_A.getBytes(StandardCharsets.UTF_8))) {
+            assertThat(documents(stored)).containsExactly(DOC_A);
+        }
+    }
+
+    @Test
+    void everyXmlEntryOfAZipIsItsOwnDocument() throws Exception {
+        byte[] stored = zip(List.of("first.xml", "notes.txt", "__MACOSX/._first.xml", "second.XML"),
+                List.of(DOC_A, "ignored", "ignored", DOC_B));
+        assertThat(documents(stored)).containsExactly(DOC_A, DOC_B);
+    }
+
+    @Test
+    void bytesCountedByTheCallerAreCompressedBytes() throws Exception {
+        String big = "<smses>" + "<sms body=\"hello\"/>".repeat(10_000) + "</smses>";
+        byte[] stored = gzip(big);
+        CountingInputStream counting = new CountingInputStream(new ByteArrayInputStream(stored));
+        long[] decompressed = {0};
+        BackupFormat.forEachDocument(counting, doc -> decompressed[0] = doc.readAllBytes().length);
+
+        assertThat(decompressed[0]).isEqualTo(big.length());
+        assertThat(counting.getByteCount()).isEqualTo(stored.length).isLessThan(big.length());
+    }
+
+    private static List<String> documents(byte[] stored) throws Exception {
+        List<String> docs = new ArrayList<>();
+        BackupFormat.forEachDocument(new ByteArrayInputStream(stored),
+                doc -> docs.add(new String(doc.readAllBytes(), StandardCharsets.UTF_8)));
+        return docs;
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zstd(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ZstdOutputStream(bytes)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zip(List<String> names, List<String> contents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < names.size(); i++) {
+                out.putNextEntry(new ZipEntry(names.get(i)));
+                out.write(contents.get(i).getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkedBackupParserTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final XmlMessageParser parser = new XmlMessageParser(new ContactResolver(null), () -> null);
+    private final XmlMessageParser.MediaSpooler noMedia = base64 -> Optional.empty();
+
+    @Test
+    void splitPointsAreMessageStartsInOrder() throws Exception {
+        Path xml = writeBackup(500);
+        String text = Files.readString(xml);
+        try (FileChannel ch = FileChannel.open(xml, StandardOpenOption.READ)) {
+            List<Long> points = XmlMessageBoundaries.splitPoints(ch, 0, 2_000);
+
+            assertThat(points.getFirst()).isZero();
+            assertThat(points.getLast()).isEqualTo(ch.size());
+            assertThat(points).isSorted().doesNotHaveDuplicates().hasSizeGreaterThan(10);
+            for (long p : points.subList(1, points.size() - 1)) {
+                assertThat(text.substring((int) p, (int) p + 4)).isIn("<sms", "<mms");
+            }
+        }
+    }
+
+    @Test
+    void chunkedParseMatchesSequentialOrderAndContent() throws Exception {
+        Path xml = writeBackup(2_000);
+        for (XmlParserBackend backend : List.of(XmlParserBackend.JDK, XmlParserBackend.SCANNER)) {
+            List<String> sequential = describeAll(new ChunkedBackupParser(parser, backend, noMedia, 1, Long.MAX_VALUE), xml, 0);
+            List<String> chunked = describeAll(new ChunkedBackupParser(parser, backend, noMedia, 4, 4_096), xml, 0);
+
+            assertThat(sequential).hasSize(2_000);
+            assertThat(chunked).as(backend.name()).isEqualTo(sequential);
+        }
+    }
+
+    @Test
+    void resumesFromAMessageOffset() throws Exception {
+        Path xml = writeBackup(300);
+        long from = XmlMessageBoundaries.nextMessageStart(xml, Files.size(xml) / 2);
+        List<Long> offsets = new ArrayList<>();
+
+        new ChunkedBackupParser(parser, XmlParserBackend.SCANNER, noMedia, 3, 1_024)
+                .parse("test", xml, from, parsed -> offsets.add(parsed.offset()));
+
+        assertThat(offsets).isNotEmpty().hasSizeLessThan(300).isSorted();
+        assertThat(offsets.getFirst()).isGreaterThanOrEqualTo(from);
+    }
+
+    @Test
+    void parseErrorInAnyChunkFailsTheWholeParse() throws Exception {
+        Path xml = writeBackup(1_000);
+        String text = Files.readString(xml);
+        int broken = text.indexOf("<sms", text.length() * 3 / 4);
+        Files.writeString(xml, text.substring(0, broken) + "<sms body=\"&bogus;\" />" + text.substring(broken));
+
+        assertThatThrownBy(() -> new ChunkedBackupParser(parser, XmlParserBackend.SCANNER, noMedia, 4, 2_048)
+                .parse("test", xml, 0, parsed -> { }))
+                .isInstanceOf(XMLStreamException.class);
+    }
+
+    private List<String> describeAll(ChunkedBackupParser chunked, Path xml, long from) throws Exception {
+        List<String> out = new ArrayList<>();
+        chunked.parse("test", xml, from, parsed -> out.add(parsed.message().getProtocol() + " "
+                + parsed.message().getTimestamp() + " " + parsed.message().getBody() + " " + parsed.message().getMetadata()
+                + " " + parsed.suggestedName() + " " + parsed.threadKey() + " " + parsed.participantNumbers()
+                + " parts=" + (parsed.message().getParts() == null ? 0 : parsed.message().getParts().size())));
+        return out;
+    }
+
+    private Path writeBackup(int messages) throws Exception {
+        Path xml = tempDir.resolve("backup-" + messages + ".xml");
+        try (BufferedWriter w = Files.newBufferedWriter(xml, StandardCharsets.UTF_8)) {
+            w.write("<?xml version='1.0' encoding='UTF-8' standalone='yes' ?>\n<smses count=\"" + messages + "\">\n");
+            for (int i = 0; i < messages; i++) {
+                String address = "+1555" + String.format("%07d", i % 37);
+                long date = 1_600_000_000_000L + i * 1000L;
+                if (i % 7 == 0) {
+                    w.write("  <mms date=\"" + date + "\" msg_box=\"" + (i % 2 + 1) + "\" address=\"" + address
+                            + "\" contact_name=\"Group " + (i % 37) + "\">\n    <parts>\n"
+                            + "      <part seq=\"0\" ct=\"text/plain\" text=\"mms " + i + " &amp; more\" />\n"
+                            + "      <part seq=\"1\" ct=\"image/png\" name=\"a.png\" data=\"SGVsbG8=\" />\n    </parts>\n"
+                            + "    <addrs>\n      <addr address=\"" + address + "\" type=\"137\" />\n"
+                            + "      <addr address=\"+15550000001\" type=\"151\" />\n"
+                            + "      <addr address=\"+15550000002\" type=\"151\" />\n    </addrs>\n  </mms>\n");
+                } else {
+                    w.write("  <sms address=\"" + address + "\" date=\"" + date + "\" type=\"" + (i % 2 + 1)
+                            + "\" body=\"message " + i + " &lt;3\" contact_name=\"Contact " + (i % 37) + "\" />\n");
+                }
+            }
+            w.write("</smses>\n");
+        }
+        return xml;
+    }
+}
@@ -0,0 +1,99 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FingerprintSetTest {
+
+    @Test
+    void addAndContains() {
+        FingerprintSet set = new FingerprintSet(1000);
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+
+        assertThat(set.add(a)).isTrue();
+        assertThat(set.add(a)).isFalse();
+        assertThat(set.contains(a)).isTrue();
+        assertThat(set.contains(b)).isFalse();
+        assertThat(set.size()).isEqualTo(1);
+    }
+
+    @Test
+    void zeroFingerprintIsStorable() {
+        FingerprintSet set = new FingerprintSet(1000);
+        UUID zero = new UUID(0, 0);
+
+        assertThat(set.contains(zero)).isFalse();
+        assertThat(set.add(zero)).isTrue();
+        assertThat(set.contains(zero)).isTrue();
+    }
+
+    @Test
+    void growsUntilCapThenRotatesWithoutGrowingFootprint() {
+        int cap = 10_000;
+        FingerprintSet set = new FingerprintSet(cap);
+        UUID[] added = new UUID[cap * 5];
+        for (int i = 0; i < cap * 2; i++) {
+            added[i] = UUID.randomUUID();
+            set.add(added[i]);
+        }
+        long footprintAtCap = set.footprintBytes();
+
+        for (int i = cap * 2; i < added.length; i++) {
+            added[i] = UUID.randomUUID();
+            set.add(added[i]);
+        }
+
+        assertThat(set.footprintBytes()).isEqualTo(footprintAtCap);
+        assertThat(set.evictions()).isPositive();
+        assertThat(set.size() + set.evictions()).isEqualTo(added.length);
+        // the most recent generation is always retained
+        for (int i = added.length - cap / 2; i < added.length; i++) {
+            assertThat(set.contains(added[i])).isTrue();
+        }
+        assertThat(set.contains(added[0])).isFalse();
+    }
+
+    /**
+     * Heap comparison against the previous String-key set. Skipped by default; run with
+     * {@code ./gradlew test --tests '*FingerprintSetTest' -Dsmsarchive.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "smsarchive.benchmark", matches = "true")
+    void memoryFootprintVersusStringKeys() {
+        int cap = 500_000;
+        UUID user = UUID.randomUUID();
+        for (int n : new int[] {100_000, 500_000, 1_000_000, 2_000_000, 4_000_000}) {
+            long before = usedHeap();
+            Set<String> keys = new HashSet<>();
+            for (int i = 0; i < n; i++) {
+                keys.add(user + "|" + (i % 200) + "|2020-09-13T12:26:40." + i + "Z|1|SMS|synthetic message " + i + " for benchmark");
+            }
+            long stringBytes = usedHeap() - before;
+            int stringCount = keys.size();
+            keys = null;
+
+            before = usedHeap();
+            FingerprintSet set = new FingerprintSet(cap);
+            for (int i = 0; i < n; i++) set.add(UUID.randomUUID());
+            long setBytes = usedHeap() - before;
+
+            System.out.printf("Seen-set heap at %,d messages: HashSet<String> %,d KB (%,d keys), FingerprintSet %,d KB (arrays %,d KB, %,d evicted)%n",
+                    n, stringBytes / 1024, stringCount, setBytes / 1024, set.footprintBytes() / 1024, set.evictions());
+            // two generations of 2^20 slots, whatever n is
+            assertThat(set.footprintBytes()).isLessThanOrEqualTo(2L * 2 * 1024 * 1024 * Long.BYTES);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
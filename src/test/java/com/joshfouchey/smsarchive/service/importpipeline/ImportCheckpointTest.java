@@ -0,0 +1,58 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImportCheckpointTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void watermarkOnlyAdvancesOverContiguousCompletions() {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(0, 0);
+        for (long seq = 0; seq < 300; seq++) checkpoint.recordStart(seq, 10_000_000 + seq * 100);
+
+        checkpoint.complete(0);
+        checkpoint.complete(2);
+        assertThat(checkpoint.snapshot().committedMessages()).isEqualTo(1);
+
+        checkpoint.complete(1);
+        for (long seq = 3; seq < 200; seq++) checkpoint.complete(seq);
+        ImportCheckpoint.Snapshot snap = checkpoint.snapshot();
+
+        assertThat(snap.committedMessages()).isEqualTo(200);
+        // last sampled start at or before seq 200 is seq 192; resume is a margin before it
+        assertThat(snap.resumeOffset()).isEqualTo(10_000_000 + 192 * 100 - ImportCheckpoint.READ_AHEAD_MARGIN);
+    }
+
+    @Test
+    void resumeOffsetNeverGoesBeforeTheRunsStart() {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(5_000, 1_000);
+        for (long seq = 0; seq < 100; seq++) checkpoint.recordStart(seq, 5_000 + seq * 10);
+        for (long seq = 0; seq < 100; seq++) checkpoint.complete(seq);
+
+        ImportCheckpoint.Snapshot snap = checkpoint.snapshot();
+
+        assertThat(snap.resumeOffset()).isEqualTo(5_000);
+        assertThat(snap.committedMessages()).isEqualTo(1_100);
+    }
+
+    @Test
+    void findsNextMessageStartTag() throws Exception {
+        String xml = "<?xml version=\"1.0\"?>\n<smses count=\"2\">\n  <sms body=\"a &lt;mms b\" />\n  <mms date=\"1\">\n  </mms>\n</smses>\n";
+        Path file = Files.writeString(tempDir.resolve("b.xml"), xml);
+
+        long first = XmlMessageBoundaries.nextMessageStart(file, 0);
+        long second = XmlMessageBoundaries.nextMessageStart(file, first + 1);
+
+        assertThat(first).isEqualTo(xml.indexOf("<sms "));
+        assertThat(second).isEqualTo(xml.indexOf("<mms "));
+        assertThat(XmlMessageBoundaries.nextMessageStart(file, second + 1)).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,200 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.Contact;
+import com.joshfouchey.smsarchive.model.Conversation;
+import com.joshfouchey.smsarchive.model.User;
+import com.joshfouchey.smsarchive.repository.ContactRepository;
+import com.joshfouchey.smsarchive.repository.ConversationRepository;
+import com.joshfouchey.smsarchive.service.ConversationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.xml.stream.XMLStreamConstants;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ImportDirectoryTest {
+
+    private final AtomicLong ids = new AtomicLong(100);
+    private ContactRepository contactRepo;
+    private ConversationRepository conversationRepo;
+    private ConversationService conversationService;
+    private User user;
+
+    @BeforeEach
+    void setup() {
+        contactRepo = Mockito.mock(ContactRepository.class);
+        conversationRepo = Mockito.mock(ConversationRepository.class);
+        conversationService = Mockito.mock(ConversationService.class);
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setUsername("directoryuser");
+        when(contactRepo.saveAll(anyIterable())).thenAnswer(inv -> {
+            List<Contact> saved = new ArrayList<>();
+            for (Contact c : (Iterable<Contact>) inv.getArgument(0)) {
+                if (c.getId() == null) c.setId(ids.incrementAndGet());
+                saved.add(c);
+            }
+            return saved;
+        });
+        when(conversationRepo.saveAll(anyIterable())).thenAnswer(inv -> {
+            List<Conversation> saved = new ArrayList<>();
+            for (Conversation c : (Iterable<Conversation>) inv.getArgument(0)) {
+                c.setId(ids.incrementAndGet());
+                saved.add(c);
+            }
+            return saved;
+        });
+        when(conversationService.save(any(Conversation.class))).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    @Test
+    void knownContactsAndConversationsResolveWithoutQueries() throws Exception {
+        Contact alice = contact(1L, "+15550000001", "Alice");
+        Contact bob = contact(2L, "+15550000002", "Bob");
+        Conversation direct = conversation(10L, null, alice);
+        Conversation group = conversation(11L, "thread-1", alice, bob);
+        when(contactRepo.findAllByUser(user)).thenReturn(List.of(alice, bob));
+        when(conversationRepo.findAllByUserOrderByLastMessage(user)).thenReturn(List.of(group, direct));
+
+        List<PipelineItem> items = resolve(ImportDirectory.load(user, contactRepo, conversationRepo, null), """
+                <smses>
+                  <sms address="+15550000001" date="1000" type="1" body="hi" contact_name="Alice" />
+                  <sms address="(555) 000-0001" date="2000" type="2" body="hello back" contact_name="Alice" />
+                  <mms date="3000" msg_box="2" address="thread-1">
+                    <parts><part seq="0" ct="text/plain" text="group hi" /></parts>
+                    <addrs>
+                      <addr address="+15550000001" type="151" />
+                      <addr address="+15550000002" type="151" />
+                    </addrs>
+                  </mms>
+                </smses>
+                """);
+
+        assertThat(items).extracting(i -> i.getMessage().getConversation().getId()).containsExactly(10L, 10L, 11L);
+        verify(contactRepo, never()).findByUserAndNormalizedNumber(any(), anyString());
+        verify(contactRepo, never()).saveAll(anyIterable());
+        verify(conversationRepo, never()).saveAll(anyIterable());
+        verifyNoMoreLookups();
+    }
+
+    @Test
+    void missingContactsAndConversationsAreCreatedOncePerBatch() throws Exception {
+        when(contactRepo.findAllByUser(user)).thenReturn(List.of());
+        when(conversationRepo.findAllByUserOrderByLastMessage(user)).thenReturn(List.of());
+        ImportDirectory directory = ImportDirectory.load(user, contactRepo, conversationRepo, null);
+
+        List<PipelineItem> items = resolve(directory, """
+                <smses>
+                  <sms address="+15550000001" date="1000" type="1" body="one" contact_name="Alice" />
+                  <sms address="+15550000002" date="2000" type="1" body="two" contact_name="Bob" />
+                  <sms address="5550000001" date="3000" type="2" body="three" contact_name="Alice" />
+                  <sms address="+15550000003" date="4000" type="1" body="four" />
+                </smses>
+                """);
+
+        verify(contactRepo, times(1)).saveAll(anyIterable());
+        verify(conversationRepo, times(1)).saveAll(anyIterable());
+        assertThat(directory.contact("+15550000001").getName()).isEqualTo("Alice");
+        assertThat(directory.contact("+15550000003").getName()).isEqualTo("+15550000003");
+        Conversation alice = directory.oneToOne("+15550000001");
+        assertThat(alice.getName()).isEqualTo("Alice");
+        assertThat(alice.getParticipants()).containsExactly(directory.contact("+15550000001"));
+        assertThat(items.get(0).getMessage().getConversation()).isSameAs(alice);
+        assertThat(items.get(2).getMessage().getConversation()).isSameAs(alice);
+        assertThat(items.get(1).getMessage().getConversation()).isSameAs(directory.oneToOne("+15550000002"));
+        verify(contactRepo, never()).findByUserAndNormalizedNumber(any(), anyString());
+        verifyNoMoreLookups();
+    }
+
+    @Test
+    void participantsShareTheDirectorysContactInstances() throws Exception {
+        // Loaded separately (as outside a transaction): same row, different objects
+        Contact unnamed = contact(1L, "+15550000001", "+15550000001");
+        Contact participant = contact(1L, "+15550000001", "+15550000001");
+        Conversation direct = conversation(10L, null, participant);
+        when(contactRepo.findAllByUser(user)).thenReturn(List.of(unnamed));
+        when(conversationRepo.findAllByUserOrderByLastMessage(user)).thenReturn(List.of(direct));
+        ImportDirectory directory = ImportDirectory.load(user, contactRepo, conversationRepo, null);
+
+        resolve(directory, """
+                <smses><sms address="+15550000001" date="1000" type="1" body="hi" contact_name="Alice" /></smses>
+                """);
+
+        Contact canonical = directory.contact("+15550000001");
+        assertThat(canonical.getName()).isEqualTo("Alice");
+        assertThat(direct.getParticipants()).singleElement().isSameAs(canonical);
+        verify(contactRepo).saveAll(List.of(canonical));
+    }
+
+    // ===== Helpers =====
+
+    /** Parse the XML and run one resolve-stage batch over it, the way ImportService does. */
+    private List<PipelineItem> resolve(ImportDirectory directory, String xml) throws Exception {
+        ContactResolver resolver = new ContactResolver(contactRepo, directory);
+        XmlMessageParser parser = new XmlMessageParser(resolver, () -> user);
+        ConversationAssigner assigner = new ConversationAssigner(conversationService, directory, resolver, null);
+        List<PipelineItem> items = new ArrayList<>();
+        XmlMessageParser.ElementContext ctx = new XmlMessageParser.ElementContext(base64 -> Optional.empty());
+        try (XmlElementReader r = XmlParserBackend.JDK.open(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))) {
+            int evt;
+            while ((evt = r.next()) != XMLStreamConstants.END_DOCUMENT) {
+                if (evt == XMLStreamConstants.START_ELEMENT) {
+                    parser.handleStartElement(r, ctx, (msg, name) -> items.add(PipelineItem.sms(items.size(), msg, name)));
+                } else {
+                    parser.handleEndElement(r, ctx, (msg, threadKey, participants, name, media) ->
+                            items.add(PipelineItem.multipart(items.size(), msg, threadKey, participants, name, media)));
+                }
+            }
+        }
+        parser.prepareContacts(items);
+        for (PipelineItem item : items) {
+            parser.resolveContacts(item.getMessage(), item.getSuggestedName(), item.isMultipart(), item.getParticipantNumbers());
+        }
+        resolver.flushNameUpdates();
+        assigner.createMissing(items, user);
+        for (PipelineItem item : items) {
+            if (item.isMultipart()) {
+                assigner.assignConversationForMultipart(item.getMessage(), item.getThreadKey(),
+                        item.getParticipantNumbers(), item.getSuggestedName(), user);
+            } else {
+                assigner.assignConversationForSms(item.getMessage(), item.getSuggestedName(), user);
+            }
+        }
+        return items;
+    }
+
+    private void verifyNoMoreLookups() {
+        verify(conversationService, never()).findOrCreateOneToOneForUser(any(), anyString(), any());
+        verify(conversationService, never()).findOrCreateGroupForUser(any(), any(), anySet(), any());
+        verify(conversationRepo, never()).findByUserAndSingleParticipant(any(), anyString());
+        verify(conversationRepo, never()).findByThreadKey(any(), anyString());
+    }
+
+    private Contact contact(Long id, String normalized, String name) {
+        Contact c = new Contact();
+        c.setId(id);
+        c.setUser(user);
+        c.setNumber(normalized);
+        c.setNormalizedNumber(normalized);
+        c.setName(name);
+        return c;
+    }
+
+    private Conversation conversation(Long id, String threadKey, Contact... participants) {
+        Conversation c = new Conversation();
+        c.setId(id);
+        c.setUser(user);
+        c.setThreadKey(threadKey);
+        c.setName(threadKey == null ? participants[0].getName() : "Group Chat");
+        c.getParticipants().addAll(List.of(participants));
+        return c;
+    }
+}
@@ -0,0 +1,71 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImportMetricsTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reportCoversStagesStatementsMediaAndFlushes() {
+        ImportMetrics metrics = new ImportMetrics("job-1", () -> 10, null);
+        metrics.declareStage("parse");
+        metrics.recordStage("resolve", 10, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.recordStage("parse", 10, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordMediaBytes(4096);
+        metrics.recordFlush(10, TimeUnit.MILLISECONDS.toNanos(7));
+        metrics.recordFlush(5, TimeUnit.MILLISECONDS.toNanos(30_000));
+        metrics.bind();
+        try {
+            ImportMetrics.countStatement();
+            ImportMetrics.countStatement();
+        } finally {
+            ImportMetrics.unbind();
+        }
+        ImportMetrics.countStatement(); // unbound thread: not counted
+        metrics.finish();
+
+        Map<String, Object> report = metrics.report();
+        assertThat(report).containsEntry("dbStatements", 2L).containsEntry("dbStatementsPerMessage", 0.2)
+                .containsEntry("mediaBytesWritten", 4096L);
+        Map<String, Map<String, Object>> stages = (Map<String, Map<String, Object>>) report.get("stages");
+        assertThat(stages.keySet()).containsExactly("parse", "resolve");
+        assertThat(stages.get("resolve")).containsEntry("items", 10L).containsEntry("itemsPerBusySecond", 500.0);
+        Map<String, Object> flush = (Map<String, Object>) report.get("flush");
+        assertThat(flush).containsEntry("count", 2L).containsEntry("rows", 15L);
+        assertThat((Map<String, Long>) flush.get("histogram"))
+                .containsEntry("le10ms", 1L).containsEntry("gt5000ms", 1L);
+    }
+
+    @Test
+    void statementFiguresAreLeftOutWhenNothingWasCounted() {
+        ImportMetrics metrics = new ImportMetrics("job-3", () -> 10, null);
+        metrics.finish();
+
+        assertThat(metrics.report()).doesNotContainKeys("dbStatements", "dbStatementsPerMessage")
+                .containsKey("messagesPerSecond");
+    }
+
+    @Test
+    void metersAreTaggedByJobAndRemovedWhenClosed() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ImportMetrics metrics = new ImportMetrics("job-2", () -> 3, registry);
+        metrics.recordStage("persist", 3, TimeUnit.MILLISECONDS.toNanos(4));
+        metrics.recordStatement();
+        metrics.recordFlush(3, TimeUnit.MILLISECONDS.toNanos(4));
+
+        assertThat(registry.get("smsarchive.import.stage").tags("job", "job-2", "stage", "persist").timer().count())
+                .isEqualTo(1);
+        assertThat(registry.get("smsarchive.import.db.statements").tag("job", "job-2").counter().count()).isEqualTo(1);
+        assertThat(registry.get("smsarchive.import.messages").tag("job", "job-2").functionCounter().count()).isEqualTo(3);
+
+        metrics.close();
+        assertThat(registry.find("smsarchive.import.stage").tag("job", "job-2").meters()).isEmpty();
+        assertThat(registry.getMeters()).isEmpty();
+    }
+}
@@ -0,0 +1,116 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImportPipelineTest {
+
+    @Test
+    void preservesSubmitOrderAcrossMultiWorkerStages() throws Exception {
+        List<Long> persisted = Collections.synchronizedList(new ArrayList<>());
+        ImportPipeline pipeline = new ImportPipeline("test", 4, null)
+                .stage("slow", 4, null, () -> item -> Thread.sleep(ThreadLocalRandom.current().nextInt(3)))
+                .stage("persist", 1, null, () -> item -> persisted.add(item.getSeq()));
+        pipeline.start();
+        for (int i = 0; i < 200; i++) {
+            pipeline.submit(PipelineItem.sms(pipeline.nextSeq(), new Message(), null));
+        }
+        pipeline.finish();
+
+        assertThat(persisted).hasSize(200).isSorted();
+    }
+
+    @Test
+    void runsFinishHookOncePerWorker() throws Exception {
+        List<Integer> flushed = Collections.synchronizedList(new ArrayList<>());
+        ImportPipeline pipeline = new ImportPipeline("test", 8, null)
+                .stage("persist", 2, item -> (int) (item.getSeq() % 2), () -> new ImportPipeline.StageWorker() {
+                    private final List<PipelineItem> batch = new ArrayList<>();
+
+                    @Override
+                    public void process(PipelineItem item) { batch.add(item); }
+
+                    @Override
+                    public void finish() { flushed.add(batch.size()); }
+                });
+        pipeline.start();
+        for (int i = 0; i < 10; i++) {
+            pipeline.submit(PipelineItem.sms(pipeline.nextSeq(), new Message(), null));
+        }
+        pipeline.finish();
+
+        assertThat(flushed).containsExactly(5, 5);
+    }
+
+    @Test
+    void stageFailureSurfacesToSubmitter() throws Exception {
+        ImportPipeline pipeline = new ImportPipeline("test", 2, null)
+                .stage("boom", 1, null, () -> item -> { throw new IllegalArgumentException("bad row"); });
+        pipeline.start();
+        pipeline.submit(PipelineItem.sms(pipeline.nextSeq(), new Message(), null));
+
+        assertThatThrownBy(pipeline::finish)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("bad row");
+    }
+
+    @Test
+    void callerRunsPipelineProcessesOnSubmittingThread() throws Exception {
+        Thread caller = Thread.currentThread();
+        List<String> seen = new ArrayList<>();
+        ImportPipeline pipeline = ImportPipeline.callerRuns("test")
+                .stage("resolve", 4, null, () -> item -> {
+                    assertThat(Thread.currentThread()).isSameAs(caller);
+                    seen.add("resolve-" + item.getSeq());
+                })
+                .stage("persist", 2, null, () -> item -> seen.add("persist-" + item.getSeq()));
+        pipeline.start();
+        pipeline.submit(PipelineItem.sms(pipeline.nextSeq(), new Message(), null));
+        pipeline.submit(PipelineItem.sms(pipeline.nextSeq(), new Message(), null));
+        pipeline.finish();
+
+        assertThat(seen).containsExactly("resolve-0", "persist-0", "resolve-1", "persist-1");
+    }
+
+    @Test
+    void reportsEveryWorkerCallToTheStageListener() throws Exception {
+        Map<String, Integer> items = new java.util.concurrent.ConcurrentHashMap<>();
+        ImportPipeline pipeline = new ImportPipeline("test", 4, null)
+                .stage("resolve", 2, null, () -> item -> { })
+                .stage("persist", 1, null, 8, () -> item -> { })
+                .instrument((stage, n, nanos) -> {
+                    assertThat(nanos).isNotNegative();
+                    items.merge(stage, n, Integer::sum);
+                });
+        pipeline.start();
+        for (int i = 0; i < 20; i++) pipeline.submit(PipelineItem.sms(pipeline.nextSeq(), new Message(), null));
+        pipeline.finish();
+
+        assertThat(items).containsEntry("resolve", 20).containsEntry("persist", 20);
+        assertThat(pipeline.submitNanos()).isPositive();
+    }
+
+    @Test
+    void reportsQueueDepthPerStageInOrder() {
+        ImportPipeline pipeline = new ImportPipeline("test", 2, null)
+                .stage("resolve", 1, null, () -> item -> { })
+                .stage("dedupe", 1, null, () -> item -> { })
+                .stage("media", 2, null, () -> item -> { })
+                .stage("persist", 1, null, () -> item -> { });
+
+        assertThat(pipeline.queueDepths())
+                .containsOnlyKeys("resolve", "dedupe", "media", "persist")
+                .allSatisfy((stage, depth) -> assertThat(depth).isZero());
+        assertThat(new ArrayList<>(pipeline.queueDepths().keySet()))
+                .containsExactly("resolve", "dedupe", "media", "persist");
+    }
+}
@@ -0,0 +1,111 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.service.importpipeline.ImportScheduler.Priority;
+import com.joshfouchey.smsarchive.service.importpipeline.ImportScheduler.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImportSchedulerTest {
+
+    /** Holds submitted work until the test runs it, so "running" jobs stay running. */
+    private final Deque<Runnable> started = new ArrayDeque<>();
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    void jobsOfOneUserRunOneAtATime() {
+        ImportScheduler scheduler = new ImportScheduler(started::add, 4);
+        Ticket first = scheduler.submit(1L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("a1"));
+        Ticket second = scheduler.submit(1L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("a2"));
+
+        assertThat(scheduler.runningJobs()).isEqualTo(1);
+        assertThat(first.position()).isZero();
+        assertThat(second.position()).isEqualTo(1);
+
+        started.poll().run();
+        assertThat(second.position()).isZero();
+        started.poll().run();
+        assertThat(ran).containsExactly("a1", "a2");
+        assertThat(scheduler.runningJobs()).isZero();
+    }
+
+    @Test
+    void differentUsersRunInParallelUpToTheCap() {
+        ImportScheduler scheduler = new ImportScheduler(started::add, 2);
+        scheduler.submit(1L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("u1"));
+        scheduler.submit(2L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("u2"));
+        Ticket third = scheduler.submit(3L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("u3"));
+
+        assertThat(scheduler.runningJobs()).isEqualTo(2);
+        assertThat(third.position()).isEqualTo(1);
+
+        started.poll().run();
+        assertThat(scheduler.runningJobs()).isEqualTo(2);
+        assertThat(third.position()).isZero();
+    }
+
+    @Test
+    void interactiveUploadOvertakesWaitingDropDirectoryJobs() {
+        ImportScheduler scheduler = new ImportScheduler(started::add, 1);
+        scheduler.submit(1L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("running"));
+        Ticket drop = scheduler.submit(2L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("drop"));
+        Ticket upload = scheduler.submit(3L, Priority.INTERACTIVE, 100, () -> 100, () -> ran.add("upload"));
+
+        assertThat(upload.position()).isEqualTo(1);
+        assertThat(drop.position()).isEqualTo(2);
+
+        while (!started.isEmpty()) started.poll().run();
+        assertThat(ran).containsExactly("running", "upload", "drop");
+    }
+
+    @Test
+    void waitingJobOfABusyUserDoesNotBlockOtherUsers() {
+        ImportScheduler scheduler = new ImportScheduler(started::add, 2);
+        scheduler.submit(1L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("a1"));
+        scheduler.submit(1L, Priority.INTERACTIVE, 100, () -> 100, () -> ran.add("a2"));
+        scheduler.submit(2L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("b1"));
+
+        assertThat(scheduler.runningJobs()).isEqualTo(2);
+        assertThat(scheduler.queuedJobs()).isEqualTo(1);
+    }
+
+    @Test
+    void failingJobReleasesItsSlot() {
+        ImportScheduler scheduler = new ImportScheduler(started::add, 1);
+        scheduler.submit(1L, Priority.BACKGROUND, 100, () -> 100, () -> { throw new IllegalStateException("boom"); });
+        scheduler.submit(2L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("next"));
+
+        try { started.poll().run(); } catch (IllegalStateException expected) { /* surfaced to the executor */ }
+        started.poll().run();
+        assertThat(ran).containsExactly("next");
+    }
+
+    @Test
+    void rejectedJobIsReportedToItsSubmitter() {
+        List<RuntimeException> rejected = new ArrayList<>();
+        ImportScheduler scheduler = new ImportScheduler(task -> {
+            throw new java.util.concurrent.RejectedExecutionException("queue full");
+        }, 1);
+        Ticket ticket = scheduler.submit(1L, Priority.INTERACTIVE, 100, () -> 100, () -> ran.add("a"), rejected::add);
+
+        assertThat(rejected).singleElement().extracting(Throwable::getMessage).isEqualTo("queue full");
+        assertThat(ran).isEmpty();
+        assertThat(ticket.position()).isZero();
+        assertThat(scheduler.runningJobs()).isZero();
+    }
+
+    @Test
+    void etaIsUnknownWithoutThroughputAndZeroWhenDone() {
+        ImportScheduler scheduler = new ImportScheduler(started::add, 1);
+        Ticket ticket = scheduler.submit(1L, Priority.BACKGROUND, 100, () -> 100, () -> ran.add("a"));
+
+        assertThat(ticket.etaSeconds()).isNull();
+        started.poll().run();
+        assertThat(ticket.etaSeconds()).isZero();
+    }
+}
@@ -0,0 +1,90 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.Conversation;
+import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.model.MessagePart;
+import com.joshfouchey.smsarchive.service.MediaFileNamer;
+import com.joshfouchey.smsarchive.service.ThumbnailService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MediaHandlerTest {
+
+    @TempDir
+    Path mediaRoot;
+
+    private MediaHandler mediaHandler;
+    private Path spoolDir;
+
+    @BeforeEach
+    void setUp() {
+        mediaHandler = new MediaHandler(new ThumbnailService(), mediaRoot);
+        spoolDir = mediaHandler.spoolDirectory(UUID.randomUUID());
+    }
+
+    @Test
+    void spoolDecodesToFileAndHashesLikeInMemoryNaming() throws Exception {
+        byte[] payload = new byte[200_000]; // larger than the hash slice and the stream buffer
+        new Random(42).nextBytes(payload);
+
+        SpooledMedia spooled = mediaHandler.spool(Base64.getEncoder().encodeToString(payload), spoolDir).orElseThrow();
+
+        assertThat(Files.readAllBytes(spooled.file())).isEqualTo(payload);
+        assertThat(spooled.sizeBytes()).isEqualTo(payload.length);
+        Instant ts = Instant.ofEpochSecond(1_600_000_000L);
+        Path fromBytes = MediaFileNamer.buildUniqueMediaPath(mediaRoot, 1L, 0, ts, payload, ".bin");
+        Path fromStream = MediaFileNamer.buildUniqueMediaPath(mediaRoot, 1L, 0, ts, spooled.hashShort(), ".bin");
+        assertThat(fromStream).isEqualTo(fromBytes);
+    }
+
+    @Test
+    void invalidBase64LeavesNoSpoolFile() throws Exception {
+        Optional<SpooledMedia> spooled = mediaHandler.spool("not*base64", spoolDir);
+
+        assertThat(spooled).isEmpty();
+        try (var files = Files.list(spoolDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void storeMovesSpoolFileIntoConversationDirectory() throws Exception {
+        byte[] payload = "hello attachment".getBytes();
+        SpooledMedia spooled = mediaHandler.spool(Base64.getEncoder().encodeToString(payload), spoolDir).orElseThrow();
+        Conversation conversation = new Conversation();
+        conversation.setId(7L);
+        Message msg = new Message();
+        msg.setConversation(conversation);
+        msg.setTimestamp(Instant.ofEpochSecond(1_600_000_000L));
+        MessagePart part = new MessagePart();
+        part.setMessage(msg);
+        part.setSeq(0);
+        part.setContentType("application/octet-stream");
+        Map<String, Object> entry = new HashMap<>();
+
+        mediaHandler.storePendingMedia(new PendingMedia(part, spooled, entry));
+
+        Path stored = Path.of(part.getFilePath());
+        assertThat(stored.getParent()).isEqualTo(mediaRoot.resolve("7"));
+        assertThat(Files.readAllBytes(stored)).isEqualTo(payload);
+        assertThat(part.getSizeBytes()).isEqualTo((long) payload.length);
+        assertThat(entry.get("filePath")).isEqualTo(stored.normalize().toString());
+        assertThat(spooled.file()).doesNotExist();
+
+        mediaHandler.deleteSpoolDirectory(spoolDir);
+        assertThat(spoolDir).doesNotExist();
+    }
+}
@@ -0,0 +1,106 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UploadSpoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    /** Request body whose chunks the test releases one at a time. */
+    private static final class SlowBody extends InputStream {
+        final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        private byte[] current = new byte[0];
+        private int pos;
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos == current.length) {
+                try { current = chunks.take(); } catch (InterruptedException e) { throw new IOException(e); }
+                pos = 0;
+                if (current.length == 0) return -1; // end marker
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+
+    @Test
+    void readerFollowsTheUploadAndEndsWithIt() throws Exception {
+        UploadSpool spool = new UploadSpool(tempDir.resolve("live.xml"));
+        Files.createFile(spool.file());
+        SlowBody body = new SlowBody();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Long> upload = pool.submit(() -> spool.receive(body, Long.MAX_VALUE));
+            Future<String> parsed = pool.submit(() -> {
+                try (InputStream in = spool.openReader()) {
+                    return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+            });
+
+            body.chunks.put("<smses>".getBytes(StandardCharsets.UTF_8));
+            body.chunks.put("<sms body=\"hi\"/>".getBytes(StandardCharsets.UTF_8));
+            // The reader has consumed what arrived so far and is waiting for more
+            Thread.sleep(100);
+            assertThat(parsed.isDone()).isFalse();
+
+            body.chunks.put("</smses>".getBytes(StandardCharsets.UTF_8));
+            body.chunks.put(new byte[0]);
+
+            assertThat(upload.get(5, TimeUnit.SECONDS)).isEqualTo(31);
+            assertThat(parsed.get(5, TimeUnit.SECONDS)).isEqualTo("<smses><sms body=\"hi\"/></smses>");
+            assertThat(Files.readString(spool.file())).isEqualTo("<smses><sms body=\"hi\"/></smses>");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void readerFailsWhenTheUploadBreaksOff() throws Exception {
+        UploadSpool spool = new UploadSpool(tempDir.resolve("broken.xml"));
+        Files.createFile(spool.file());
+        InputStream reader = spool.openReader();
+        InputStream broken = new InputStream() {
+            @Override public int read() throws IOException { throw new IOException("connection reset"); }
+        };
+
+        assertThatThrownBy(() -> spool.receive(broken, Long.MAX_VALUE)).hasMessageContaining("connection reset");
+        assertThatThrownBy(reader::read).isInstanceOf(IOException.class).hasMessageContaining("Upload failed");
+        reader.close();
+    }
+
+    @Test
+    void uploadOverTheLimitStopsAndFailsTheReader() throws Exception {
+        UploadSpool spool = new UploadSpool(tempDir.resolve("big.xml"));
+        Files.createFile(spool.file());
+        InputStream reader = spool.openReader();
+        InputStream endless = new InputStream() {
+            @Override public int read() { return 'x'; }
+        };
+
+        assertThatThrownBy(() -> spool.receive(endless, 100_000))
+                .isInstanceOf(UploadSpool.TooLargeException.class);
+        assertThat(Files.size(spool.file())).isLessThanOrEqualTo(100_000);
+        assertThatThrownBy(reader::read).isInstanceOf(IOException.class).hasMessageContaining("Upload failed");
+        reader.close();
+    }
+}
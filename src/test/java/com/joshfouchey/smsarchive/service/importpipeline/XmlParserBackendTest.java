@@ -0,0 +1,334 @@
+package com.joshfouchey.smsarchive.service.importpipeline;
+
+import com.joshfouchey.smsarchive.model.Message;
+import com.joshfouchey.smsarchive.model.MessagePart;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class XmlParserBackendTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final XmlMessageParser parser = new XmlMessageParser(new ContactResolver(null), () -> null);
+
+    @Test
+    void allBackendsParseTheSameMessages() throws Exception {
+        byte[] fixture;
+        try (InputStream in = getClass().getResourceAsStream("/test-messages.xml")) {
+            fixture = in.readAllBytes();
+        }
+        byte[] edgeCases = ("\uFEFF<?xml version='1.0' encoding='UTF-8'?>\n<!-- <sms body=\"in a comment\"/> -->\n"
+                + "<smses count=\"2\"><![CDATA[<sms body=\"in cdata\"/>]]>\n"
+                + "<sms address='+1 (555) 010-0000' date=\"1672531200000\" type=\"1\" contact_name=\"Zoë &amp; Co\" "
+                + "body=\"a &lt;b&gt; &quot;c&quot; &apos;d&apos;&#10;line&#x1F600;\nwrapped\r\nend\tx\"/>\n"
+                + "<mms date='1672531201000' msg_box='2'><parts><part seq='0' ct='text/plain' text='héllo'/>"
+                + "<part seq='1' ct='image/png' name='p.png' data='SGVsbG8gd29ybGQ='></part></parts>"
+                + "<addrs><addr address='+15550100001' type='151'/><addr address='+15550100002' type='151'/></addrs></mms>"
+                + "</smses>").getBytes(StandardCharsets.UTF_8);
+
+        for (byte[] xml : List.of(fixture, edgeCases)) {
+            List<String> expected = parse(XmlParserBackend.JDK, new ByteArrayInputStream(xml));
+            assertThat(expected).isNotEmpty();
+            for (XmlParserBackend backend : XmlParserBackend.values()) {
+                assertThat(parse(backend, new ByteArrayInputStream(xml))).as(backend.name()).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void scannerHandsOutLargePayloadsAcrossBufferRefills() throws Exception {
+        byte[] payload = new byte[300_000];
+        new Random(7).nextBytes(payload);
+        String base64 = Base64.getEncoder().encodeToString(payload);
+        String xml = "<smses><mms date='1' msg_box='1'><parts><part seq='0' ct='image/jpeg' data='" + base64
+                + "'/></parts></mms><sms date='2' type='1' body='after'/></smses>";
+
+        List<String> messages = parse(XmlParserBackend.SCANNER, new ByteArrayInputStream(xml.getBytes(StandardCharsets.US_ASCII)));
+
+        assertThat(messages).hasSize(2);
+        assertThat(messages.getFirst()).contains("data=" + base64);
+        assertThat(messages.get(1)).contains("body=after");
+    }
+
+    @Test
+    void scannerSpillsLargeValuesWithTheSameResult() throws Exception {
+        byte[] payload = new byte[3 * ScanningElementReader.SPILL_THRESHOLD];
+        new Random(11).nextBytes(payload);
+        String wrapped = Base64.getMimeEncoder().encodeToString(payload); // CRLF every 76 chars
+        String body = "x\r\n".repeat(ScanningElementReader.SPILL_THRESHOLD) + "é";
+        byte[] xml = ("<smses><mms date='1' msg_box='1'><parts><part seq='0' ct='image/jpeg' data='" + wrapped
+                + "'/></parts></mms><sms date='2' type='1' body='" + body + "'/></smses>").getBytes(StandardCharsets.UTF_8);
+
+        List<String> expected = parse(XmlParserBackend.JDK, new ByteArrayInputStream(xml));
+        List<String> messages = parse(XmlParserBackend.SCANNER, new ByteArrayInputStream(xml));
+
+        assertThat(messages).isEqualTo(expected);
+        assertThat(messages.getFirst()).contains("data=" + wrapped.replace("\r\n", " "));
+    }
+
+    /**
+     * The default backend must not hold an attachment on the heap: bytes allocated while parsing
+     * a message with a 64 MB payload bound the peak, and stay a fraction of the payload.
+     */
+    @Test
+    void defaultBackendKeepsLargeAttachmentsOffTheHeap() throws Exception {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        long payloadChars = 64L * 1024 * 1024;
+        InputStream xml = new SequenceInputStream(List.of(
+                new ByteArrayInputStream("<smses><mms date='1' msg_box='1'><parts><part seq='0' ct='video/mp4' data='"
+                        .getBytes(StandardCharsets.US_ASCII)),
+                repeated((byte) 'A', payloadChars),
+                new ByteArrayInputStream("'/></parts></mms><sms date='2' type='1' body='after'/></smses>"
+                        .getBytes(StandardCharsets.US_ASCII))).iterator());
+        long[] seen = {0};
+        XmlMessageParser.ElementContext ctx = new XmlMessageParser.ElementContext(base64 -> {
+            for (int i = 0; i < base64.length(); i++) {
+                if (base64.charAt(i) == 'A') seen[0]++;
+            }
+            return Optional.empty();
+        });
+        int[] messages = {0};
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        try (XmlElementReader r = XmlParserBackend.fromName(null).open(xml)) {
+            int evt;
+            while ((evt = r.next()) != XMLStreamConstants.END_DOCUMENT) {
+                if (evt == XMLStreamConstants.START_ELEMENT) {
+                    parser.handleStartElement(r, ctx, (msg, name) -> messages[0]++);
+                } else {
+                    parser.handleEndElement(r, ctx, (msg, threadKey, participants, name, media) -> messages[0]++);
+                }
+            }
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertThat(messages[0]).isEqualTo(2);
+        assertThat(seen[0]).isEqualTo(payloadChars);
+        assertThat(allocated).isLessThan(payloadChars / 4);
+    }
+
+    @Test
+    void externalEntitiesAreNeverResolved() throws Exception {
+        Path secret = Files.writeString(tempDir.resolve("secret.txt"), "top-secret");
+        String xml = "<?xml version=\"1.0\"?><!DOCTYPE smses [<!ENTITY x SYSTEM \"" + secret.toUri() + "\">]>"
+                + "<smses><sms date=\"1\" type=\"1\" body=\"&x;\"/></smses>";
+
+        for (XmlParserBackend backend : XmlParserBackend.values()) {
+            try {
+                List<String> messages = parse(backend, new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+                assertThat(String.join("\n", messages)).as(backend.name()).doesNotContain("top-secret");
+            } catch (XMLStreamException expected) {
+                // refusing the document is fine too
+            }
+        }
+        assertThatThrownBy(() -> parse(XmlParserBackend.SCANNER, new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))))
+                .isInstanceOf(XMLStreamException.class)
+                .hasMessageContaining("DOCTYPE");
+    }
+
+    @Test
+    void staxParserThatCannotDisableDtdsIsRefused() throws Exception {
+        XMLInputFactory factory = mock(XMLInputFactory.class);
+        doThrow(new IllegalArgumentException("unsupported")).when(factory).setProperty(eq(XMLInputFactory.SUPPORT_DTD), any());
+
+        assertThatThrownBy(() -> XmlParserBackend.openStax(factory, new ByteArrayInputStream(new byte[0])))
+                .isInstanceOf(XMLStreamException.class)
+                .hasMessageContaining(XMLInputFactory.SUPPORT_DTD);
+        verify(factory, never()).createXMLStreamReader(any(InputStream.class));
+    }
+
+    @Test
+    void scannerRejectsMalformedInput() {
+        for (String xml : List.of(
+                "<smses><sms body=\"&nbsp;\"/></smses>",
+                "<smses><sms body=\"&#0;\"/></smses>",
+                "<smses><sms date=\"1\">",
+                "<smses><mms></sms></smses>",
+                "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><smses/>")) {
+            assertThatThrownBy(() -> parse(XmlParserBackend.SCANNER, new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))))
+                    .as(xml)
+                    .isInstanceOf(XMLStreamException.class);
+        }
+    }
+
+    @Test
+    void backendNamesAreCaseInsensitive() {
+        assertThat(XmlParserBackend.fromName(" Woodstox ")).isEqualTo(XmlParserBackend.WOODSTOX);
+        assertThat(XmlParserBackend.fromName(null)).isEqualTo(XmlParserBackend.SCANNER);
+        assertThatThrownBy(() -> XmlParserBackend.fromName("sax")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Parse throughput per backend on a synthetic backup (mostly SMS, every 20th message an
+     * MMS with an 8KB attachment). Skipped by default; run with
+     * {@code ./gradlew test --tests '*XmlParserBackendTest' -Dsmsarchive.benchmark=true}
+     * and optionally {@code -Dsmsarchive.benchmark.messages=N} (default 200k).
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "smsarchive.benchmark", matches = "true")
+    void parseThroughputPerBackend() throws Exception {
+        int messages = Integer.getInteger("smsarchive.benchmark.messages", 200_000);
+        Path xml = writeSyntheticBackup(tempDir.resolve("bench.xml"), messages);
+        double megabytes = Files.size(xml) / (1024.0 * 1024.0);
+        for (XmlParserBackend backend : XmlParserBackend.values()) {
+            count(backend, xml); // warm-up
+            long best = Long.MAX_VALUE;
+            int parsed = 0;
+            for (int run = 0; run < 3; run++) {
+                long start = System.nanoTime();
+                parsed = count(backend, xml);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            assertThat(parsed).isEqualTo(messages);
+            double seconds = best / 1e9;
+            System.out.printf("Parser %-8s %,.1f MB in %.2fs = %,.1f MB/s (%,.0f msg/s)%n",
+                    backend.name().toLowerCase(), megabytes, seconds, megabytes / seconds, parsed / seconds);
+        }
+    }
+
+    // ===== Helpers =====
+
+    /** One line per parsed message, covering everything the parser reads from the XML. */
+    private List<String> parse(XmlParserBackend backend, InputStream in) throws Exception {
+        List<String> out = new ArrayList<>();
+        List<String> payloads = new ArrayList<>();
+        XmlMessageParser.ElementContext ctx = new XmlMessageParser.ElementContext(base64 -> {
+            payloads.add(base64.toString());
+            return Optional.empty();
+        });
+        try (XmlElementReader r = backend.open(in)) {
+            int evt;
+            while ((evt = r.next()) != XMLStreamConstants.END_DOCUMENT) {
+                if (evt == XMLStreamConstants.START_ELEMENT) {
+                    parser.handleStartElement(r, ctx, (msg, name) -> out.add(describe(msg, name, payloads)));
+                } else {
+                    parser.handleEndElement(r, ctx, (msg, threadKey, participants, name, media) ->
+                            out.add(describe(msg, name, payloads) + " thread=" + threadKey + " participants=" + participants));
+                }
+            }
+        }
+        return out;
+    }
+
+    private static String describe(Message msg, String suggestedName, List<String> payloads) {
+        StringBuilder sb = new StringBuilder()
+                .append(msg.getProtocol()).append(' ').append(msg.getTimestamp()).append(' ').append(msg.getDirection())
+                .append(" box=").append(msg.getMsgBox()).append(" name=").append(suggestedName)
+                .append(" body=").append(msg.getBody()).append(" meta=").append(msg.getMetadata());
+        if (msg.getParts() != null) {
+            for (MessagePart p : msg.getParts()) {
+                sb.append(" part[").append(p.getSeq()).append(',').append(p.getContentType()).append(',')
+                        .append(p.getName()).append(',').append(p.getText()).append(']');
+            }
+        }
+        payloads.forEach(data -> sb.append(" data=").append(data));
+        payloads.clear();
+        return sb.toString();
+    }
+
+    /** {@code count} copies of one byte, generated as they are read. */
+    private static InputStream repeated(byte b, long count) {
+        return new InputStream() {
+            private long left = count;
+
+            @Override
+            public int read() {
+                if (left == 0) return -1;
+                left--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) {
+                if (left == 0) return -1;
+                int n = (int) Math.min(len, left);
+                Arrays.fill(buf, off, off + n, b);
+                left -= n;
+                return n;
+            }
+        };
+    }
+
+    private int count(XmlParserBackend backend, Path xml) throws Exception {
+        int[] count = {0};
+        long[] payloadChars = {0};
+        XmlMessageParser.ElementContext ctx = new XmlMessageParser.ElementContext(base64 -> {
+            payloadChars[0] += base64.length();
+            return Optional.empty();
+        });
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(xml), 64 * 1024);
+             XmlElementReader r = backend.open(in)) {
+            int evt;
+            while ((evt = r.next()) != XMLStreamConstants.END_DOCUMENT) {
+                if (evt == XMLStreamConstants.START_ELEMENT) {
+                    parser.handleStartElement(r, ctx, (msg, name) -> count[0]++);
+                } else {
+                    parser.handleEndElement(r, ctx, (msg, threadKey, participants, name, media) -> count[0]++);
+                }
+            }
+        }
+        return count[0];
+    }
+
+    private static Path writeSyntheticBackup(Path xml, int messages) throws Exception {
+        byte[] image = new byte[8 * 1024];
+        new Random(1).nextBytes(image);
+        String data = Base64.getEncoder().encodeToString(image);
+        long baseMillis = 1_600_000_000_000L;
+        try (BufferedWriter w = Files.newBufferedWriter(xml, StandardCharsets.UTF_8)) {
+            w.write("<?xml version='1.0' encoding='UTF-8' standalone='yes' ?>\n<smses count=\"" + messages + "\">\n");
+            for (int i = 0; i < messages; i++) {
+                String address = "+1555" + String.format("%07d", i % 200);
+                long date = baseMillis + i * 1000L;
+                if (i % 20 == 0) {
+                    w.write("  <mms date=\"" + date + "\" msg_box=\"1\" address=\"" + address + "\" contact_name=\"Contact "
+                            + (i % 200) + "\">\n    <parts>\n      <part seq=\"0\" ct=\"text/plain\" name=\"null\" text=\"photo "
+                            + i + " &amp; caption\" />\n      <part seq=\"1\" ct=\"image/jpeg\" name=\"img" + i
+                            + ".jpg\" data=\"" + data + "\" />\n    </parts>\n    <addrs>\n      <addr address=\"" + address
+                            + "\" type=\"137\" charset=\"106\" />\n      <addr address=\"+15550000000\" type=\"151\" charset=\"106\" />\n"
+                            + "    </addrs>\n  </mms>\n");
+                } else {
+                    w.write("  <sms protocol=\"0\" address=\"" + address + "\" date=\"" + date + "\" type=\""
+                            + (i % 3 == 0 ? 2 : 1) + "\" subject=\"null\" body=\"Synthetic message " + i
+                            + " with some typical text, an emoji &#128512; and punctuation.\" toa=\"null\" sc_toa=\"null\""
+                            + " service_center=\"null\" read=\"1\" status=\"-1\" locked=\"0\" date_sent=\"" + date
+                            + "\" readable_date=\"Sep 13, 2020 12:26:40 PM\" contact_name=\"Contact " + (i % 200) + "\" />\n");
+                }
+            }
+            w.write("</smses>\n");
+        }
+        return xml;
+    }
+}
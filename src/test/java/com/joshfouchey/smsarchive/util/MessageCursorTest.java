@@ -0,0 +1,28 @@
+package com.joshfouchey.smsarchive.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageCursorTest {
+
+    @Test
+    void roundTripsThroughAnUrlSafeToken() {
+        MessageCursor cursor = new MessageCursor(Instant.parse("2021-03-04T05:06:07.123456Z"), 4242L, true);
+
+        String token = cursor.encode();
+
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+        assertThat(MessageCursor.decode(token)).isEqualTo(cursor);
+        assertThat(MessageCursor.decode(cursor.reversed().encode()).newer()).isFalse();
+    }
+
+    @Test
+    void rejectsTamperedTokens() {
+        assertThatThrownBy(() -> MessageCursor.decode("not a cursor")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MessageCursor.decode("djF8eHx8")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
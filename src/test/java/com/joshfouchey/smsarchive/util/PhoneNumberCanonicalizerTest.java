@@ -0,0 +1,105 @@
+package com.joshfouchey.smsarchive.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhoneNumberCanonicalizerTest {
+
+    @Test
+    void nanpNumbersMatchTheFormerRegexNormalization() {
+        for (String raw : List.of("+1 (555) 123-4567", "1-555-123-4567", "5551234567", "(555) 123-4567",
+                " 42 ", "123456789012", "15553334444", "555.123.4567 ", "*86", "22000")) {
+            assertThat(PhoneNumberCanonicalizer.canonicalize(raw)).as(raw).isEqualTo(regexNormalize(raw));
+        }
+    }
+
+    @Test
+    void addressesWithoutDigitsAreUnknown() {
+        assertThat(PhoneNumberCanonicalizer.canonicalize(null)).isEqualTo(PhoneNumberCanonicalizer.UNKNOWN);
+        assertThat(PhoneNumberCanonicalizer.canonicalize("")).isEqualTo(PhoneNumberCanonicalizer.UNKNOWN);
+        assertThat(PhoneNumberCanonicalizer.canonicalize("  ")).isEqualTo(PhoneNumberCanonicalizer.UNKNOWN);
+        assertThat(PhoneNumberCanonicalizer.canonicalize("VERIZON")).isEqualTo(PhoneNumberCanonicalizer.UNKNOWN);
+        assertThat(PhoneNumberCanonicalizer.canonicalize("+")).isEqualTo(PhoneNumberCanonicalizer.UNKNOWN);
+    }
+
+    @Test
+    void internationalPrefixesAreDroppedAndExplicitNumbersKept() {
+        assertThat(PhoneNumberCanonicalizer.canonicalize("0044 20 7946 0958")).isEqualTo("+442079460958");
+        assertThat(PhoneNumberCanonicalizer.canonicalize("011 44 20 7946 0958")).isEqualTo("+442079460958");
+        assertThat(PhoneNumberCanonicalizer.canonicalize("+44 20 7946 0958")).isEqualTo("+442079460958");
+        // Ten digits after an explicit + are a full international number, not a NANP national one
+        assertThat(PhoneNumberCanonicalizer.canonicalize("+49 30 123456")).isEqualTo("+4930123456");
+        // 011 followed by only a national-length number is not an exit code
+        assertThat(PhoneNumberCanonicalizer.canonicalize("011 5551 2345")).isEqualTo("+01155512345");
+    }
+
+    @Test
+    void canonicalFormsAreStable() {
+        for (String raw : List.of("5551234567", "0044 20 7946 0958", "+49 30 123456", "22000", "011 81 3 1234 5678")) {
+            String once = PhoneNumberCanonicalizer.canonicalize(raw);
+            assertThat(PhoneNumberCanonicalizer.canonicalize(once)).as(raw).isEqualTo(once);
+        }
+    }
+
+    @Test
+    void memoIsBoundedAndAgreesWithCanonicalize() {
+        PhoneNumberCanonicalizer memo = new PhoneNumberCanonicalizer(8);
+        for (int i = 0; i < 100; i++) {
+            String raw = "(555) 010-" + String.format("%04d", i % 20);
+            assertThat(memo.canonical(raw)).isEqualTo(PhoneNumberCanonicalizer.canonicalize(raw));
+        }
+        assertThat(memo.canonical(null)).isEqualTo(PhoneNumberCanonicalizer.UNKNOWN);
+    }
+
+    /**
+     * Scan vs memo vs the previous {@code replaceAll("\\D", "")} implementation over addresses
+     * shaped like a backup's (few distinct, heavily repeated). Skipped by default; run with
+     * {@code ./gradlew test --tests '*PhoneNumberCanonicalizerTest' -Dsmsarchive.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "smsarchive.benchmark", matches = "true")
+    void canonicalizeThroughput() {
+        Random random = new Random(3);
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < 2_000_000; i++) {
+            int n = random.nextInt(500);
+            addresses.add(switch (n % 3) {
+                case 0 -> "+1555" + String.format("%07d", n);
+                case 1 -> "(555) " + String.format("%03d-%04d", n % 1000, n);
+                default -> "555-" + String.format("%03d-%04d", n % 1000, n);
+            });
+        }
+        PhoneNumberCanonicalizer memo = new PhoneNumberCanonicalizer();
+        for (int run = 0; run < 3; run++) {
+            long regex = time(addresses, PhoneNumberCanonicalizerTest::regexNormalize);
+            long scan = time(addresses, PhoneNumberCanonicalizer::canonicalize);
+            long memoized = time(addresses, memo::canonical);
+            System.out.printf("Canonicalize %,d addresses: regex %d ms, scan %d ms, memo %d ms%n",
+                    addresses.size(), regex / 1_000_000, scan / 1_000_000, memoized / 1_000_000);
+        }
+    }
+
+    private static long time(List<String> addresses, Function<String, String> f) {
+        long start = System.nanoTime();
+        int sink = 0;
+        for (String a : addresses) sink += f.apply(a).length();
+        assertThat(sink).isPositive();
+        return System.nanoTime() - start;
+    }
+
+    /** The normalization ContactResolver and ConversationService used before the canonicalizer. */
+    private static String regexNormalize(String number) {
+        if (number == null || number.isBlank()) return PhoneNumberCanonicalizer.UNKNOWN;
+        String digits = number.replaceAll("\\D", "");
+        if (digits.isEmpty()) return PhoneNumberCanonicalizer.UNKNOWN;
+        if (digits.length() == 10) digits = "1" + digits;
+        return "+" + digits;
+    }
+}